@@ -0,0 +1,74 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.zimory.jpaunit.core.compare.ComparisonEngine;
+import com.zimory.jpaunit.core.compare.ComparisonEngine.Comparison;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares equal, separately generated entities in memory, as the expect phase does once it has loaded them, without
+ * the database: either with a comparator chain and a reflection comparator built for every entity, as before there
+ * was a shared {@link ComparisonEngine}, or with a single comparison of the shared engine for all entities, with or
+ * without its fast path. The times and allocations (see {@code gc.alloc.rate.norm}) are per entity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComparisonEngineBenchmark {
+
+    private static final int DEPTH = 4;
+    private static final int ENTITIES = 64 * DEPTH * (1 + EntityGraphs.LEAVES_PER_NODE);
+
+    @Param({"perEntity", "shared", "fastPath"})
+    public String engine;
+
+    private final ComparisonEngine comparisonEngine = new ComparisonEngine();
+
+    private List<Object> expectedEntities;
+    private List<Object> actualEntities;
+
+    @Setup
+    public void generate() {
+        expectedEntities = EntityGraphs.generate(ENTITIES, DEPTH);
+        actualEntities = EntityGraphs.generate(ENTITIES, DEPTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ENTITIES)
+    public boolean compare() {
+        final boolean perEntity = "perEntity".equals(engine);
+        Comparison comparison = "fastPath".equals(engine)
+                ? comparisonEngine.newFastPathComparison()
+                : comparisonEngine.newComparison();
+        boolean equal = true;
+
+        for (int i = 0; i < ENTITIES; i++) {
+            if (perEntity) {
+                comparison = new ComparisonEngine().newComparison();
+            }
+
+            final Object expected = expectedEntities.get(i);
+            equal &= comparison.compare(EntityKey.of(expected.getClass(), i), expected, actualEntities.get(i));
+        }
+
+        return equal;
+    }
+
+}
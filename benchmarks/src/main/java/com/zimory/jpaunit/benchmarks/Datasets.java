@@ -0,0 +1,24 @@
+package com.zimory.jpaunit.benchmarks;
+
+import com.zimory.jpaunit.core.annotation.GenerateExpectedDataSet;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+
+/**
+ * The "test" methods declaring the datasets the benchmarks read and write.
+ */
+public final class Datasets {
+
+    static final String GRAPH = "Generated/graph";
+
+    private Datasets() {
+    }
+
+    @UsingJpaDataSet(GRAPH)
+    public void read() {
+    }
+
+    @GenerateExpectedDataSet(GRAPH)
+    public void write() {
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.PersistenceUnitUtil;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.compare.CompareStatistics;
+import com.zimory.jpaunit.core.compare.EntityComparator;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Verifies the persisted entities against equal, freshly generated expected entities, with or without the fast path
+ * for equal entities (see {@link JpaUnitConfig#setExpectFastPath(boolean)}). The generated entities are also passed as the setup entities, so that the check for removed setup
+ * entities is covered as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EntityComparatorBenchmark extends PersistenceUnitBenchmark {
+
+    @Param({"false", "true"})
+    public boolean fastPath;
+
+    private Set<Object> expectedEntities;
+    private Set<EntityKey> setupEntityKeys;
+
+    @Override
+    protected void configure(final JpaUnitConfig config) {
+        config.setExpectFastPath(fastPath);
+    }
+
+    @Override
+    protected void setUp() {
+        insert(EntityGraphs.generate(rows, depth));
+
+        expectedEntities = Sets.newLinkedHashSet(EntityGraphs.generate(rows, depth));
+
+        final PersistenceUnitUtil util = entityManagerFactory.getPersistenceUnitUtil();
+        final ImmutableSet.Builder<EntityKey> keys = ImmutableSet.builder();
+
+        for (final Object entity : expectedEntities) {
+            keys.add(EntityKey.of(util, entity));
+        }
+
+        setupEntityKeys = keys.build();
+    }
+
+    @Benchmark
+    public CompareStatistics compare() {
+        return context.getBean(EntityComparator.class).compare(expectedEntities, setupEntityKeys);
+    }
+
+}
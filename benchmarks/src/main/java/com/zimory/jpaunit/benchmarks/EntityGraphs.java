@@ -0,0 +1,71 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.collect.Lists;
+import com.zimory.jpaunit.benchmarks.model.Leaf;
+import com.zimory.jpaunit.benchmarks.model.Node;
+
+/**
+ * Generates trees of {@link Node}s, each a chain of nodes of the given depth with {@value #LEAVES_PER_NODE} leaves per
+ * node, referenced in both directions. The entities are the same (by ID and state) on every call with the same
+ * arguments, so that generated entities can serve as the expected state of entities generated and persisted earlier.
+ */
+final class EntityGraphs {
+
+    static final int LEAVES_PER_NODE = 3;
+
+    private static final long CREATED = 1380000000000L;
+
+    private EntityGraphs() {
+    }
+
+    /**
+     * @param rows the number of entities to generate, rounded down to whole trees, but at least one tree
+     * @param depth the number of nodes of each tree
+     * @return the entities, parents before their children and nodes before their leaves
+     */
+    static List<Object> generate(final int rows, final int depth) {
+        final int trees = Math.max(rows / (depth * (1 + LEAVES_PER_NODE)), 1);
+        final List<Object> entities = Lists.newArrayListWithCapacity(trees * depth * (1 + LEAVES_PER_NODE));
+
+        for (int tree = 0; tree < trees; tree++) {
+            Node parent = null;
+
+            for (int level = 0; level < depth; level++) {
+                final Node node = new Node();
+                node.setId(new UUID(tree, level));
+                node.setName("node " + tree + "/" + level);
+                node.setLevel(level);
+                node.setParent(parent);
+                node.setChildren(Lists.<Node>newArrayList());
+                node.setLeaves(Lists.<Leaf>newArrayList());
+
+                if (parent != null) {
+                    parent.getChildren().add(node);
+                }
+
+                entities.add(node);
+
+                for (int i = 0; i < LEAVES_PER_NODE; i++) {
+                    final Leaf leaf = new Leaf();
+                    leaf.setId(new UUID(tree, (long) (level + 1) << 32 | i));
+                    leaf.setLabel("leaf " + tree + "/" + level + "/" + i);
+                    leaf.setAmount(tree * 100L + i);
+                    leaf.setCreated(new Date(CREATED + tree * 1000L));
+                    leaf.setNode(node);
+
+                    node.getLeaves().add(leaf);
+                    entities.add(leaf);
+                }
+
+                parent = node;
+            }
+        }
+
+        return entities;
+    }
+
+}
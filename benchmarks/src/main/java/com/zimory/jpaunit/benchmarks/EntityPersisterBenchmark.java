@@ -0,0 +1,65 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.persist.EntityPersister;
+import com.zimory.jpaunit.core.persist.PersistStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Persists the generated entities with the setup persister: with the JPA persister flushing every entity, the JPA
+ * persister flushing in batches of 100, or the JDBC persister. Flushing every entity takes quadratic time, so it is
+ * only practical for the smaller row counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EntityPersisterBenchmark extends PersistenceUnitBenchmark {
+
+    @Param({"flushPerEntity", "batched", "jdbc"})
+    public String persister;
+
+    private List<Object> entities;
+
+    @Override
+    protected void configure(final JpaUnitConfig config) {
+        if ("batched".equals(persister)) {
+            config.setSetupBatchSize(100);
+        } else if ("jdbc".equals(persister)) {
+            config.setJdbcSetup(true);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void generate() {
+        entities = EntityGraphs.generate(rows, depth);
+    }
+
+    @TearDown(Level.Iteration)
+    public void delete() {
+        deleteAll();
+    }
+
+    @Benchmark
+    public PersistStatistics persist() {
+        return context.getBean("entityPersister", EntityPersister.class).persist(entities);
+    }
+
+}
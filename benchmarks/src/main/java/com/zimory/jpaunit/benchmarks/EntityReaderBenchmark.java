@@ -0,0 +1,108 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.TestContext;
+import com.zimory.jpaunit.core.read.CompiledDataset;
+import com.zimory.jpaunit.core.read.EntityReader;
+import com.zimory.jpaunit.core.write.EntityWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses a dataset of the generated entities, without the dataset cache. The dataset is written by the
+ * paged {@link EntityWriter} to a temporary directory, which the reader sees through the context class loader, and
+ * either read from its YAML source or {@link CompiledDataset compiled} next to it and read from there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EntityReaderBenchmark extends PersistenceUnitBenchmark {
+
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    private File dir;
+    private ClassLoader datasetClassLoader;
+
+    @Override
+    protected void configure(final JpaUnitConfig config) {
+        dir = Files.createTempDir();
+        config.setWriterBaseDir(new File(dir, "datasets").getPath());
+        config.setDatasetCacheSize(0);
+        // the paged writer writes plain collections, which can be read back
+        config.setWriterPageSize(1000);
+        config.setUseCompiledDatasets(compiled);
+    }
+
+    @Override
+    protected void setUp() throws IOException {
+        insert(EntityGraphs.generate(rows, depth));
+        context.getBean(EntityWriter.class).writeExpectEntities(new TestContext(Datasets.class, "write"));
+        deleteAll();
+
+        if (compiled) {
+            compile(new File(dir, "datasets/" + Datasets.GRAPH + ".yml"));
+        }
+
+        datasetClassLoader = new URLClassLoader(new URL[] {dir.toURI().toURL()}, null);
+    }
+
+    @Override
+    protected void tearDown() {
+        TemporaryFiles.delete(dir);
+    }
+
+    @Benchmark
+    public Set<Object> read() throws IOException {
+        final Thread thread = Thread.currentThread();
+        final ClassLoader contextClassLoader = thread.getContextClassLoader();
+        thread.setContextClassLoader(datasetClassLoader);
+
+        try {
+            return context.getBean("entityReader", EntityReader.class)
+                    .readSetupEntities(new TestContext(Datasets.class, "read"));
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private static void compile(final File yamlFile) throws IOException {
+        final InputStream in = new FileInputStream(yamlFile);
+
+        try {
+            final OutputStream out = new FileOutputStream(new File(yamlFile.getPath() + "c"));
+
+            try {
+                CompiledDataset.compile(in, out);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.TestContext;
+import com.zimory.jpaunit.core.write.EntityWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dumps the persisted entities to a dataset in a temporary directory, either loading all entities at once or one page
+ * of 1000 entities at a time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EntityWriterBenchmark extends PersistenceUnitBenchmark {
+
+    @Param({"0", "1000"})
+    public int pageSize;
+
+    private File dir;
+
+    @Override
+    protected void configure(final JpaUnitConfig config) {
+        dir = Files.createTempDir();
+        config.setWriterBaseDir(dir.getPath());
+        config.setWriterPageSize(pageSize);
+    }
+
+    @Override
+    protected void setUp() {
+        insert(EntityGraphs.generate(rows, depth));
+    }
+
+    @Override
+    protected void tearDown() {
+        TemporaryFiles.delete(dir);
+    }
+
+    @Benchmark
+    public void write() {
+        context.getBean(EntityWriter.class).writeExpectEntities(new TestContext(Datasets.class, "write"));
+    }
+
+}
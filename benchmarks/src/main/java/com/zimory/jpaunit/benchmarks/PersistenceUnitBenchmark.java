@@ -0,0 +1,138 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.zimory.jpaunit.benchmarks.model.Leaf;
+import com.zimory.jpaunit.benchmarks.model.Node;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.hibernate.ejb.Ejb3Configuration;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The base of the benchmarks: opens a persistence unit of the {@link Node} and {@link Leaf} entities on an in-memory
+ * H2 database and a JpaUnit context for it once per trial, parameterized by the number of rows and the depth of the
+ * generated entity graphs (see {@link EntityGraphs}).
+ * <p/>
+ * The persistence unit is configured programmatically, as Hibernate fails to scan the benchmark jar for a
+ * {@code persistence.xml}: it can't read the Java 8 classes of JMH.
+ */
+@State(Scope.Benchmark)
+public abstract class PersistenceUnitBenchmark {
+
+    private static final int FLUSH_INTERVAL = 1000;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    protected int rows;
+
+    @Param({"1", "4", "16"})
+    protected int depth;
+
+    protected EntityManagerFactory entityManagerFactory;
+    protected ConfigurableApplicationContext context;
+
+    @Setup(Level.Trial)
+    public void openPersistenceUnit() throws Exception {
+        entityManagerFactory = new Ejb3Configuration()
+                .addAnnotatedClass(Node.class)
+                .addAnnotatedClass(Leaf.class)
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:benchmark")
+                .setProperty("hibernate.connection.driver_class", "org.h2.Driver")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create-drop")
+                .buildEntityManagerFactory();
+
+        final JpaUnitConfig config = new JpaUnitConfig();
+        configure(config);
+        context = JpaUnit.createContext(config, entityManagerFactory);
+
+        setUp();
+    }
+
+    @TearDown(Level.Trial)
+    public void closePersistenceUnit() throws Exception {
+        try {
+            tearDown();
+        } finally {
+            context.close();
+            entityManagerFactory.close();
+        }
+    }
+
+    /**
+     * Configures JpaUnit for the trial.
+     */
+    protected void configure(final JpaUnitConfig config) {
+    }
+
+    /**
+     * Prepares the trial, once the persistence unit and the context are open.
+     */
+    protected void setUp() throws Exception {
+    }
+
+    /**
+     * Cleans up after the trial, before the persistence unit and the context are closed.
+     */
+    protected void tearDown() throws Exception {
+    }
+
+    /**
+     * Persists the given entities with JPA, bypassing JpaUnit.
+     */
+    protected void insert(final List<Object> entities) {
+        final EntityManager em = entityManagerFactory.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+
+            for (int i = 0; i < entities.size(); i++) {
+                em.persist(entities.get(i));
+
+                if ((i + 1) % FLUSH_INTERVAL == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+
+            em.close();
+        }
+    }
+
+    /**
+     * Deletes all entities.
+     */
+    protected void deleteAll() {
+        final EntityManager em = entityManagerFactory.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("DELETE FROM Leaf").executeUpdate();
+            // the nodes reference each other
+            em.createNativeQuery("UPDATE Node SET parent_id = NULL").executeUpdate();
+            em.createNativeQuery("DELETE FROM Node").executeUpdate();
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+
+        entityManagerFactory.getCache().evictAll();
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.zimory.jpaunit.benchmarks;
+
+import java.io.File;
+
+final class TemporaryFiles {
+
+    private TemporaryFiles() {
+    }
+
+    static void delete(final File file) {
+        final File[] children = file.listFiles();
+
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+}
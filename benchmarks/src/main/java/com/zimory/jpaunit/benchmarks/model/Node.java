@@ -0,0 +1,94 @@
+package com.zimory.jpaunit.benchmarks.model;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import com.google.common.base.Objects;
+
+/**
+ * A node of a tree, referencing its parent and its leaves in both directions.
+ */
+@Entity
+public class Node {
+
+    @Id
+    private UUID id;
+
+    @Column(nullable = false)
+    private String name;
+
+    private int level;
+
+    @ManyToOne
+    private Node parent;
+
+    @OneToMany(mappedBy = "parent")
+    private List<Node> children;
+
+    @OneToMany(mappedBy = "node")
+    private List<Leaf> leaves;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(final int level) {
+        this.level = level;
+    }
+
+    public Node getParent() {
+        return parent;
+    }
+
+    public void setParent(final Node parent) {
+        this.parent = parent;
+    }
+
+    public List<Node> getChildren() {
+        return children;
+    }
+
+    public void setChildren(final List<Node> children) {
+        this.children = children;
+    }
+
+    public List<Leaf> getLeaves() {
+        return leaves;
+    }
+
+    public void setLeaves(final List<Leaf> leaves) {
+        this.leaves = leaves;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .add("name", name)
+                .add("level", level)
+                .toString();
+    }
+
+}
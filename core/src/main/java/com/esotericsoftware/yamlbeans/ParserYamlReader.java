@@ -0,0 +1,23 @@
+package com.esotericsoftware.yamlbeans;
+
+import java.io.StringReader;
+
+import com.esotericsoftware.yamlbeans.parser.Parser;
+
+/**
+ * A {@link YamlReader} reading the events of a given parser rather than those of a YAML source, e.g. the replayed
+ * events of compiled datasets. yamlbeans has no public way to do this, so this subclass lives in its package to set
+ * the package-private parser of the reader; against a yamlbeans version without it, JpaUnit doesn't compile.
+ */
+public class ParserYamlReader extends YamlReader {
+
+    /**
+     * @param parser the parser to read the events of; closed along with the reader
+     * @param config the configuration to read the objects with
+     */
+    public ParserYamlReader(final Parser parser, final YamlConfig config) {
+        super(new StringReader(""), config);
+        this.parser = parser;
+    }
+
+}
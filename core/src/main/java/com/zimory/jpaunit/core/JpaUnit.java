@@ -2,16 +2,40 @@ package com.zimory.jpaunit.core;
 
 import java.io.IOException;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
 
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.compare.CompareStatistics;
 import com.zimory.jpaunit.core.compare.EntityComparator;
 import com.zimory.jpaunit.core.context.Beans;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
 import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
 import com.zimory.jpaunit.core.context.TestContext;
+import com.zimory.jpaunit.core.listener.JpaUnitListeners;
+import com.zimory.jpaunit.core.listener.JpaUnitListeners.PhaseTimer;
+import com.zimory.jpaunit.core.listener.Phase;
+import com.zimory.jpaunit.core.listener.PhaseEvent;
+import com.zimory.jpaunit.core.model.EntityKey;
+import com.zimory.jpaunit.core.persist.CleanupScope;
+import com.zimory.jpaunit.core.persist.CleanupStatistics;
+import com.zimory.jpaunit.core.persist.DatabaseCleaner;
 import com.zimory.jpaunit.core.persist.EntityPersister;
+import com.zimory.jpaunit.core.persist.PersistStatistics;
+import com.zimory.jpaunit.core.persist.SetupPipeline;
+import com.zimory.jpaunit.core.persist.SetupTimings;
+import com.zimory.jpaunit.core.read.DatasetBytes;
+import com.zimory.jpaunit.core.read.DatasetKey;
+import com.zimory.jpaunit.core.read.EntityIterator;
 import com.zimory.jpaunit.core.read.EntityReader;
+import com.zimory.jpaunit.core.snapshot.SetupSnapshots;
 import com.zimory.jpaunit.core.write.EntityWriter;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
@@ -27,58 +51,341 @@ public final class JpaUnit {
     private final EntityWriter entityWriter;
     private final EntityPersister entityPersister;
     private final EntityComparator entityComparator;
+    private final SetupPipeline setupPipeline;
+    private final SetupSnapshots setupSnapshots;
+    private final DatabaseCleaner databaseCleaner;
+    private final JpaUnitListeners listeners;
+    private final EntityManagerFactory entityManagerFactory;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final JpaUnitConfig config;
 
     @Inject
     private JpaUnit(
             final EntityReader entityReader,
             final EntityWriter entityWriter,
             final EntityPersister entityPersister,
-            final EntityComparator entityComparator) {
+            final EntityComparator entityComparator,
+            final SetupPipeline setupPipeline,
+            final SetupSnapshots setupSnapshots,
+            final DatabaseCleaner databaseCleaner,
+            final JpaUnitListeners listeners,
+            final EntityManagerFactory entityManagerFactory,
+            final PersistenceUnitUtil persistenceUnitUtil,
+            final JpaUnitConfig config) {
         this.entityReader = entityReader;
         this.entityWriter = entityWriter;
         this.entityPersister = entityPersister;
         this.entityComparator = entityComparator;
+        this.setupPipeline = setupPipeline;
+        this.setupSnapshots = setupSnapshots;
+        this.databaseCleaner = databaseCleaner;
+        this.listeners = listeners;
+        this.entityManagerFactory = entityManagerFactory;
+        this.persistenceUnitUtil = persistenceUnitUtil;
+        this.config = config;
     }
 
-    public void setup(final Class<?> testClass, final String testMethodName) throws IOException {
+    /**
+     * Runs the setup phase of a test.
+     *
+     * @param testClass the test class
+     * @param testMethodName the name of the test method
+     * @return the session to pass to {@link #expect(JpaUnitSession)} once the test method has finished
+     * @throws IOException if the datasets could not be read
+     */
+    public JpaUnitSession setup(final Class<?> testClass, final String testMethodName) throws IOException {
         final TestContext testContext = new TestContext(testClass, testMethodName);
+
+        if (config.isSetupSnapshots()) {
+            return setupFromSnapshot(testContext);
+        }
+
+        return setup(testContext);
+    }
+
+    /**
+     * Begins the {@link IsolatedTransaction} of a test class, and persists the class-level setup datasets in it.
+     *
+     * @param testClass the test class
+     * @return the transaction to pass to {@link #setup(IsolatedTransaction, Class, String)} and
+     *         {@link #expect(IsolatedTransaction, JpaUnitSession)}, and to roll back after the last test
+     * @throws IOException if the datasets could not be read
+     */
+    public IsolatedTransaction beginIsolatedTransaction(final Class<?> testClass) throws IOException {
+        final IsolatedTransaction transaction = IsolatedTransaction.begin(entityManagerFactory);
+
+        try {
+            final PhaseTimer read = listeners.start(testClass, Phase.CLASS_SETUP_READ);
+            final Set<Object> entities = entityReader.readClassSetupEntities(testClass);
+            read.finishedWithEntities(entities, 0);
+
+            if (!entities.isEmpty()) {
+                final PhaseTimer persist = listeners.start(testClass, Phase.CLASS_SETUP_PERSIST);
+                final PersistStatistics statistics = entityPersister.persist(entities);
+                persist.finished(statistics.getEntityCounts(), statistics.getFlushCount());
+            }
+
+            transaction.flush();
+        } catch (final IOException e) {
+            transaction.rollback();
+            throw e;
+        } catch (final RuntimeException e) {
+            transaction.rollback();
+            throw e;
+        }
+
+        return transaction;
+    }
+
+    /**
+     * Runs the setup phase of a test within the given transaction, once the savepoint of the test is set. The
+     * class-level setup entities are not part of the session, so they are only verified if they are expected.
+     *
+     * @param transaction the transaction of the test class
+     * @param testClass the test class
+     * @param testMethodName the name of the test method
+     * @return the session to pass to {@link #expect(IsolatedTransaction, JpaUnitSession)}
+     * @throws IOException if the datasets could not be read
+     */
+    public JpaUnitSession setup(
+            final IsolatedTransaction transaction,
+            final Class<?> testClass,
+            final String testMethodName) throws IOException {
+        transaction.beginTest();
+
+        // no snapshots, which might have to be taken with DDL statements committing the transaction
+        final JpaUnitSession session = setup(new TestContext(testClass, testMethodName));
+        transaction.flush();
+
+        return session;
+    }
+
+    private JpaUnitSession setupFromSnapshot(final TestContext testContext) throws IOException {
+        final DatasetKey key = entityReader.getSetupDatasetKey(testContext);
+
+        if (key.getPaths().isEmpty()) {
+            return setup(testContext);
+        }
+
+        final PhaseTimer restore = listeners.start(testContext, Phase.SETUP_SNAPSHOT_RESTORE);
+        final Optional<ImmutableSet<EntityKey>> restored = setupSnapshots.restore(key);
+
+        if (restored.isPresent()) {
+            restore.finishedWithKeys(restored.get(), 0);
+            writeSetupEntities(testContext);
+            return new JpaUnitSession(testContext, restored.get());
+        }
+
+        // a miss still took the lookup
+        restore.finished();
+        final JpaUnitSession session = setup(testContext);
+
+        final PhaseTimer take = listeners.start(testContext, Phase.SETUP_SNAPSHOT_TAKE);
+        setupSnapshots.take(key, session.getSetupEntityKeys());
+        take.finishedWithKeys(session.getSetupEntityKeys(), 0);
+
+        return session;
+    }
+
+    private JpaUnitSession setup(final TestContext testContext) throws IOException {
+        if (config.isPipelinedSetup()) {
+            return setupPipelined(testContext);
+        }
+
+        final PhaseTimer read = listeners.start(testContext, Phase.SETUP_READ);
         final Set<Object> entities = entityReader.readSetupEntities(testContext);
+        read.finishedWithEntities(entities, 0);
+
+        writeSetupEntities(testContext);
+
+        if (!entities.isEmpty()) {
+            final PhaseTimer persist = listeners.start(testContext, Phase.SETUP_PERSIST);
+            final PersistStatistics statistics = entityPersister.persist(entities);
+            persist.finished(statistics.getEntityCounts(), statistics.getFlushCount());
+        }
 
+        return new JpaUnitSession(testContext, toKeys(entities));
+    }
+
+    private JpaUnitSession setupPipelined(final TestContext testContext) throws IOException {
+        final long startNanos = System.nanoTime();
+        final long startBytes = DatasetBytes.get();
+        final EntityIterator entities = entityReader.iterateSetupEntities(testContext);
+        final long openNanos = System.nanoTime() - startNanos;
+        final long openBytes = DatasetBytes.get() - startBytes;
+
+        try {
+            writeSetupEntities(testContext);
+        } catch (final RuntimeException e) {
+            entities.close();
+            throw e;
+        }
+
+        final SetupPipeline.Result result = setupPipeline.run(entities);
+
+        if (listeners.isEnabled()) {
+            // parsing and persisting overlap, so the phases are reported with the times measured by the pipeline
+            final SetupTimings timings = result.getTimings();
+            final PersistStatistics statistics = result.getStatistics();
+
+            listeners.phaseFinished(new PhaseEvent(testContext.getTestClass(),
+                    Optional.of(testContext.getTestMethod().getName()), Phase.SETUP_READ,
+                    openNanos + timings.getParseTime(TimeUnit.NANOSECONDS), statistics.getEntityCounts(),
+                    openBytes + result.getParsedBytes(), 0));
+            listeners.phaseFinished(new PhaseEvent(testContext.getTestClass(),
+                    Optional.of(testContext.getTestMethod().getName()), Phase.SETUP_PERSIST,
+                    timings.getPersistTime(TimeUnit.NANOSECONDS) + timings.getPersisterWaitTime(TimeUnit.NANOSECONDS),
+                    statistics.getEntityCounts(), 0, statistics.getFlushCount()));
+        }
+
+        return new JpaUnitSession(testContext, result.getSetupEntityKeys(), Optional.of(result.getTimings()));
+    }
+
+    private void writeSetupEntities(final TestContext testContext) {
+        final PhaseTimer write = listeners.start(testContext, Phase.SETUP_WRITE);
         entityWriter.writeSetupEntities(testContext);
+        write.finished();
+    }
+
+    /**
+     * Runs the expect phase of a test.
+     *
+     * @param session the session returned by {@link #setup(Class, String)}
+     * @throws IOException if the datasets could not be read
+     */
+    public void expect(final JpaUnitSession session) throws IOException {
+        final TestContext testContext = session.getTestContext();
 
-        if (entities.isEmpty()) {
+        final PhaseTimer read = listeners.start(testContext, Phase.EXPECT_READ);
+        final Set<Object> expectEntities = entityReader.readExpectEntities(testContext);
+        read.finishedWithEntities(expectEntities, 0);
+
+        final PhaseTimer write = listeners.start(testContext, Phase.EXPECT_WRITE);
+        entityWriter.writeExpectEntities(testContext);
+        write.finished();
+
+        if (expectEntities.isEmpty()) {
             return;
         }
 
-        entityPersister.persist(entities);
+        final PhaseTimer compare = listeners.start(testContext, Phase.EXPECT_COMPARE);
+        final CompareStatistics statistics = entityComparator.compare(expectEntities, session.getSetupEntityKeys());
+        compare.finishedWithEntities(expectEntities, statistics.getQueryCount());
     }
 
+    /**
+     * Runs the expect phase of a test within the given transaction, before the test is rolled back with
+     * {@link IsolatedTransaction#rollbackTest()}.
+     *
+     * @param transaction the transaction of the test class
+     * @param session the session returned by {@link #setup(IsolatedTransaction, Class, String)}
+     * @throws IOException if the datasets could not be read
+     */
+    public void expect(final IsolatedTransaction transaction, final JpaUnitSession session) throws IOException {
+        transaction.flush();
+        expect(session);
+    }
+
+    /**
+     * Runs the expect phase of a test whose setup session is not available, reading the setup datasets again.
+     *
+     * @param testClass the test class
+     * @param testMethodName the name of the test method
+     * @throws IOException if the datasets could not be read
+     */
     public void expect(final Class<?> testClass, final String testMethodName) throws IOException {
         final TestContext testContext = new TestContext(testClass, testMethodName);
-        final Set<Object> expectEntities = entityReader.readExpectEntities(testContext);
         final Set<Object> setupEntities = entityReader.readSetupEntities(testContext);
 
-        entityWriter.writeExpectEntities(testContext);
+        expect(new JpaUnitSession(testContext, toKeys(setupEntities)));
+    }
 
-        if (expectEntities.isEmpty()) {
-            return;
+    /**
+     * Runs the cleanup phase of a test, clearing the tables of the {@link JpaUnitConfig#getCleanupScope() configured
+     * scope}, if any.
+     *
+     * @param session the session returned by {@link #setup(Class, String)}
+     * @return the statistics of the cleanup, if there was one
+     */
+    public Optional<CleanupStatistics> cleanup(final JpaUnitSession session) {
+        if (config.getCleanupScope() == CleanupScope.NONE) {
+            return Optional.absent();
         }
 
-        entityComparator.compare(expectEntities, setupEntities);
+        final PhaseTimer timer = listeners.start(session.getTestContext(), Phase.CLEANUP);
+        final CleanupStatistics statistics = config.getCleanupScope() == CleanupScope.ALL_TABLES
+                ? databaseCleaner.cleanAll()
+                : databaseCleaner.clean(getEntityClasses(session.getSetupEntityKeys()));
+
+        timer.finished(ImmutableMap.<Class<?>, Integer>of(), statistics.getStatements().size());
+
+        return Optional.of(statistics);
+    }
+
+    private static Set<Class<?>> getEntityClasses(final Set<EntityKey> keys) {
+        final Set<Class<?>> entityClasses = Sets.newHashSet();
+
+        for (final EntityKey key : keys) {
+            entityClasses.add(key.getEntityClass());
+        }
+
+        return entityClasses;
+    }
+
+    private Set<EntityKey> toKeys(final Set<Object> entities) {
+        final ImmutableSet.Builder<EntityKey> builder = ImmutableSet.builder();
+
+        for (final Object entity : entities) {
+            builder.add(EntityKey.of(persistenceUnitUtil, entity));
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Gets a {@link JpaUnit} instance for the given config and entity manager factory, reusing the one created by an
+     * earlier call if possible (see {@link JpaUnitRegistry}).
+     *
+     * @param config the JpaUnit configuration
+     * @param entityManagerFactory the entity manager factory of the persistence unit under test
+     * @return a shared JpaUnit instance
+     */
+    public static JpaUnit getInstance(final JpaUnitConfig config, final EntityManagerFactory entityManagerFactory) {
+        return JpaUnitRegistry.getInstance().get(config, entityManagerFactory);
     }
 
+    /**
+     * Creates a new {@link JpaUnit} instance backed by its own context, which is never shared nor closed by JpaUnit.
+     * Prefer {@link #getInstance(JpaUnitConfig, EntityManagerFactory)}.
+     *
+     * @param config the JpaUnit configuration
+     * @param entityManagerFactory the entity manager factory of the persistence unit under test
+     * @return a new JpaUnit instance
+     */
     public static JpaUnit newInstance(final JpaUnitConfig config, final EntityManagerFactory entityManagerFactory) {
         final ConfigurableApplicationContext context = createContext(config, entityManagerFactory);
 
         return context.getBean(JpaUnit.class);
     }
 
-    private static ConfigurableApplicationContext createContext(final JpaUnitConfig cfg, final EntityManagerFactory emf) {
+    /**
+     * Creates the context holding the JpaUnit components, e.g. to use the reader, persister, comparator or writer on
+     * their own. The caller has to close the context.
+     * <p/>
+     * The context works with a {@link JpaUnitConfig#copy() copy} of the config taken now: changes made to the config
+     * afterwards are not seen by the context, a new one has to be created for them.
+     *
+     * @param cfg the JpaUnit configuration
+     * @param emf the entity manager factory of the persistence unit under test
+     * @return a new context
+     */
+    public static ConfigurableApplicationContext createContext(final JpaUnitConfig cfg, final EntityManagerFactory emf) {
         final AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        final JpaUnitConfig config = cfg.copy();
         context.addBeanFactoryPostProcessor(new BeanFactoryPostProcessor() {
             @Override
             public void postProcessBeanFactory(final ConfigurableListableBeanFactory beanFactory) throws BeansException {
-                beanFactory.registerSingleton("jpaUnitConfig", cfg);
+                beanFactory.registerSingleton("jpaUnitConfig", config);
                 beanFactory.registerSingleton("entityManagerFactory", emf);
             }
         });
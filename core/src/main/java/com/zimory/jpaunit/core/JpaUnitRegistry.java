@@ -0,0 +1,184 @@
+package com.zimory.jpaunit.core;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Keeps one JpaUnit context per ({@link JpaUnitConfig}, {@link EntityManagerFactory}) pair, so that the context is
+ * started once and then shared by all tests and threads using the same pair. Both the config and the factory are
+ * compared by identity, so the config has to be shared by the tests as well, e.g. by keeping it in a static field.
+ * The context sees the settings of the config at the time it was started (see {@link JpaUnit#createContext}).
+ * <p/>
+ * JPA offers no way to be notified when an entity manager factory is closed, so the contexts of closed factories are
+ * closed lazily: by the next call to {@link #get} or {@link #evictClosed()}, or at JVM shutdown. Until then the
+ * context, and the closed factory it refers to, stay in memory; call {@link #evictClosed()} after closing a factory to
+ * release them right away. At most {@link #MAX_CONTEXTS} contexts are kept; beyond that, the least recently used
+ * context is closed, and started anew if it's needed again.
+ */
+public final class JpaUnitRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JpaUnitRegistry.class);
+
+    public static final int MAX_CONTEXTS = 16;
+
+    private static final JpaUnitRegistry INSTANCE = new JpaUnitRegistry();
+
+    private final LoadingCache<Key, ConfigurableApplicationContext> contexts;
+
+    private JpaUnitRegistry() {
+        contexts = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CONTEXTS)
+                .recordStats()
+                .removalListener(new ContextCloser())
+                .build(new ContextLoader());
+
+        Runtime.getRuntime().addShutdownHook(new Thread("jpaunit-registry-shutdown") {
+            @Override
+            public void run() {
+                logStatistics();
+                contexts.invalidateAll();
+            }
+        });
+    }
+
+    public static JpaUnitRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets the JpaUnit instance for the given config and entity manager factory, starting a new context for it if
+     * there is none yet. Closes the contexts of the factories that have been closed since the last call first.
+     *
+     * @param config the JpaUnit configuration
+     * @param entityManagerFactory the entity manager factory of the persistence unit under test
+     * @return the shared JpaUnit instance
+     */
+    public JpaUnit get(final JpaUnitConfig config, final EntityManagerFactory entityManagerFactory) {
+        evictClosed();
+
+        try {
+            return contexts.getUnchecked(new Key(config, entityManagerFactory)).getBean(JpaUnit.class);
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * Closes the contexts of all entity manager factories that have been closed in the meantime, e.g. right after
+     * closing the factory of a test suite, rather than waiting for the next {@link #get} or the JVM shutdown.
+     */
+    public void evictClosed() {
+        for (final Key key : contexts.asMap().keySet()) {
+            if (!key.entityManagerFactory.isOpen()) {
+                contexts.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Closes all contexts.
+     */
+    public void clear() {
+        contexts.invalidateAll();
+    }
+
+    /**
+     * Gets the context statistics: a miss is a context startup (whose cost is included in the total load time), a hit
+     * is a startup that was saved, an eviction a context closed because there were too many.
+     *
+     * @return the statistics snapshot
+     */
+    public CacheStats getStatistics() {
+        return contexts.stats();
+    }
+
+    private void logStatistics() {
+        final CacheStats stats = getStatistics();
+
+        LOGGER.info("JpaUnit contexts: {} started in {} ms total, {} reused",
+                new Object[] {stats.loadCount(), TimeUnit.NANOSECONDS.toMillis(stats.totalLoadTime()), stats.hitCount()});
+    }
+
+    private static final class ContextLoader extends CacheLoader<Key, ConfigurableApplicationContext> {
+
+        @Override
+        public ConfigurableApplicationContext load(final Key key) {
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final ConfigurableApplicationContext context =
+                    JpaUnit.createContext(key.config, key.entityManagerFactory);
+
+            LOGGER.debug("Started JpaUnit context for {} in {} ms", key, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+            return context;
+        }
+
+    }
+
+    private static final class ContextCloser implements RemovalListener<Key, ConfigurableApplicationContext> {
+
+        @Override
+        public void onRemoval(final RemovalNotification<Key, ConfigurableApplicationContext> notification) {
+            LOGGER.debug("Closing JpaUnit context for {} ({})", notification.getKey(), notification.getCause());
+
+            notification.getValue().close();
+        }
+
+    }
+
+    private static final class Key {
+
+        private final JpaUnitConfig config;
+        private final EntityManagerFactory entityManagerFactory;
+
+        private Key(final JpaUnitConfig config, final EntityManagerFactory entityManagerFactory) {
+            this.config = config;
+            this.entityManagerFactory = entityManagerFactory;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(config) + System.identityHashCode(entityManagerFactory);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+
+            final Key other = (Key) obj;
+
+            return config == other.config && entityManagerFactory == other.entityManagerFactory;
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this)
+                    .add("config", config)
+                    .add("entityManagerFactory", entityManagerFactory)
+                    .toString();
+        }
+
+    }
+
+}
@@ -9,15 +9,20 @@ import java.lang.annotation.Target;
 
 /**
  * Indicates that the given test method is going to use the given dataset to pre-populate the database.
+ * <p/>
+ * On a test class or a {@code BeforeClass} method, the datasets are persisted once for all tests of the class, which
+ * is only supported in the rollback isolation mode (see
+ * {@link com.zimory.jpaunit.core.context.JpaUnitConfig#setRollbackIsolation(boolean)}).
  */
 @Inherited
 @Documented
 @Retention(RetentionPolicy.RUNTIME)
-@Target(ElementType.METHOD)
+@Target({ElementType.TYPE, ElementType.METHOD})
 public @interface UsingJpaDataSet {
 
     /**
-     * Relative paths to datasets to use. If empty, the name will be constructed from the names of the class and method.
+     * Relative paths to datasets to use. If empty, the name will be constructed from the names of the class and method,
+     * or twice from the name of the class for a class-level dataset (e.g. {@code UnitTest/UnitTest}).
      *
      * @return relative paths to datasets
      */
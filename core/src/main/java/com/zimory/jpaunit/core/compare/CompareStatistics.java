@@ -0,0 +1,51 @@
+package com.zimory.jpaunit.core.compare;
+
+import com.google.common.base.Objects;
+
+/**
+ * What a single {@link EntityComparator#compare} call did: the number of entities compared and the number of queries
+ * it took to load them.
+ */
+public final class CompareStatistics {
+
+    private int comparedEntityCount;
+    private int removedEntityCount;
+    private int queryCount;
+
+    public void entityCompared() {
+        comparedEntityCount++;
+    }
+
+    public void removedEntitiesChecked(final int count) {
+        removedEntityCount += count;
+    }
+
+    public void queried() {
+        queryCount++;
+    }
+
+    public int getComparedEntityCount() {
+        return comparedEntityCount;
+    }
+
+    /**
+     * @return the number of setup entities checked to have been removed
+     */
+    public int getRemovedEntityCount() {
+        return removedEntityCount;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("comparedEntityCount", comparedEntityCount)
+                .add("removedEntityCount", removedEntityCount)
+                .add("queryCount", queryCount)
+                .toString();
+    }
+
+}
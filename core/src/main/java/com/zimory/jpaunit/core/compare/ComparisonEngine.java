@@ -0,0 +1,240 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.springframework.stereotype.Component;
+import org.unitils.reflectionassert.ReflectionComparator;
+import org.unitils.reflectionassert.comparator.Comparator;
+import org.unitils.reflectionassert.comparator.impl.CollectionComparator;
+import org.unitils.reflectionassert.comparator.impl.HibernateProxyComparator;
+import org.unitils.reflectionassert.comparator.impl.LenientNumberComparator;
+import org.unitils.reflectionassert.comparator.impl.MapComparator;
+import org.unitils.reflectionassert.comparator.impl.SimpleCasesComparator;
+import org.unitils.reflectionassert.difference.Difference;
+import org.unitils.reflectionassert.report.impl.DefaultDifferenceReport;
+import org.unitils.reflectionassert.util.HibernateUtil;
+
+import static org.junit.Assert.fail;
+
+/**
+ * Compares expected and actual entities by reflection, like unitils' {@code ReflectionAssert} but aware of
+ * bi-directional relationships.
+ * <p/>
+ * The (stateless) comparator chain is built once and shared; every {@link Comparison} gets its own
+ * {@link ReflectionComparator}, which caches the results of the comparisons it made and therefore must not be shared
+ * between threads.
+ * <p/>
+ * A comparison can take a fast path for the (usual) entities that are equal: their fields are compared directly, and
+ * so are the fields of the entities and embedded values they reference and the elements of their collections, without
+ * the comparator chain and the difference objects it builds. The fast path only decides on values it compares the
+ * same way the chain does; maps, arrays, proxies and values nested deeper than {@link #MAX_FAST_PATH_DEPTH} are left to
+ * the chain. If anything differs, the entities are compared the regular way, so the results and failure reports are
+ * the same either way.
+ */
+@Component
+public class ComparisonEngine {
+
+    private static final int MAX_FAST_PATH_DEPTH = 8;
+
+    private final ImmutableList<Comparator> comparators = ImmutableList.<Comparator>builder()
+            .add(new LenientNumberComparator())
+            .add(new SimpleCasesComparator())
+            .add(new CollectionComparator())
+            .add(new MapComparator())
+            .add(new HibernateProxyComparator())
+            .add(new BiDirectionalRelationshipAwareObjectComparator())
+            .build();
+
+    /**
+     * @return a new comparison, to be used by a single thread
+     */
+    public Comparison newComparison() {
+        return new Comparison(new ReflectionComparator(comparators), false);
+    }
+
+    /**
+     * @return a new comparison taking the fast path for equal entities, to be used by a single thread
+     */
+    public Comparison newFastPathComparison() {
+        return new Comparison(new ReflectionComparator(comparators), true);
+    }
+
+    /**
+     * Compares any number of entities and reports all differences at once.
+     */
+    public static final class Comparison {
+
+        private final ReflectionComparator reflectionComparator;
+        private final boolean fastPath;
+        // the objects the fast path found equal, expected to actual, like the reflection comparator caches its results
+        private final Map<Object, Object> equalObjects = Maps.newIdentityHashMap();
+        private final Map<EntityKey, Difference> differences = Maps.newLinkedHashMap();
+        private Set<EntityKey> unexpectedlyPresent = ImmutableSet.of();
+
+        private Comparison(final ReflectionComparator reflectionComparator, final boolean fastPath) {
+            this.reflectionComparator = reflectionComparator;
+            this.fastPath = fastPath;
+        }
+
+        /**
+         * @param key the key of the compared entity
+         * @param expected the expected entity
+         * @param actual the actual entity, or {@code null} if missing
+         * @return whether the entities are equal
+         */
+        public boolean compare(final EntityKey key, final Object expected, final Object actual) {
+            if (fastPath && isEqual(expected, actual, 0)) {
+                return true;
+            }
+
+            final Difference difference = reflectionComparator.getDifference(expected, actual);
+
+            if (difference != null) {
+                differences.put(key, difference);
+            }
+
+            return difference == null;
+        }
+
+        // mirrors what the comparator chain does; false if the values differ or the chain has to decide
+        private boolean isEqual(final Object left, final Object right, final int depth) {
+            if (left == right) {
+                return true;
+            }
+
+            if (left == null || right == null) {
+                return false;
+            }
+
+            if (isNumber(left) && isNumber(right)) {
+                if (left instanceof Long && right instanceof Long) {
+                    return left.equals(right);
+                }
+
+                return doubleValueOf(left).equals(doubleValueOf(right));
+            }
+
+            if (isSimple(left, right)) {
+                return left.equals(right);
+            }
+
+            if (left instanceof Collection && right instanceof Collection) {
+                return isEqualElements((Collection<?>) left, (Collection<?>) right, depth);
+            }
+
+            if (left instanceof Collection || right instanceof Collection || left instanceof Map || right instanceof Map
+                    || left.getClass().isArray() || right.getClass().isArray()
+                    || HibernateUtil.isHibernateProxy(left) || HibernateUtil.isHibernateProxy(right)
+                    || depth == MAX_FAST_PATH_DEPTH) {
+                return reflectionComparator.getDifference(left, right) == null;
+            }
+
+            return isEqualFields(left, right, depth);
+        }
+
+        // in order, like the strict collection comparison
+        private boolean isEqualElements(final Collection<?> left, final Collection<?> right, final int depth) {
+            if (left.size() != right.size()) {
+                return false;
+            }
+
+            final Iterator<?> rightElements = right.iterator();
+
+            for (final Object element : left) {
+                if (!isEqual(element, rightElements.next(), depth + 1)) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private boolean isEqualFields(final Object left, final Object right, final int depth) {
+            if (equalObjects.get(left) == right) {
+                return true;
+            }
+
+            if (!left.getClass().isAssignableFrom(right.getClass())) {
+                return false;
+            }
+
+            final FieldComparisonPlan plan = FieldComparisonPlan.of(left.getClass());
+
+            for (int i = 0; i < plan.size(); i++) {
+                if (!isEqual(plan.get(i, left), plan.get(i, right), depth + 1)) {
+                    return false;
+                }
+            }
+
+            equalObjects.put(left, right);
+
+            return true;
+        }
+
+        /**
+         * @param present the keys of the entities that should have been removed, but were not
+         */
+        public void unexpectedlyPresent(final Set<EntityKey> present) {
+            this.unexpectedlyPresent = present;
+        }
+
+        /**
+         * Fails with a report of all differences found, if any.
+         */
+        public void assertNoDifferences() {
+            if (differences.isEmpty() && unexpectedlyPresent.isEmpty()) {
+                return;
+            }
+
+            fail(getFailureMessage());
+        }
+
+        private String getFailureMessage() {
+            final StringBuilder message = new StringBuilder();
+            final DefaultDifferenceReport report = new DefaultDifferenceReport();
+
+            for (final Map.Entry<EntityKey, Difference> e : differences.entrySet()) {
+                message.append("Entity ").append(e.getKey()).append(" differs:\n")
+                        .append(report.createReport(e.getValue())).append('\n');
+            }
+
+            if (!unexpectedlyPresent.isEmpty()) {
+                message.append("Expected to be removed, but was present: ").append(unexpectedlyPresent).append('\n');
+            }
+
+            return message.toString();
+        }
+
+        // the (non-numeric) values the simple cases comparator compares with equals() of the left one
+        private static boolean isSimple(final Object left, final Object right) {
+            return left.getClass().getName().startsWith("java.lang")
+                    || right.getClass().getName().startsWith("java.lang")
+                    || left instanceof Date && right instanceof Date
+                    || left instanceof Calendar && right instanceof Calendar
+                    || left instanceof Enum && right instanceof Enum;
+        }
+
+        private static boolean isNumber(final Object o) {
+            return o instanceof Number || o instanceof Character;
+        }
+
+        private static Double doubleValueOf(final Object o) {
+            if (o instanceof Number) {
+                return ((Number) o).doubleValue();
+            }
+
+            return (double) (Character) o;
+        }
+
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.List;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.Attribute.PersistentAttributeType;
+import javax.persistence.metamodel.EmbeddableType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type.PersistenceType;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Builds queries matching entities by a composite ID, i.e. an {@link javax.persistence.EmbeddedId} or an
+ * {@link javax.persistence.IdClass}, as long as it's made up of basic attributes only.
+ */
+final class CompositeIdMatcher {
+
+    private final CriteriaBuilder cb;
+    private final Class<?> entityClass;
+    private final String embeddedIdName;
+    private final ImmutableList<SingularAttribute<?, ?>> idAttributes;
+
+    CompositeIdMatcher(final CriteriaBuilder cb, final EntityType<?> entityType) {
+        this.cb = cb;
+        this.entityClass = entityType.getJavaType();
+
+        if (entityType.hasSingleIdAttribute()) {
+            this.embeddedIdName = getIdAttribute(entityType).getName();
+            this.idAttributes = ImmutableList.<SingularAttribute<?, ?>>copyOf(
+                    ((EmbeddableType<?>) entityType.getIdType()).getSingularAttributes());
+        } else {
+            this.embeddedIdName = null;
+            this.idAttributes = ImmutableList.<SingularAttribute<?, ?>>copyOf(entityType.getIdClassAttributes());
+        }
+    }
+
+    static boolean supports(final EntityType<?> entityType) {
+        if (!entityType.hasSingleIdAttribute()) {
+            return isBasic(entityType.getIdClassAttributes());
+        }
+
+        final EmbeddableType<?> idType = entityType.getIdType() instanceof EmbeddableType
+                ? (EmbeddableType<?>) entityType.getIdType()
+                : null;
+
+        return idType != null && idType.getPluralAttributes().isEmpty() && isBasic(idType.getSingularAttributes());
+    }
+
+    /**
+     * @param ids the IDs to match
+     * @return a query counting the entities with any of the given IDs
+     */
+    CriteriaQuery<Long> count(final List<Object> ids) {
+        final CriteriaQuery<Long> query = cb.createQuery(Long.class);
+        final Root<?> root = query.from(entityClass);
+        final List<Predicate> matches = Lists.newArrayListWithCapacity(ids.size());
+
+        for (final Object id : ids) {
+            matches.add(matches(root, id));
+        }
+
+        return query.select(cb.count(root)).where(cb.or(matches.toArray(new Predicate[matches.size()])));
+    }
+
+    private Predicate matches(final Root<?> root, final Object id) {
+        final List<Predicate> conditions = Lists.newArrayListWithCapacity(idAttributes.size());
+
+        for (final SingularAttribute<?, ?> attribute : idAttributes) {
+            final Path<Object> path;
+            final Object value;
+
+            if (embeddedIdName != null) {
+                path = root.get(embeddedIdName).get(attribute.getName());
+                value = read(id, attribute.getJavaMember());
+            } else {
+                path = root.get(attribute.getName());
+                value = read(id, attribute.getName());
+            }
+
+            conditions.add(value == null ? cb.isNull(path) : cb.equal(path, value));
+        }
+
+        return cb.and(conditions.toArray(new Predicate[conditions.size()]));
+    }
+
+    private static boolean isBasic(final Iterable<? extends Attribute<?, ?>> attributes) {
+        for (final Attribute<?, ?> attribute : attributes) {
+            if (attribute.getPersistentAttributeType() != PersistentAttributeType.BASIC) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static SingularAttribute<?, ?> getIdAttribute(final EntityType<?> entityType) {
+        for (final SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute;
+            }
+        }
+
+        throw new IllegalArgumentException("No ID attribute found for " + entityType.getName());
+    }
+
+    // an ID class has the same property names as the ID attributes of its entity, but its own fields and getters
+    private static Object read(final Object id, final String propertyName) {
+        final String suffix = Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+
+        for (Class<?> c = id.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+            for (final Field field : c.getDeclaredFields()) {
+                if (field.getName().equals(propertyName)) {
+                    return read(id, field);
+                }
+            }
+
+            for (final Method method : c.getDeclaredMethods()) {
+                if (method.getParameterTypes().length == 0
+                        && (method.getName().equals("get" + suffix) || method.getName().equals("is" + suffix))) {
+                    return read(id, method);
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("No property " + propertyName + " found in " + id.getClass().getName());
+    }
+
+    private static Object read(final Object id, final Member member) {
+        try {
+            if (member instanceof Field) {
+                final Field field = (Field) member;
+                field.setAccessible(true);
+
+                return field.get(id);
+            }
+
+            final Method method = (Method) member;
+            method.setAccessible(true);
+
+            return method.invoke(id);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
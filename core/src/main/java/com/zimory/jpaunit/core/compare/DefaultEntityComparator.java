@@ -1,5 +1,7 @@
 package com.zimory.jpaunit.core.compare;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.inject.Inject;
@@ -7,15 +9,18 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceUnitUtil;
 
 import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.compare.ComparisonEngine.Comparison;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.Delta;
+import com.zimory.jpaunit.core.model.EntityIdSet;
+import com.zimory.jpaunit.core.model.EntityKey;
 import com.zimory.jpaunit.core.model.EntityWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
-import static org.hamcrest.Matchers.nullValue;
-import static org.junit.Assert.assertThat;
-
 @Component
 @Transactional
 public class DefaultEntityComparator implements EntityComparator {
@@ -23,57 +28,94 @@ public class DefaultEntityComparator implements EntityComparator {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultEntityComparator.class);
 
     private final EntityManager em;
+    private final JpaUnitConfig config;
+    private final ComparisonEngine comparisonEngine;
 
     @Inject
-    public DefaultEntityComparator(final EntityManager em) {
+    public DefaultEntityComparator(
+            final EntityManager em,
+            final JpaUnitConfig config,
+            final ComparisonEngine comparisonEngine) {
         this.em = em;
+        this.config = config;
+        this.comparisonEngine = comparisonEngine;
     }
 
     @Override
-    public void compare(final Set<Object> expectedEntities, final Set<Object> setupEntities) {
-        final PersistenceUnitUtil util = em.getEntityManagerFactory().getPersistenceUnitUtil();
-        final Set<EntityWrapper> wrappedExpectedEntities = EntityWrapper.wrap(util, expectedEntities);
-        final Set<EntityWrapper> wrappedSetupEntities = EntityWrapper.wrap(util, setupEntities);
+    public CompareStatistics compare(final Set<Object> expectedEntities, final Set<EntityKey> setupEntityKeys) {
+        final PersistenceUnitUtil util = JpaUnitMetadata.of(em.getEntityManagerFactory()).getPersistenceUnitUtil();
+        final Set<Object> entities = Sets.newLinkedHashSet();
+        final Set<EntityKey> removedEntityKeys = Sets.newLinkedHashSet();
+        boolean delta = false;
+
+        for (final Object entity : expectedEntities) {
+            if (entity instanceof Delta) {
+                delta = true;
+
+                for (final Object tombstone : ((Delta) entity).getRemoved()) {
+                    removedEntityKeys.add(EntityKey.of(util, tombstone));
+                }
+            } else {
+                entities.add(entity);
+            }
+        }
+
+        final List<EntityWrapper> wrappedExpectedEntities = EntityWrapper.wrap(util, entities);
+        final CompareStatistics statistics = new CompareStatistics();
+        final EntityLookup lookup = new EntityLookup(em, config.getExpectLookupChunkSize(), statistics);
+        final Comparison comparison = config.isExpectFastPath()
+                ? comparisonEngine.newFastPathComparison()
+                : comparisonEngine.newComparison();
+
+        compareExpectedEntities(wrappedExpectedEntities, lookup, comparison, statistics);
+
+        // a delta names the removed entities, the setup entities it does not mention are not compared
+        if (!delta) {
+            final EntityIdSet expectedIds = EntityWrapper.toIdSet(wrappedExpectedEntities);
+
+            for (final EntityKey key : setupEntityKeys) {
+                if (!expectedIds.contains(key)) {
+                    removedEntityKeys.add(key);
+                }
+            }
+        }
+
+        compareExpectedToBeRemovedEntities(removedEntityKeys, lookup, comparison, statistics);
+
+        LOGGER.debug("Compared expected entities: {}", statistics);
+        comparison.assertNoDifferences();
 
-        compareExpectedEntities(wrappedExpectedEntities);
-        compareExpectedToBeRemovedEntities(wrappedSetupEntities, wrappedExpectedEntities);
+        return statistics;
     }
 
     private void compareExpectedEntities(
-            final Set<EntityWrapper> expectedEntities) {
+            final List<EntityWrapper> expectedEntities,
+            final EntityLookup lookup,
+            final Comparison comparison,
+            final CompareStatistics statistics) {
+        final Map<EntityKey, Object> actualEntities = lookup.findAll(EntityWrapper.toKeys(expectedEntities));
+
         for (final EntityWrapper entityWrapper : expectedEntities) {
             final Object expectedEntity = entityWrapper.getEntity();
 
-            final Object id = entityWrapper.getEntityId();
-            final Class<?> entityClass = expectedEntity.getClass();
-            LOGGER.debug("Looking up entity of class {} with ID {}", entityClass, id);
-
-            final Object actualEntity = em.find(entityClass, id);
+            final EntityKey key = entityWrapper.getEntityKey();
+            final Object actualEntity = actualEntities.get(key);
             LOGGER.debug("Found: {}", actualEntity);
 
             LOGGER.debug("Comparing:\n  expected: {}\n    actual: {}", expectedEntity, actualEntity);
-            CustomReflectionAssert.assertReflectionEquals(expectedEntity, actualEntity);
+            comparison.compare(key, expectedEntity, actualEntity);
+            statistics.entityCompared();
         }
     }
 
     private void compareExpectedToBeRemovedEntities(
-            final Set<EntityWrapper> setupEntities,
-            final Set<EntityWrapper> expectedEntities) {
-        final Set<EntityWrapper> expectedToBeRemoved = Sets.difference(setupEntities, expectedEntities);
-
-        for (final EntityWrapper entityWrapper : expectedToBeRemoved) {
-            final Object expectedEntity = entityWrapper.getEntity();
-
-            final Object id = entityWrapper.getEntityId();
-            final Class<?> entityClass = expectedEntity.getClass();
-            LOGGER.debug("Looking up entity of class {} with ID {}", entityClass, id);
-
-            final Object actualEntity = em.find(entityClass, id);
-            LOGGER.debug("Found: {}", actualEntity);
-
-            LOGGER.debug("Expecting to be removed:\n  {}", expectedEntity);
-            assertThat("Expected to be removed, but was present", actualEntity, nullValue());
-        }
+            final Set<EntityKey> expectedToBeRemoved,
+            final EntityLookup lookup,
+            final Comparison comparison,
+            final CompareStatistics statistics) {
+        LOGGER.debug("Expecting to be removed:\n  {}", expectedToBeRemoved);
+        comparison.unexpectedlyPresent(lookup.findExisting(expectedToBeRemoved));
+        statistics.removedEntitiesChecked(expectedToBeRemoved.size());
     }
 
 }
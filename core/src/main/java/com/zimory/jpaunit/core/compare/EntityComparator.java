@@ -2,8 +2,10 @@ package com.zimory.jpaunit.core.compare;
 
 import java.util.Set;
 
+import com.zimory.jpaunit.core.model.EntityKey;
+
 public interface EntityComparator {
 
-    void compare(Set<Object> expectedEntities, Set<Object> setupEntities);
+    CompareStatistics compare(Set<Object> expectedEntities, Set<EntityKey> setupEntityKeys);
 
 }
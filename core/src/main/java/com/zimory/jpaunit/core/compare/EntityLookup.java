@@ -0,0 +1,216 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.persistence.metamodel.Type.PersistenceType;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads entities by their keys with one query per entity class and chunk of IDs, instead of one {@link EntityManager#find}
+ * per entity. Entities with composite IDs are still looked up one by one.
+ * <p/>
+ * Also checks which entities exist without loading them, by querying their IDs only (or, for composite IDs, counting
+ * the rows matching a chunk of IDs and checking the IDs one by one only if there are any).
+ */
+final class EntityLookup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityLookup.class);
+
+    private final EntityManager em;
+    private final PersistenceUnitUtil util;
+    private final int chunkSize;
+    private final CompareStatistics statistics;
+
+    EntityLookup(final EntityManager em, final int chunkSize, final CompareStatistics statistics) {
+        this.em = em;
+        this.util = JpaUnitMetadata.of(em.getEntityManagerFactory()).getPersistenceUnitUtil();
+        this.chunkSize = chunkSize;
+        this.statistics = statistics;
+    }
+
+    /**
+     * @param keys the keys of the entities to load
+     * @return the entities found, by key; missing entities are left out
+     */
+    Map<EntityKey, Object> findAll(final Collection<EntityKey> keys) {
+        final Map<EntityKey, Object> found = Maps.newHashMapWithExpectedSize(keys.size());
+
+        for (final Map.Entry<Class<?>, Collection<Object>> e : groupIdsByClass(keys).asMap().entrySet()) {
+            final Class<?> entityClass = e.getKey();
+            final SingularAttribute<?, ?> idAttribute = getSimpleIdAttribute(entityClass);
+
+            if (idAttribute == null || chunkSize <= 0) {
+                findOneByOne(entityClass, e.getValue(), found);
+            } else {
+                findInChunks(entityClass, idAttribute, e.getValue(), found);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * @param keys the keys of the entities to look for
+     * @return the keys of the entities that exist
+     */
+    Set<EntityKey> findExisting(final Collection<EntityKey> keys) {
+        final Set<EntityKey> existing = Sets.newLinkedHashSet();
+
+        for (final Map.Entry<Class<?>, Collection<Object>> e : groupIdsByClass(keys).asMap().entrySet()) {
+            final Class<?> entityClass = e.getKey();
+            final EntityType<?> entityType = em.getMetamodel().entity(entityClass);
+            final SingularAttribute<?, ?> idAttribute = getSimpleIdAttribute(entityClass);
+
+            if (chunkSize <= 0) {
+                findExistingOneByOne(entityClass, e.getValue(), existing);
+            } else if (idAttribute != null) {
+                findExistingIds(entityClass, idAttribute, e.getValue(), existing);
+            } else if (CompositeIdMatcher.supports(entityType)) {
+                findExistingCompositeIds(entityType, e.getValue(), existing);
+            } else {
+                findExistingOneByOne(entityClass, e.getValue(), existing);
+            }
+        }
+
+        return existing;
+    }
+
+    private void findExistingIds(
+            final Class<?> entityClass,
+            final SingularAttribute<?, ?> idAttribute,
+            final Collection<Object> ids,
+            final Set<EntityKey> existing) {
+        final CriteriaBuilder cb = em.getCriteriaBuilder();
+
+        for (final List<Object> chunk : Iterables.partition(ids, chunkSize)) {
+            LOGGER.debug("Checking existence of {} entities of class {}", chunk.size(), entityClass);
+
+            final CriteriaQuery<Object> query = cb.createQuery(Object.class);
+            final Path<Object> id = query.from(entityClass).get(idAttribute.getName());
+            query.select(id).where(id.in(chunk));
+
+            for (final Object existingId : em.createQuery(query).getResultList()) {
+                existing.add(EntityKey.of(entityClass, existingId));
+            }
+
+            statistics.queried();
+        }
+    }
+
+    private void findExistingCompositeIds(
+            final EntityType<?> entityType, final Collection<Object> ids, final Set<EntityKey> existing) {
+        final Class<?> entityClass = entityType.getJavaType();
+        final CompositeIdMatcher matcher = new CompositeIdMatcher(em.getCriteriaBuilder(), entityType);
+
+        for (final List<Object> chunk : Iterables.partition(ids, chunkSize)) {
+            LOGGER.debug("Counting {} entities of class {}", chunk.size(), entityClass);
+
+            if (count(matcher, chunk) == 0) {
+                continue;
+            }
+
+            for (final Object id : chunk) {
+                if (count(matcher, ImmutableList.of(id)) > 0) {
+                    existing.add(EntityKey.of(entityClass, id));
+                }
+            }
+        }
+    }
+
+    private long count(final CompositeIdMatcher matcher, final List<Object> ids) {
+        final Long count = em.createQuery(matcher.count(ids)).getSingleResult();
+        statistics.queried();
+
+        return count;
+    }
+
+    private void findExistingOneByOne(final Class<?> entityClass, final Collection<Object> ids, final Set<EntityKey> existing) {
+        final Map<EntityKey, Object> found = Maps.newHashMap();
+        findOneByOne(entityClass, ids, found);
+
+        existing.addAll(found.keySet());
+    }
+
+    private void findInChunks(
+            final Class<?> entityClass,
+            final SingularAttribute<?, ?> idAttribute,
+            final Collection<Object> ids,
+            final Map<EntityKey, Object> found) {
+        final String jpql = String.format("select e from %s e where e.%s in (:ids)",
+                em.getMetamodel().entity(entityClass).getName(), idAttribute.getName());
+
+        for (final List<Object> chunk : Iterables.partition(ids, chunkSize)) {
+            LOGGER.debug("Looking up {} entities of class {}", chunk.size(), entityClass);
+
+            final List<?> entities = em.createQuery(jpql, entityClass)
+                    .setParameter("ids", chunk)
+                    .getResultList();
+            statistics.queried();
+
+            for (final Object entity : entities) {
+                found.put(EntityKey.of(entityClass, util.getIdentifier(entity)), entity);
+            }
+        }
+    }
+
+    private void findOneByOne(final Class<?> entityClass, final Collection<Object> ids, final Map<EntityKey, Object> found) {
+        for (final Object id : ids) {
+            LOGGER.debug("Looking up entity of class {} with ID {}", entityClass, id);
+
+            final Object entity = em.find(entityClass, id);
+            statistics.queried();
+
+            if (entity != null) {
+                found.put(EntityKey.of(entityClass, id), entity);
+            }
+        }
+    }
+
+    // the ID attribute if it's a single basic one, i.e. one that can be used in an IN clause
+    private SingularAttribute<?, ?> getSimpleIdAttribute(final Class<?> entityClass) {
+        final EntityType<?> entityType = em.getMetamodel().entity(entityClass);
+
+        if (!entityType.hasSingleIdAttribute() || entityType.getIdType().getPersistenceType() != PersistenceType.BASIC) {
+            return null;
+        }
+
+        for (final SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute;
+            }
+        }
+
+        return null;
+    }
+
+    private static ListMultimap<Class<?>, Object> groupIdsByClass(final Collection<EntityKey> keys) {
+        final ListMultimap<Class<?>, Object> ids = ArrayListMultimap.create();
+
+        for (final EntityKey key : keys) {
+            ids.put(key.getEntityClass(), key.getEntityId());
+        }
+
+        return ids;
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.util.List;
+
+import javax.persistence.ManyToMany;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Lists;
+
+import static java.lang.reflect.Modifier.isStatic;
+import static java.lang.reflect.Modifier.isTransient;
+
+/**
+ * The fields to compare for instances of a class: the fields declared by the class and its superclasses (up to the
+ * {@code java.lang} ones), made accessible, without those that are skipped by the comparison (static, transient and
+ * synthetic fields as well as the inverse sides of relationships).
+ * <p/>
+ * Plans are immutable, built once per class and shared by all comparisons.
+ */
+final class FieldComparisonPlan {
+
+    private static final LoadingCache<Class<?>, FieldComparisonPlan> PLANS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<Class<?>, FieldComparisonPlan>() {
+                @Override
+                public FieldComparisonPlan load(final Class<?> key) {
+                    return new FieldComparisonPlan(key);
+                }
+            });
+
+    private final Field[] fields;
+
+    private FieldComparisonPlan(final Class<?> clazz) {
+        final List<Field> fieldList = Lists.newArrayList();
+
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            if (c != clazz && c.getName().startsWith("java.lang")) {
+                break;
+            }
+
+            for (final Field field : c.getDeclaredFields()) {
+                if (!shouldSkip(field)) {
+                    fieldList.add(field);
+                }
+            }
+        }
+
+        fields = fieldList.toArray(new Field[fieldList.size()]);
+        AccessibleObject.setAccessible(fields, true);
+    }
+
+    static FieldComparisonPlan of(final Class<?> clazz) {
+        return PLANS.getUnchecked(clazz);
+    }
+
+    int size() {
+        return fields.length;
+    }
+
+    String getName(final int index) {
+        return fields[index].getName();
+    }
+
+    Object get(final int index, final Object o) {
+        try {
+            return fields[index].get(o);
+        } catch (final IllegalAccessException e) {
+            // can't happen, the fields are accessible
+            throw new InternalError("Unexpected IllegalAccessException");
+        }
+    }
+
+    private static boolean shouldSkip(final Field field) {
+        return isTransient(field.getModifiers())
+                || isStatic(field.getModifiers())
+                || field.isSynthetic()
+                || isNotOwningSideOfRelationship(field);
+    }
+
+    private static boolean isNotOwningSideOfRelationship(final Field field) {
+        return (field.getAnnotation(OneToOne.class) != null && !field.getAnnotation(OneToOne.class).mappedBy().isEmpty()) ||
+                (field.getAnnotation(OneToMany.class) != null && !field.getAnnotation(OneToMany.class).mappedBy().isEmpty()) ||
+                (field.getAnnotation(ManyToMany.class) != null && !field.getAnnotation(ManyToMany.class).mappedBy().isEmpty());
+    }
+
+}
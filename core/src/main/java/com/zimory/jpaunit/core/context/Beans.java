@@ -1,14 +1,20 @@
 package com.zimory.jpaunit.core.context;
 
+import java.util.Map;
+
+import javax.inject.Named;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.PersistenceUnitUtil;
-import javax.persistence.metamodel.EntityType;
 
 import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.zimory.jpaunit.core.model.Delta;
+import com.zimory.jpaunit.core.persist.EntityPersister;
+import com.zimory.jpaunit.core.read.EntityReader;
 import com.zimory.jpaunit.core.serialization.YamlScalarSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
@@ -20,6 +26,17 @@ public class Beans {
 
     @Bean
     public YamlConfig yamlConfig(final EntityManagerFactory emf, final JpaUnitConfig config) {
+        return createYamlConfig(emf, config);
+    }
+
+    /**
+     * Creates a new instance of the YAML configuration used to read and write the datasets.
+     *
+     * @param emf the entity manager factory of the persistence unit
+     * @param config the JpaUnit configuration
+     * @return a new YAML configuration
+     */
+    public static YamlConfig createYamlConfig(final EntityManagerFactory emf, final JpaUnitConfig config) {
         final YamlConfig yamlConfig = new YamlConfig();
         yamlConfig.writeConfig.setIndentSize(2);
         yamlConfig.setPrivateFields(true);
@@ -28,21 +45,54 @@ public class Beans {
             yamlConfig.setScalarSerializer(serializer.getType(), Serializers.scalarSerializerOf(serializer));
         }
 
-        for (final EntityType<?> e : emf.getMetamodel().getEntities()) {
-            yamlConfig.setClassTag(e.getName(), e.getJavaType());
+        yamlConfig.setClassTag(Delta.TAG, Delta.class);
+
+        for (final Map.Entry<String, Class<?>> e : JpaUnitMetadata.of(emf).getClassTags().entrySet()) {
+            yamlConfig.setClassTag(e.getKey(), e.getValue());
         }
 
         return yamlConfig;
     }
 
+    /**
+     * @return the persister of the setup entities chosen by {@link JpaUnitConfig#isJdbcSetup()}; like all settings,
+     *         it's taken from the copy of the config the context was created with
+     */
+    @Bean
+    @Primary
+    public EntityPersister entityPersister(
+            @Named("defaultEntityPersister") final EntityPersister defaultEntityPersister,
+            @Named("jdbcEntityPersister") final EntityPersister jdbcEntityPersister,
+            final JpaUnitConfig config) {
+        return config.isJdbcSetup() ? jdbcEntityPersister : defaultEntityPersister;
+    }
+
+    /**
+     * @return the reader of the datasets chosen by {@link JpaUnitConfig#isUseCompiledDatasets()}, taken from the copy
+     *         of the config the context was created with
+     */
+    @Bean
+    @Primary
+    public EntityReader entityReader(
+            @Named("defaultEntityReader") final EntityReader defaultEntityReader,
+            @Named("compiledEntityReader") final EntityReader compiledEntityReader,
+            final JpaUnitConfig config) {
+        return config.isUseCompiledDatasets() ? compiledEntityReader : defaultEntityReader;
+    }
+
     @Bean
     public PlatformTransactionManager transactionManager(final EntityManagerFactory entityManagerFactory) {
         return new JpaTransactionManager(entityManagerFactory);
     }
 
     @Bean
-    public PersistenceUnitUtil persistenceUnitUtil(final EntityManagerFactory entityManagerFactory) {
-        return entityManagerFactory.getPersistenceUnitUtil();
+    public JpaUnitMetadata jpaUnitMetadata(final EntityManagerFactory entityManagerFactory) {
+        return JpaUnitMetadata.of(entityManagerFactory);
+    }
+
+    @Bean
+    public PersistenceUnitUtil persistenceUnitUtil(final JpaUnitMetadata metadata) {
+        return metadata.getPersistenceUnitUtil();
     }
 
 }
@@ -0,0 +1,192 @@
+package com.zimory.jpaunit.core.context;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.zimory.jpaunit.core.persist.SetupConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A transaction that is never committed, for the rollback isolation mode (see
+ * {@link JpaUnitConfig#setRollbackIsolation(boolean)}): it spans all tests of a test class, the class-level setup
+ * datasets are persisted once within it, and every test runs within a savepoint that is rolled back once the test has
+ * been verified.
+ * <p/>
+ * The entity manager of the transaction is bound to the current thread the way Spring's {@code JpaTransactionManager}
+ * binds it, so that the setup and expect phases, as well as Spring managed code under test, join the transaction.
+ * Test code using the entity manager factory directly has to use {@link #getEntityManager()} instead. As the binding
+ * is per thread, the tests have to run on the thread that began the transaction.
+ */
+public final class IsolatedTransaction {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IsolatedTransaction.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final EntityManager entityManager;
+    private final Connection connection;
+
+    private Savepoint savepoint;
+
+    private IsolatedTransaction(
+            final EntityManagerFactory entityManagerFactory,
+            final EntityManager entityManager,
+            final Connection connection) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityManager = entityManager;
+        this.connection = connection;
+    }
+
+    /**
+     * Begins a transaction and binds it to the current thread.
+     *
+     * @param entityManagerFactory the entity manager factory of the persistence unit under test
+     * @return the transaction
+     * @throws IllegalStateException if a transaction of the entity manager factory is bound to the thread already
+     */
+    public static IsolatedTransaction begin(final EntityManagerFactory entityManagerFactory) {
+        Preconditions.checkState(!TransactionSynchronizationManager.hasResource(entityManagerFactory),
+                "A transaction of the entity manager factory is bound to the current thread already");
+
+        final EntityManager em = entityManagerFactory.createEntityManager();
+        final IsolatedTransaction transaction;
+
+        try {
+            em.getTransaction().begin();
+            transaction = new IsolatedTransaction(entityManagerFactory, em, SetupConnection.getConnection(em));
+        } catch (final RuntimeException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+
+            em.close();
+            throw e;
+        }
+
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new Holder(transaction));
+
+        return transaction;
+    }
+
+    /**
+     * @param entityManagerFactory an entity manager factory
+     * @return the transaction of the entity manager factory bound to the current thread, if any
+     */
+    public static Optional<IsolatedTransaction> current(final EntityManagerFactory entityManagerFactory) {
+        final Object resource = TransactionSynchronizationManager.getResource(entityManagerFactory);
+
+        if (resource instanceof Holder) {
+            return Optional.of(((Holder) resource).transaction);
+        }
+
+        return Optional.absent();
+    }
+
+    /**
+     * @return the entity manager of the transaction
+     */
+    public EntityManager getEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * @return the JDBC connection of the transaction
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Sets the savepoint of a test, after flushing the pending changes.
+     *
+     * @throws IllegalStateException if the savepoint of a test is set already
+     */
+    public void beginTest() {
+        Preconditions.checkState(savepoint == null, "The savepoint of a test is set already");
+
+        entityManager.flush();
+
+        try {
+            savepoint = connection.setSavepoint();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to set the savepoint of a test", e);
+        }
+    }
+
+    /**
+     * Flushes the pending changes and clears the persistence context, so that the entities are read from the
+     * database afterwards, like from a new transaction.
+     */
+    public void flush() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Rolls back the changes since {@link #beginTest()}.
+     */
+    public void rollbackTest() {
+        if (savepoint == null) {
+            return;
+        }
+
+        entityManager.clear();
+
+        try {
+            connection.rollback(savepoint);
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to roll back to the savepoint of a test", e);
+        } finally {
+            savepoint = null;
+            entityManagerFactory.getCache().evictAll();
+        }
+    }
+
+    /**
+     * Rolls back the transaction, and unbinds it from the current thread.
+     */
+    public void rollback() {
+        TransactionSynchronizationManager.unbindResourceIfPossible(entityManagerFactory);
+
+        try {
+            if (entityManager.getTransaction().isActive()) {
+                entityManager.getTransaction().rollback();
+            }
+        } catch (final RuntimeException e) {
+            LOGGER.warn("Failed to roll back the isolated transaction", e);
+        } finally {
+            savepoint = null;
+            entityManager.close();
+            entityManagerFactory.getCache().evictAll();
+        }
+    }
+
+    // marked active, so that Spring's transaction managers join the transaction instead of beginning one
+    private static final class Holder extends EntityManagerHolder {
+
+        private final IsolatedTransaction transaction;
+
+        private Holder(final IsolatedTransaction transaction) {
+            super(transaction.entityManager);
+            this.transaction = transaction;
+            setTransactionActive(true);
+        }
+
+        // called whenever a joining transaction completes
+        @Override
+        public void clear() {
+            super.clear();
+            setTransactionActive(true);
+        }
+
+    }
+
+}
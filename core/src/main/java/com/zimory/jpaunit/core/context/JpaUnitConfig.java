@@ -4,25 +4,63 @@ import java.lang.annotation.Annotation;
 import java.util.Comparator;
 import java.util.List;
 
+import javax.sql.DataSource;
+
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.zimory.jpaunit.core.annotation.GenerateExpectedDataSet;
 import com.zimory.jpaunit.core.annotation.GenerateSetupDataSet;
+import com.zimory.jpaunit.core.listener.FileReporter;
+import com.zimory.jpaunit.core.listener.JpaUnitListener;
+import com.zimory.jpaunit.core.model.Delta;
+import com.zimory.jpaunit.core.persist.CleanupScope;
 import com.zimory.jpaunit.core.serialization.UuidSerializer;
 import com.zimory.jpaunit.core.serialization.YamlScalarSerializer;
+import com.zimory.jpaunit.core.snapshot.InMemorySnapshotStrategy;
+import com.zimory.jpaunit.core.snapshot.SnapshotStrategy;
 
 public class JpaUnitConfig {
 
     public static final String DEFAULT_DATASET_DIR = "/datasets";
     public static final List<? extends YamlScalarSerializer<?>> DEFAULT_SERIALIZERS = ImmutableList.of(new UuidSerializer());
+    public static final long DEFAULT_DATASET_CACHE_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_SETUP_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_EXPECT_LOOKUP_CHUNK_SIZE = 500;
+    public static final int DEFAULT_JDBC_SETUP_ROWS_PER_STATEMENT = 100;
+    public static final int DEFAULT_JDBC_SETUP_STATEMENTS_PER_BATCH = 10;
+    public static final int DEFAULT_SETUP_SNAPSHOT_COUNT = 32;
+    public static final String DEFAULT_CLEANUP_STATEMENT = "DELETE FROM %s";
 
     private String datasetDir = DEFAULT_DATASET_DIR;
 
     private boolean useDefaultSerializers = true;
     private List<YamlScalarSerializer<?>> customSerializers = ImmutableList.of();
+    private List<JpaUnitListener> listeners = ImmutableList.of();
 
     private Comparator<Class<?>> entityTypeOrdering;
     private String writerBaseDir = System.getProperty("user.dir");
+    private int writerPageSize;
+    private int writerThreads = 1;
+    private boolean writerFilePerType;
+    private boolean writerExpectedDelta;
+
+    private long datasetCacheSize = DEFAULT_DATASET_CACHE_SIZE;
+    private int setupBatchSize;
+    private boolean pipelinedSetup;
+    private boolean useCompiledDatasets = true;
+    private int setupQueueCapacity = DEFAULT_SETUP_QUEUE_CAPACITY;
+    private int expectLookupChunkSize = DEFAULT_EXPECT_LOOKUP_CHUNK_SIZE;
+    private boolean expectFastPath;
+    private boolean jdbcSetup;
+    private int jdbcSetupRowsPerStatement = DEFAULT_JDBC_SETUP_ROWS_PER_STATEMENT;
+    private int jdbcSetupStatementsPerBatch = DEFAULT_JDBC_SETUP_STATEMENTS_PER_BATCH;
+    private DataSource setupDataSource;
+    private boolean setupSnapshots;
+    private SnapshotStrategy setupSnapshotStrategy = new InMemorySnapshotStrategy();
+    private int setupSnapshotCount = DEFAULT_SETUP_SNAPSHOT_COUNT;
+    private CleanupScope cleanupScope = CleanupScope.NONE;
+    private boolean rollbackIsolation;
+    private String cleanupStatement = DEFAULT_CLEANUP_STATEMENT;
 
     private Class<? extends Annotation> generateSetupDataSetAnnotation = GenerateSetupDataSet.class;
     private Class<? extends Annotation> generateExpectedDataSetAnnotation = GenerateExpectedDataSet.class;
@@ -63,6 +101,19 @@ public class JpaUnitConfig {
         this.customSerializers = ImmutableList.copyOf(customSerializers);
     }
 
+    public List<JpaUnitListener> getListeners() {
+        return listeners;
+    }
+
+    /**
+     * Sets the listeners to notify of the phases of the tests and what they cost, e.g. a {@link FileReporter}.
+     *
+     * @param listeners the listeners
+     */
+    public void setListeners(final List<JpaUnitListener> listeners) {
+        this.listeners = ImmutableList.copyOf(listeners);
+    }
+
     public Comparator<Class<?>> getEntityTypeOrdering() {
         return entityTypeOrdering;
     }
@@ -79,6 +130,321 @@ public class JpaUnitConfig {
         return writerBaseDir;
     }
 
+    public int getWriterPageSize() {
+        return writerPageSize;
+    }
+
+    /**
+     * Sets the number of entities loaded per query when generating datasets. When positive, the entity types are
+     * written one page at a time, clearing the persistence context in between, so that the whole database never has
+     * to fit into memory; 0 (the default) loads all entities before writing them.
+     *
+     * @param writerPageSize the number of entities per page
+     */
+    public void setWriterPageSize(final int writerPageSize) {
+        this.writerPageSize = writerPageSize;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    /**
+     * Sets the number of threads generating a dataset. With more than one thread, the entity types are loaded
+     * concurrently, each with its own entity manager, and written in {@link #getWriterPageSize() pages} to temporary
+     * files, which are merged in the {@link #getEntityTypeOrdering() entity type order} afterwards. Types that reference
+     * each other are written by the same thread. Within a transaction that the dataset is generated in (e.g. with
+     * {@code rollbackIsolation}), the types are written one after the other by the thread of the transaction, since
+     * other entity managers wouldn't see its changes.
+     *
+     * @param writerThreads the number of threads writing a dataset
+     */
+    public void setWriterThreads(final int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public boolean isWriterFilePerType() {
+        return writerFilePerType;
+    }
+
+    /**
+     * Makes the dataset generation write a directory with one file per entity type (or group of types that reference
+     * each other), named after the dataset, instead of a single file. The files are numbered in the order they have to
+     * be read in. Types are written concurrently as with {@link #setWriterThreads(int)}.
+     *
+     * @param writerFilePerType whether to write one file per entity type
+     */
+    public void setWriterFilePerType(final boolean writerFilePerType) {
+        this.writerFilePerType = writerFilePerType;
+    }
+
+    public boolean isWriterExpectedDelta() {
+        return writerExpectedDelta;
+    }
+
+    /**
+     * Makes the generation of expected datasets write a delta on top of the setup datasets (see {@link Delta}): just
+     * the entities that differ from their setup state or were inserted, and tombstones of the removed setup entities.
+     * The delta is always written to a single file, regardless of {@link #setWriterPageSize(int)},
+     * {@link #setWriterThreads(int)} and {@link #setWriterFilePerType(boolean)}.
+     *
+     * @param writerExpectedDelta whether to generate expected datasets as deltas
+     */
+    public void setWriterExpectedDelta(final boolean writerExpectedDelta) {
+        this.writerExpectedDelta = writerExpectedDelta;
+    }
+
+    public long getDatasetCacheSize() {
+        return datasetCacheSize;
+    }
+
+    /**
+     * Sets the maximum total size (in bytes of YAML source) of the parsed datasets kept in memory for reuse by
+     * later tests. The least recently used datasets are evicted first; 0 disables the cache.
+     *
+     * @param datasetCacheSize the maximum cache size
+     */
+    public void setDatasetCacheSize(final long datasetCacheSize) {
+        this.datasetCacheSize = datasetCacheSize;
+    }
+
+    public int getSetupBatchSize() {
+        return setupBatchSize;
+    }
+
+    /**
+     * Sets the number of setup entities persisted between two flushes of the persistence context (which is cleared
+     * after every flush). When positive, the entities are persisted grouped by type, in the order of the foreign key
+     * dependencies between the types, so that the JPA provider can batch the inserts; 0 (the default) flushes after
+     * every single entity, in dataset order.
+     *
+     * @param setupBatchSize the number of entities per flush
+     */
+    public void setSetupBatchSize(final int setupBatchSize) {
+        this.setupBatchSize = setupBatchSize;
+    }
+
+    public boolean isPipelinedSetup() {
+        return pipelinedSetup;
+    }
+
+    /**
+     * Enables parsing the setup datasets on a separate thread while the entities parsed so far are being persisted.
+     * The entities are persisted in dataset order then, flushed in batches of {@link #getSetupBatchSize()}. Datasets
+     * that fit into the dataset cache are parsed up front, so this mainly pays off for large datasets.
+     *
+     * @param pipelinedSetup whether to parse and persist the setup entities concurrently
+     */
+    public void setPipelinedSetup(final boolean pipelinedSetup) {
+        this.pipelinedSetup = pipelinedSetup;
+    }
+
+    public boolean isUseCompiledDatasets() {
+        return useCompiledDatasets;
+    }
+
+    /**
+     * Enables reading datasets from their compiled versions (see the {@code jpaunit-maven-plugin}) when these are
+     * present and up to date, which they are by default. Otherwise the YAML sources are parsed.
+     *
+     * @param useCompiledDatasets whether to prefer compiled datasets
+     */
+    public void setUseCompiledDatasets(final boolean useCompiledDatasets) {
+        this.useCompiledDatasets = useCompiledDatasets;
+    }
+
+    public int getSetupQueueCapacity() {
+        return setupQueueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of parsed entities waiting to be persisted in pipelined setup mode; the parser blocks
+     * while the queue is full.
+     *
+     * @param setupQueueCapacity the capacity of the queue between parser and persister
+     */
+    public void setSetupQueueCapacity(final int setupQueueCapacity) {
+        this.setupQueueCapacity = setupQueueCapacity;
+    }
+
+    public int getExpectLookupChunkSize() {
+        return expectLookupChunkSize;
+    }
+
+    /**
+     * Sets the maximum number of IDs in a single query loading the actual entities of the expect phase. Must not
+     * exceed the bind parameter (or IN list) limit of the database, e.g. 1000 on Oracle; 0 loads every entity by
+     * itself.
+     *
+     * @param expectLookupChunkSize the number of entities loaded per query
+     */
+    public void setExpectLookupChunkSize(final int expectLookupChunkSize) {
+        this.expectLookupChunkSize = expectLookupChunkSize;
+    }
+
+    public boolean isExpectFastPath() {
+        return expectFastPath;
+    }
+
+    /**
+     * Makes the expect phase compare the fields of the expected and actual entities, and of the values they reference,
+     * directly first, without the reflective comparison and the difference objects it builds. Entities that turn out
+     * to differ are compared the regular way, so the outcome and the failure reports are the same as without the fast
+     * path.
+     *
+     * @param expectFastPath whether to take the fast path for equal entities
+     */
+    public void setExpectFastPath(final boolean expectFastPath) {
+        this.expectFastPath = expectFastPath;
+    }
+
+    public boolean isJdbcSetup() {
+        return jdbcSetup;
+    }
+
+    /**
+     * Enables inserting the setup entities with plain JDBC instead of persisting them with the entity manager, which
+     * skips the persistence context and lifecycle callbacks of the JPA provider. Only works for plainly mapped
+     * entities without inheritance (see {@code TableMapping}), whose IDs are part of the datasets.
+     *
+     * @param jdbcSetup whether to insert the setup entities with JDBC
+     */
+    public void setJdbcSetup(final boolean jdbcSetup) {
+        this.jdbcSetup = jdbcSetup;
+    }
+
+    public int getJdbcSetupRowsPerStatement() {
+        return jdbcSetupRowsPerStatement;
+    }
+
+    /**
+     * Sets the number of rows inserted by a single (multi-row) {@code INSERT} statement of the JDBC setup.
+     *
+     * @param jdbcSetupRowsPerStatement the number of rows per statement, 1 for single-row statements
+     */
+    public void setJdbcSetupRowsPerStatement(final int jdbcSetupRowsPerStatement) {
+        this.jdbcSetupRowsPerStatement = jdbcSetupRowsPerStatement;
+    }
+
+    public int getJdbcSetupStatementsPerBatch() {
+        return jdbcSetupStatementsPerBatch;
+    }
+
+    /**
+     * Sets the number of {@code INSERT} statements the JDBC setup sends to the database in one batch.
+     *
+     * @param jdbcSetupStatementsPerBatch the number of statements per batch
+     */
+    public void setJdbcSetupStatementsPerBatch(final int jdbcSetupStatementsPerBatch) {
+        this.jdbcSetupStatementsPerBatch = jdbcSetupStatementsPerBatch;
+    }
+
+    public DataSource getSetupDataSource() {
+        return setupDataSource;
+    }
+
+    /**
+     * Sets the data source the JDBC setup takes its connections from. By default, the data source of the entity
+     * manager factory is used, or else the connection of an entity manager.
+     *
+     * @param setupDataSource the data source of the persistence unit under test
+     */
+    public void setSetupDataSource(final DataSource setupDataSource) {
+        this.setupDataSource = setupDataSource;
+    }
+
+    public boolean isSetupSnapshots() {
+        return setupSnapshots;
+    }
+
+    /**
+     * Enables snapshots of the rows inserted by the setups: once the setup datasets of a test have been persisted, the
+     * rows are copied with the {@link #getSetupSnapshotStrategy() snapshot strategy}, and later tests using the same
+     * datasets (with the same content) get the rows inserted from the snapshot instead. The rows are taken from and
+     * restored over a connection like the one of the {@link #setJdbcSetup(boolean) JDBC setup}.
+     *
+     * @param setupSnapshots whether to restore the setups from snapshots
+     */
+    public void setSetupSnapshots(final boolean setupSnapshots) {
+        this.setupSnapshots = setupSnapshots;
+    }
+
+    public SnapshotStrategy getSetupSnapshotStrategy() {
+        return setupSnapshotStrategy;
+    }
+
+    /**
+     * Sets how setup snapshots are taken, by default by keeping the rows in memory.
+     *
+     * @param setupSnapshotStrategy the snapshot strategy, e.g. a {@code ShadowTableSnapshotStrategy}
+     */
+    public void setSetupSnapshotStrategy(final SnapshotStrategy setupSnapshotStrategy) {
+        this.setupSnapshotStrategy = setupSnapshotStrategy;
+    }
+
+    public int getSetupSnapshotCount() {
+        return setupSnapshotCount;
+    }
+
+    /**
+     * Sets the number of setup snapshots kept at most; the least recently used ones are discarded first.
+     *
+     * @param setupSnapshotCount the maximum number of snapshots
+     */
+    public void setSetupSnapshotCount(final int setupSnapshotCount) {
+        this.setupSnapshotCount = setupSnapshotCount;
+    }
+
+    public CleanupScope getCleanupScope() {
+        return cleanupScope;
+    }
+
+    /**
+     * Enables the cleanup phase, which clears the tables of the given scope once a test has finished (see
+     * {@code JpaUnit#cleanup(JpaUnitSession)}). The tables are derived from the mapping and cleared in foreign key
+     * order, over a connection like the one of the {@link #setJdbcSetup(boolean) JDBC setup}.
+     *
+     * @param cleanupScope the tables to clear, {@link CleanupScope#NONE} by default
+     */
+    public void setCleanupScope(final CleanupScope cleanupScope) {
+        this.cleanupScope = cleanupScope;
+    }
+
+    public String getCleanupStatement() {
+        return cleanupStatement;
+    }
+
+    /**
+     * Sets the statement clearing a table in the cleanup phase, as a format taking the table name, e.g.
+     * {@code "TRUNCATE TABLE %s"} if the database allows truncating tables referenced by foreign keys.
+     *
+     * @param cleanupStatement the statement format, {@value #DEFAULT_CLEANUP_STATEMENT} by default
+     */
+    public void setCleanupStatement(final String cleanupStatement) {
+        this.cleanupStatement = cleanupStatement;
+    }
+
+    public boolean isRollbackIsolation() {
+        return rollbackIsolation;
+    }
+
+    /**
+     * Enables the rollback isolation mode: the tests of a test class run in a single {@link IsolatedTransaction},
+     * which is rolled back after the last test, and in which the class-level setup datasets ({@code UsingJpaDataSet}
+     * on the class or on a {@code BeforeClass} method) are persisted once. Every test runs within a savepoint, which is
+     * rolled back once the expect phase has verified the test. Nothing is ever committed, so there is nothing to clean
+     * up.
+     * <p/>
+     * Honoured by the {@code JpaUnitRule}, which begins a transaction per test unless it is given a
+     * {@code JpaUnitClassRule}, and by the {@code TransactionalJpaUnitTestExecutionListener}, which takes over the
+     * test transactions of Spring then.
+     *
+     * @param rollbackIsolation whether to run the tests in transactions that are rolled back
+     */
+    public void setRollbackIsolation(final boolean rollbackIsolation) {
+        this.rollbackIsolation = rollbackIsolation;
+    }
+
     public Class<? extends Annotation> getGenerateSetupDataSetAnnotation() {
         return generateSetupDataSetAnnotation;
     }
@@ -95,4 +461,45 @@ public class JpaUnitConfig {
         this.generateExpectedDataSetAnnotation = generateExpectedDataSetAnnotation;
     }
 
+    /**
+     * Copies the settings, e.g. to keep them from changing under a context using them. Lists are immutable and shared
+     * by the copy, as are the listeners, the serializers, the data source and the snapshot strategy.
+     *
+     * @return a new config with the same settings
+     */
+    public JpaUnitConfig copy() {
+        final JpaUnitConfig copy = new JpaUnitConfig();
+        copy.datasetDir = datasetDir;
+        copy.useDefaultSerializers = useDefaultSerializers;
+        copy.customSerializers = customSerializers;
+        copy.listeners = listeners;
+        copy.entityTypeOrdering = entityTypeOrdering;
+        copy.writerBaseDir = writerBaseDir;
+        copy.writerPageSize = writerPageSize;
+        copy.writerThreads = writerThreads;
+        copy.writerFilePerType = writerFilePerType;
+        copy.writerExpectedDelta = writerExpectedDelta;
+        copy.datasetCacheSize = datasetCacheSize;
+        copy.setupBatchSize = setupBatchSize;
+        copy.pipelinedSetup = pipelinedSetup;
+        copy.useCompiledDatasets = useCompiledDatasets;
+        copy.setupQueueCapacity = setupQueueCapacity;
+        copy.expectLookupChunkSize = expectLookupChunkSize;
+        copy.expectFastPath = expectFastPath;
+        copy.jdbcSetup = jdbcSetup;
+        copy.jdbcSetupRowsPerStatement = jdbcSetupRowsPerStatement;
+        copy.jdbcSetupStatementsPerBatch = jdbcSetupStatementsPerBatch;
+        copy.setupDataSource = setupDataSource;
+        copy.setupSnapshots = setupSnapshots;
+        copy.setupSnapshotStrategy = setupSnapshotStrategy;
+        copy.setupSnapshotCount = setupSnapshotCount;
+        copy.cleanupScope = cleanupScope;
+        copy.rollbackIsolation = rollbackIsolation;
+        copy.cleanupStatement = cleanupStatement;
+        copy.generateSetupDataSetAnnotation = generateSetupDataSetAnnotation;
+        copy.generateExpectedDataSetAnnotation = generateExpectedDataSetAnnotation;
+
+        return copy;
+    }
+
 }
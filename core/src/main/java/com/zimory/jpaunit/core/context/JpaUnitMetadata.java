@@ -0,0 +1,245 @@
+package com.zimory.jpaunit.core.context;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Ordering;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+import com.zimory.jpaunit.core.persist.EntityTypeGraph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * What JpaUnit derives from the metamodel of a persistence unit: the entity types and their class tags, accessors of
+ * their simple IDs and of their associations cascading persist, the {@link EntityTypeGraph} and the entity types
+ * sorted by an ordering. The metadata is built once per entity manager factory and shared by all contexts and
+ * components using it (see {@link #of}); the time it took is logged (at debug level) and available from
+ * {@link #getBuildDuration(TimeUnit)}.
+ */
+public final class JpaUnitMetadata {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JpaUnitMetadata.class);
+
+    private static final LoadingCache<EntityManagerFactory, JpaUnitMetadata> METADATA = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<EntityManagerFactory, JpaUnitMetadata>() {
+                @Override
+                public JpaUnitMetadata load(final EntityManagerFactory key) {
+                    final JpaUnitMetadata metadata = new JpaUnitMetadata(key);
+                    LOGGER.debug("Built the metadata of {} entity types in {} ms, entity insert order: {}",
+                            new Object[] {metadata.entityTypes.size(), metadata.getBuildDuration(TimeUnit.MILLISECONDS),
+                                    metadata.graph.getInsertOrder()});
+
+                    return metadata;
+                }
+            });
+
+    private final ImmutableMap<Class<?>, EntityType<?>> entityTypes;
+    private final ImmutableMap<String, Class<?>> classTags;
+    private final ImmutableMap<Class<?>, AttributeAccessor> idAccessors;
+    private final ImmutableListMultimap<Class<?>, AttributeAccessor> persistCascades;
+    private final EntityTypeGraph graph;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final LoadingCache<Comparator<Class<?>>, ImmutableList<EntityType<?>>> sortedEntityTypes;
+    private final long buildNanos;
+
+    private JpaUnitMetadata(final EntityManagerFactory emf) {
+        final long start = System.nanoTime();
+        final ImmutableMap.Builder<Class<?>, EntityType<?>> entityTypesBuilder = ImmutableMap.builder();
+        final ImmutableMap.Builder<String, Class<?>> classTagsBuilder = ImmutableMap.builder();
+        final ImmutableMap.Builder<Class<?>, AttributeAccessor> idAccessorsBuilder = ImmutableMap.builder();
+        final ImmutableListMultimap.Builder<Class<?>, AttributeAccessor> persistCascadesBuilder =
+                ImmutableListMultimap.builder();
+
+        for (final EntityType<?> e : emf.getMetamodel().getEntities()) {
+            entityTypesBuilder.put(e.getJavaType(), e);
+            classTagsBuilder.put(e.getName(), e.getJavaType());
+
+            final SingularAttribute<?, ?> idAttribute = getSingleIdAttribute(e);
+            if (idAttribute != null) {
+                idAccessorsBuilder.put(e.getJavaType(), AttributeAccessor.of(idAttribute));
+            }
+
+            for (final Attribute<?, ?> attribute : e.getAttributes()) {
+                if (isRelationship(attribute)) {
+                    final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+
+                    if (accessor.isCascadingPersist()) {
+                        persistCascadesBuilder.put(e.getJavaType(), accessor);
+                    }
+                }
+            }
+        }
+
+        this.entityTypes = entityTypesBuilder.build();
+        this.classTags = classTagsBuilder.build();
+        this.idAccessors = idAccessorsBuilder.build();
+        this.persistCascades = persistCascadesBuilder.build();
+        this.graph = EntityTypeGraph.of(emf.getMetamodel());
+        this.persistenceUnitUtil = new IndexedPersistenceUnitUtil(emf.getPersistenceUnitUtil(), idAccessors);
+        this.sortedEntityTypes = CacheBuilder.newBuilder()
+                .weakKeys()
+                .build(new CacheLoader<Comparator<Class<?>>, ImmutableList<EntityType<?>>>() {
+                    @Override
+                    public ImmutableList<EntityType<?>> load(final Comparator<Class<?>> key) {
+                        return sort(key);
+                    }
+                });
+        this.buildNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * @param emf an entity manager factory
+     * @return the metadata of the persistence unit of the entity manager factory, built on first use
+     */
+    public static JpaUnitMetadata of(final EntityManagerFactory emf) {
+        return METADATA.getUnchecked(emf);
+    }
+
+    /**
+     * @return the entity types of the persistence unit, by Java type
+     */
+    public ImmutableMap<Class<?>, EntityType<?>> getEntityTypes() {
+        return entityTypes;
+    }
+
+    /**
+     * @param ordering an ordering of entity classes
+     * @return the entity types, sorted by the ordering of their Java types (sorted once per ordering instance)
+     */
+    public ImmutableList<EntityType<?>> getEntityTypes(final Comparator<Class<?>> ordering) {
+        return sortedEntityTypes.getUnchecked(ordering);
+    }
+
+    /**
+     * @return the entity classes by entity name, the YAML tags of the entities in the datasets
+     */
+    public ImmutableMap<String, Class<?>> getClassTags() {
+        return classTags;
+    }
+
+    /**
+     * @return the dependencies between the entity types
+     */
+    public EntityTypeGraph getEntityTypeGraph() {
+        return graph;
+    }
+
+    /**
+     * @param entityClass an entity class
+     * @return the accessor of the ID of the entity class, or {@code null} if it has a composite ID mapped by an ID
+     *         class or if it's not an entity class (e.g. a proxy class)
+     */
+    public AttributeAccessor getIdAccessor(final Class<?> entityClass) {
+        return idAccessors.get(entityClass);
+    }
+
+    /**
+     * @param entityClass an entity class
+     * @return the accessors of the associations of the entity class that cascade persist, none if it's not an entity
+     *         class
+     */
+    public ImmutableList<AttributeAccessor> getPersistCascades(final Class<?> entityClass) {
+        return persistCascades.get(entityClass);
+    }
+
+    /**
+     * @return the utility of the persistence unit, getting the IDs of entities (but not of proxies) with the
+     *         {@link #getIdAccessor ID accessors}
+     */
+    public PersistenceUnitUtil getPersistenceUnitUtil() {
+        return persistenceUnitUtil;
+    }
+
+    /**
+     * @param unit the unit of the duration
+     * @return how long it took to build the metadata
+     */
+    public long getBuildDuration(final TimeUnit unit) {
+        return unit.convert(buildNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ImmutableList<EntityType<?>> sort(final Comparator<Class<?>> ordering) {
+        return new Ordering<EntityType<?>>() {
+            @Override
+            public int compare(final EntityType<?> left, final EntityType<?> right) {
+                return ordering.compare(left.getJavaType(), right.getJavaType());
+            }
+        }.immutableSortedCopy(entityTypes.values());
+    }
+
+    // not Attribute.isAssociation(), which some providers report as false for singular associations
+    private static boolean isRelationship(final Attribute<?, ?> attribute) {
+        switch (attribute.getPersistentAttributeType()) {
+            case MANY_TO_ONE:
+            case ONE_TO_ONE:
+            case ONE_TO_MANY:
+            case MANY_TO_MANY:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static SingularAttribute<?, ?> getSingleIdAttribute(final EntityType<?> entityType) {
+        if (!entityType.hasSingleIdAttribute()) {
+            return null;
+        }
+
+        for (final SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+            if (attribute.isId()) {
+                return attribute;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads the IDs of entities of the persistence unit with their accessors, instead of going through the provider;
+     * proxies and entities with ID classes are left to the utility of the provider.
+     */
+    private static final class IndexedPersistenceUnitUtil implements PersistenceUnitUtil {
+
+        private final PersistenceUnitUtil delegate;
+        private final Map<Class<?>, AttributeAccessor> idAccessors;
+
+        private IndexedPersistenceUnitUtil(
+                final PersistenceUnitUtil delegate, final Map<Class<?>, AttributeAccessor> idAccessors) {
+            this.delegate = delegate;
+            this.idAccessors = idAccessors;
+        }
+
+        @Override
+        public Object getIdentifier(final Object entity) {
+            final AttributeAccessor idAccessor = idAccessors.get(entity.getClass());
+
+            return idAccessor != null ? idAccessor.get(entity) : delegate.getIdentifier(entity);
+        }
+
+        @Override
+        public boolean isLoaded(final Object entity, final String attributeName) {
+            return delegate.isLoaded(entity, attributeName);
+        }
+
+        @Override
+        public boolean isLoaded(final Object entity) {
+            return delegate.isLoaded(entity);
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.zimory.jpaunit.core.context;
+
+import java.util.Set;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.zimory.jpaunit.core.model.EntityKey;
+import com.zimory.jpaunit.core.persist.SetupTimings;
+
+/**
+ * State of a single test, created by the setup phase and consumed by the expect phase. Only the identities of the
+ * set up entities are kept, so that the expect phase can tell which of them should have been removed without reading
+ * the setup datasets again.
+ */
+public class JpaUnitSession {
+
+    private final TestContext testContext;
+    private final ImmutableSet<EntityKey> setupEntityKeys;
+    private final Optional<SetupTimings> setupTimings;
+
+    public JpaUnitSession(final TestContext testContext, final Set<EntityKey> setupEntityKeys) {
+        this(testContext, setupEntityKeys, Optional.<SetupTimings>absent());
+    }
+
+    public JpaUnitSession(
+            final TestContext testContext,
+            final Set<EntityKey> setupEntityKeys,
+            final Optional<SetupTimings> setupTimings) {
+        this.testContext = testContext;
+        this.setupEntityKeys = ImmutableSet.copyOf(setupEntityKeys);
+        this.setupTimings = setupTimings;
+    }
+
+    public TestContext getTestContext() {
+        return testContext;
+    }
+
+    public ImmutableSet<EntityKey> getSetupEntityKeys() {
+        return setupEntityKeys;
+    }
+
+    /**
+     * @return the timings of the setup phase, if it was pipelined
+     */
+    public Optional<SetupTimings> getSetupTimings() {
+        return setupTimings;
+    }
+
+}
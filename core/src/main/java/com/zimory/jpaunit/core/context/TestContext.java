@@ -9,6 +9,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.BeforeClass;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.TestClass;
 import org.unitils.util.ReflectionUtils;
@@ -63,6 +64,16 @@ public class TestContext {
                 .build();
     }
 
+    /**
+     * Gets all methods to analyse when looking for class-level "setup" methods, i.e. the {@link BeforeClass} methods.
+     *
+     * @param testClass the test class
+     * @return all methods eligible for the class-level setup phase
+     */
+    public static ImmutableList<Method> getClassSetupMethods(final Class<?> testClass) {
+        return getAnnotatedMethods(testClass, BeforeClass.class);
+    }
+
     private static ImmutableList<Method> getAnnotatedMethods(
             final Class<?> testClass, final Class<? extends Annotation> a) {
         final List<Method> transformed = Lists.transform(new TestClass(testClass).getAnnotatedMethods(a),
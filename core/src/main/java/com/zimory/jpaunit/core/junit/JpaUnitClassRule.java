@@ -0,0 +1,75 @@
+package com.zimory.jpaunit.core.junit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runs all tests of a test class in a single {@link IsolatedTransaction}, with the class-level setup datasets persisted
+ * once, and rolls it back after the last test. To be used as a {@link org.junit.ClassRule}, together with a
+ * {@link JpaUnitRule} created with {@link JpaUnitRule#JpaUnitRule(JpaUnitClassRule)}.
+ */
+public class JpaUnitClassRule implements TestRule {
+
+    private final Supplier<JpaUnitConfig> config;
+    private final Supplier<EntityManagerFactory> entityManagerFactory;
+
+    private IsolatedTransaction transaction;
+
+    public JpaUnitClassRule(
+            final Supplier<JpaUnitConfig> config,
+            final Supplier<EntityManagerFactory> entityManagerFactory) {
+        this.config = config;
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                transaction = getJpaUnit().beginIsolatedTransaction(description.getTestClass());
+
+                try {
+                    base.evaluate();
+                } finally {
+                    transaction.rollback();
+                    transaction = null;
+                }
+            }
+        };
+    }
+
+    /**
+     * @return the entity manager of the transaction, for the tests to use
+     */
+    public EntityManager getEntityManager() {
+        return getTransaction().getEntityManager();
+    }
+
+    IsolatedTransaction getTransaction() {
+        Preconditions.checkState(transaction != null, "Not within the tests of a test class");
+        return transaction;
+    }
+
+    Supplier<JpaUnitConfig> getConfig() {
+        return config;
+    }
+
+    Supplier<EntityManagerFactory> getEntityManagerFactory() {
+        return entityManagerFactory;
+    }
+
+    JpaUnit getJpaUnit() {
+        return JpaUnit.getInstance(config.get(), entityManagerFactory.get());
+    }
+
+}
@@ -2,11 +2,15 @@ package com.zimory.jpaunit.core.junit;
 
 import java.io.IOException;
 
+import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
 import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
 import org.junit.rules.TestWatcher;
 import org.junit.runner.Description;
 import org.slf4j.Logger;
@@ -18,16 +22,42 @@ public class JpaUnitRule extends TestWatcher {
 
     private final Supplier<JpaUnitConfig> config;
     private final Supplier<EntityManagerFactory> entityManagerFactory;
+    private final JpaUnitClassRule classRule;
+
+    private JpaUnitSession session;
+    private IsolatedTransaction transaction;
 
     public JpaUnitRule(final Supplier<JpaUnitConfig> config, final Supplier<EntityManagerFactory> entityManagerFactory) {
         this.config = config;
         this.entityManagerFactory = entityManagerFactory;
+        this.classRule = null;
+    }
+
+    /**
+     * Creates a rule running the tests within the transaction of the given class rule, in the rollback isolation mode.
+     *
+     * @param classRule the class rule of the test class
+     */
+    public JpaUnitRule(final JpaUnitClassRule classRule) {
+        this.config = classRule.getConfig();
+        this.entityManagerFactory = classRule.getEntityManagerFactory();
+        this.classRule = classRule;
     }
 
     @Override
     protected void starting(final Description description) {
         try {
-            newJpaUnit().setup(description.getTestClass(), description.getMethodName());
+            if (classRule != null) {
+                transaction = classRule.getTransaction();
+            } else if (config.get().isRollbackIsolation()) {
+                transaction = getJpaUnit().beginIsolatedTransaction(description.getTestClass());
+            }
+
+            if (transaction != null) {
+                session = getJpaUnit().setup(transaction, description.getTestClass(), description.getMethodName());
+            } else {
+                session = getJpaUnit().setup(description.getTestClass(), description.getMethodName());
+            }
         } catch (final IOException e) {
             LOGGER.error("Caught IOException while setting up the test", e);
         }
@@ -36,14 +66,50 @@ public class JpaUnitRule extends TestWatcher {
     @Override
     protected void succeeded(final Description description) {
         try {
-            newJpaUnit().expect(description.getTestClass(), description.getMethodName());
+            if (transaction != null && session != null) {
+                getJpaUnit().expect(transaction, session);
+            } else if (session != null) {
+                getJpaUnit().expect(session);
+            } else {
+                getJpaUnit().expect(description.getTestClass(), description.getMethodName());
+            }
         } catch (final IOException e) {
             LOGGER.error("Caught IOException while running expectations for the test", e);
         }
     }
 
-    private JpaUnit newJpaUnit() {
-        return JpaUnit.newInstance(config.get(), entityManagerFactory.get());
+    @Override
+    protected void finished(final Description description) {
+        try {
+            if (transaction != null) {
+                rollback();
+            } else if (session != null) {
+                getJpaUnit().cleanup(session);
+            }
+        } finally {
+            session = null;
+            transaction = null;
+        }
+    }
+
+    /**
+     * @return the entity manager of the transaction the test runs in, in the rollback isolation mode
+     */
+    public EntityManager getEntityManager() {
+        Preconditions.checkState(transaction != null, "Not within a test in the rollback isolation mode");
+        return transaction.getEntityManager();
+    }
+
+    private void rollback() {
+        if (classRule != null) {
+            transaction.rollbackTest();
+        } else {
+            transaction.rollback();
+        }
+    }
+
+    private JpaUnit getJpaUnit() {
+        return JpaUnit.getInstance(config.get(), entityManagerFactory.get());
     }
 
 }
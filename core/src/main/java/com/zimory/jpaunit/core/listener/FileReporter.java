@@ -0,0 +1,122 @@
+package com.zimory.jpaunit.core.listener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+
+/**
+ * Writes the phases of every test to a file of its own, named after the test (e.g.
+ * {@code com.example.FooTest.testBar.csv}, or {@code com.example.FooTest.csv} for the class-level phases), one line
+ * per phase. Each file is written anew by the first test of a run using it, so the files of earlier runs are
+ * replaced, but not removed.
+ * <p/>
+ * The lines hold the test, the phase, its duration in microseconds, the number of entities, the bytes read, the
+ * number of statements and the entity counts per type, either as CSV (with a header line) or as one JSON object per
+ * line.
+ */
+public class FileReporter implements JpaUnitListener {
+
+    public enum Format {
+        CSV("csv"),
+        JSON("json");
+
+        private final String extension;
+
+        Format(final String extension) {
+            this.extension = extension;
+        }
+    }
+
+    public static final String DEFAULT_DIR = "target/jpaunit-metrics";
+
+    private static final String CSV_HEADER =
+            "test,phase,durationMicros,entityCount,bytesRead,statementCount,entityCounts\n";
+
+    private final File dir;
+    private final Format format;
+    private final Set<File> started = Sets.newHashSet();
+
+    /**
+     * Reports as CSV to {@link #DEFAULT_DIR}.
+     */
+    public FileReporter() {
+        this(new File(DEFAULT_DIR), Format.CSV);
+    }
+
+    /**
+     * @param dir the directory to write the files to
+     * @param format the format of the files
+     */
+    public FileReporter(final File dir, final Format format) {
+        this.dir = dir;
+        this.format = format;
+    }
+
+    @Override
+    public synchronized void phaseFinished(final PhaseEvent event) {
+        final String test = event.getTestClass().getName()
+                + (event.getTestMethodName().isPresent() ? "." + event.getTestMethodName().get() : "");
+        final File file = new File(dir, test + "." + format.extension);
+        final String line = format == Format.CSV ? toCsv(test, event) : toJson(test, event);
+
+        try {
+            if (started.add(file)) {
+                Files.createParentDirs(file);
+                Files.write(format == Format.CSV ? CSV_HEADER + line : line, file, Charsets.UTF_8);
+            } else {
+                Files.append(line, file, Charsets.UTF_8);
+            }
+        } catch (final IOException e) {
+            throw new IllegalStateException("Failed to write the metrics of " + test + " to " + file, e);
+        }
+    }
+
+    private static String toCsv(final String test, final PhaseEvent event) {
+        final StringBuilder line = new StringBuilder()
+                .append(test).append(',')
+                .append(event.getPhase()).append(',')
+                .append(event.getDuration(TimeUnit.MICROSECONDS)).append(',')
+                .append(event.getEntityCount()).append(',')
+                .append(event.getBytesRead()).append(',')
+                .append(event.getStatementCount()).append(',');
+        String separator = "";
+
+        for (final Map.Entry<Class<?>, Integer> e : event.getEntityCounts().entrySet()) {
+            line.append(separator).append(e.getKey().getSimpleName()).append('=').append(e.getValue());
+            separator = ";";
+        }
+
+        return line.append('\n').toString();
+    }
+
+    private static String toJson(final String test, final PhaseEvent event) {
+        final StringBuilder line = new StringBuilder()
+                .append("{\"test\":").append(quote(test))
+                .append(",\"phase\":").append(quote(event.getPhase().name()))
+                .append(",\"durationMicros\":").append(event.getDuration(TimeUnit.MICROSECONDS))
+                .append(",\"entityCount\":").append(event.getEntityCount())
+                .append(",\"bytesRead\":").append(event.getBytesRead())
+                .append(",\"statementCount\":").append(event.getStatementCount())
+                .append(",\"entityCounts\":{");
+        String separator = "";
+
+        for (final Map.Entry<Class<?>, Integer> e : event.getEntityCounts().entrySet()) {
+            line.append(separator).append(quote(e.getKey().getName())).append(':').append(e.getValue());
+            separator = ",";
+        }
+
+        return line.append("}}\n").toString();
+    }
+
+    // test and class names don't contain anything else that would have to be escaped
+    private static String quote(final String s) {
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+}
@@ -0,0 +1,20 @@
+package com.zimory.jpaunit.core.listener;
+
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+
+/**
+ * Gets notified of the phases of the tests JpaUnit runs, along with what they cost (see {@link PhaseEvent}), e.g. to
+ * find the tests with the most expensive fixtures. Listeners are registered with
+ * {@link JpaUnitConfig#setListeners(java.util.List)}.
+ * <p/>
+ * Listeners are called on the thread running the test, right after every phase, so they should be quick. They may
+ * be called by several threads at once if tests run in parallel. A listener failing is logged and otherwise ignored.
+ */
+public interface JpaUnitListener {
+
+    /**
+     * @param event the phase that has just finished
+     */
+    void phaseFinished(PhaseEvent event);
+
+}
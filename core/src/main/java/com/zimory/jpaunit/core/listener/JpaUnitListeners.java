@@ -0,0 +1,177 @@
+package com.zimory.jpaunit.core.listener;
+
+import java.util.Collection;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.TestContext;
+import com.zimory.jpaunit.core.model.EntityKey;
+import com.zimory.jpaunit.core.read.DatasetBytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Notifies the {@link JpaUnitConfig#getListeners() configured listeners} of the phases of the tests. Without
+ * listeners, the phases are neither timed nor measured.
+ */
+@Component
+public class JpaUnitListeners {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JpaUnitListeners.class);
+
+    private static final PhaseTimer DISABLED = new PhaseTimer(null, null, Optional.<String>absent(), null) {
+        @Override
+        public void finished(final Map<Class<?>, Integer> entityCounts, final int statementCount) {
+        }
+
+        @Override
+        public void finishedWithEntities(final Collection<?> entities, final int statementCount) {
+        }
+
+        @Override
+        public void finishedWithKeys(final Collection<EntityKey> entityKeys, final int statementCount) {
+        }
+    };
+
+    private final JpaUnitConfig config;
+
+    @Inject
+    public JpaUnitListeners(final JpaUnitConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Starts timing a phase of a test.
+     *
+     * @param testContext the test
+     * @param phase the phase
+     * @return the timer to call once the phase has finished
+     */
+    public PhaseTimer start(final TestContext testContext, final Phase phase) {
+        return start(testContext.getTestClass(), Optional.of(testContext.getTestMethod().getName()), phase);
+    }
+
+    /**
+     * Starts timing a class-level phase.
+     *
+     * @param testClass the test class
+     * @param phase the phase
+     * @return the timer to call once the phase has finished
+     */
+    public PhaseTimer start(final Class<?> testClass, final Phase phase) {
+        return start(testClass, Optional.<String>absent(), phase);
+    }
+
+    private PhaseTimer start(final Class<?> testClass, final Optional<String> testMethodName, final Phase phase) {
+        if (config.getListeners().isEmpty()) {
+            return DISABLED;
+        }
+
+        return new PhaseTimer(this, testClass, testMethodName, phase);
+    }
+
+    /**
+     * Notifies the listeners of a phase that was not timed by a {@link PhaseTimer}.
+     *
+     * @param event the finished phase
+     */
+    public void phaseFinished(final PhaseEvent event) {
+        for (final JpaUnitListener listener : config.getListeners()) {
+            try {
+                listener.phaseFinished(event);
+            } catch (final RuntimeException e) {
+                LOGGER.warn("Listener " + listener + " failed on " + event, e);
+            }
+        }
+    }
+
+    /**
+     * @return whether there are listeners to notify
+     */
+    public boolean isEnabled() {
+        return !config.getListeners().isEmpty();
+    }
+
+    /**
+     * Measures a single phase, from its start until one of the {@code finished} methods is called.
+     */
+    public static class PhaseTimer {
+
+        private final JpaUnitListeners listeners;
+        private final Class<?> testClass;
+        private final Optional<String> testMethodName;
+        private final Phase phase;
+        private final long startNanos;
+        private final long startBytes;
+
+        private PhaseTimer(
+                final JpaUnitListeners listeners,
+                final Class<?> testClass,
+                final Optional<String> testMethodName,
+                final Phase phase) {
+            this.listeners = listeners;
+            this.testClass = testClass;
+            this.testMethodName = testMethodName;
+            this.phase = phase;
+            this.startNanos = System.nanoTime();
+            this.startBytes = DatasetBytes.get();
+        }
+
+        /**
+         * @param entityCounts the number of entities per type the phase dealt with
+         * @param statementCount the number of statements the phase executed
+         */
+        public void finished(final Map<Class<?>, Integer> entityCounts, final int statementCount) {
+            listeners.phaseFinished(new PhaseEvent(testClass, testMethodName, phase, System.nanoTime() - startNanos,
+                    entityCounts, DatasetBytes.get() - startBytes, statementCount));
+        }
+
+        /**
+         * @param entities the entities the phase dealt with
+         * @param statementCount the number of statements the phase executed
+         */
+        public void finishedWithEntities(final Collection<?> entities, final int statementCount) {
+            final Map<Class<?>, Integer> counts = Maps.newLinkedHashMap();
+
+            for (final Object entity : entities) {
+                increment(counts, entity.getClass());
+            }
+
+            finished(counts, statementCount);
+        }
+
+        /**
+         * @param entityKeys the keys of the entities the phase dealt with
+         * @param statementCount the number of statements the phase executed
+         */
+        public void finishedWithKeys(final Collection<EntityKey> entityKeys, final int statementCount) {
+            final Map<Class<?>, Integer> counts = Maps.newLinkedHashMap();
+
+            for (final EntityKey entityKey : entityKeys) {
+                increment(counts, entityKey.getEntityClass());
+            }
+
+            finished(counts, statementCount);
+        }
+
+        /**
+         * Equivalent to {@code finished(ImmutableMap.of(), 0)}.
+         */
+        public void finished() {
+            finished(ImmutableMap.<Class<?>, Integer>of(), 0);
+        }
+
+        private static void increment(final Map<Class<?>, Integer> counts, final Class<?> type) {
+            final Integer count = counts.get(type);
+            counts.put(type, count == null ? 1 : count + 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.zimory.jpaunit.core.listener;
+
+/**
+ * The phases and steps of a test that are reported to {@link JpaUnitListener}s.
+ */
+public enum Phase {
+
+    /**
+     * Reading the class-level setup datasets of a test class in rollback isolation mode.
+     */
+    CLASS_SETUP_READ,
+
+    /**
+     * Persisting the class-level setup entities of a test class in rollback isolation mode.
+     */
+    CLASS_SETUP_PERSIST,
+
+    /**
+     * Reading the setup datasets, i.e. parsing them or getting them from the dataset cache. In a pipelined setup, the
+     * time spent parsing while the entities were persisted.
+     */
+    SETUP_READ,
+
+    /**
+     * Persisting the setup entities. In a pipelined setup, including the time spent waiting for the parser.
+     */
+    SETUP_PERSIST,
+
+    /**
+     * Restoring the setup from a snapshot, instead of reading and persisting the datasets.
+     */
+    SETUP_SNAPSHOT_RESTORE,
+
+    /**
+     * Taking a snapshot of the setup.
+     */
+    SETUP_SNAPSHOT_TAKE,
+
+    /**
+     * Generating setup datasets.
+     */
+    SETUP_WRITE,
+
+    /**
+     * Reading the expected datasets.
+     */
+    EXPECT_READ,
+
+    /**
+     * Generating expected datasets.
+     */
+    EXPECT_WRITE,
+
+    /**
+     * Loading the actual entities and comparing them with the expected ones.
+     */
+    EXPECT_COMPARE,
+
+    /**
+     * Clearing the tables once the test has finished.
+     */
+    CLEANUP
+
+}
@@ -0,0 +1,101 @@
+package com.zimory.jpaunit.core.listener;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * A finished phase of a test and what it cost. Which figures apply depends on the phase; the others are zero (or
+ * empty):
+ * <ul>
+ * <li>the entity counts per type, of the entities read, persisted, compared or restored;</li>
+ * <li>the number of bytes read from dataset resources, source or compiled, including reading them to compute the key
+ * of the dataset cache or the setup snapshots;</li>
+ * <li>the number of statements or statement batches sent to the database, i.e. flushes, lookup queries and cleanup
+ * statements.</li>
+ * </ul>
+ */
+public final class PhaseEvent {
+
+    private final Class<?> testClass;
+    private final Optional<String> testMethodName;
+    private final Phase phase;
+    private final long durationNanos;
+    private final ImmutableMap<Class<?>, Integer> entityCounts;
+    private final long bytesRead;
+    private final int statementCount;
+
+    public PhaseEvent(
+            final Class<?> testClass,
+            final Optional<String> testMethodName,
+            final Phase phase,
+            final long durationNanos,
+            final Map<Class<?>, Integer> entityCounts,
+            final long bytesRead,
+            final int statementCount) {
+        this.testClass = testClass;
+        this.testMethodName = testMethodName;
+        this.phase = phase;
+        this.durationNanos = durationNanos;
+        this.entityCounts = ImmutableMap.copyOf(entityCounts);
+        this.bytesRead = bytesRead;
+        this.statementCount = statementCount;
+    }
+
+    public Class<?> getTestClass() {
+        return testClass;
+    }
+
+    /**
+     * @return the name of the test method, absent for the class-level phases
+     */
+    public Optional<String> getTestMethodName() {
+        return testMethodName;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public long getDuration(final TimeUnit unit) {
+        return unit.convert(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public ImmutableMap<Class<?>, Integer> getEntityCounts() {
+        return entityCounts;
+    }
+
+    public int getEntityCount() {
+        int sum = 0;
+
+        for (final Integer count : entityCounts.values()) {
+            sum += count;
+        }
+
+        return sum;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getStatementCount() {
+        return statementCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("test", testClass.getName() + (testMethodName.isPresent() ? "#" + testMethodName.get() : ""))
+                .add("phase", phase)
+                .add("durationMicros", getDuration(TimeUnit.MICROSECONDS))
+                .add("entityCount", getEntityCount())
+                .add("bytesRead", bytesRead)
+                .add("statementCount", statementCount)
+                .toString();
+    }
+
+}
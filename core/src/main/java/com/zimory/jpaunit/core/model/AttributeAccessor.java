@@ -0,0 +1,167 @@
+package com.zimory.jpaunit.core.model;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+
+import javax.persistence.CascadeType;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.Attribute;
+
+/**
+ * Reads and writes a persistent attribute of an entity, regardless of whether the entity uses field or property
+ * access.
+ */
+public final class AttributeAccessor {
+
+    private final String name;
+    private final Field field;
+    private final Method getter;
+    private final Method setter;
+
+    private AttributeAccessor(final String name, final Field field, final Method getter, final Method setter) {
+        this.name = name;
+        this.field = field;
+        this.getter = getter;
+        this.setter = setter;
+    }
+
+    public static AttributeAccessor of(final Attribute<?, ?> attribute) {
+        final Member member = attribute.getJavaMember();
+
+        if (member instanceof Field) {
+            final Field field = findField((Field) member, attribute.getDeclaringType().getJavaType());
+            field.setAccessible(true);
+
+            return new AttributeAccessor(attribute.getName(), field, null, null);
+        }
+
+        if (member instanceof Method) {
+            final Method getter = (Method) member;
+            final Method setter = findSetter(getter, attribute.getName());
+            getter.setAccessible(true);
+            setter.setAccessible(true);
+
+            return new AttributeAccessor(attribute.getName(), null, getter, setter);
+        }
+
+        throw new IllegalArgumentException("Unsupported member for attribute " + attribute.getName() + ": " + member);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public <A extends Annotation> A getAnnotation(final Class<A> annotationType) {
+        final AnnotatedElement element = field != null ? field : getter;
+
+        return element.getAnnotation(annotationType);
+    }
+
+    /**
+     * @return whether the attribute is the inverse (mapped by) side of a relationship
+     */
+    public boolean isInverseSide() {
+        final OneToOne oneToOne = getAnnotation(OneToOne.class);
+        final OneToMany oneToMany = getAnnotation(OneToMany.class);
+        final ManyToMany manyToMany = getAnnotation(ManyToMany.class);
+
+        return oneToOne != null && !oneToOne.mappedBy().isEmpty()
+                || oneToMany != null && !oneToMany.mappedBy().isEmpty()
+                || manyToMany != null && !manyToMany.mappedBy().isEmpty();
+    }
+
+    /**
+     * @return whether persisting an entity cascades to the entities referenced by the attribute, as declared by its
+     *         mapping annotation
+     */
+    public boolean isCascadingPersist() {
+        final ManyToOne manyToOne = getAnnotation(ManyToOne.class);
+        final OneToOne oneToOne = getAnnotation(OneToOne.class);
+        final OneToMany oneToMany = getAnnotation(OneToMany.class);
+        final ManyToMany manyToMany = getAnnotation(ManyToMany.class);
+
+        return manyToOne != null && cascadesPersist(manyToOne.cascade())
+                || oneToOne != null && cascadesPersist(oneToOne.cascade())
+                || oneToMany != null && cascadesPersist(oneToMany.cascade())
+                || manyToMany != null && cascadesPersist(manyToMany.cascade());
+    }
+
+    public Object get(final Object entity) {
+        try {
+            return field != null ? field.get(entity) : getter.invoke(entity);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public void set(final Object entity, final Object value) {
+        try {
+            if (field != null) {
+                field.set(entity, value);
+            } else {
+                setter.invoke(entity, value);
+            }
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static boolean cascadesPersist(final CascadeType[] cascadeTypes) {
+        for (final CascadeType cascadeType : cascadeTypes) {
+            if (cascadeType == CascadeType.PERSIST || cascadeType == CascadeType.ALL) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // some providers report the fields of the ID class for the ID attributes of an entity with an ID class
+    private static Field findField(final Field field, final Class<?> declaringType) {
+        if (field.getDeclaringClass().isAssignableFrom(declaringType)) {
+            return field;
+        }
+
+        for (Class<?> c = declaringType; c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(field.getName());
+            } catch (final NoSuchFieldException e) {
+                // try the superclass
+            }
+        }
+
+        throw new IllegalArgumentException("No field " + field.getName() + " found in " + declaringType.getName());
+    }
+
+    private static Method findSetter(final Method getter, final String propertyName) {
+        final String setterName = "set" + Character.toUpperCase(propertyName.charAt(0)) + propertyName.substring(1);
+
+        for (Class<?> c = getter.getDeclaringClass(); c != null; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredMethod(setterName, getter.getReturnType());
+            } catch (final NoSuchMethodException e) {
+                // try the superclass
+            }
+        }
+
+        throw new IllegalArgumentException("No setter found for property " + propertyName + " of "
+                + getter.getDeclaringClass().getName());
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.zimory.jpaunit.core.model;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Marks an expected dataset as a delta on top of the setup datasets: the entities of the dataset are the ones the test
+ * is expected to have inserted or modified, and {@link #getRemoved()} holds tombstones of the setup entities it is
+ * expected to have removed, i.e. instances carrying nothing but their ID. Setup entities the delta does not mention are
+ * expected to be left alone, and are not compared at all.
+ * <p/>
+ * Written as the first document of a dataset, e.g.:
+ * <pre>
+ * --- !jpaunit.Delta
+ * removed:
+ * - !Unit
+ *   id: 00000000-0000-0000-0000-000000000010
+ * </pre>
+ */
+public final class Delta {
+
+    /**
+     * The YAML tag of a delta; entity names can't contain dots, so it can't clash with the tag of an entity.
+     */
+    public static final String TAG = "jpaunit.Delta";
+
+    private List<Object> removed = Lists.newArrayList();
+
+    public List<Object> getRemoved() {
+        return removed;
+    }
+
+    public void setRemoved(final List<Object> removed) {
+        this.removed = removed;
+    }
+
+}
@@ -0,0 +1,250 @@
+package com.zimory.jpaunit.core.model;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * A set of entity keys, held as a set of IDs per entity class. {@code long}, {@code int} and {@link UUID} IDs are
+ * kept unboxed in open addressing hash tables of {@code long}s, which takes a fraction of the memory of a set of
+ * {@link EntityKey}s and needs no allocation to add or check an ID; other IDs are kept in a plain hash set.
+ * <p/>
+ * Like for {@link EntityKey}s, IDs are equal only if they are of the same type, e.g. {@code 1} and {@code 1L} aren't.
+ */
+public final class EntityIdSet {
+
+    private final Map<Class<?>, Ids> idsByClass = Maps.newHashMap();
+    private int size;
+
+    /**
+     * @param keys the entity keys
+     * @return a new set of the keys
+     */
+    public static EntityIdSet of(final Iterable<EntityKey> keys) {
+        final EntityIdSet set = new EntityIdSet();
+
+        for (final EntityKey key : keys) {
+            set.add(key);
+        }
+
+        return set;
+    }
+
+    /**
+     * @param entityClass the class of the entity
+     * @param entityId the ID of the entity, may be {@code null}
+     * @return whether the set did not contain the entity yet
+     */
+    public boolean add(final Class<?> entityClass, final Object entityId) {
+        Ids ids = idsByClass.get(entityClass);
+
+        if (ids == null) {
+            ids = new Ids();
+            idsByClass.put(entityClass, ids);
+        }
+
+        if (ids.add(entityId)) {
+            size++;
+            return true;
+        }
+
+        return false;
+    }
+
+    public boolean add(final EntityKey key) {
+        return add(key.getEntityClass(), key.getEntityId());
+    }
+
+    /**
+     * @param entityClass the class of the entity
+     * @param entityId the ID of the entity, may be {@code null}
+     * @return whether the set contains the entity
+     */
+    public boolean contains(final Class<?> entityClass, final Object entityId) {
+        final Ids ids = idsByClass.get(entityClass);
+
+        return ids != null && ids.contains(entityId);
+    }
+
+    public boolean contains(final EntityKey key) {
+        return contains(key.getEntityClass(), key.getEntityId());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * The IDs of an entity class, in a table per ID type; usually, only one of them is ever used.
+     */
+    private static final class Ids {
+
+        private LongTupleSet longs;
+        private LongTupleSet ints;
+        private LongTupleSet uuids;
+        private Set<Object> others;
+
+        boolean add(final Object id) {
+            if (id instanceof Long) {
+                if (longs == null) {
+                    longs = new LongTupleSet(1);
+                }
+
+                return longs.add((Long) id, 0);
+            }
+
+            if (id instanceof Integer) {
+                if (ints == null) {
+                    ints = new LongTupleSet(1);
+                }
+
+                return ints.add((Integer) id, 0);
+            }
+
+            if (id instanceof UUID) {
+                if (uuids == null) {
+                    uuids = new LongTupleSet(2);
+                }
+
+                final UUID uuid = (UUID) id;
+                return uuids.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            }
+
+            if (others == null) {
+                others = Sets.newHashSet();
+            }
+
+            return others.add(id);
+        }
+
+        boolean contains(final Object id) {
+            if (id instanceof Long) {
+                return longs != null && longs.contains((Long) id, 0);
+            }
+
+            if (id instanceof Integer) {
+                return ints != null && ints.contains((Integer) id, 0);
+            }
+
+            if (id instanceof UUID) {
+                final UUID uuid = (UUID) id;
+                return uuids != null && uuids.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            }
+
+            return others != null && others.contains(id);
+        }
+
+    }
+
+    /**
+     * A hash set of tuples of one or two {@code long}s (the second one is always zero for single {@code long}s), with
+     * linear probing in a table kept at most half full. The all-zero tuple marks free slots, so it's tracked on its
+     * own.
+     */
+    private static final class LongTupleSet {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final int arity;
+        private long[] slots;
+        private int mask;
+        private int size;
+        private boolean containsZero;
+
+        LongTupleSet(final int arity) {
+            this.arity = arity;
+            this.slots = new long[INITIAL_CAPACITY * arity];
+            this.mask = INITIAL_CAPACITY - 1;
+        }
+
+        boolean add(final long a, final long b) {
+            if (a == 0 && b == 0) {
+                final boolean added = !containsZero;
+                containsZero = true;
+
+                return added;
+            }
+
+            final int index = indexOf(a, b);
+            if (index >= 0) {
+                return false;
+            }
+
+            put(-index - 1, a, b);
+
+            if (++size * 2 > mask + 1) {
+                grow();
+            }
+
+            return true;
+        }
+
+        boolean contains(final long a, final long b) {
+            if (a == 0 && b == 0) {
+                return containsZero;
+            }
+
+            return indexOf(a, b) >= 0;
+        }
+
+        // the slot of the tuple if present, or else -(the free slot to put it in) - 1
+        private int indexOf(final long a, final long b) {
+            for (int i = hash(a, b) & mask; ; i = (i + 1) & mask) {
+                final long slotA = slots[i * arity];
+                final long slotB = arity == 2 ? slots[i * arity + 1] : 0;
+
+                if (slotA == a && slotB == b) {
+                    return i;
+                }
+
+                if (slotA == 0 && slotB == 0) {
+                    return -i - 1;
+                }
+            }
+        }
+
+        private void put(final int index, final long a, final long b) {
+            slots[index * arity] = a;
+
+            if (arity == 2) {
+                slots[index * arity + 1] = b;
+            }
+        }
+
+        private void grow() {
+            final long[] oldSlots = slots;
+            slots = new long[oldSlots.length * 2];
+            mask = mask * 2 + 1;
+
+            for (int i = 0; i < oldSlots.length; i += arity) {
+                final long a = oldSlots[i];
+                final long b = arity == 2 ? oldSlots[i + 1] : 0;
+
+                if (a != 0 || b != 0) {
+                    put(-indexOf(a, b) - 1, a, b);
+                }
+            }
+        }
+
+        // the finalizer of MurmurHash3, spreading sequential IDs over the table
+        private static int hash(final long a, final long b) {
+            long h = a * 0x9E3779B97F4A7C15L ^ b;
+            h ^= h >>> 33;
+            h *= 0xFF51AFD7ED558CCDL;
+            h ^= h >>> 33;
+            h *= 0xC4CEB9FE1A85EC53L;
+            h ^= h >>> 33;
+
+            return (int) h;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.zimory.jpaunit.core.model;
+
+import javax.persistence.PersistenceUnitUtil;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+
+/**
+ * Identifies an entity by its class and ID only, without holding on to the entity itself.
+ */
+public final class EntityKey {
+
+    private final Class<?> entityClass;
+    private final Object entityId;
+
+    private EntityKey(final Class<?> entityClass, final Object entityId) {
+        this.entityClass = Preconditions.checkNotNull(entityClass);
+        this.entityId = entityId;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public Object getEntityId() {
+        return entityId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(entityClass, entityId);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final EntityKey other = (EntityKey) obj;
+
+        return entityClass == other.entityClass && Objects.equal(entityId, other.entityId);
+    }
+
+    @Override
+    public String toString() {
+        return entityClass.getSimpleName() + "#" + entityId;
+    }
+
+    public static EntityKey of(final Class<?> entityClass, final Object entityId) {
+        return new EntityKey(entityClass, entityId);
+    }
+
+    public static EntityKey of(final PersistenceUnitUtil util, final Object entity) {
+        return new EntityKey(entity.getClass(), util.getIdentifier(entity));
+    }
+
+}
@@ -1,22 +1,23 @@
 package com.zimory.jpaunit.core.model;
 
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
 
 import javax.persistence.PersistenceUnitUtil;
 
-import com.google.common.base.Function;
-import com.google.common.base.Objects;
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Lists;
 
+/**
+ * An entity along with its key, whose ID is read once when the entity is wrapped.
+ */
 public final class EntityWrapper {
 
-    private final PersistenceUnitUtil util;
     private final Object entity;
+    private final EntityKey entityKey;
 
-    private EntityWrapper(final PersistenceUnitUtil util, final Object entity) {
-        this.util = util;
+    private EntityWrapper(final Object entity, final EntityKey entityKey) {
         this.entity = entity;
+        this.entityKey = entityKey;
     }
 
     public Object getEntity() {
@@ -24,16 +25,20 @@ public final class EntityWrapper {
     }
 
     public Object getEntityId() {
-        return util.getIdentifier(entity);
+        return entityKey.getEntityId();
     }
 
     public Class<?> getEntityClass() {
-        return entity.getClass();
+        return entityKey.getEntityClass();
+    }
+
+    public EntityKey getEntityKey() {
+        return entityKey;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(getEntityId());
+        return entityKey.hashCode();
     }
 
     @Override
@@ -48,30 +53,51 @@ public final class EntityWrapper {
 
         final EntityWrapper other = (EntityWrapper) obj;
 
-        return getEntityClass() == other.getEntityClass() && Objects.equal(getEntityId(), other.getEntityId());
+        return entityKey.equals(other.entityKey);
     }
 
-    public static Set<EntityWrapper> wrap(final PersistenceUnitUtil util, final Set<Object> entities) {
-        return Sets.newHashSet(Collections2.transform(entities, new WrapperFunction(util)));
-    }
+    /**
+     * @param util the utility to get the IDs of the entities with
+     * @param entities the entities to wrap
+     * @return a wrapper per entity key, of the first of the entities with the key, in the order of the entities
+     */
+    public static List<EntityWrapper> wrap(final PersistenceUnitUtil util, final Collection<Object> entities) {
+        final List<EntityWrapper> wrappers = Lists.newArrayListWithCapacity(entities.size());
+        final EntityIdSet ids = new EntityIdSet();
+
+        for (final Object entity : entities) {
+            final EntityWrapper wrapper = wrap(util, entity);
+
+            if (ids.add(wrapper.getEntityClass(), wrapper.getEntityId())) {
+                wrappers.add(wrapper);
+            }
+        }
 
-    public static EntityWrapper wrap(final PersistenceUnitUtil util, final Object entity) {
-        return new EntityWrapper(util, entity);
+        return wrappers;
     }
 
-    private static class WrapperFunction implements Function<Object, EntityWrapper> {
-
-        private final PersistenceUnitUtil util;
+    public static List<EntityKey> toKeys(final Collection<EntityWrapper> wrappers) {
+        final List<EntityKey> keys = Lists.newArrayListWithCapacity(wrappers.size());
 
-        private WrapperFunction(final PersistenceUnitUtil util) {
-            this.util = util;
+        for (final EntityWrapper wrapper : wrappers) {
+            keys.add(wrapper.getEntityKey());
         }
 
-        @Override
-        public EntityWrapper apply(final Object input) {
-            return wrap(util, input);
+        return keys;
+    }
+
+    public static EntityIdSet toIdSet(final Collection<EntityWrapper> wrappers) {
+        final EntityIdSet ids = new EntityIdSet();
+
+        for (final EntityWrapper wrapper : wrappers) {
+            ids.add(wrapper.getEntityClass(), wrapper.getEntityId());
         }
 
+        return ids;
+    }
+
+    public static EntityWrapper wrap(final PersistenceUnitUtil util, final Object entity) {
+        return new EntityWrapper(entity, EntityKey.of(util, entity));
     }
 
 }
@@ -0,0 +1,155 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.persist.EntityTypeGraph.Dependency;
+import com.zimory.jpaunit.core.persist.TableMapping.JoinTableMapping;
+import com.zimory.jpaunit.core.persist.TableMapping.TableColumn;
+
+/**
+ * The order in which the tables of the entity types of a persistence unit can be cleared without violating foreign
+ * keys, as derived from the {@link EntityTypeGraph}: first the foreign keys between mutually dependent entity types
+ * are set to {@code NULL}, then the join tables are cleared, and then the entity tables, in reverse insert order.
+ */
+final class CleanupOrder {
+
+    private final ImmutableList<Class<?>> deleteOrder;
+    private final ImmutableSetMultimap<Class<?>, Class<?>> referencingTypes;
+    private final ImmutableMap<Class<?>, TableMapping> mappings;
+    private final ImmutableMap<Class<?>, String> unsupported;
+    private final ImmutableListMultimap<Class<?>, String> unlinkStatements;
+
+    private CleanupOrder(
+            final ImmutableList<Class<?>> deleteOrder,
+            final ImmutableSetMultimap<Class<?>, Class<?>> referencingTypes,
+            final ImmutableMap<Class<?>, TableMapping> mappings,
+            final ImmutableMap<Class<?>, String> unsupported,
+            final ImmutableListMultimap<Class<?>, String> unlinkStatements) {
+        this.deleteOrder = deleteOrder;
+        this.referencingTypes = referencingTypes;
+        this.mappings = mappings;
+        this.unsupported = unsupported;
+        this.unlinkStatements = unlinkStatements;
+    }
+
+    static CleanupOrder of(final Metamodel metamodel) {
+        final EntityTypeGraph graph = EntityTypeGraph.of(metamodel);
+        final ImmutableSetMultimap.Builder<Class<?>, Class<?>> referencingTypes = ImmutableSetMultimap.builder();
+        final ImmutableMap.Builder<Class<?>, TableMapping> mappings = ImmutableMap.builder();
+        final ImmutableMap.Builder<Class<?>, String> unsupported = ImmutableMap.builder();
+        final ImmutableListMultimap.Builder<Class<?>, String> unlinkStatements = ImmutableListMultimap.builder();
+
+        for (final EntityType<?> entityType : metamodel.getEntities()) {
+            final Class<?> type = entityType.getJavaType();
+
+            for (final Class<?> referenced : graph.getReferencedTypes(type)) {
+                referencingTypes.put(referenced, type);
+            }
+
+            final TableMapping mapping;
+            try {
+                mapping = TableMapping.of(entityType, metamodel);
+            } catch (final UnsupportedOperationException e) {
+                unsupported.put(type, e.getMessage());
+                continue;
+            }
+
+            mappings.put(type, mapping);
+
+            // collections are kept in join tables, which are cleared before any entity table
+            for (final Dependency dependency : graph.getCyclicDependencies(type)) {
+                final List<TableColumn> columns = mapping.getColumns(dependency.getAccessor().getName());
+
+                if (!dependency.isPlural() && !columns.isEmpty()) {
+                    unlinkStatements.put(type, "UPDATE " + mapping.getTable() + " SET "
+                            + Joiner.on(" = NULL, ").join(columnNames(columns)) + " = NULL");
+                }
+            }
+        }
+
+        return new CleanupOrder(graph.getInsertOrder().reverse(), referencingTypes.build(), mappings.build(),
+                unsupported.build(), unlinkStatements.build());
+    }
+
+    /**
+     * @return all entity types, in delete order
+     */
+    ImmutableList<Class<?>> getEntityTypes() {
+        return deleteOrder;
+    }
+
+    /**
+     * @param types entity types whose tables are to be cleared
+     * @param deleteStatement the format of the statement clearing a table, given the table name
+     * @return the statements clearing the tables of the given entity types, and of the entity types (transitively)
+     *         referencing them, in the order in which they have to be executed
+     * @throws IllegalStateException if the mapping of one of the entity types is not supported
+     */
+    ImmutableList<String> getStatements(final Collection<Class<?>> types, final String deleteStatement) {
+        final Set<Class<?>> selected = withReferencingTypes(types);
+        final List<String> unlink = Lists.newArrayList();
+        final List<String> joinTables = Lists.newArrayList();
+        final List<String> tables = Lists.newArrayList();
+
+        for (final Class<?> type : deleteOrder) {
+            if (!selected.contains(type)) {
+                continue;
+            }
+
+            final TableMapping mapping = mappings.get(type);
+            if (mapping == null) {
+                throw new IllegalStateException("Cannot clean up the table of " + type.getName() + ": "
+                        + unsupported.get(type));
+            }
+
+            unlink.addAll(unlinkStatements.get(type));
+
+            for (final JoinTableMapping joinTable : mapping.getJoinTables()) {
+                joinTables.add(String.format(deleteStatement, joinTable.getTable()));
+            }
+
+            tables.add(String.format(deleteStatement, mapping.getTable()));
+        }
+
+        return ImmutableList.<String>builder().addAll(unlink).addAll(joinTables).addAll(tables).build();
+    }
+
+    // rows of the referencing types may point to the rows to be deleted
+    private Set<Class<?>> withReferencingTypes(final Collection<Class<?>> types) {
+        final Set<Class<?>> selected = Sets.newHashSet();
+        final List<Class<?>> pending = Lists.newArrayList(types);
+
+        while (!pending.isEmpty()) {
+            final Class<?> type = pending.remove(pending.size() - 1);
+
+            if (selected.add(type)) {
+                pending.addAll(referencingTypes.get(type));
+            }
+        }
+
+        return selected;
+    }
+
+    private static List<String> columnNames(final List<TableColumn> columns) {
+        final List<String> names = Lists.newArrayListWithCapacity(columns.size());
+
+        for (final TableColumn column : columns) {
+            names.add(column.getName());
+        }
+
+        return names;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.zimory.jpaunit.core.persist;
+
+/**
+ * The tables cleared by the cleanup phase of a test (see {@link DatabaseCleaner}).
+ */
+public enum CleanupScope {
+
+    /**
+     * No cleanup phase.
+     */
+    NONE,
+
+    /**
+     * The tables of the entity types of the setup datasets, and of the entity types referencing them.
+     */
+    SETUP_TABLES,
+
+    /**
+     * The tables of all entity types of the persistence unit.
+     */
+    ALL_TABLES
+
+}
@@ -0,0 +1,57 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * What a cleanup did (see {@link DatabaseCleaner}): the statements it executed, the number of rows they affected and
+ * the time it took.
+ */
+public final class CleanupStatistics {
+
+    static final CleanupStatistics NONE = new CleanupStatistics(ImmutableList.<String>of(), 0, 0);
+
+    private final ImmutableList<String> statements;
+    private final int rowCount;
+    private final long nanos;
+
+    CleanupStatistics(final List<String> statements, final int rowCount, final long nanos) {
+        this.statements = ImmutableList.copyOf(statements);
+        this.rowCount = rowCount;
+        this.nanos = nanos;
+    }
+
+    /**
+     * @return the statements executed, in order
+     */
+    public ImmutableList<String> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the number of rows deleted or updated, as far as the driver reports it
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the time spent cleaning up, including the commit
+     */
+    public long getTime(final TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("statementCount", statements.size())
+                .add("rowCount", rowCount)
+                .add("millis", getTime(TimeUnit.MILLISECONDS))
+                .toString();
+    }
+
+}
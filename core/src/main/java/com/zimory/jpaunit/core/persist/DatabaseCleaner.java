@@ -0,0 +1,119 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Clears the tables of entity types between tests, with plain JDBC: the {@link CleanupOrder} of the persistence unit
+ * is derived from the metamodel once per entity manager factory, and the statements of a cleanup (by default
+ * {@code DELETE FROM <table>}, see {@link JpaUnitConfig#getCleanupStatement()}) are sent in a single JDBC batch and
+ * transaction, over a connection of the {@link JpaUnitConfig#getSetupDataSource() setup data source}, or else of the
+ * persistence unit (see {@link SetupConnection}).
+ * <p/>
+ * As the rows are removed behind the back of the JPA provider, the second level cache is evicted afterwards. Like the
+ * {@link JdbcEntityPersister}, this is limited to entity types supported by the {@link TableMapping}.
+ */
+@Component
+public class DatabaseCleaner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCleaner.class);
+
+    private static final LoadingCache<EntityManagerFactory, CleanupOrder> ORDERS = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build(new CacheLoader<EntityManagerFactory, CleanupOrder>() {
+                @Override
+                public CleanupOrder load(final EntityManagerFactory key) {
+                    final CleanupOrder order = CleanupOrder.of(key.getMetamodel());
+                    LOGGER.debug("Entity cleanup order: {}", order.getEntityTypes());
+
+                    return order;
+                }
+            });
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JpaUnitConfig config;
+
+    @Inject
+    public DatabaseCleaner(final EntityManagerFactory entityManagerFactory, final JpaUnitConfig config) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.config = config;
+    }
+
+    /**
+     * Clears the tables of the given entity types, and of the entity types referencing them.
+     *
+     * @param entityClasses the entity classes
+     * @return the statistics of the cleanup
+     * @throws IllegalStateException if the mapping of one of the entity types is not supported
+     */
+    public CleanupStatistics clean(final Collection<Class<?>> entityClasses) {
+        final long start = System.nanoTime();
+        final List<String> statements = ORDERS.getUnchecked(entityManagerFactory)
+                .getStatements(entityClasses, config.getCleanupStatement());
+
+        if (statements.isEmpty()) {
+            return CleanupStatistics.NONE;
+        }
+
+        final int rowCount = execute(statements);
+        entityManagerFactory.getCache().evictAll();
+
+        final CleanupStatistics statistics = new CleanupStatistics(statements, rowCount, System.nanoTime() - start);
+        LOGGER.debug("Cleaned up {}: {}", entityClasses, statistics);
+
+        return statistics;
+    }
+
+    /**
+     * Clears the tables of all entity types of the persistence unit.
+     *
+     * @return the statistics of the cleanup
+     * @throws IllegalStateException if the mapping of one of the entity types is not supported
+     */
+    public CleanupStatistics cleanAll() {
+        return clean(ORDERS.getUnchecked(entityManagerFactory).getEntityTypes());
+    }
+
+    private int execute(final List<String> statements) {
+        final SetupConnection connection = SetupConnection.open(entityManagerFactory, config.getSetupDataSource());
+        int rowCount = 0;
+
+        try {
+            final Statement statement = connection.get().createStatement();
+
+            try {
+                for (final String sql : statements) {
+                    statement.addBatch(sql);
+                }
+
+                for (final int count : statement.executeBatch()) {
+                    rowCount += Math.max(count, 0);
+                }
+            } finally {
+                statement.close();
+            }
+
+            connection.commit();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to clean up the tables: " + statements, e);
+        } finally {
+            connection.close();
+        }
+
+        return rowCount;
+    }
+
+}
@@ -1,15 +1,37 @@
 package com.zimory.jpaunit.core.persist;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+import com.zimory.jpaunit.core.model.EntityIdSet;
+import com.zimory.jpaunit.core.persist.InsertPlanner.DeferredReference;
+import com.zimory.jpaunit.core.persist.InsertPlanner.InsertPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Persists the setup entities with the entity manager. In batches (see {@link JpaUnitConfig#getSetupBatchSize()}),
+ * the entity manager is cleared after each batch, which detaches the entities persisted so far; so associations
+ * cascading persist are handled here: entities already persisted by a cascade are not persisted again, and
+ * detached entities referenced through such associations are replaced by the managed ones before persisting, rather
+ * than cascaded to.
+ */
 @Component
 @Transactional
 public class DefaultEntityPersister implements EntityPersister {
@@ -17,20 +39,260 @@ public class DefaultEntityPersister implements EntityPersister {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultEntityPersister.class);
 
     private final EntityManager em;
+    private final JpaUnitConfig config;
+    private final InsertPlanner insertPlanner;
+    private final JpaUnitMetadata metadata;
+    private final PersistenceUnitUtil persistenceUnitUtil;
 
     @Inject
-    public DefaultEntityPersister(final EntityManager em) {
+    public DefaultEntityPersister(
+            final EntityManager em,
+            final JpaUnitConfig config,
+            final InsertPlanner insertPlanner,
+            final JpaUnitMetadata metadata) {
         this.em = em;
+        this.config = config;
+        this.insertPlanner = insertPlanner;
+        this.metadata = metadata;
+        this.persistenceUnitUtil = metadata.getPersistenceUnitUtil();
     }
 
     @Override
-    public void persist(final Collection<Object> entities) {
+    public PersistStatistics persist(final Collection<Object> entities) {
+        final PersistStatistics statistics = new PersistStatistics();
+
+        if (config.getSetupBatchSize() > 0) {
+            persistInBatches(insertPlanner.plan(entities), config.getSetupBatchSize(), statistics);
+        } else {
+            persistOneByOne(entities, statistics);
+        }
+
+        LOGGER.debug("Persisted setup entities: {}", statistics);
+
+        return statistics;
+    }
+
+    @Override
+    public PersistStatistics persist(final Iterator<Object> entities) {
+        final PersistStatistics statistics = new PersistStatistics();
+        final int batchSize = config.getSetupBatchSize();
+        final EntityIdSet persisted = new EntityIdSet();
+        int pending = 0;
+
+        while (entities.hasNext()) {
+            if (batchSize <= 0) {
+                persist(entities.next(), statistics);
+            } else {
+                persist(entities.next(), persisted, statistics);
+            }
+
+            if (batchSize <= 0) {
+                flush(statistics);
+            } else if (++pending == batchSize) {
+                flushAndClear(statistics);
+                pending = 0;
+            }
+        }
+
+        if (pending > 0) {
+            flushAndClear(statistics);
+        }
+
+        LOGGER.debug("Persisted setup entities: {}", statistics);
+
+        return statistics;
+    }
+
+    private void persistOneByOne(final Iterable<Object> entities, final PersistStatistics statistics) {
         for (final Object entity : entities) {
-            LOGGER.debug("Persisting entity: {}", entity);
+            persist(entity, statistics);
+            flush(statistics);
+        }
+    }
+
+    private void persistInBatches(final InsertPlan plan, final int batchSize, final PersistStatistics statistics) {
+        final EntityIdSet persisted = new EntityIdSet();
+        int pending = 0;
+
+        for (final Object entity : plan.getEntities()) {
+            persist(entity, persisted, statistics);
+
+            if (++pending == batchSize) {
+                flushAndClear(statistics);
+                pending = 0;
+            }
+        }
+
+        for (final DeferredReference reference : plan.getDeferredReferences()) {
+            restore(reference, statistics);
+
+            if (++pending == batchSize) {
+                flushAndClear(statistics);
+                pending = 0;
+            }
+        }
+
+        if (pending > 0) {
+            flushAndClear(statistics);
+        }
+    }
+
+    private void restore(final DeferredReference reference, final PersistStatistics statistics) {
+        LOGGER.debug("Restoring deferred reference: {}", reference);
+
+        reference.restore(reference.getEntity(), reference.getValue());
+        reference.restore(toManaged(reference.getEntity()), toReferences(reference.getValue()));
+        statistics.referenceRestored();
+    }
+
+    private Object toManaged(final Object entity) {
+        if (em.contains(entity)) {
+            return entity;
+        }
+
+        return em.find(entity.getClass(), persistenceUnitUtil.getIdentifier(entity));
+    }
+
+    private Object toReferences(final Object value) {
+        if (!(value instanceof Collection)) {
+            return toReference(value);
+        }
+
+        final Collection<Object> references = value instanceof Set
+                ? Sets.newLinkedHashSet()
+                : Lists.newArrayList();
+
+        for (final Object element : (Collection<?>) value) {
+            references.add(toReference(element));
+        }
+
+        return references;
+    }
 
-            em.persist(entity);
-            em.flush();
+    private Object toReference(final Object entity) {
+        if (em.contains(entity)) {
+            return entity;
         }
+
+        return em.getReference(entity.getClass(), persistenceUnitUtil.getIdentifier(entity));
+    }
+
+    // persists the entity unless a cascade did, and tracks the entities persisted along with it by cascades
+    private void persist(final Object entity, final EntityIdSet persisted, final PersistStatistics statistics) {
+        if (isPersisted(entity, persisted)) {
+            LOGGER.debug("Entity already persisted by a cascade: {}", entity);
+            statistics.entityPersisted(entity.getClass());
+            return;
+        }
+
+        reattachCascades(entity, persisted);
+        persist(entity, statistics);
+        persisted.add(entity.getClass(), persistenceUnitUtil.getIdentifier(entity));
+
+        final Deque<Object> pending = Lists.newLinkedList();
+        pending.push(entity);
+
+        while (!pending.isEmpty()) {
+            final Object current = pending.pop();
+
+            for (final AttributeAccessor accessor : metadata.getPersistCascades(current.getClass())) {
+                for (final Object value : values(accessor.get(current))) {
+                    if (isEntity(value) && persisted.add(value.getClass(), persistenceUnitUtil.getIdentifier(value))) {
+                        pending.push(value);
+                    }
+                }
+            }
+        }
+    }
+
+    // persisting the entity would cascade to the detached entities, which fails, so they're replaced by the managed
+    // ones; not by references, since proxies in the persistence context would hide the entities from restore()
+    private void reattachCascades(final Object entity, final EntityIdSet persisted) {
+        for (final AttributeAccessor accessor : metadata.getPersistCascades(entity.getClass())) {
+            final Object value = accessor.get(entity);
+
+            if (value instanceof Collection) {
+                if (containsDetached((Collection<?>) value, persisted)) {
+                    final Collection<Object> managed = value instanceof Set
+                            ? Sets.newLinkedHashSet()
+                            : Lists.newArrayList();
+
+                    for (final Object element : (Collection<?>) value) {
+                        managed.add(toManagedIfDetached(element, persisted));
+                    }
+
+                    accessor.set(entity, managed);
+                }
+            } else if (value instanceof Map) {
+                if (containsDetached(((Map<?, ?>) value).values(), persisted)) {
+                    final Map<Object, Object> managed = Maps.newLinkedHashMap();
+
+                    for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                        managed.put(e.getKey(), toManagedIfDetached(e.getValue(), persisted));
+                    }
+
+                    accessor.set(entity, managed);
+                }
+            } else if (isDetached(value, persisted)) {
+                accessor.set(entity, toManaged(value));
+            }
+        }
+    }
+
+    private boolean containsDetached(final Collection<?> values, final EntityIdSet persisted) {
+        for (final Object value : values) {
+            if (isDetached(value, persisted)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Object toManagedIfDetached(final Object value, final EntityIdSet persisted) {
+        return isDetached(value, persisted) ? toManaged(value) : value;
+    }
+
+    private boolean isDetached(final Object value, final EntityIdSet persisted) {
+        return isEntity(value) && isPersisted(value, persisted) && !em.contains(value);
+    }
+
+    private boolean isPersisted(final Object entity, final EntityIdSet persisted) {
+        return !persisted.isEmpty() && persisted.contains(entity.getClass(), persistenceUnitUtil.getIdentifier(entity));
+    }
+
+    // proxies are references to persisted entities already
+    private boolean isEntity(final Object value) {
+        return value != null && metadata.getEntityTypes().containsKey(value.getClass());
+    }
+
+    private static Iterable<?> values(final Object value) {
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+
+        if (value instanceof Map) {
+            return ((Map<?, ?>) value).values();
+        }
+
+        return value != null ? Collections.singleton(value) : Collections.emptySet();
+    }
+
+    private void persist(final Object entity, final PersistStatistics statistics) {
+        LOGGER.debug("Persisting entity: {}", entity);
+
+        em.persist(entity);
+        statistics.entityPersisted(entity.getClass());
+    }
+
+    private void flush(final PersistStatistics statistics) {
+        em.flush();
+        statistics.flushed();
+    }
+
+    private void flushAndClear(final PersistStatistics statistics) {
+        flush(statistics);
+        em.clear();
     }
 
 }
@@ -1,9 +1,18 @@
 package com.zimory.jpaunit.core.persist;
 
 import java.util.Collection;
+import java.util.Iterator;
 
 public interface EntityPersister {
 
-    void persist(Collection<Object> entities);
+    PersistStatistics persist(Collection<Object> entities);
+
+    /**
+     * Persists the entities in iteration order, as they become available, without any insert planning.
+     *
+     * @param entities the entities to persist
+     * @return the statistics of the persisted entities
+     */
+    PersistStatistics persist(Iterator<Object> entities);
 
 }
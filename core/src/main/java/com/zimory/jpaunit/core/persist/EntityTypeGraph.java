@@ -0,0 +1,357 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+
+/**
+ * The insert dependencies between the entity types of a persistence unit, as derived from the metamodel: a type
+ * depends on the target type of each of its many-to-one and owning one-to-one associations (foreign keys), and on the
+ * element type of each of its owning one-to-many and many-to-many associations (join tables).
+ * <p/>
+ * Optional dependencies that are part of a cycle (including a type referencing itself) are reported as cyclic
+ * attributes and left out of the {@link #getInsertOrder() insert order}, which makes the order a plain topological
+ * sort. Non-optional (i.e. {@code NOT NULL}) references within a cycle can't be left out, they still order the types;
+ * only if they form a cycle of their own, they are reported as cyclic as well, and the entities referenced through
+ * them have to be inserted first (see {@link Dependency#isOptional()}).
+ */
+public final class EntityTypeGraph {
+
+    private static final Comparator<Class<?>> BY_NAME = new Comparator<Class<?>>() {
+        @Override
+        public int compare(final Class<?> o1, final Class<?> o2) {
+            return o1.getName().compareTo(o2.getName());
+        }
+    };
+
+    private final ImmutableList<Class<?>> insertOrder;
+    private final ImmutableMap<Class<?>, Integer> ranks;
+    private final ImmutableListMultimap<Class<?>, Dependency> cyclicDependencies;
+    private final ImmutableSetMultimap<Class<?>, Class<?>> referencedTypes;
+
+    private EntityTypeGraph(
+            final ImmutableList<Class<?>> insertOrder,
+            final ImmutableListMultimap<Class<?>, Dependency> cyclicDependencies,
+            final ImmutableSetMultimap<Class<?>, Class<?>> referencedTypes) {
+        this.insertOrder = insertOrder;
+        this.cyclicDependencies = cyclicDependencies;
+        this.referencedTypes = referencedTypes;
+
+        final ImmutableMap.Builder<Class<?>, Integer> builder = ImmutableMap.builder();
+        for (int i = 0; i < insertOrder.size(); i++) {
+            builder.put(insertOrder.get(i), i);
+        }
+        this.ranks = builder.build();
+    }
+
+    /**
+     * @return the entity types, ordered so that every type comes after the types it (non-cyclically) depends on
+     */
+    public ImmutableList<Class<?>> getInsertOrder() {
+        return insertOrder;
+    }
+
+    /**
+     * @param type an entity type
+     * @return the position of the type in the insert order, or {@link Integer#MAX_VALUE} if it's not an entity type
+     */
+    public int getRank(final Class<?> type) {
+        final Integer rank = ranks.get(type);
+        return rank == null ? Integer.MAX_VALUE : rank;
+    }
+
+    /**
+     * @param type an entity type
+     * @return the dependencies of the given type that are part of a cycle
+     */
+    ImmutableList<Dependency> getCyclicDependencies(final Class<?> type) {
+        return cyclicDependencies.get(type);
+    }
+
+    /**
+     * @param type an entity type
+     * @return the types the given type depends on, cyclically or not
+     */
+    public ImmutableSet<Class<?>> getReferencedTypes(final Class<?> type) {
+        return referencedTypes.get(type);
+    }
+
+    public static EntityTypeGraph of(final Metamodel metamodel) {
+        final SortedSet<Class<?>> types = Sets.newTreeSet(BY_NAME);
+        for (final EntityType<?> entityType : metamodel.getEntities()) {
+            types.add(entityType.getJavaType());
+        }
+
+        final Multimap<Class<?>, Dependency> dependencies = LinkedHashMultimap.create();
+        for (final EntityType<?> entityType : metamodel.getEntities()) {
+            for (final Attribute<?, ?> attribute : entityType.getAttributes()) {
+                final Dependency dependency = Dependency.of(attribute, types);
+
+                if (dependency != null) {
+                    dependencies.put(entityType.getJavaType(), dependency);
+                }
+            }
+        }
+
+        final Multimap<Class<?>, Dependency> requiredDependencies = LinkedHashMultimap.create();
+        for (final Map.Entry<Class<?>, Dependency> e : dependencies.entries()) {
+            if (!e.getValue().isOptional()) {
+                requiredDependencies.put(e.getKey(), e.getValue());
+            }
+        }
+
+        final Map<Class<?>, Integer> components = new StronglyConnectedComponents(types, dependencies).compute();
+        final Map<Class<?>, Integer> requiredComponents =
+                new StronglyConnectedComponents(types, requiredDependencies).compute();
+        final ImmutableListMultimap.Builder<Class<?>, Dependency> cyclic = ImmutableListMultimap.builder();
+        final Multimap<Class<?>, Class<?>> acyclic = LinkedHashMultimap.create();
+        final ImmutableSetMultimap.Builder<Class<?>, Class<?>> referenced = ImmutableSetMultimap.builder();
+
+        for (final Map.Entry<Class<?>, Dependency> e : dependencies.entries()) {
+            final Integer component = components.get(e.getKey());
+            final Integer requiredComponent = requiredComponents.get(e.getKey());
+            boolean isCyclic = false;
+
+            for (final Class<?> target : e.getValue().getTargetTypes()) {
+                referenced.put(e.getKey(), target);
+
+                // within a cycle, required references still order the types, unless they form a cycle themselves
+                if (components.get(target).equals(component)
+                        && (e.getValue().isOptional() || requiredComponents.get(target).equals(requiredComponent))) {
+                    isCyclic = true;
+                } else {
+                    acyclic.put(e.getKey(), target);
+                }
+            }
+
+            if (isCyclic) {
+                cyclic.put(e.getKey(), e.getValue());
+            }
+        }
+
+        return new EntityTypeGraph(sortTopologically(types, acyclic), cyclic.build(), referenced.build());
+    }
+
+    // Kahn's algorithm, picking the ready types by name to keep the order stable
+    private static ImmutableList<Class<?>> sortTopologically(
+            final Set<Class<?>> types, final Multimap<Class<?>, Class<?>> dependencies) {
+        final Map<Class<?>, Integer> pendingDependencyCounts = Maps.newHashMap();
+        final Multimap<Class<?>, Class<?>> dependents = LinkedHashMultimap.create();
+
+        for (final Class<?> type : types) {
+            final Collection<Class<?>> typeDependencies = dependencies.get(type);
+            pendingDependencyCounts.put(type, typeDependencies.size());
+
+            for (final Class<?> dependency : typeDependencies) {
+                dependents.put(dependency, type);
+            }
+        }
+
+        final SortedSet<Class<?>> ready = Sets.newTreeSet(BY_NAME);
+        for (final Class<?> type : types) {
+            if (pendingDependencyCounts.get(type) == 0) {
+                ready.add(type);
+            }
+        }
+
+        final ImmutableList.Builder<Class<?>> order = ImmutableList.builder();
+        while (!ready.isEmpty()) {
+            final Class<?> type = ready.first();
+            ready.remove(type);
+            order.add(type);
+
+            for (final Class<?> dependent : dependents.get(type)) {
+                final int count = pendingDependencyCounts.get(dependent) - 1;
+                pendingDependencyCounts.put(dependent, count);
+
+                if (count == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        return order.build();
+    }
+
+    /**
+     * An association through which an entity depends on (instances of) other entity types.
+     */
+    static final class Dependency {
+
+        private final AttributeAccessor accessor;
+        private final boolean plural;
+        private final boolean optional;
+        private final ImmutableSet<Class<?>> targetTypes;
+
+        private Dependency(
+                final AttributeAccessor accessor,
+                final boolean plural,
+                final boolean optional,
+                final ImmutableSet<Class<?>> targetTypes) {
+            this.accessor = accessor;
+            this.plural = plural;
+            this.optional = optional;
+            this.targetTypes = targetTypes;
+        }
+
+        AttributeAccessor getAccessor() {
+            return accessor;
+        }
+
+        boolean isPlural() {
+            return plural;
+        }
+
+        /**
+         * @return whether the reference may be {@code null}, and can thus be deferred; references to collections
+         *         always can, as they are kept in join tables
+         */
+        boolean isOptional() {
+            return optional;
+        }
+
+        ImmutableSet<Class<?>> getTargetTypes() {
+            return targetTypes;
+        }
+
+        private static Dependency of(final Attribute<?, ?> attribute, final Set<Class<?>> entityTypes) {
+            final boolean plural = attribute instanceof PluralAttribute;
+
+            switch (attribute.getPersistentAttributeType()) {
+                case MANY_TO_ONE:
+                case ONE_TO_ONE:
+                case ONE_TO_MANY:
+                case MANY_TO_MANY:
+                    break;
+                default:
+                    return null;
+            }
+
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+            if (accessor.isInverseSide()) {
+                return null;
+            }
+
+            final Class<?> target = plural
+                    ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType()
+                    : attribute.getJavaType();
+
+            // instances of any entity subtype of the target may be referenced
+            final ImmutableSet.Builder<Class<?>> targetTypes = ImmutableSet.builder();
+            for (final Class<?> type : entityTypes) {
+                if (target.isAssignableFrom(type)) {
+                    targetTypes.add(type);
+                }
+            }
+
+            final boolean optional = plural || isOptional((SingularAttribute<?, ?>) attribute, accessor);
+
+            return new Dependency(accessor, plural, optional, targetTypes.build());
+        }
+
+        // not every provider reports the optional attribute of the mapping annotations in the metamodel
+        private static boolean isOptional(final SingularAttribute<?, ?> attribute, final AttributeAccessor accessor) {
+            final ManyToOne manyToOne = accessor.getAnnotation(ManyToOne.class);
+            final OneToOne oneToOne = accessor.getAnnotation(OneToOne.class);
+            final JoinColumn joinColumn = accessor.getAnnotation(JoinColumn.class);
+
+            return attribute.isOptional()
+                    && (manyToOne == null || manyToOne.optional())
+                    && (oneToOne == null || oneToOne.optional())
+                    && (joinColumn == null || joinColumn.nullable());
+        }
+
+        @Override
+        public String toString() {
+            return accessor + " -> " + targetTypes;
+        }
+
+    }
+
+    // Tarjan's algorithm; maps every type to the index of its component, a type depending on itself being a cycle too
+    private static final class StronglyConnectedComponents {
+
+        private final Set<Class<?>> types;
+        private final Multimap<Class<?>, Dependency> dependencies;
+
+        private final Map<Class<?>, Integer> indexes = Maps.newHashMap();
+        private final Map<Class<?>, Integer> lowLinks = Maps.newHashMap();
+        private final List<Class<?>> stack = Lists.newArrayList();
+        private final Set<Class<?>> onStack = Sets.newHashSet();
+        private final Map<Class<?>, Integer> components = Maps.newHashMap();
+
+        private int nextIndex;
+        private int nextComponent;
+
+        private StronglyConnectedComponents(final Set<Class<?>> types, final Multimap<Class<?>, Dependency> dependencies) {
+            this.types = types;
+            this.dependencies = dependencies;
+        }
+
+        private Map<Class<?>, Integer> compute() {
+            for (final Class<?> type : types) {
+                if (!indexes.containsKey(type)) {
+                    visit(type);
+                }
+            }
+
+            return components;
+        }
+
+        private void visit(final Class<?> type) {
+            indexes.put(type, nextIndex);
+            lowLinks.put(type, nextIndex);
+            nextIndex++;
+            stack.add(type);
+            onStack.add(type);
+
+            for (final Dependency dependency : dependencies.get(type)) {
+                for (final Class<?> target : dependency.getTargetTypes()) {
+                    if (!indexes.containsKey(target)) {
+                        visit(target);
+                        lowLinks.put(type, Math.min(lowLinks.get(type), lowLinks.get(target)));
+                    } else if (onStack.contains(target)) {
+                        lowLinks.put(type, Math.min(lowLinks.get(type), indexes.get(target)));
+                    }
+                }
+            }
+
+            if (lowLinks.get(type).equals(indexes.get(type))) {
+                Class<?> member;
+                do {
+                    member = stack.remove(stack.size() - 1);
+                    onStack.remove(member);
+                    components.put(member, nextComponent);
+                } while (member != type);
+
+                nextComponent++;
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+import com.zimory.jpaunit.core.persist.EntityTypeGraph.Dependency;
+import org.springframework.stereotype.Component;
+
+/**
+ * Orders entities for insertion so that every entity comes after the entities it references, based on the
+ * {@link EntityTypeGraph} of the persistence unit, which is part of its {@link JpaUnitMetadata}.
+ * <p/>
+ * References that cannot be satisfied by the order (because the entity types reference each other) are detached from
+ * the entities by the plan and have to be restored once all entities are inserted (see {@link DeferredReference}).
+ * Non-optional references are never detached: planning fails if one of them refers to an entity that comes later.
+ */
+@Component
+public class InsertPlanner {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    @Inject
+    public InsertPlanner(final EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    /**
+     * Plans the insertion of the given entities. Note that the references that have to be deferred are removed from
+     * the entities right away.
+     *
+     * @param entities the entities to insert
+     * @return the plan
+     * @throws IllegalStateException if a non-optional reference would have to be deferred
+     */
+    public InsertPlan plan(final Collection<Object> entities) {
+        final EntityTypeGraph graph = getGraph();
+        final List<Object> ordered = order(entities, graph);
+        final Map<Object, Integer> positions = new IdentityHashMap<Object, Integer>(ordered.size());
+
+        for (int i = 0; i < ordered.size(); i++) {
+            positions.put(ordered.get(i), i);
+        }
+
+        final ImmutableList.Builder<DeferredReference> deferred = ImmutableList.builder();
+
+        for (int i = 0; i < ordered.size(); i++) {
+            final Object entity = ordered.get(i);
+
+            for (final Dependency dependency : graph.getCyclicDependencies(entity.getClass())) {
+                final Object value = dependency.getAccessor().get(entity);
+
+                // an entity may reference itself through a non-optional reference, the row exists once inserted
+                final int position = dependency.isOptional() ? i : i + 1;
+
+                if (value != null && referencesLaterEntity(value, dependency.isPlural(), position, positions)) {
+                    if (!dependency.isOptional()) {
+                        throw new IllegalStateException(String.format("Cannot insert %s before the entity it "
+                                + "references through the non-optional attribute %s, which cannot be deferred; list "
+                                + "the referenced entity first", entity, dependency.getAccessor()));
+                    }
+
+                    dependency.getAccessor().set(entity, null);
+                    deferred.add(new DeferredReference(entity, dependency.getAccessor(), value));
+                }
+            }
+        }
+
+        return new InsertPlan(ordered, deferred.build());
+    }
+
+    /**
+     * @return the entity types of the persistence unit, ordered so that every type comes after the types it
+     *         (non-cyclically) references
+     */
+    public ImmutableList<Class<?>> getEntityTypeOrder() {
+        return getGraph().getInsertOrder();
+    }
+
+    /**
+     * @param type an entity type
+     * @return the entity types the given type references through its owning associations
+     */
+    public ImmutableSet<Class<?>> getReferencedTypes(final Class<?> type) {
+        return getGraph().getReferencedTypes(type);
+    }
+
+    private EntityTypeGraph getGraph() {
+        return JpaUnitMetadata.of(entityManagerFactory).getEntityTypeGraph();
+    }
+
+    private static List<Object> order(final Collection<Object> entities, final EntityTypeGraph graph) {
+        final SortedMap<Integer, List<Object>> byRank = Maps.newTreeMap();
+
+        for (final Object entity : entities) {
+            final int rank = graph.getRank(entity.getClass());
+            List<Object> group = byRank.get(rank);
+
+            if (group == null) {
+                group = Lists.newArrayList();
+                byRank.put(rank, group);
+            }
+
+            group.add(entity);
+        }
+
+        final List<Object> ordered = Lists.newArrayListWithCapacity(entities.size());
+        for (final List<Object> group : byRank.values()) {
+            ordered.addAll(group);
+        }
+
+        return ordered;
+    }
+
+    private static boolean referencesLaterEntity(
+            final Object value, final boolean plural, final int position, final Map<Object, Integer> positions) {
+        if (!plural) {
+            return isLater(value, position, positions);
+        }
+
+        for (final Object element : (Iterable<?>) value) {
+            if (isLater(element, position, positions)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    // entities that are not part of the dataset are expected to exist already
+    private static boolean isLater(final Object referenced, final int position, final Map<Object, Integer> positions) {
+        final Integer referencedPosition = positions.get(referenced);
+        return referencedPosition != null && referencedPosition >= position;
+    }
+
+    /**
+     * The outcome of {@link InsertPlanner#plan(Collection)}.
+     */
+    public static final class InsertPlan {
+
+        private final List<Object> entities;
+        private final ImmutableList<DeferredReference> deferredReferences;
+
+        private InsertPlan(final List<Object> entities, final ImmutableList<DeferredReference> deferredReferences) {
+            this.entities = entities;
+            this.deferredReferences = deferredReferences;
+        }
+
+        /**
+         * @return the entities in insert order
+         */
+        public List<Object> getEntities() {
+            return entities;
+        }
+
+        /**
+         * @return the references to restore once all entities are inserted
+         */
+        public ImmutableList<DeferredReference> getDeferredReferences() {
+            return deferredReferences;
+        }
+
+    }
+
+    /**
+     * A reference (or collection of references) that was removed from an entity so that it could be inserted before
+     * the entities it references.
+     */
+    public static final class DeferredReference {
+
+        private final Object entity;
+        private final AttributeAccessor accessor;
+        private final Object value;
+
+        private DeferredReference(final Object entity, final AttributeAccessor accessor, final Object value) {
+            this.entity = entity;
+            this.accessor = accessor;
+            this.value = value;
+        }
+
+        public Object getEntity() {
+            return entity;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        public AttributeAccessor getAccessor() {
+            return accessor;
+        }
+
+        /**
+         * Sets the reference on the given instance of the entity (which may be the original entity or its managed
+         * counterpart).
+         *
+         * @param target the instance to set the reference on
+         * @param value the value to set
+         */
+        public void restore(final Object target, final Object value) {
+            accessor.set(target, value);
+        }
+
+        @Override
+        public String toString() {
+            return entity + "." + accessor;
+        }
+
+    }
+
+}
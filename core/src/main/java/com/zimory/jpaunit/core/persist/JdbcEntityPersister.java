@@ -0,0 +1,399 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.sql.ParameterMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.persist.InsertPlanner.DeferredReference;
+import com.zimory.jpaunit.core.persist.InsertPlanner.InsertPlan;
+import com.zimory.jpaunit.core.persist.TableMapping.JoinTableMapping;
+import com.zimory.jpaunit.core.persist.TableMapping.TableColumn;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Inserts the setup entities with plain JDBC, bypassing the persistence context, lifecycle callbacks and generators of
+ * the JPA provider: the rows of every table are inserted with multi-row {@code INSERT} statements of
+ * {@link JpaUnitConfig#getJdbcSetupRowsPerStatement()} rows each, which are executed in JDBC batches of
+ * {@link JpaUnitConfig#getJdbcSetupStatementsPerBatch()} statements. Prepared statements are reused for all rows of a
+ * setup. Tables and columns are derived from the mapping (see {@link TableMapping}), which limits this persister to
+ * plainly mapped entities.
+ * <p/>
+ * The rows are inserted in a transaction of their own, over a connection of the
+ * {@link JpaUnitConfig#getSetupDataSource() setup data source}, or else of the persistence unit (see
+ * {@link SetupConnection}). References between mutually dependent entities are set in an update once all entities are
+ * inserted, and join tables are filled last.
+ */
+@Component
+public class JdbcEntityPersister implements EntityPersister {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JdbcEntityPersister.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JpaUnitConfig config;
+    private final InsertPlanner insertPlanner;
+    private final TableMappings tableMappings;
+
+    @Inject
+    public JdbcEntityPersister(
+            final EntityManagerFactory entityManagerFactory,
+            final JpaUnitConfig config,
+            final InsertPlanner insertPlanner,
+            final TableMappings tableMappings) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.config = config;
+        this.insertPlanner = insertPlanner;
+        this.tableMappings = tableMappings;
+    }
+
+    @Override
+    public PersistStatistics persist(final Collection<Object> entities) {
+        final InsertPlan plan = insertPlanner.plan(entities);
+        final PersistStatistics statistics = new PersistStatistics();
+        final Inserts inserts = new Inserts(openConnection(), statistics);
+
+        try {
+            for (final Object entity : plan.getEntities()) {
+                inserts.insert(entity);
+            }
+
+            inserts.flush();
+
+            for (final DeferredReference reference : plan.getDeferredReferences()) {
+                reference.restore(reference.getEntity(), reference.getValue());
+                inserts.update(reference);
+                statistics.referenceRestored();
+            }
+
+            for (final Object entity : plan.getEntities()) {
+                inserts.addJoinRows(entity);
+            }
+
+            inserts.commit();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to insert setup entities", e);
+        } finally {
+            inserts.close();
+        }
+
+        LOGGER.debug("Inserted setup entities: {}", statistics);
+
+        return statistics;
+    }
+
+    // without planning, the entities are expected to be in an insertable order, as with the JPA persister
+    @Override
+    public PersistStatistics persist(final Iterator<Object> entities) {
+        final PersistStatistics statistics = new PersistStatistics();
+        final Inserts inserts = new Inserts(openConnection(), statistics);
+
+        try {
+            while (entities.hasNext()) {
+                final Object entity = entities.next();
+
+                inserts.insert(entity);
+                inserts.addJoinRows(entity);
+            }
+
+            inserts.commit();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to insert setup entities", e);
+        } finally {
+            inserts.close();
+        }
+
+        LOGGER.debug("Inserted setup entities: {}", statistics);
+
+        return statistics;
+    }
+
+    private SetupConnection openConnection() {
+        return SetupConnection.open(entityManagerFactory, config.getSetupDataSource());
+    }
+
+    /**
+     * The rows of a single setup: rows of the same table are collected until a statement's worth of them is complete
+     * (or the next row belongs to another table, as the tables have to be filled in order), and the statements of a
+     * table are batched likewise.
+     */
+    private final class Inserts {
+
+        private final SetupConnection connection;
+        private final PersistStatistics statistics;
+        private final Map<String, Statement> statements = Maps.newHashMap();
+        private final ListMultimap<JoinTableMapping, Object[]> joinRows = LinkedListMultimap.create();
+
+        private final int rowsPerStatement = Math.max(1, config.getJdbcSetupRowsPerStatement());
+        private final int statementsPerBatch = Math.max(1, config.getJdbcSetupStatementsPerBatch());
+
+        private final List<Object[]> rows = Lists.newArrayList();
+        private String table;
+        private List<String> columns;
+        private Statement batched;
+        private int batchedCount;
+
+        private Inserts(final SetupConnection connection, final PersistStatistics statistics) {
+            this.connection = connection;
+            this.statistics = statistics;
+        }
+
+        void insert(final Object entity) throws SQLException {
+            final TableMapping mapping = tableMappings.get(entity.getClass());
+            final List<TableColumn> tableColumns = mapping.getColumns();
+            final Object[] row = new Object[tableColumns.size()];
+
+            for (int i = 0; i < row.length; i++) {
+                row[i] = tableColumns.get(i).getValue(entity);
+            }
+
+            addRow(mapping.getTable(), columnNames(tableColumns), row);
+            statistics.entityPersisted(entity.getClass());
+        }
+
+        void addJoinRows(final Object entity) {
+            for (final JoinTableMapping joinTable : tableMappings.get(entity.getClass()).getJoinTables()) {
+                final Collection<?> elements = (Collection<?>) joinTable.getAttribute().get(entity);
+
+                if (elements == null) {
+                    continue;
+                }
+
+                final List<TableColumn> ownerColumns = joinTable.getOwnerColumns();
+                final List<TableColumn> targetColumns = joinTable.getTargetColumns();
+                final int width = ownerColumns.size() + targetColumns.size()
+                        + (joinTable.getOrderColumn() == null ? 0 : 1);
+                int position = 0;
+
+                for (final Object element : elements) {
+                    final Object[] row = new Object[width];
+                    int i = 0;
+
+                    for (final TableColumn column : ownerColumns) {
+                        row[i++] = column.getValue(entity);
+                    }
+
+                    for (final TableColumn column : targetColumns) {
+                        row[i++] = column.getValue(element);
+                    }
+
+                    if (joinTable.getOrderColumn() != null) {
+                        row[i] = position++;
+                    }
+
+                    joinRows.put(joinTable, row);
+                }
+            }
+        }
+
+        void update(final DeferredReference reference) throws SQLException {
+            final TableMapping mapping = tableMappings.get(reference.getEntity().getClass());
+            final List<TableColumn> referenceColumns = mapping.getColumns(reference.getAccessor().getName());
+
+            // deferred collections end up in join tables, which are filled last anyway
+            if (referenceColumns.isEmpty()) {
+                return;
+            }
+
+            final List<TableColumn> idColumns = mapping.getIdColumns();
+            final String sql = "UPDATE " + mapping.getTable()
+                    + " SET " + Joiner.on(" = ?, ").join(columnNames(referenceColumns)) + " = ?"
+                    + " WHERE " + Joiner.on(" = ? AND ").join(columnNames(idColumns)) + " = ?";
+            final Statement statement = statement(sql);
+            int index = 1;
+
+            for (final TableColumn column : referenceColumns) {
+                statement.bind(index++, column.getValue(reference.getEntity()));
+            }
+
+            for (final TableColumn column : idColumns) {
+                statement.bind(index++, column.getValue(reference.getEntity()));
+            }
+
+            statement.preparedStatement.executeUpdate();
+            statistics.flushed();
+        }
+
+        void commit() throws SQLException {
+            flush();
+
+            for (final JoinTableMapping joinTable : joinRows.keySet()) {
+                final List<String> joinColumns = Lists.newArrayList(columnNames(joinTable.getOwnerColumns()));
+                joinColumns.addAll(columnNames(joinTable.getTargetColumns()));
+
+                if (joinTable.getOrderColumn() != null) {
+                    joinColumns.add(joinTable.getOrderColumn());
+                }
+
+                for (final Object[] row : joinRows.get(joinTable)) {
+                    addRow(joinTable.getTable(), joinColumns, row);
+                }
+            }
+
+            flush();
+            connection.commit();
+        }
+
+        void flush() throws SQLException {
+            if (!rows.isEmpty()) {
+                executeBatch();
+                execute(statement(insertSql(rows.size())), false);
+            }
+
+            executeBatch();
+        }
+
+        void close() {
+            try {
+                for (final Statement statement : statements.values()) {
+                    statement.preparedStatement.close();
+                }
+            } catch (final SQLException e) {
+                LOGGER.warn("Failed to close the statements of the setup", e);
+            } finally {
+                connection.close();
+            }
+        }
+
+        private void addRow(final String rowTable, final List<String> rowColumns, final Object[] row)
+                throws SQLException {
+            if (!rowTable.equals(table) || !rowColumns.equals(columns)) {
+                flush();
+                table = rowTable;
+                columns = rowColumns;
+            }
+
+            rows.add(row);
+
+            if (rows.size() == rowsPerStatement) {
+                execute(statement(insertSql(rowsPerStatement)), true);
+            }
+        }
+
+        private void execute(final Statement statement, final boolean batch) throws SQLException {
+            int index = 1;
+
+            for (final Object[] row : rows) {
+                for (final Object value : row) {
+                    statement.bind(index++, value);
+                }
+            }
+
+            rows.clear();
+
+            if (!batch) {
+                statement.preparedStatement.executeUpdate();
+                statistics.flushed();
+                return;
+            }
+
+            statement.preparedStatement.addBatch();
+            batched = statement;
+
+            if (++batchedCount == statementsPerBatch) {
+                executeBatch();
+            }
+        }
+
+        private void executeBatch() throws SQLException {
+            if (batchedCount > 0) {
+                batched.preparedStatement.executeBatch();
+                statistics.flushed();
+                batchedCount = 0;
+            }
+        }
+
+        private String insertSql(final int rowCount) {
+            final StringBuilder sql = new StringBuilder("INSERT INTO ").append(table)
+                    .append(" (").append(Joiner.on(", ").join(columns)).append(") VALUES ");
+
+            for (int row = 0; row < rowCount; row++) {
+                sql.append(row == 0 ? "(" : ", (");
+
+                for (int column = 0; column < columns.size(); column++) {
+                    sql.append(column == 0 ? "?" : ", ?");
+                }
+
+                sql.append(')');
+            }
+
+            return sql.toString();
+        }
+
+        private Statement statement(final String sql) throws SQLException {
+            Statement statement = statements.get(sql);
+
+            if (statement == null) {
+                LOGGER.debug("Preparing setup statement: {}", sql);
+                statement = new Statement(connection.get().prepareStatement(sql));
+                statements.put(sql, statement);
+            }
+
+            return statement;
+        }
+
+    }
+
+    private static List<String> columnNames(final List<TableColumn> columns) {
+        final List<String> names = Lists.newArrayListWithCapacity(columns.size());
+
+        for (final TableColumn column : columns) {
+            names.add(column.getName());
+        }
+
+        return names;
+    }
+
+    private static final class Statement {
+
+        private final PreparedStatement preparedStatement;
+        private int[] parameterTypes;
+
+        private Statement(final PreparedStatement preparedStatement) {
+            this.preparedStatement = preparedStatement;
+        }
+
+        void bind(final int index, final Object value) throws SQLException {
+            if (value == null) {
+                preparedStatement.setNull(index, parameterType(index));
+            } else {
+                preparedStatement.setObject(index, value);
+            }
+        }
+
+        // some drivers insist on the actual type of a null parameter
+        private int parameterType(final int index) {
+            if (parameterTypes == null) {
+                try {
+                    final ParameterMetaData metaData = preparedStatement.getParameterMetaData();
+                    parameterTypes = new int[metaData.getParameterCount() + 1];
+
+                    for (int i = 1; i < parameterTypes.length; i++) {
+                        parameterTypes[i] = metaData.getParameterType(i);
+                    }
+                } catch (final SQLException e) {
+                    LOGGER.debug("Parameter types not available, binding untyped nulls", e);
+                    parameterTypes = new int[0];
+                }
+            }
+
+            return index < parameterTypes.length ? parameterTypes[index] : Types.NULL;
+        }
+
+    }
+
+}
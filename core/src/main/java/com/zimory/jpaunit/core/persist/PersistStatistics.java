@@ -0,0 +1,68 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.Map;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * What a single {@link EntityPersister#persist} call did: the number of entities persisted per type and the number of
+ * flushes (i.e. statement round trips) it took.
+ */
+public final class PersistStatistics {
+
+    private final Map<Class<?>, Integer> entityCounts = Maps.newLinkedHashMap();
+    private int flushCount;
+    private int restoredReferenceCount;
+
+    public void entityPersisted(final Class<?> entityClass) {
+        final Integer count = entityCounts.get(entityClass);
+        entityCounts.put(entityClass, count == null ? 1 : count + 1);
+    }
+
+    public void flushed() {
+        flushCount++;
+    }
+
+    public void referenceRestored() {
+        restoredReferenceCount++;
+    }
+
+    public ImmutableMap<Class<?>, Integer> getEntityCounts() {
+        return ImmutableMap.copyOf(entityCounts);
+    }
+
+    public int getEntityCount() {
+        int sum = 0;
+
+        for (final Integer count : entityCounts.values()) {
+            sum += count;
+        }
+
+        return sum;
+    }
+
+    public int getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * @return the number of references between mutually dependent entities that were set in an update after inserting
+     * the entities
+     */
+    public int getRestoredReferenceCount() {
+        return restoredReferenceCount;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("entityCount", getEntityCount())
+                .add("flushCount", flushCount)
+                .add("restoredReferenceCount", restoredReferenceCount)
+                .add("entityCounts", entityCounts)
+                .toString();
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+import javax.sql.DataSource;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A JDBC connection of the persistence unit under test, in a transaction of its own. The connection is taken from the
+ * given data source, or else from the data source of the entity manager factory; failing that, the connection of a
+ * new entity manager is used, in a transaction of the entity manager.
+ * <p/>
+ * Within an {@link IsolatedTransaction}, the connection of the isolated transaction is used instead, and neither
+ * committed nor closed.
+ */
+public abstract class SetupConnection {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupConnection.class);
+
+    private static final List<String> DATA_SOURCE_PROPERTIES = ImmutableList.of(
+            "javax.persistence.nonJtaDataSource", "hibernate.connection.datasource");
+
+    /**
+     * @param entityManagerFactory the entity manager factory of the persistence unit under test
+     * @param dataSource the data source to take the connection from, may be {@code null}
+     * @return the connection, with a transaction begun
+     */
+    public static SetupConnection open(final EntityManagerFactory entityManagerFactory, final DataSource dataSource) {
+        final Optional<IsolatedTransaction> isolatedTransaction = IsolatedTransaction.current(entityManagerFactory);
+
+        if (isolatedTransaction.isPresent()) {
+            return new IsolatedConnection(isolatedTransaction.get());
+        }
+
+        if (dataSource != null) {
+            return new DataSourceConnection(dataSource);
+        }
+
+        for (final String property : DATA_SOURCE_PROPERTIES) {
+            final Object value = entityManagerFactory.getProperties().get(property);
+
+            if (value instanceof DataSource) {
+                return new DataSourceConnection((DataSource) value);
+            }
+        }
+
+        return new EntityManagerConnection(entityManagerFactory.createEntityManager());
+    }
+
+    /**
+     * @param em an entity manager with an active transaction
+     * @return the JDBC connection of the entity manager
+     * @throws IllegalStateException if the JPA provider does not expose the connection
+     */
+    public static Connection getConnection(final EntityManager em) {
+        try {
+            return em.unwrap(Connection.class);
+        } catch (final PersistenceException e) {
+            LOGGER.debug("The entity manager does not expose its connection: {}", e.getMessage());
+        }
+
+        // Hibernate only exposes the connection through its session
+        final Object delegate = em.getDelegate();
+
+        try {
+            final Method connection = delegate.getClass().getMethod("connection");
+            return (Connection) connection.invoke(delegate);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Cannot obtain a JDBC connection from the entity manager, "
+                    + "the setup data source has to be set to use the JDBC setup", e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException("Failed to obtain a JDBC connection from the entity manager",
+                    e.getCause());
+        }
+    }
+
+    public abstract Connection get();
+
+    public abstract void commit() throws SQLException;
+
+    /**
+     * Closes the connection, rolling back the transaction unless it was committed.
+     */
+    public abstract void close();
+
+    private static final class DataSourceConnection extends SetupConnection {
+
+        private final Connection connection;
+
+        private DataSourceConnection(final DataSource dataSource) {
+            try {
+                connection = dataSource.getConnection();
+                connection.setAutoCommit(false);
+            } catch (final SQLException e) {
+                throw new IllegalStateException("Failed to open a JDBC connection for the setup", e);
+            }
+        }
+
+        @Override
+        public Connection get() {
+            return connection;
+        }
+
+        @Override
+        public void commit() throws SQLException {
+            connection.commit();
+        }
+
+        @Override
+        public void close() {
+            try {
+                // a no-op after the commit
+                connection.rollback();
+                connection.close();
+            } catch (final SQLException e) {
+                LOGGER.warn("Failed to close the JDBC connection of the setup", e);
+            }
+        }
+
+    }
+
+    private static final class IsolatedConnection extends SetupConnection {
+
+        private final Connection connection;
+
+        private IsolatedConnection(final IsolatedTransaction transaction) {
+            // the rows are read and written behind the back of the persistence context
+            transaction.getEntityManager().flush();
+            this.connection = transaction.getConnection();
+        }
+
+        @Override
+        public Connection get() {
+            return connection;
+        }
+
+        @Override
+        public void commit() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static final class EntityManagerConnection extends SetupConnection {
+
+        private final EntityManager em;
+        private final Connection connection;
+
+        private EntityManagerConnection(final EntityManager em) {
+            this.em = em;
+
+            try {
+                em.getTransaction().begin();
+                connection = getConnection(em);
+            } catch (final RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public Connection get() {
+            return connection;
+        }
+
+        @Override
+        public void commit() {
+            em.getTransaction().commit();
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } finally {
+                em.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,254 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.persistence.PersistenceUnitUtil;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.model.EntityKey;
+import com.zimory.jpaunit.core.read.DatasetBytes;
+import com.zimory.jpaunit.core.read.EntityIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persists setup entities while they are still being parsed: a parser thread fills a bounded queue from an
+ * {@link EntityIterator}, which the {@link EntityPersister} drains on the calling thread, within its transaction.
+ * <p/>
+ * A parse error is rethrown by the persister, which rolls the transaction back; a persist error stops the parser.
+ */
+@Component
+public class SetupPipeline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupPipeline.class);
+
+    private static final Object END = new Object();
+
+    private final EntityPersister entityPersister;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final JpaUnitConfig config;
+
+    @Inject
+    public SetupPipeline(
+            final EntityPersister entityPersister,
+            final PersistenceUnitUtil persistenceUnitUtil,
+            final JpaUnitConfig config) {
+        this.entityPersister = entityPersister;
+        this.persistenceUnitUtil = persistenceUnitUtil;
+        this.config = config;
+    }
+
+    /**
+     * Parses and persists the given entities.
+     *
+     * @param entities the entities to persist, closed once parsed
+     * @return the result of the setup
+     */
+    public Result run(final EntityIterator entities) {
+        final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(config.getSetupQueueCapacity());
+        final Parser parser = new Parser(entities, queue);
+        final Persister persister = new Persister(queue, parser);
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("jpaunit-setup-parser-%d")
+                .setDaemon(true)
+                .build());
+
+        try {
+            final Future<Void> parsing = executor.submit(parser);
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final PersistStatistics statistics;
+
+            try {
+                statistics = entityPersister.persist(persister);
+            } finally {
+                parsing.cancel(true);
+            }
+
+            final long persisterWaitNanos = persister.waitNanos;
+            final SetupTimings timings = new SetupTimings(parser.parseNanos, parser.waitNanos,
+                    stopwatch.elapsed(TimeUnit.NANOSECONDS) - persisterWaitNanos, persisterWaitNanos);
+
+            LOGGER.debug("Pipelined setup: {}", timings);
+
+            return new Result(persister.keys.build(), statistics, timings, parser.bytesRead);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Parser implements Callable<Void> {
+
+        private final EntityIterator entities;
+        private final BlockingQueue<Object> queue;
+
+        // published to the persister by handing over END
+        private Throwable failure;
+        private long parseNanos;
+        private long waitNanos;
+        private long bytesRead;
+
+        private Parser(final EntityIterator entities, final BlockingQueue<Object> queue) {
+            this.entities = entities;
+            this.queue = queue;
+        }
+
+        @Override
+        public Void call() throws InterruptedException {
+            final long startBytes = DatasetBytes.get();
+
+            try {
+                parse();
+            } catch (final InterruptedException e) {
+                // the persister gave up
+                return null;
+            } catch (final Throwable t) {
+                failure = t;
+            } finally {
+                close();
+                bytesRead = DatasetBytes.get() - startBytes;
+            }
+
+            queue.put(END);
+
+            return null;
+        }
+
+        private void parse() throws InterruptedException {
+            while (true) {
+                long start = System.nanoTime();
+
+                if (!entities.hasNext()) {
+                    parseNanos += System.nanoTime() - start;
+                    return;
+                }
+
+                final Object entity = entities.next();
+                parseNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                queue.put(entity);
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+
+        private void close() {
+            try {
+                entities.close();
+            } catch (final IOException e) {
+                LOGGER.warn("Failed to close setup datasets", e);
+            }
+        }
+
+    }
+
+    // collects the key of every entity once the persister asks for the next one, i.e. after it was persisted, so
+    // that generated identifiers are known
+    private final class Persister extends AbstractIterator<Object> {
+
+        private final BlockingQueue<Object> queue;
+        private final Parser parser;
+        private final ImmutableSet.Builder<EntityKey> keys = ImmutableSet.builder();
+
+        private Object previous;
+        private long waitNanos;
+
+        private Persister(final BlockingQueue<Object> queue, final Parser parser) {
+            this.queue = queue;
+            this.parser = parser;
+        }
+
+        @Override
+        protected Object computeNext() {
+            if (previous != null) {
+                keys.add(EntityKey.of(persistenceUnitUtil, previous));
+            }
+
+            final Object next = take();
+
+            if (next == END) {
+                if (parser.failure != null) {
+                    throw new RuntimeException("Failed to parse the setup datasets", parser.failure);
+                }
+
+                previous = null;
+
+                return endOfData();
+            }
+
+            previous = next;
+
+            return next;
+        }
+
+        private Object take() {
+            final long start = System.nanoTime();
+
+            try {
+                return queue.take();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for setup entities", e);
+            } finally {
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+
+    }
+
+    /**
+     * The outcome of {@link SetupPipeline#run(EntityIterator)}.
+     */
+    public static final class Result {
+
+        private final ImmutableSet<EntityKey> setupEntityKeys;
+        private final PersistStatistics statistics;
+        private final SetupTimings timings;
+        private final long parsedBytes;
+
+        private Result(
+                final ImmutableSet<EntityKey> setupEntityKeys,
+                final PersistStatistics statistics,
+                final SetupTimings timings,
+                final long parsedBytes) {
+            this.setupEntityKeys = setupEntityKeys;
+            this.statistics = statistics;
+            this.timings = timings;
+            this.parsedBytes = parsedBytes;
+        }
+
+        public ImmutableSet<EntityKey> getSetupEntityKeys() {
+            return setupEntityKeys;
+        }
+
+        public PersistStatistics getStatistics() {
+            return statistics;
+        }
+
+        public SetupTimings getTimings() {
+            return timings;
+        }
+
+        /**
+         * @return the number of bytes of dataset resources the parser thread read
+         */
+        public long getParsedBytes() {
+            return parsedBytes;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Objects;
+
+/**
+ * Where the time of a pipelined setup went (see {@link SetupPipeline}).
+ */
+public final class SetupTimings {
+
+    private final long parseNanos;
+    private final long parserWaitNanos;
+    private final long persistNanos;
+    private final long persisterWaitNanos;
+
+    SetupTimings(final long parseNanos, final long parserWaitNanos, final long persistNanos, final long persisterWaitNanos) {
+        this.parseNanos = parseNanos;
+        this.parserWaitNanos = parserWaitNanos;
+        this.persistNanos = persistNanos;
+        this.persisterWaitNanos = persisterWaitNanos;
+    }
+
+    /**
+     * @return the time spent parsing the datasets
+     */
+    public long getParseTime(final TimeUnit unit) {
+        return unit.convert(parseNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time the parser spent waiting for the persister to make room in the queue
+     */
+    public long getParserWaitTime(final TimeUnit unit) {
+        return unit.convert(parserWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time spent persisting and flushing the entities
+     */
+    public long getPersistTime(final TimeUnit unit) {
+        return unit.convert(persistNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the time the persister spent waiting for the parser to provide the next entity
+     */
+    public long getPersisterWaitTime(final TimeUnit unit) {
+        return unit.convert(persisterWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("parseMillis", getParseTime(TimeUnit.MILLISECONDS))
+                .add("parserWaitMillis", getParserWaitTime(TimeUnit.MILLISECONDS))
+                .add("persistMillis", getPersistTime(TimeUnit.MILLISECONDS))
+                .add("persisterWaitMillis", getPersisterWaitTime(TimeUnit.MILLISECONDS))
+                .toString();
+    }
+
+}
@@ -0,0 +1,591 @@
+package com.zimory.jpaunit.core.persist;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import javax.persistence.AttributeOverride;
+import javax.persistence.AttributeOverrides;
+import javax.persistence.Column;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinColumns;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.OneToMany;
+import javax.persistence.OrderColumn;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.SecondaryTable;
+import javax.persistence.SecondaryTables;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.ManagedType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+
+/**
+ * The table an entity type is stored in, with the columns its attributes map to, derived from the metamodel and the
+ * mapping annotations. Names that are not given by annotations follow the JPA defaults.
+ * <p/>
+ * Only plain mappings are supported: basic, embedded and (composite) ID attributes, owning to-one references, and
+ * owning to-many references stored in a join table. Entity inheritance, secondary tables, element collections, maps
+ * and to-many references stored in a foreign key of the target table are not.
+ */
+public final class TableMapping {
+
+    private final String table;
+    private final ImmutableList<TableColumn> columns;
+    private final ImmutableList<TableColumn> idColumns;
+    private final ImmutableList<JoinTableMapping> joinTables;
+    private final boolean idClass;
+
+    private TableMapping(
+            final String table,
+            final ImmutableList<TableColumn> columns,
+            final ImmutableList<TableColumn> idColumns,
+            final ImmutableList<JoinTableMapping> joinTables,
+            final boolean idClass) {
+        this.table = table;
+        this.columns = columns;
+        this.idColumns = idColumns;
+        this.joinTables = joinTables;
+        this.idClass = idClass;
+    }
+
+    /**
+     * @param entityType an entity type
+     * @param metamodel the metamodel of the persistence unit
+     * @return the table mapping of the entity type
+     * @throws UnsupportedOperationException if the entity type is mapped in a way that is not supported
+     */
+    public static TableMapping of(final EntityType<?> entityType, final Metamodel metamodel) {
+        checkSupported(entityType, metamodel);
+
+        final ImmutableList.Builder<TableColumn> columns = ImmutableList.builder();
+        final ImmutableList.Builder<JoinTableMapping> joinTables = ImmutableList.builder();
+        final String table = tableName(entityType);
+
+        for (final Attribute<?, ?> attribute : sorted(entityType.getAttributes())) {
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+
+            if (accessor.isInverseSide()) {
+                continue;
+            }
+
+            if (attribute.isCollection()) {
+                joinTables.add(joinTable(entityType, table, (PluralAttribute<?, ?, ?>) attribute, accessor, metamodel));
+            } else {
+                addColumns(columns, (SingularAttribute<?, ?>) attribute, accessor,
+                        ImmutableList.<AttributeAccessor>of(), columnName(accessor), metamodel);
+            }
+        }
+
+        return new TableMapping(table, columns.build(), idColumns(entityType, metamodel), joinTables.build(),
+                !entityType.hasSingleIdAttribute());
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public ImmutableList<TableColumn> getColumns() {
+        return columns;
+    }
+
+    public ImmutableList<TableColumn> getIdColumns() {
+        return idColumns;
+    }
+
+    /**
+     * @param id the ID of an entity of this type, as returned by {@link PersistenceUnitUtil#getIdentifier(Object)}
+     * @return the values of the ID columns (and likewise of the owner columns of the join tables) for the ID
+     */
+    public Object[] getIdColumnValues(final Object id) {
+        final Object[] values = new Object[idColumns.size()];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = idColumns.get(i).getValueOfId(id, idClass);
+        }
+
+        return values;
+    }
+
+    /**
+     * @param attributeName the name of an attribute of the entity type
+     * @return the columns the attribute maps to
+     */
+    public ImmutableList<TableColumn> getColumns(final String attributeName) {
+        final ImmutableList.Builder<TableColumn> builder = ImmutableList.builder();
+
+        for (final TableColumn column : columns) {
+            if (column.path.get(0).getName().equals(attributeName)) {
+                builder.add(column);
+            }
+        }
+
+        return builder.build();
+    }
+
+    public ImmutableList<JoinTableMapping> getJoinTables() {
+        return joinTables;
+    }
+
+    @Override
+    public String toString() {
+        return table + columns;
+    }
+
+    private static void checkSupported(final EntityType<?> entityType, final Metamodel metamodel) {
+        final Class<?> javaType = entityType.getJavaType();
+
+        if (entityType.getSupertype() instanceof EntityType) {
+            throw unsupported(entityType, "entity inheritance");
+        }
+
+        for (final EntityType<?> other : metamodel.getEntities()) {
+            if (other.getSupertype() == entityType) {
+                throw unsupported(entityType, "entity inheritance");
+            }
+        }
+
+        if (javaType.isAnnotationPresent(SecondaryTable.class) || javaType.isAnnotationPresent(SecondaryTables.class)) {
+            throw unsupported(entityType, "secondary tables");
+        }
+    }
+
+    private static void addColumns(
+            final ImmutableList.Builder<TableColumn> columns,
+            final SingularAttribute<?, ?> attribute,
+            final AttributeAccessor accessor,
+            final List<AttributeAccessor> parentPath,
+            final String name,
+            final Metamodel metamodel) {
+        final List<AttributeAccessor> path = append(parentPath, accessor);
+
+        switch (attribute.getPersistentAttributeType()) {
+            case BASIC:
+                columns.add(new TableColumn(name, path));
+                break;
+            case EMBEDDED:
+                final Map<String, String> overrides = attributeOverrides(accessor);
+                final ManagedType<?> embeddable = metamodel.embeddable(attribute.getJavaType());
+
+                for (final Attribute<?, ?> child : sorted(embeddable.getAttributes())) {
+                    if (child.isCollection()) {
+                        throw new UnsupportedOperationException("Collection in embeddable is not supported: " + child);
+                    }
+
+                    final AttributeAccessor childAccessor = AttributeAccessor.of(child);
+                    final String childName = overrides.containsKey(child.getName())
+                            ? overrides.get(child.getName())
+                            : columnName(childAccessor);
+
+                    addColumns(columns, (SingularAttribute<?, ?>) child, childAccessor, path, childName, metamodel);
+                }
+                break;
+            case MANY_TO_ONE:
+            case ONE_TO_ONE:
+                final List<TableColumn> targetIds = idColumns(metamodel.entity(attribute.getJavaType()), metamodel);
+                final List<String> joinColumnNames = joinColumnNames(accessor);
+
+                for (int i = 0; i < targetIds.size(); i++) {
+                    final TableColumn targetId = targetIds.get(i);
+                    final String joinColumnName = i < joinColumnNames.size()
+                            ? joinColumnNames.get(i)
+                            : accessor.getName() + "_" + targetId.name;
+
+                    columns.add(new TableColumn(joinColumnName, concat(path, targetId.path)));
+                }
+                break;
+            default:
+                throw new UnsupportedOperationException("Attribute mapping is not supported: " + attribute);
+        }
+    }
+
+    private static ImmutableList<TableColumn> idColumns(final EntityType<?> entityType, final Metamodel metamodel) {
+        final ImmutableList.Builder<TableColumn> columns = ImmutableList.builder();
+        final Collection<? extends SingularAttribute<?, ?>> idAttributes = entityType.hasSingleIdAttribute()
+                ? Collections.singleton(entityType.getId(entityType.getIdType().getJavaType()))
+                : entityType.getIdClassAttributes();
+
+        for (final SingularAttribute<?, ?> attribute : sorted(idAttributes)) {
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+            addColumns(columns, attribute, accessor, ImmutableList.<AttributeAccessor>of(), columnName(accessor),
+                    metamodel);
+        }
+
+        return columns.build();
+    }
+
+    private static JoinTableMapping joinTable(
+            final EntityType<?> owner,
+            final String ownerTable,
+            final PluralAttribute<?, ?, ?> attribute,
+            final AttributeAccessor accessor,
+            final Metamodel metamodel) {
+        if (attribute.getCollectionType() == PluralAttribute.CollectionType.MAP
+                || attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.ELEMENT_COLLECTION
+                || accessor.getAnnotation(JoinColumn.class) != null
+                || accessor.getAnnotation(JoinColumns.class) != null) {
+            throw new UnsupportedOperationException("Attribute mapping is not supported: " + attribute);
+        }
+
+        final EntityType<?> target = metamodel.entity(attribute.getElementType().getJavaType());
+        final JoinTable annotation = accessor.getAnnotation(JoinTable.class);
+        final String name = annotation != null && !annotation.name().isEmpty()
+                ? annotation.name()
+                : ownerTable + "_" + tableName(target);
+
+        final String ownerPrefix = inverseAttributeName(target, accessor.getName()).or(owner.getName());
+        final List<TableColumn> ownerColumns = joinTableColumns(idColumns(owner, metamodel), ownerPrefix,
+                annotation == null ? new JoinColumn[0] : annotation.joinColumns());
+        final List<TableColumn> targetColumns = joinTableColumns(idColumns(target, metamodel), accessor.getName(),
+                annotation == null ? new JoinColumn[0] : annotation.inverseJoinColumns());
+
+        final OrderColumn orderColumn = accessor.getAnnotation(OrderColumn.class);
+        final String orderColumnName = orderColumn == null
+                ? null
+                : orderColumn.name().isEmpty() ? accessor.getName() + "_ORDER" : orderColumn.name();
+
+        return new JoinTableMapping(name, accessor, ownerColumns, targetColumns, orderColumnName);
+    }
+
+    private static Optional<String> inverseAttributeName(
+            final EntityType<?> target, final String attributeName) {
+        for (final Attribute<?, ?> attribute : target.getAttributes()) {
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+            final ManyToMany manyToMany = accessor.getAnnotation(ManyToMany.class);
+            final OneToMany oneToMany = accessor.getAnnotation(OneToMany.class);
+
+            if (manyToMany != null && manyToMany.mappedBy().equals(attributeName)
+                    || oneToMany != null && oneToMany.mappedBy().equals(attributeName)) {
+                return Optional.of(attribute.getName());
+            }
+        }
+
+        return Optional.absent();
+    }
+
+    private static List<TableColumn> joinTableColumns(
+            final List<TableColumn> idColumns, final String prefix, final JoinColumn[] joinColumns) {
+        final ImmutableList.Builder<TableColumn> columns = ImmutableList.builder();
+
+        for (int i = 0; i < idColumns.size(); i++) {
+            final TableColumn idColumn = idColumns.get(i);
+            final String name = i < joinColumns.length && !joinColumns[i].name().isEmpty()
+                    ? joinColumns[i].name()
+                    : prefix + "_" + idColumn.name;
+
+            columns.add(new TableColumn(name, idColumn.path));
+        }
+
+        return columns.build();
+    }
+
+    private static String tableName(final EntityType<?> entityType) {
+        final Table table = entityType.getJavaType().getAnnotation(Table.class);
+
+        if (table == null || table.name().isEmpty()) {
+            return entityType.getName();
+        }
+
+        return table.schema().isEmpty() ? table.name() : table.schema() + "." + table.name();
+    }
+
+    private static String columnName(final AttributeAccessor accessor) {
+        final Column column = accessor.getAnnotation(Column.class);
+        return column == null || column.name().isEmpty() ? accessor.getName() : column.name();
+    }
+
+    private static List<String> joinColumnNames(final AttributeAccessor accessor) {
+        final List<String> names = Lists.newArrayList();
+        final JoinColumn joinColumn = accessor.getAnnotation(JoinColumn.class);
+        final JoinColumns joinColumns = accessor.getAnnotation(JoinColumns.class);
+
+        if (joinColumn != null && !joinColumn.name().isEmpty()) {
+            names.add(joinColumn.name());
+        }
+
+        if (joinColumns != null) {
+            for (final JoinColumn column : joinColumns.value()) {
+                names.add(column.name());
+            }
+        }
+
+        return names;
+    }
+
+    private static Map<String, String> attributeOverrides(final AttributeAccessor accessor) {
+        final Map<String, String> overrides = Maps.newHashMap();
+        final AttributeOverride override = accessor.getAnnotation(AttributeOverride.class);
+        final AttributeOverrides multiple = accessor.getAnnotation(AttributeOverrides.class);
+
+        if (override != null) {
+            overrides.put(override.name(), override.column().name());
+        }
+
+        if (multiple != null) {
+            for (final AttributeOverride each : multiple.value()) {
+                overrides.put(each.name(), each.column().name());
+            }
+        }
+
+        return overrides;
+    }
+
+    // declaration order, superclasses first, so that the generated statements are stable
+    private static <A extends Attribute<?, ?>> List<A> sorted(final Collection<A> attributes) {
+        final List<A> sorted = Lists.newArrayList(attributes);
+
+        Collections.sort(sorted, new Comparator<A>() {
+            @Override
+            public int compare(final A a, final A b) {
+                final int depthA = depth(a.getJavaMember().getDeclaringClass());
+                final int depthB = depth(b.getJavaMember().getDeclaringClass());
+
+                if (depthA != depthB) {
+                    return depthA < depthB ? -1 : 1;
+                }
+
+                final int indexA = fieldIndex(a);
+                final int indexB = fieldIndex(b);
+
+                return indexA != indexB ? (indexA < indexB ? -1 : 1) : a.getName().compareTo(b.getName());
+            }
+        });
+
+        return sorted;
+    }
+
+    private static int depth(final Class<?> type) {
+        int depth = 0;
+
+        for (Class<?> c = type.getSuperclass(); c != null; c = c.getSuperclass()) {
+            depth++;
+        }
+
+        return depth;
+    }
+
+    private static int fieldIndex(final Attribute<?, ?> attribute) {
+        final Field[] fields = attribute.getJavaMember().getDeclaringClass().getDeclaredFields();
+
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].getName().equals(attribute.getName())) {
+                return i;
+            }
+        }
+
+        return fields.length;
+    }
+
+    private static UnsupportedOperationException unsupported(final EntityType<?> entityType, final String what) {
+        return new UnsupportedOperationException(
+                "Table mapping of " + entityType.getName() + " is not supported: " + what);
+    }
+
+    private static List<AttributeAccessor> append(final List<AttributeAccessor> path, final AttributeAccessor last) {
+        return ImmutableList.<AttributeAccessor>builder().addAll(path).add(last).build();
+    }
+
+    private static List<AttributeAccessor> concat(final List<AttributeAccessor> a, final List<AttributeAccessor> b) {
+        return ImmutableList.<AttributeAccessor>builder().addAll(a).addAll(b).build();
+    }
+
+    /**
+     * A column of a table, along with the path of attributes leading from an entity to the column's value.
+     */
+    public static final class TableColumn {
+
+        private final String name;
+        private final ImmutableList<AttributeAccessor> path;
+
+        private TableColumn(final String name, final List<AttributeAccessor> path) {
+            this.name = name;
+            this.path = ImmutableList.copyOf(path);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @param entity the entity (or embeddable) the column's path starts at
+         * @return the value of the column as passed to JDBC, i.e. enums, temporal values and UUIDs are converted the
+         *         way JPA providers map them by default
+         */
+        public Object getValue(final Object entity) {
+            Object value = entity;
+
+            for (final AttributeAccessor accessor : path) {
+                if (value == null) {
+                    return null;
+                }
+
+                value = accessor.get(value);
+            }
+
+            return toJdbc(value, path.get(path.size() - 1));
+        }
+
+        // the path of an ID column starts at the ID attribute, or at the attribute of the ID class
+        private Object getValueOfId(final Object id, final boolean idClass) {
+            Object value = idClass ? readField(id, path.get(0).getName()) : id;
+
+            for (final AttributeAccessor accessor : path.subList(1, path.size())) {
+                if (value == null) {
+                    return null;
+                }
+
+                value = accessor.get(value);
+            }
+
+            return toJdbc(value, path.get(path.size() - 1));
+        }
+
+        private static Object readField(final Object object, final String name) {
+            for (Class<?> c = object.getClass(); c != null; c = c.getSuperclass()) {
+                try {
+                    final Field field = c.getDeclaredField(name);
+                    field.setAccessible(true);
+
+                    return field.get(object);
+                } catch (final NoSuchFieldException e) {
+                    // try the superclass
+                } catch (final IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            throw new IllegalArgumentException("No field " + name + " found in " + object.getClass().getName());
+        }
+
+        private static Object toJdbc(final Object value, final AttributeAccessor accessor) {
+            if (value instanceof Enum) {
+                final Enumerated enumerated = accessor.getAnnotation(Enumerated.class);
+                final Enum<?> e = (Enum<?>) value;
+
+                return enumerated != null && enumerated.value() == EnumType.STRING ? e.name() : e.ordinal();
+            }
+
+            if (value instanceof UUID) {
+                final UUID uuid = (UUID) value;
+
+                return ByteBuffer.allocate(16)
+                        .putLong(uuid.getMostSignificantBits())
+                        .putLong(uuid.getLeastSignificantBits())
+                        .array();
+            }
+
+            if (value instanceof Calendar) {
+                return toJdbc(((Calendar) value).getTime(), accessor);
+            }
+
+            if (value instanceof Date && value.getClass() == Date.class) {
+                final Temporal temporal = accessor.getAnnotation(Temporal.class);
+                final long time = ((Date) value).getTime();
+
+                if (temporal != null && temporal.value() == TemporalType.DATE) {
+                    return new java.sql.Date(time);
+                }
+
+                if (temporal != null && temporal.value() == TemporalType.TIME) {
+                    return new java.sql.Time(time);
+                }
+
+                return new java.sql.Timestamp(time);
+            }
+
+            if (value instanceof Character) {
+                return value.toString();
+            }
+
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+
+    }
+
+    /**
+     * The join table of an owning to-many reference.
+     */
+    public static final class JoinTableMapping {
+
+        private final String table;
+        private final AttributeAccessor attribute;
+        private final ImmutableList<TableColumn> ownerColumns;
+        private final ImmutableList<TableColumn> targetColumns;
+        private final String orderColumn;
+
+        private JoinTableMapping(
+                final String table,
+                final AttributeAccessor attribute,
+                final List<TableColumn> ownerColumns,
+                final List<TableColumn> targetColumns,
+                final String orderColumn) {
+            this.table = table;
+            this.attribute = attribute;
+            this.ownerColumns = ImmutableList.copyOf(ownerColumns);
+            this.targetColumns = ImmutableList.copyOf(targetColumns);
+            this.orderColumn = orderColumn;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public AttributeAccessor getAttribute() {
+            return attribute;
+        }
+
+        /**
+         * @return the columns referencing the owner, whose values are read from the owner
+         */
+        public ImmutableList<TableColumn> getOwnerColumns() {
+            return ownerColumns;
+        }
+
+        /**
+         * @return the columns referencing the elements, whose values are read from the elements
+         */
+        public ImmutableList<TableColumn> getTargetColumns() {
+            return targetColumns;
+        }
+
+        /**
+         * @return the column holding the position of an element in the list, or {@code null} if there is none
+         */
+        public String getOrderColumn() {
+            return orderColumn;
+        }
+
+        @Override
+        public String toString() {
+            return table;
+        }
+
+    }
+
+}
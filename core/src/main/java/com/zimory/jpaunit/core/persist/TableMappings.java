@@ -0,0 +1,55 @@
+package com.zimory.jpaunit.core.persist;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@link TableMapping table mappings} of the entity types of the persistence unit, derived once per type.
+ */
+@Component
+public class TableMappings {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableMappings.class);
+
+    private final LoadingCache<Class<?>, TableMapping> mappings;
+
+    @Inject
+    public TableMappings(final EntityManagerFactory entityManagerFactory) {
+        this.mappings = CacheBuilder.newBuilder().build(new CacheLoader<Class<?>, TableMapping>() {
+            @Override
+            public TableMapping load(final Class<?> key) {
+                final TableMapping mapping = TableMapping.of(
+                        entityManagerFactory.getMetamodel().entity(key), entityManagerFactory.getMetamodel());
+                LOGGER.debug("Table mapping of {}: {}", key.getName(), mapping);
+
+                return mapping;
+            }
+        });
+    }
+
+    /**
+     * @param entityClass an entity class
+     * @return the table mapping of the entity class
+     * @throws UnsupportedOperationException if the entity type is mapped in a way that is not supported
+     */
+    public TableMapping get(final Class<?> entityClass) {
+        try {
+            return mappings.getUnchecked(entityClass);
+        } catch (final UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw e;
+        }
+    }
+
+}
@@ -0,0 +1,388 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+
+import com.esotericsoftware.yamlbeans.Version;
+import com.esotericsoftware.yamlbeans.parser.AliasEvent;
+import com.esotericsoftware.yamlbeans.parser.CollectionStartEvent;
+import com.esotericsoftware.yamlbeans.parser.DocumentEndEvent;
+import com.esotericsoftware.yamlbeans.parser.DocumentStartEvent;
+import com.esotericsoftware.yamlbeans.parser.Event;
+import com.esotericsoftware.yamlbeans.parser.MappingStartEvent;
+import com.esotericsoftware.yamlbeans.parser.Parser;
+import com.esotericsoftware.yamlbeans.parser.ScalarEvent;
+import com.esotericsoftware.yamlbeans.parser.SequenceStartEvent;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A dataset compiled into the sequence of YAML events it consists of, which spares tokenizing and parsing the YAML
+ * source when reading it. The compiled dataset is stored next to its source, with the extension {@value #EXTENSION},
+ * and is only used as long as the checksum of the source it was compiled from matches the current source. Hashing the
+ * source costs about as much as parsing it, so it's checked once per JVM for as long as neither file changes, as told
+ * by their last modification times and sizes.
+ * <p/>
+ * Strings (keys, tags, anchors and values) are written once and referred to by their index afterwards.
+ */
+public final class CompiledDataset {
+
+    public static final String EXTENSION = "ymlc";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CompiledDataset.class);
+
+    private static final int MAGIC = 0x4a505543;
+    private static final int FORMAT_VERSION = 1;
+    private static final int NULL = -1;
+
+    private static final byte STREAM_START = 0;
+    private static final byte STREAM_END = 1;
+    private static final byte DOCUMENT_START = 2;
+    private static final byte DOCUMENT_END = 3;
+    private static final byte MAPPING_START = 4;
+    private static final byte MAPPING_END = 5;
+    private static final byte SEQUENCE_START = 6;
+    private static final byte SEQUENCE_END = 7;
+    private static final byte SCALAR = 8;
+    private static final byte ALIAS = 9;
+
+    // the state of the files of the compiled datasets found up to date, by YAML path
+    private static final ConcurrentMap<String, String> UP_TO_DATE = new MapMaker().makeMap();
+
+    private final DataInputStream in;
+    private final List<String> strings = Lists.newArrayList();
+
+    private CompiledDataset(final DataInputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @param yamlPath the path of a YAML dataset
+     * @return the path of the compiled dataset
+     */
+    public static String getCompiledPath(final String yamlPath) {
+        final int extension = yamlPath.lastIndexOf('.');
+        final String base = extension > yamlPath.lastIndexOf('/') ? yamlPath.substring(0, extension) : yamlPath;
+
+        return base + "." + EXTENSION;
+    }
+
+    /**
+     * Compiles a YAML dataset.
+     *
+     * @param yaml the YAML source, encoded in UTF-8
+     * @param out where to write the compiled dataset to
+     * @throws IOException if reading or writing fails, or the source is not valid YAML
+     */
+    public static void compile(final InputStream yaml, final OutputStream out) throws IOException {
+        final byte[] source = ByteStreams.toByteArray(yaml);
+        final Parser parser = new Parser(new InputStreamReader(new ByteArrayInputStream(source), Charsets.UTF_8));
+        final DataOutputStream data = new DataOutputStream(out);
+        final Map<String, Integer> strings = Maps.newHashMap();
+
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.write(checksum(source).asBytes());
+
+        try {
+            for (Event event = parser.getNextEvent(); event != null; event = parser.getNextEvent()) {
+                writeEvent(event, data, strings);
+            }
+        } catch (final RuntimeException e) {
+            // yamlbeans reports syntax errors as unchecked exceptions
+            throw new IOException("Invalid YAML: " + e.getMessage(), e);
+        }
+
+        data.flush();
+    }
+
+    /**
+     * Opens the compiled version of the given dataset resource, if there is one and it's up to date. The resources are
+     * looked up like the YAML datasets are, falling back to the context class loader.
+     *
+     * @param yamlPath the resource path of the YAML dataset
+     * @return the compiled dataset, positioned at its first event
+     * @throws IOException if reading fails
+     */
+    public static Optional<CompiledDataset> open(final String yamlPath) throws IOException {
+        final URL compiled = DatasetSourceReader.findResource(getCompiledPath(yamlPath));
+        final URL source = DatasetSourceReader.findResource(yamlPath);
+        if (compiled == null || source == null) {
+            return Optional.absent();
+        }
+
+        final String state = stateOf(compiled, source);
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(DatasetBytes.counting(compiled.openStream())));
+        boolean upToDate = false;
+
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                LOGGER.debug("Ignoring compiled dataset of {} in an unknown format", yamlPath);
+                return Optional.absent();
+            }
+
+            final byte[] checksum = new byte[16];
+            in.readFully(checksum);
+
+            upToDate = state != null && state.equals(UP_TO_DATE.get(yamlPath)) || matches(checksum, yamlPath);
+
+            if (!upToDate) {
+                UP_TO_DATE.remove(yamlPath);
+                LOGGER.debug("Ignoring compiled dataset of {}, which is out of date", yamlPath);
+                return Optional.absent();
+            }
+
+            if (state != null) {
+                UP_TO_DATE.put(yamlPath, state);
+            }
+
+            return Optional.of(new CompiledDataset(in));
+        } finally {
+            if (!upToDate) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * @return the next event of the dataset, or {@code null} at its end
+     * @throws IOException if reading fails
+     */
+    public Event readEvent() throws IOException {
+        final int type = in.read();
+
+        switch (type) {
+            case -1:
+                return null;
+            case STREAM_START:
+                return Event.STREAM_START;
+            case STREAM_END:
+                return Event.STREAM_END;
+            case DOCUMENT_START:
+                return readDocumentStart();
+            case DOCUMENT_END:
+                return in.readBoolean() ? Event.DOCUMENT_END_TRUE : Event.DOCUMENT_END_FALSE;
+            case MAPPING_START:
+                return new MappingStartEvent(readString(), readString(), in.readBoolean(), in.readBoolean());
+            case MAPPING_END:
+                return Event.MAPPING_END;
+            case SEQUENCE_START:
+                return new SequenceStartEvent(readString(), readString(), in.readBoolean(), in.readBoolean());
+            case SEQUENCE_END:
+                return Event.SEQUENCE_END;
+            case SCALAR:
+                final String anchor = readString();
+                final String tag = readString();
+                final boolean[] implicit = {in.readBoolean(), in.readBoolean()};
+
+                return new ScalarEvent(anchor, tag, implicit, readString(), in.readChar());
+            case ALIAS:
+                return new AliasEvent(readString());
+            default:
+                throw new IOException("Unknown event type in compiled dataset: " + type);
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static boolean matches(final byte[] checksum, final String yamlPath) throws IOException {
+        final InputStream source = DatasetSourceReader.openResource(yamlPath);
+
+        try {
+            return Arrays.equals(checksum, checksum(ByteStreams.toByteArray(source)).asBytes());
+        } finally {
+            source.close();
+        }
+    }
+
+    // the locations, last modification times and sizes of both files, or null if any of them is unknown
+    private static String stateOf(final URL compiled, final URL source) throws IOException {
+        final String compiledState = stateOf(compiled);
+        final String sourceState = stateOf(source);
+
+        return compiledState != null && sourceState != null ? compiledState + " " + sourceState : null;
+    }
+
+    private static String stateOf(final URL resource) throws IOException {
+        long lastModified = 0;
+        long size = 0;
+
+        if ("file".equals(resource.getProtocol())) {
+            final File file;
+
+            try {
+                file = new File(resource.toURI());
+            } catch (final URISyntaxException e) {
+                return null;
+            }
+
+            lastModified = file.lastModified();
+            size = file.length();
+        } else if ("jar".equals(resource.getProtocol())) {
+            final JarEntry entry = ((JarURLConnection) resource.openConnection()).getJarEntry();
+
+            lastModified = entry.getTime();
+            size = entry.getSize();
+        }
+
+        return lastModified > 0 && size >= 0 ? resource + "@" + lastModified + ":" + size : null;
+    }
+
+    private DocumentStartEvent readDocumentStart() throws IOException {
+        final boolean explicit = in.readBoolean();
+        final String version = readString();
+        final int tagCount = in.readInt();
+        Map<String, String> tags = null;
+
+        if (tagCount != NULL) {
+            tags = Maps.newLinkedHashMap();
+            for (int i = 0; i < tagCount; i++) {
+                tags.put(readString(), readString());
+            }
+        }
+
+        return new DocumentStartEvent(explicit, version == null ? null : new Version(version), tags);
+    }
+
+    private String readString() throws IOException {
+        final int index = in.readInt();
+
+        if (index == NULL) {
+            return null;
+        }
+
+        if (index < strings.size()) {
+            return strings.get(index);
+        }
+
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+
+        final String s = new String(bytes, Charsets.UTF_8);
+        strings.add(s);
+
+        return s;
+    }
+
+    private static void writeEvent(final Event event, final DataOutputStream out, final Map<String, Integer> strings)
+            throws IOException {
+        switch (event.type) {
+            case STREAM_START:
+                out.writeByte(STREAM_START);
+                break;
+            case STREAM_END:
+                out.writeByte(STREAM_END);
+                break;
+            case DOCUMENT_START:
+                final DocumentStartEvent documentStart = (DocumentStartEvent) event;
+                out.writeByte(DOCUMENT_START);
+                out.writeBoolean(documentStart.isExplicit);
+                writeString(documentStart.version == null ? null : documentStart.version.toString(), out, strings);
+
+                if (documentStart.tags == null) {
+                    out.writeInt(NULL);
+                } else {
+                    out.writeInt(documentStart.tags.size());
+                    for (final Map.Entry<String, String> e : documentStart.tags.entrySet()) {
+                        writeString(e.getKey(), out, strings);
+                        writeString(e.getValue(), out, strings);
+                    }
+                }
+                break;
+            case DOCUMENT_END:
+                out.writeByte(DOCUMENT_END);
+                out.writeBoolean(((DocumentEndEvent) event).isExplicit);
+                break;
+            case MAPPING_START:
+                out.writeByte(MAPPING_START);
+                writeCollectionStart((CollectionStartEvent) event, out, strings);
+                break;
+            case MAPPING_END:
+                out.writeByte(MAPPING_END);
+                break;
+            case SEQUENCE_START:
+                out.writeByte(SEQUENCE_START);
+                writeCollectionStart((CollectionStartEvent) event, out, strings);
+                break;
+            case SEQUENCE_END:
+                out.writeByte(SEQUENCE_END);
+                break;
+            case SCALAR:
+                final ScalarEvent scalar = (ScalarEvent) event;
+                out.writeByte(SCALAR);
+                writeString(scalar.anchor, out, strings);
+                writeString(scalar.tag, out, strings);
+                out.writeBoolean(scalar.implicit[0]);
+                out.writeBoolean(scalar.implicit[1]);
+                writeString(scalar.value, out, strings);
+                out.writeChar(scalar.style);
+                break;
+            case ALIAS:
+                out.writeByte(ALIAS);
+                writeString(((AliasEvent) event).anchor, out, strings);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event: " + event);
+        }
+    }
+
+    private static void writeCollectionStart(
+            final CollectionStartEvent event, final DataOutputStream out, final Map<String, Integer> strings)
+            throws IOException {
+        writeString(event.anchor, out, strings);
+        writeString(event.tag, out, strings);
+        out.writeBoolean(event.isImplicit);
+        out.writeBoolean(event.isFlowStyle);
+    }
+
+    private static void writeString(final String s, final DataOutputStream out, final Map<String, Integer> strings)
+            throws IOException {
+        if (s == null) {
+            out.writeInt(NULL);
+            return;
+        }
+
+        final Integer index = strings.get(s);
+        if (index != null) {
+            out.writeInt(index);
+            return;
+        }
+
+        final byte[] bytes = s.getBytes(Charsets.UTF_8);
+        out.writeInt(strings.size());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        strings.put(s, strings.size());
+    }
+
+    private static HashCode checksum(final byte[] source) {
+        return Hashing.murmur3_128().hashBytes(source);
+    }
+
+}
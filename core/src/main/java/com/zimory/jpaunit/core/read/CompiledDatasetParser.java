@@ -0,0 +1,141 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import com.esotericsoftware.yamlbeans.ParserYamlReader;
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.esotericsoftware.yamlbeans.YamlReader;
+import com.esotericsoftware.yamlbeans.parser.Event;
+import com.esotericsoftware.yamlbeans.parser.EventType;
+import com.esotericsoftware.yamlbeans.parser.Parser;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Replays the events of {@link CompiledDataset compiled datasets} to a {@link YamlReader}, as if they were a single
+ * YAML stream, in place of the parser reading the YAML source (see {@link ParserYamlReader}).
+ */
+final class CompiledDatasetParser extends Parser {
+
+    private final ImmutableList<String> paths;
+    private final List<CompiledDataset> datasets;
+
+    private int current;
+    private boolean started;
+    private boolean ended;
+    private Event peeked;
+
+    private CompiledDatasetParser(final List<String> paths, final List<CompiledDataset> datasets) {
+        super(new StringReader(""));
+        this.paths = ImmutableList.copyOf(paths);
+        this.datasets = datasets;
+    }
+
+    /**
+     * @param yamlPaths the resource paths of the YAML datasets
+     * @return a parser replaying the compiled datasets, if all of them are compiled and up to date
+     * @throws IOException if reading fails
+     */
+    static Optional<CompiledDatasetParser> open(final List<String> yamlPaths) throws IOException {
+        final List<CompiledDataset> datasets = Lists.newArrayList();
+
+        for (final String yamlPath : yamlPaths) {
+            final Optional<CompiledDataset> dataset = CompiledDataset.open(yamlPath);
+
+            if (!dataset.isPresent()) {
+                for (final CompiledDataset opened : datasets) {
+                    opened.close();
+                }
+
+                return Optional.absent();
+            }
+
+            datasets.add(dataset.get());
+        }
+
+        return Optional.of(new CompiledDatasetParser(yamlPaths, datasets));
+    }
+
+    /**
+     * @param yamlConfig the configuration to read the entities with
+     * @return a reader reading the entities from this parser
+     */
+    YamlReader newReader(final YamlConfig yamlConfig) {
+        return new ParserYamlReader(this, yamlConfig);
+    }
+
+    /**
+     * @return the paths of the datasets being replayed
+     */
+    ImmutableList<String> getPaths() {
+        return paths;
+    }
+
+    @Override
+    public Event getNextEvent() {
+        final Event event = peekNextEvent();
+        peeked = null;
+
+        return event;
+    }
+
+    @Override
+    public Event peekNextEvent() {
+        if (peeked == null) {
+            try {
+                peeked = readEvent();
+            } catch (final IOException e) {
+                throw new IllegalStateException("Failed to read compiled datasets " + paths, e);
+            }
+        }
+
+        return peeked;
+    }
+
+    // the datasets are joined into a single stream
+    private Event readEvent() throws IOException {
+        while (current < datasets.size()) {
+            final Event event = datasets.get(current).readEvent();
+
+            if (event == null) {
+                datasets.get(current).close();
+                current++;
+            } else if (event.type == EventType.STREAM_START) {
+                if (!started) {
+                    started = true;
+                    return event;
+                }
+            } else if (event.type != EventType.STREAM_END) {
+                return event;
+            }
+        }
+
+        if (!ended) {
+            ended = true;
+            return Event.STREAM_END;
+        }
+
+        return null;
+    }
+
+    @Override
+    public int getLineNumber() {
+        return 0;
+    }
+
+    @Override
+    public int getColumn() {
+        return 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (; current < datasets.size(); current++) {
+            datasets.get(current).close();
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.inject.Inject;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.base.Optional;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the entities of the datasets from their {@link CompiledDataset compiled versions} if all of them are present
+ * and up to date, and from their YAML sources otherwise. Used when {@link JpaUnitConfig#isUseCompiledDatasets()} is
+ * enabled.
+ */
+@Component
+public class CompiledEntityReader extends DefaultEntityReader {
+
+    private final YamlConfig yamlConfig;
+
+    @Inject
+    public CompiledEntityReader(final YamlConfig yamlConfig, final JpaUnitConfig config,
+            final DatasetCache datasetCache) {
+        super(yamlConfig, config, datasetCache);
+        this.yamlConfig = yamlConfig;
+    }
+
+    @Override
+    EntityIterator newEntityIterator(final List<String> yamlPaths) {
+        final Optional<CompiledDatasetParser> compiled;
+
+        try {
+            compiled = CompiledDatasetParser.open(yamlPaths);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (compiled.isPresent()) {
+            return new YamlEntityIterator(compiled.get(), yamlConfig);
+        }
+
+        return super.newEntityIterator(yamlPaths);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from dataset resources, source or compiled, per thread, so that the phases of a test can
+ * report them (see {@link com.zimory.jpaunit.core.listener.PhaseEvent}).
+ */
+public final class DatasetBytes {
+
+    private static final ThreadLocal<long[]> COUNT = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    private DatasetBytes() {
+    }
+
+    /**
+     * @return the number of bytes of dataset resources the current thread has read so far
+     */
+    public static long get() {
+        return COUNT.get()[0];
+    }
+
+    static InputStream counting(final InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                final int b = super.read();
+                if (b >= 0) {
+                    COUNT.get()[0]++;
+                }
+
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] b, final int off, final int len) throws IOException {
+                final int n = super.read(b, off, len);
+                if (n > 0) {
+                    COUNT.get()[0] += n;
+                }
+
+                return n;
+            }
+
+            @Override
+            public long skip(final long n) throws IOException {
+                final long skipped = super.skip(n);
+                COUNT.get()[0] += skipped;
+
+                return skipped;
+            }
+        };
+    }
+
+}
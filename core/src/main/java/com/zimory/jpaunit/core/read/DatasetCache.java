@@ -0,0 +1,128 @@
+package com.zimory.jpaunit.core.read;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import javax.inject.Inject;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.util.ObjectGraphCopier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps recently parsed datasets in memory, bounded by the size of their YAML source (see
+ * {@link JpaUnitConfig#setDatasetCacheSize(long)}) and evicting the least recently used ones first.
+ * <p/>
+ * The cached entities themselves are never handed out: every read gets its own deep copy of the entity graph, since the
+ * entities are made managed by the persister and may be modified by the tests.
+ */
+@Component
+public class DatasetCache {
+
+    private final Cache<DatasetKey, Entry> cache;
+    private final long maximumSize;
+
+    @Inject
+    public DatasetCache(final JpaUnitConfig config) {
+        maximumSize = Math.max(config.getDatasetCacheSize(), 0);
+        cache = CacheBuilder.newBuilder()
+                // a single segment makes the eviction order strictly LRU
+                .concurrencyLevel(1)
+                .maximumWeight(maximumSize)
+                .weigher(new SourceSizeWeigher())
+                .recordStats()
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return maximumSize > 0;
+    }
+
+    /**
+     * @param sourceSize the size of the YAML source of some datasets
+     * @return whether datasets of that size can be cached at all
+     */
+    public boolean accepts(final long sourceSize) {
+        return isEnabled() && sourceSize <= maximumSize;
+    }
+
+    /**
+     * Gets a copy of the entities of the given datasets, parsing them only if they are not cached yet.
+     *
+     * @param key the key of the datasets
+     * @param parser parses the datasets on a cache miss
+     * @return a copy of the dataset entities, in dataset order
+     */
+    public Set<Object> get(final DatasetKey key, final Callable<? extends Collection<Object>> parser) {
+        if (!accepts(key.getSourceSize())) {
+            return Sets.newLinkedHashSet(call(parser));
+        }
+
+        final Entry entry = getEntry(key, parser);
+
+        return Sets.newLinkedHashSet(ObjectGraphCopier.copyAll(entry.entities));
+    }
+
+    public CacheStats getStatistics() {
+        return cache.stats();
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private Entry getEntry(final DatasetKey key, final Callable<? extends Collection<Object>> parser) {
+        try {
+            return cache.get(key, new Callable<Entry>() {
+                @Override
+                public Entry call() throws Exception {
+                    return new Entry(ImmutableList.copyOf(parser.call()), key.getSourceSize());
+                }
+            });
+        } catch (final ExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        } catch (final UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static Collection<Object> call(final Callable<? extends Collection<Object>> parser) {
+        try {
+            return parser.call();
+        } catch (final Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    private static final class Entry {
+
+        private final ImmutableList<Object> entities;
+        private final long sourceSize;
+
+        private Entry(final ImmutableList<Object> entities, final long sourceSize) {
+            this.entities = entities;
+            this.sourceSize = sourceSize;
+        }
+
+    }
+
+    private static final class SourceSizeWeigher implements Weigher<DatasetKey, Entry> {
+
+        @Override
+        public int weigh(final DatasetKey key, final Entry value) {
+            return (int) Math.min(value.sourceSize, Integer.MAX_VALUE);
+        }
+
+    }
+
+}
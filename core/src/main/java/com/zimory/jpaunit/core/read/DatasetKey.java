@@ -0,0 +1,69 @@
+package com.zimory.jpaunit.core.read;
+
+import java.util.List;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+
+/**
+ * Identifies the content of a set of datasets read together: the resolved dataset paths plus a checksum of their
+ * content, so that a changed dataset file yields a different key. Also carries the size of the content, which is not
+ * part of the identity.
+ */
+public final class DatasetKey {
+
+    private final ImmutableList<String> paths;
+    private final HashCode checksum;
+    private final long sourceSize;
+
+    public DatasetKey(final List<String> paths, final HashCode checksum, final long sourceSize) {
+        this.paths = ImmutableList.copyOf(paths);
+        this.checksum = checksum;
+        this.sourceSize = sourceSize;
+    }
+
+    public ImmutableList<String> getPaths() {
+        return paths;
+    }
+
+    public HashCode getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * @return the size of the datasets' YAML source, in bytes
+     */
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(paths, checksum);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+
+        final DatasetKey other = (DatasetKey) obj;
+
+        return paths.equals(other.paths) && checksum.equals(other.checksum);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("paths", paths)
+                .add("checksum", checksum)
+                .toString();
+    }
+
+}
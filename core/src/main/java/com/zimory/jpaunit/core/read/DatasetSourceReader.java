@@ -0,0 +1,143 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Reads the given dataset resources one after the other as UTF-8, as if they were a single YAML source separated by
+ * line breaks, without ever holding more than a buffer of them in memory.
+ * <p/>
+ * Keeps track of the line at which each resource starts, so that a position in the combined source (as reported by
+ * yamlbeans) can be mapped back to the resource it belongs to.
+ */
+final class DatasetSourceReader extends Reader {
+
+    private static final Pattern POSITION = Pattern.compile("Line (\\d+), column (\\d+)");
+
+    private final ImmutableList<String> paths;
+    private final int[] startLines;
+
+    private Reader current;
+    private int next;
+    private boolean separated;
+    private int lineCount;
+
+    DatasetSourceReader(final List<String> paths) {
+        this.paths = ImmutableList.copyOf(paths);
+        this.startLines = new int[paths.size()];
+    }
+
+    // falls back to the context class loader for datasets JpaUnit's own class loader doesn't see, e.g. when JpaUnit is
+    // loaded by a parent class loader (a shared library of a container or build tool) of the one holding the tests
+    static URL findResource(final String path) {
+        final URL resource = DatasetSourceReader.class.getResource(path);
+        final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+        if (resource == null && contextClassLoader != null) {
+            return contextClassLoader.getResource(path.startsWith("/") ? path.substring(1) : path);
+        }
+
+        return resource;
+    }
+
+    static InputStream openResource(final String path) throws IOException {
+        final URL resource = findResource(path);
+        Preconditions.checkNotNull(resource, "resource not found: %s", path);
+
+        return DatasetBytes.counting(resource.openStream());
+    }
+
+    @Override
+    public int read(final char[] cbuf, final int off, final int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (current == null) {
+                if (next == paths.size()) {
+                    return -1;
+                }
+
+                if (next > 0 && !separated) {
+                    separated = true;
+                    cbuf[off] = '\n';
+                    lineCount++;
+
+                    return 1;
+                }
+
+                current = new BufferedReader(new InputStreamReader(openResource(paths.get(next)), Charsets.UTF_8));
+                startLines[next] = lineCount;
+                separated = false;
+                next++;
+            }
+
+            final int n = current.read(cbuf, off, len);
+
+            if (n < 0) {
+                current.close();
+                current = null;
+                continue;
+            }
+
+            for (int i = off; i < off + n; i++) {
+                if (cbuf[i] == '\n') {
+                    lineCount++;
+                }
+            }
+
+            return n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        next = paths.size();
+
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+
+    /**
+     * Describes where in the datasets the given error occurred, based on the (zero-based) position in the message of
+     * the error or one of its causes.
+     *
+     * @param error an error raised while parsing this source
+     * @return the dataset path and the (one-based) line and column of the error if known, otherwise all dataset paths
+     */
+    String describeLocation(final Throwable error) {
+        for (Throwable t = error; t != null; t = t.getCause()) {
+            final Matcher matcher = t.getMessage() == null ? null : POSITION.matcher(t.getMessage());
+
+            if (matcher != null && matcher.find()) {
+                return describeLocation(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            }
+        }
+
+        return paths.toString();
+    }
+
+    private String describeLocation(final int line, final int column) {
+        int source = 0;
+        while (source + 1 < next && startLines[source + 1] <= line) {
+            source++;
+        }
+
+        return String.format("%s, line %d, column %d", paths.get(source), line - startLines[source] + 1, column + 1);
+    }
+
+}
@@ -2,27 +2,28 @@ package com.zimory.jpaunit.core.read;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StringReader;
+import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 
 import javax.inject.Inject;
 
 import com.esotericsoftware.yamlbeans.YamlConfig;
-import com.esotericsoftware.yamlbeans.YamlException;
-import com.esotericsoftware.yamlbeans.YamlReader;
-import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.ForwardingIterator;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.google.common.io.CharStreams;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 import com.zimory.jpaunit.core.annotation.ShouldMatchJpaDataSet;
 import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
 import com.zimory.jpaunit.core.context.JpaUnitConfig;
@@ -33,22 +34,23 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+/**
+ * Reads the entities of the datasets from their YAML sources, keeping them in the {@link DatasetCache} if enabled.
+ */
 @Component
 public class DefaultEntityReader implements EntityReader {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultEntityReader.class);
 
-    private static final int DEFAULT_BUFFER_SIZE = 8192;
-    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
-    private static final String YAML_ENTRY_SEPARATOR = LINE_SEPARATOR;
-
     private final YamlConfig yamlConfig;
     private final JpaUnitConfig config;
+    private final DatasetCache datasetCache;
 
     @Inject
-    public DefaultEntityReader(final YamlConfig yamlConfig, final JpaUnitConfig config) {
+    public DefaultEntityReader(final YamlConfig yamlConfig, final JpaUnitConfig config, final DatasetCache datasetCache) {
         this.yamlConfig = yamlConfig;
         this.config = config;
+        this.datasetCache = datasetCache;
     }
 
     @Override
@@ -57,9 +59,38 @@ public class DefaultEntityReader implements EntityReader {
         final Collection<Method> methods = Collections2.filter(setupMethods,
                 AnnotationFilter.by(UsingJpaDataSet.class));
 
-        final String raw = readRaw(methods, PathUtil.GETS_SETUP_PATHS);
+        return readEntities(resolvePaths(methods, PathUtil.GETS_SETUP_PATHS));
+    }
+
+    @Override
+    public Set<Object> readClassSetupEntities(final Class<?> testClass) throws IOException {
+        final Collection<Method> methods = Collections2.filter(TestContext.getClassSetupMethods(testClass),
+                AnnotationFilter.by(UsingJpaDataSet.class));
+        final ImmutableList.Builder<String> paths = ImmutableList.builder();
+
+        for (final String path : PathUtil.getClassSetupPaths(testClass)) {
+            paths.add(PathUtil.formatYamlPath(config.getDatasetDir(), path));
+        }
 
-        return readEntities(raw);
+        return readEntities(paths.addAll(resolvePaths(methods, PathUtil.GETS_SETUP_PATHS)).build());
+    }
+
+    @Override
+    public DatasetKey getSetupDatasetKey(final TestContext testContext) throws IOException {
+        final ImmutableList<Method> setupMethods = testContext.getSetupMethods();
+        final Collection<Method> methods = Collections2.filter(setupMethods,
+                AnnotationFilter.by(UsingJpaDataSet.class));
+
+        return toKey(resolvePaths(methods, PathUtil.GETS_SETUP_PATHS));
+    }
+
+    @Override
+    public EntityIterator iterateSetupEntities(final TestContext testContext) throws IOException {
+        final ImmutableList<Method> setupMethods = testContext.getSetupMethods();
+        final Collection<Method> methods = Collections2.filter(setupMethods,
+                AnnotationFilter.by(UsingJpaDataSet.class));
+
+        return iterateEntities(resolvePaths(methods, PathUtil.GETS_SETUP_PATHS));
     }
 
     @Override
@@ -68,78 +99,100 @@ public class DefaultEntityReader implements EntityReader {
         final Collection<Method> methods = Collections2.filter(expectMethods,
                 AnnotationFilter.by(ShouldMatchJpaDataSet.class));
 
-        final String raw = readRaw(methods, PathUtil.GETS_EXPECT_PATHS);
-
-        return readEntities(raw);
+        return readEntities(resolvePaths(methods, PathUtil.GETS_EXPECT_PATHS));
     }
 
-    private String readRaw(final Collection<Method> methods, final GetsPathsForMethod getsPaths)
-            throws IOException {
-        final StringBuilder buf = new StringBuilder(DEFAULT_BUFFER_SIZE);
-
-        for (final Iterator<Method> methodIterator = methods.iterator(); methodIterator.hasNext();) {
-            final Method m = methodIterator.next();
-            final String[] paths = getsPaths.apply(m);
+    @Override
+    public EntityIterator iterateExpectEntities(final TestContext testContext) throws IOException {
+        final ImmutableList<Method> expectMethods = testContext.getExpectMethods();
+        final Collection<Method> methods = Collections2.filter(expectMethods,
+                AnnotationFilter.by(ShouldMatchJpaDataSet.class));
 
-            for (final Iterator<String> pathIterator = Iterators.forArray(paths); pathIterator.hasNext();) {
-                final String yamlPath = PathUtil.formatYamlPath(config.getDatasetDir(), pathIterator.next());
-                final InputStream resource = getClass().getResourceAsStream(yamlPath);
-                Preconditions.checkNotNull(resource, "resource not found: %s", yamlPath);
+        return iterateEntities(resolvePaths(methods, PathUtil.GETS_EXPECT_PATHS));
+    }
 
-                CharStreams.copy(new InputStreamReader(resource), buf);
+    private List<String> resolvePaths(final Collection<Method> methods, final GetsPathsForMethod getsPaths) {
+        final ImmutableList.Builder<String> builder = ImmutableList.builder();
 
-                if (pathIterator.hasNext()) {
-                    buf.append(YAML_ENTRY_SEPARATOR);
-                }
+        for (final Method m : methods) {
+            for (final String path : getsPaths.apply(m)) {
+                builder.add(PathUtil.formatYamlPath(config.getDatasetDir(), path));
             }
+        }
 
-            if (methodIterator.hasNext()) {
-                buf.append(YAML_ENTRY_SEPARATOR);
+        return builder.build();
+    }
+
+    private EntityIterator iterateEntities(final List<String> yamlPaths) throws IOException {
+        if (datasetCache.isEnabled()) {
+            final DatasetKey key = toKey(yamlPaths);
+
+            if (datasetCache.accepts(key.getSourceSize())) {
+                return new CollectionEntityIterator(readEntities(key));
             }
         }
 
-        return buf.toString();
+        return newEntityIterator(yamlPaths);
     }
 
-    private Set<Object> readEntities(final String raw) {
-        final Set<Object> entities = Sets.newLinkedHashSet();
-        final YamlReader reader = newYamlReader(new StringReader(raw));
+    private Set<Object> readEntities(final List<String> yamlPaths) throws IOException {
+        if (datasetCache.isEnabled()) {
+            return readEntities(toKey(yamlPaths));
+        }
+
+        return Sets.newLinkedHashSet(parse(yamlPaths));
+    }
 
-        try {
-            for (Object obj = reader.read(); obj != null; obj = reader.read()) {
-                entities.add(obj);
+    private Set<Object> readEntities(final DatasetKey key) {
+        return datasetCache.get(key, new Callable<List<Object>>() {
+            @Override
+            public List<Object> call() {
+                return parse(key.getPaths());
             }
-        } catch (final YamlException e) {
-            LOGGER.debug("YAML raw source:\n{}", padSourceWithLineNumbers(raw));
+        });
+    }
 
-            throw new RuntimeException(e);
+    private List<Object> parse(final List<String> yamlPaths) {
+        final EntityIterator entities = newEntityIterator(yamlPaths);
+
+        try {
+            return Lists.newArrayList(entities);
         } finally {
             try {
-                reader.close();
+                entities.close();
             } catch (final IOException e) {
-                e.printStackTrace();
+                LOGGER.warn("Failed to close dataset reader", e);
             }
         }
+    }
 
-        return entities;
+    /**
+     * @param yamlPaths the resource paths of the datasets
+     * @return an iterator parsing the entities of the datasets
+     */
+    EntityIterator newEntityIterator(final List<String> yamlPaths) {
+        return new YamlEntityIterator(new DatasetSourceReader(yamlPaths), yamlConfig);
     }
 
-    private static String padSourceWithLineNumbers(final String raw) {
-        final String[] lines = raw.split(LINE_SEPARATOR);
-        final StringBuilder buf = new StringBuilder(raw.length() + lines.length);
-        final int lineNumberPadding = (int) Math.log10(lines.length) + 1;
-        final String lineFormat = "%" + lineNumberPadding + "d | %s%n";
+    // hashes the raw bytes of the datasets, so that they don't have to be decoded for a cache hit
+    private static DatasetKey toKey(final List<String> yamlPaths) throws IOException {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        final OutputStream sink = Funnels.asOutputStream(hasher);
+        long size = 0;
 
-        for (int i = 0; i < lines.length; i++) {
-            final String line = lines[i];
-            buf.append(String.format(lineFormat, i, line));
-        }
+        for (final String yamlPath : yamlPaths) {
+            final InputStream resource = DatasetSourceReader.openResource(yamlPath);
 
-        return buf.toString();
-    }
+            try {
+                size += ByteStreams.copy(resource, sink);
+            } finally {
+                resource.close();
+            }
 
-    private YamlReader newYamlReader(final Reader r) {
-        return new YamlReader(r, yamlConfig);
+            hasher.putByte((byte) '\n');
+        }
+
+        return new DatasetKey(yamlPaths, hasher.hash(), size);
     }
 
     private static final class AnnotationFilter implements Predicate<Method> {
@@ -161,4 +214,23 @@ public class DefaultEntityReader implements EntityReader {
 
     }
 
+    private static final class CollectionEntityIterator extends ForwardingIterator<Object> implements EntityIterator {
+
+        private final Iterator<Object> delegate;
+
+        private CollectionEntityIterator(final Collection<Object> entities) {
+            this.delegate = entities.iterator();
+        }
+
+        @Override
+        protected Iterator<Object> delegate() {
+            return delegate;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
 }
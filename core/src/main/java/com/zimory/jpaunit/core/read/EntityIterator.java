@@ -0,0 +1,10 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterates lazily over the entities of one or more datasets. Must be closed if not iterated to the end.
+ */
+public interface EntityIterator extends Iterator<Object>, Closeable {
+}
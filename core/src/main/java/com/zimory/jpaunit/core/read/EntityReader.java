@@ -11,4 +11,26 @@ public interface EntityReader {
 
     Set<Object> readExpectEntities(TestContext testContext) throws IOException;
 
+    /**
+     * @return the entities of the class-level setup datasets of the given test class
+     */
+    Set<Object> readClassSetupEntities(Class<?> testClass) throws IOException;
+
+    /**
+     * @return the key identifying the setup datasets and their current content
+     */
+    DatasetKey getSetupDatasetKey(TestContext testContext) throws IOException;
+
+    /**
+     * Like {@link #readSetupEntities(TestContext)}, but parses the entities only as they are iterated, unless they are
+     * cached already.
+     */
+    EntityIterator iterateSetupEntities(TestContext testContext) throws IOException;
+
+    /**
+     * Like {@link #readExpectEntities(TestContext)}, but parses the entities only as they are iterated, unless they are
+     * cached already.
+     */
+    EntityIterator iterateExpectEntities(TestContext testContext) throws IOException;
+
 }
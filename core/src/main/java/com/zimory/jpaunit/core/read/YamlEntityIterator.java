@@ -0,0 +1,75 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.IOException;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.esotericsoftware.yamlbeans.YamlException;
+import com.esotericsoftware.yamlbeans.YamlReader;
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.AbstractIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses the entities of a {@link DatasetSourceReader} (or replays those of {@link CompiledDataset compiled datasets})
+ * one YAML document at a time. Closes itself once the end of the datasets is reached or parsing fails.
+ */
+final class YamlEntityIterator extends AbstractIterator<Object> implements EntityIterator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(YamlEntityIterator.class);
+
+    private final YamlReader reader;
+    private final Function<? super Throwable, String> locations;
+
+    YamlEntityIterator(final DatasetSourceReader source, final YamlConfig yamlConfig) {
+        this.reader = new YamlReader(source, yamlConfig);
+        this.locations = new Function<Throwable, String>() {
+            @Override
+            public String apply(final Throwable input) {
+                return source.describeLocation(input);
+            }
+        };
+    }
+
+    // compiled datasets don't know about lines, so errors are reported for the whole datasets
+    YamlEntityIterator(final CompiledDatasetParser parser, final YamlConfig yamlConfig) {
+        this.reader = parser.newReader(yamlConfig);
+        this.locations = Functions.constant("compiled datasets " + parser.getPaths());
+    }
+
+    @Override
+    protected Object computeNext() {
+        final Object entity;
+
+        try {
+            entity = reader.read();
+        } catch (final YamlException e) {
+            closeQuietly();
+
+            throw new RuntimeException("Invalid dataset at " + locations.apply(e), e);
+        }
+
+        if (entity == null) {
+            closeQuietly();
+
+            return endOfData();
+        }
+
+        return entity;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (final IOException e) {
+            LOGGER.warn("Failed to close dataset reader", e);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Keeps the rows of a snapshot in memory, as read over JDBC, and inserts them with batched statements. Works with
+ * any database, but holds the values of all rows of all snapshots.
+ */
+public class InMemorySnapshotStrategy implements SnapshotStrategy {
+
+    @Override
+    public Snapshot take(final Connection connection, final List<RowSelection> selections) throws SQLException {
+        final ImmutableList.Builder<TableRows> tables = ImmutableList.builder();
+
+        for (final RowSelection selection : selections) {
+            for (final List<Object[]> chunk : selection.getKeyChunks()) {
+                tables.add(read(connection, selection, chunk));
+            }
+        }
+
+        return new InMemorySnapshot(tables.build());
+    }
+
+    private static TableRows read(final Connection connection, final RowSelection selection, final List<Object[]> chunk)
+            throws SQLException {
+        final PreparedStatement statement = connection.prepareStatement(
+                "SELECT * FROM " + selection.getTable() + " WHERE " + selection.getCondition(chunk.size()));
+
+        try {
+            selection.bind(statement, 1, chunk);
+
+            final ResultSet resultSet = statement.executeQuery();
+            final ResultSetMetaData metaData = resultSet.getMetaData();
+            final List<String> columns = Lists.newArrayList();
+            final int[] types = new int[metaData.getColumnCount()];
+
+            for (int i = 0; i < types.length; i++) {
+                columns.add(metaData.getColumnName(i + 1));
+                types[i] = metaData.getColumnType(i + 1);
+            }
+
+            final List<Object[]> rows = Lists.newArrayList();
+
+            while (resultSet.next()) {
+                final Object[] row = new Object[types.length];
+
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = resultSet.getObject(i + 1);
+                }
+
+                rows.add(row);
+            }
+
+            return new TableRows(selection.getTable(), columns, types, rows);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static final class TableRows {
+
+        private final String table;
+        private final List<String> columns;
+        private final int[] types;
+        private final List<Object[]> rows;
+
+        private TableRows(
+                final String table,
+                final List<String> columns,
+                final int[] types,
+                final List<Object[]> rows) {
+            this.table = table;
+            this.columns = columns;
+            this.types = types;
+            this.rows = rows;
+        }
+
+        private void insert(final Connection connection) throws SQLException {
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            final PreparedStatement statement = connection.prepareStatement("INSERT INTO " + table
+                    + " (" + Joiner.on(", ").join(columns) + ")"
+                    + " VALUES (" + Joiner.on(", ").join(Collections.nCopies(columns.size(), "?")) + ")");
+
+            try {
+                for (final Object[] row : rows) {
+                    for (int i = 0; i < row.length; i++) {
+                        if (row[i] == null) {
+                            statement.setNull(i + 1, types[i]);
+                        } else {
+                            statement.setObject(i + 1, row[i]);
+                        }
+                    }
+
+                    statement.addBatch();
+                }
+
+                statement.executeBatch();
+            } finally {
+                statement.close();
+            }
+        }
+
+    }
+
+    private static final class InMemorySnapshot implements Snapshot {
+
+        private final List<TableRows> tables;
+
+        private InMemorySnapshot(final List<TableRows> tables) {
+            this.tables = tables;
+        }
+
+        @Override
+        public void restore(final Connection connection) throws SQLException {
+            for (final TableRows rows : tables) {
+                rows.insert(connection);
+            }
+        }
+
+        @Override
+        public void discard(final Connection connection) {
+        }
+
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * The rows of a table that have one of the given keys, i.e. values of the given key columns.
+ */
+public final class RowSelection {
+
+    // keeps the statements below the bind parameter limits of the common databases
+    private static final int MAX_PARAMETERS = 1000;
+
+    private final String table;
+    private final ImmutableList<String> keyColumns;
+    private final ImmutableList<Object[]> keys;
+
+    public RowSelection(final String table, final List<String> keyColumns, final List<Object[]> keys) {
+        this.table = table;
+        this.keyColumns = ImmutableList.copyOf(keyColumns);
+        this.keys = ImmutableList.copyOf(keys);
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public ImmutableList<String> getKeyColumns() {
+        return keyColumns;
+    }
+
+    public ImmutableList<Object[]> getKeys() {
+        return keys;
+    }
+
+    /**
+     * @return the keys, split into chunks small enough to be bound to a single statement
+     */
+    public List<List<Object[]>> getKeyChunks() {
+        return Lists.partition(keys, Math.max(1, MAX_PARAMETERS / keyColumns.size()));
+    }
+
+    /**
+     * @param keyCount the number of keys
+     * @return a condition selecting the rows with that many keys, with a parameter per key column and key
+     */
+    public String getCondition(final int keyCount) {
+        if (keyColumns.size() == 1) {
+            return keyColumns.get(0) + " IN (" + Joiner.on(", ").join(Collections.nCopies(keyCount, "?")) + ")";
+        }
+
+        final String key = "(" + Joiner.on(" = ? AND ").join(keyColumns) + " = ?)";
+
+        return Joiner.on(" OR ").join(Collections.nCopies(keyCount, key));
+    }
+
+    /**
+     * Binds the given keys to the parameters of the condition.
+     *
+     * @param statement the statement containing the condition
+     * @param index the index of the first parameter of the condition
+     * @param chunk the keys
+     * @throws SQLException if binding fails
+     */
+    public void bind(final PreparedStatement statement, final int index, final List<Object[]> chunk)
+            throws SQLException {
+        int i = index;
+
+        for (final Object[] key : chunk) {
+            for (final Object value : key) {
+                statement.setObject(i++, value);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return table + "(" + keys.size() + " keys)";
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.persistence.EntityManagerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.model.EntityKey;
+import com.zimory.jpaunit.core.persist.InsertPlanner;
+import com.zimory.jpaunit.core.persist.SetupConnection;
+import com.zimory.jpaunit.core.persist.TableMapping;
+import com.zimory.jpaunit.core.persist.TableMapping.JoinTableMapping;
+import com.zimory.jpaunit.core.persist.TableMapping.TableColumn;
+import com.zimory.jpaunit.core.persist.TableMappings;
+import com.zimory.jpaunit.core.read.DatasetKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps snapshots of the rows inserted by the setups, keyed by the content of the setup datasets, so that a later
+ * setup of the same datasets inserts the rows from the snapshot instead of parsing and persisting the datasets again
+ * (see {@link JpaUnitConfig#setSetupSnapshots(boolean)}). A snapshot is taken right after the setup, with the
+ * {@link JpaUnitConfig#getSetupSnapshotStrategy() configured strategy}, and holds exactly the rows of the setup
+ * entities and their join tables, identified by the IDs of the entities.
+ * <p/>
+ * Changing a dataset changes its key, so its snapshot is not restored anymore; it is discarded once the changed
+ * dataset is snapshotted. Datasets whose entity types reference each other, or are not supported by the
+ * {@link TableMapping}, are never snapshotted.
+ */
+@Component
+public class SetupSnapshots implements DisposableBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SetupSnapshots.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final JpaUnitConfig config;
+    private final InsertPlanner insertPlanner;
+    private final TableMappings tableMappings;
+
+    // in access order, so that the least recently used snapshot comes first
+    private final Map<DatasetKey, Entry> snapshots = new LinkedHashMap<DatasetKey, Entry>(16, 0.75f, true);
+    private final Set<DatasetKey> unsupported = Sets.newHashSet();
+
+    @Inject
+    public SetupSnapshots(
+            final EntityManagerFactory entityManagerFactory,
+            final JpaUnitConfig config,
+            final InsertPlanner insertPlanner,
+            final TableMappings tableMappings) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.config = config;
+        this.insertPlanner = insertPlanner;
+        this.tableMappings = tableMappings;
+    }
+
+    /**
+     * Restores the snapshot of the given datasets, if there is one.
+     *
+     * @param key the key of the setup datasets
+     * @return the keys of the setup entities if the snapshot was restored
+     */
+    public synchronized Optional<ImmutableSet<EntityKey>> restore(final DatasetKey key) {
+        final Entry entry = snapshots.get(key);
+
+        if (entry == null) {
+            return Optional.absent();
+        }
+
+        final SetupConnection connection = openConnection();
+
+        try {
+            entry.snapshot.restore(connection.get());
+            connection.commit();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to restore the snapshot of " + key.getPaths(), e);
+        } finally {
+            connection.close();
+        }
+
+        LOGGER.debug("Restored snapshot of {}", key);
+
+        return Optional.of(entry.entityKeys);
+    }
+
+    /**
+     * Takes a snapshot of the rows of the given setup entities, unless there is one already.
+     *
+     * @param key the key of the setup datasets
+     * @param entityKeys the keys of the entities the setup inserted
+     */
+    public synchronized void take(final DatasetKey key, final Set<EntityKey> entityKeys) {
+        if (snapshots.containsKey(key) || unsupported.contains(key)) {
+            return;
+        }
+
+        discardOutdated(key);
+
+        final Optional<List<RowSelection>> selections = select(entityKeys);
+        if (!selections.isPresent()) {
+            unsupported.add(key);
+            return;
+        }
+
+        final SetupConnection connection = openConnection();
+        final Snapshot snapshot;
+
+        try {
+            snapshot = config.getSetupSnapshotStrategy().take(connection.get(), selections.get());
+            connection.commit();
+        } catch (final SQLException e) {
+            throw new IllegalStateException("Failed to take a snapshot of " + key.getPaths(), e);
+        } finally {
+            connection.close();
+        }
+
+        LOGGER.debug("Took snapshot of {}: {}", key, selections.get());
+
+        snapshots.put(key, new Entry(snapshot, ImmutableSet.copyOf(entityKeys)));
+        evict();
+    }
+
+    /**
+     * Discards all snapshots.
+     */
+    public synchronized void discardAll() {
+        for (final Iterator<Entry> it = snapshots.values().iterator(); it.hasNext(); ) {
+            discard(it.next());
+            it.remove();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        discardAll();
+    }
+
+    // the snapshots of earlier versions of the same datasets are not going to be restored anymore
+    private void discardOutdated(final DatasetKey key) {
+        for (final Iterator<Map.Entry<DatasetKey, Entry>> it = snapshots.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<DatasetKey, Entry> e = it.next();
+
+            if (e.getKey().getPaths().equals(key.getPaths())) {
+                LOGGER.debug("Discarding outdated snapshot of {}", e.getKey());
+                discard(e.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    private void evict() {
+        final Iterator<Entry> it = snapshots.values().iterator();
+
+        while (snapshots.size() > Math.max(config.getSetupSnapshotCount(), 0)) {
+            discard(it.next());
+            it.remove();
+        }
+    }
+
+    private void discard(final Entry entry) {
+        SetupConnection connection = null;
+
+        try {
+            connection = openConnection();
+            entry.snapshot.discard(connection.get());
+            connection.commit();
+        } catch (final Exception e) {
+            // the database may be gone already
+            LOGGER.warn("Failed to discard a setup snapshot", e);
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+        }
+    }
+
+    // the tables in insert order, followed by the join tables
+    private Optional<List<RowSelection>> select(final Set<EntityKey> entityKeys) {
+        final SetMultimap<Class<?>, Object> ids = LinkedHashMultimap.create();
+
+        for (final EntityKey entityKey : entityKeys) {
+            ids.put(entityKey.getEntityClass(), entityKey.getEntityId());
+        }
+
+        final List<Class<?>> types = Lists.newArrayList(insertPlanner.getEntityTypeOrder());
+        types.retainAll(ids.keySet());
+
+        final List<RowSelection> tables = Lists.newArrayList();
+        final List<RowSelection> joinTables = Lists.newArrayList();
+        final Map<Class<?>, Integer> positions = Maps.newHashMap();
+
+        for (final Class<?> type : types) {
+            positions.put(type, positions.size());
+        }
+
+        for (final Class<?> type : types) {
+            for (final Class<?> referenced : insertPlanner.getReferencedTypes(type)) {
+                final Integer position = positions.get(referenced);
+
+                if (position != null && position >= positions.get(type)) {
+                    LOGGER.debug("Not taking a snapshot: {} references {}", type.getName(), referenced.getName());
+                    return Optional.absent();
+                }
+            }
+
+            final TableMapping mapping;
+            try {
+                mapping = tableMappings.get(type);
+            } catch (final UnsupportedOperationException e) {
+                LOGGER.debug("Not taking a snapshot: {}", e.getMessage());
+                return Optional.absent();
+            }
+
+            final List<Object[]> keys = Lists.newArrayList();
+            for (final Object id : ids.get(type)) {
+                keys.add(mapping.getIdColumnValues(id));
+            }
+
+            tables.add(new RowSelection(mapping.getTable(), columnNames(mapping.getIdColumns()), keys));
+
+            for (final JoinTableMapping joinTable : mapping.getJoinTables()) {
+                joinTables.add(new RowSelection(joinTable.getTable(), columnNames(joinTable.getOwnerColumns()), keys));
+            }
+        }
+
+        tables.addAll(joinTables);
+
+        return Optional.of(tables);
+    }
+
+    private SetupConnection openConnection() {
+        return SetupConnection.open(entityManagerFactory, config.getSetupDataSource());
+    }
+
+    private static List<String> columnNames(final List<TableColumn> columns) {
+        final ImmutableList.Builder<String> names = ImmutableList.builder();
+
+        for (final TableColumn column : columns) {
+            names.add(column.getName());
+        }
+
+        return names.build();
+    }
+
+    private static final class Entry {
+
+        private final Snapshot snapshot;
+        private final ImmutableSet<EntityKey> entityKeys;
+
+        private Entry(final Snapshot snapshot, final ImmutableSet<EntityKey> entityKeys) {
+            this.snapshot = snapshot;
+            this.entityKeys = entityKeys;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Copies the rows of a snapshot into shadow tables in the database under test, created with
+ * {@code CREATE TABLE ... AS SELECT}, and copies them back with {@code INSERT INTO ... SELECT}, so that the rows never
+ * leave the database. The shadow tables are dropped when the snapshot is discarded.
+ */
+public class ShadowTableSnapshotStrategy implements SnapshotStrategy {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    // tells apart the shadow tables of several JVMs sharing a database
+    private final String prefix = String.format("JPAUNIT_SNAPSHOT_%06X_", new Random().nextInt(0x1000000));
+
+    @Override
+    public Snapshot take(final Connection connection, final List<RowSelection> selections) throws SQLException {
+        final ImmutableList.Builder<String[]> shadows = ImmutableList.builder();
+
+        for (final RowSelection selection : selections) {
+            final String shadow = prefix + COUNTER.incrementAndGet();
+            execute(connection, "CREATE TABLE " + shadow + " AS SELECT * FROM " + selection.getTable()
+                    + " WHERE 1 = 0");
+            shadows.add(new String[] {selection.getTable(), shadow});
+
+            for (final List<Object[]> chunk : selection.getKeyChunks()) {
+                final PreparedStatement statement = connection.prepareStatement("INSERT INTO " + shadow
+                        + " SELECT * FROM " + selection.getTable() + " WHERE " + selection.getCondition(chunk.size()));
+
+                try {
+                    selection.bind(statement, 1, chunk);
+                    statement.executeUpdate();
+                } finally {
+                    statement.close();
+                }
+            }
+        }
+
+        return new ShadowTableSnapshot(shadows.build());
+    }
+
+    private static void execute(final Connection connection, final String sql) throws SQLException {
+        final Statement statement = connection.createStatement();
+
+        try {
+            statement.execute(sql);
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static final class ShadowTableSnapshot implements Snapshot {
+
+        // pairs of table and shadow table
+        private final List<String[]> shadows;
+
+        private ShadowTableSnapshot(final List<String[]> shadows) {
+            this.shadows = shadows;
+        }
+
+        @Override
+        public void restore(final Connection connection) throws SQLException {
+            for (final String[] shadow : shadows) {
+                execute(connection, "INSERT INTO " + shadow[0] + " SELECT * FROM " + shadow[1]);
+            }
+        }
+
+        @Override
+        public void discard(final Connection connection) throws SQLException {
+            for (final String[] shadow : shadows) {
+                execute(connection, "DROP TABLE " + shadow[1]);
+            }
+        }
+
+    }
+
+}
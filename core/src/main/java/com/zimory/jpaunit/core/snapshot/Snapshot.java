@@ -0,0 +1,27 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * The rows of a setup, as copied by a {@link SnapshotStrategy}.
+ */
+public interface Snapshot {
+
+    /**
+     * Inserts the rows of the snapshot again, table by table, in the order they were taken in.
+     *
+     * @param connection the connection to insert the rows with, which is committed by the caller
+     * @throws SQLException if inserting fails
+     */
+    void restore(Connection connection) throws SQLException;
+
+    /**
+     * Frees the resources held by the snapshot, which is not restored anymore.
+     *
+     * @param connection the connection to use, which is committed by the caller
+     * @throws SQLException if freeing the resources fails
+     */
+    void discard(Connection connection) throws SQLException;
+
+}
@@ -0,0 +1,21 @@
+package com.zimory.jpaunit.core.snapshot;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Copies the rows a setup inserted, so that they can be inserted again without parsing and persisting the setup
+ * datasets (see {@link SetupSnapshots}).
+ */
+public interface SnapshotStrategy {
+
+    /**
+     * @param connection the connection to read the rows with, which is committed by the caller
+     * @param selections the rows to copy, in insert order
+     * @return the snapshot of the rows
+     * @throws SQLException if reading the rows fails
+     */
+    Snapshot take(Connection connection, List<RowSelection> selections) throws SQLException;
+
+}
@@ -0,0 +1,241 @@
+package com.zimory.jpaunit.core.util;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Deep-copies object graphs (such as the entities read from a dataset) field by field, preserving shared references
+ * and cycles within the copied graph.
+ */
+public final class ObjectGraphCopier {
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = ImmutableSet.<Class<?>>of(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Locale.class, Class.class);
+
+    private static final ConcurrentMap<Class<?>, Field[]> FIELDS = Maps.newConcurrentMap();
+
+    private final Map<Object, Object> copies = new IdentityHashMap<Object, Object>();
+
+    private ObjectGraphCopier() {
+    }
+
+    /**
+     * Copies the given objects, sharing a single reference scope among all of them, i.e. an object reachable from
+     * several of the given objects is copied only once.
+     *
+     * @param objects the objects to copy
+     * @param <T> the type of the objects
+     * @return the copies, in the same order as the originals
+     */
+    public static <T> List<T> copyAll(final Collection<T> objects) {
+        final ObjectGraphCopier copier = new ObjectGraphCopier();
+        final List<T> result = Lists.newArrayListWithCapacity(objects.size());
+
+        for (final T object : objects) {
+            result.add(copier.copy(object));
+        }
+
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T copy(final T original) {
+        if (original == null || isImmutable(original)) {
+            return original;
+        }
+
+        final Object existing = copies.get(original);
+        if (existing != null) {
+            return (T) existing;
+        }
+
+        return (T) copyInternal(original);
+    }
+
+    private Object copyInternal(final Object original) {
+        if (original.getClass().isArray()) {
+            return copyArray(original);
+        }
+
+        if (original instanceof Date) {
+            return register(original, ((Date) original).clone());
+        }
+
+        if (original instanceof Calendar) {
+            return register(original, ((Calendar) original).clone());
+        }
+
+        if (original instanceof Collection) {
+            return copyCollection((Collection<?>) original);
+        }
+
+        if (original instanceof Map) {
+            return copyMap((Map<?, ?>) original);
+        }
+
+        return copyFields(original);
+    }
+
+    private Object copyArray(final Object original) {
+        final int length = Array.getLength(original);
+        final Object copy = register(original, Array.newInstance(original.getClass().getComponentType(), length));
+
+        for (int i = 0; i < length; i++) {
+            Array.set(copy, i, copy(Array.get(original, i)));
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object copyCollection(final Collection<?> original) {
+        final Collection<Object> copy = (Collection<Object>) register(original, newCollection(original));
+
+        for (final Object element : original) {
+            copy.add(copy(element));
+        }
+
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object copyMap(final Map<?, ?> original) {
+        final Map<Object, Object> copy = (Map<Object, Object>) register(original, newMap(original));
+
+        for (final Map.Entry<?, ?> entry : original.entrySet()) {
+            copy.put(copy(entry.getKey()), copy(entry.getValue()));
+        }
+
+        return copy;
+    }
+
+    private Object copyFields(final Object original) {
+        final Object copy = register(original, newInstance(original.getClass()));
+
+        try {
+            for (final Field field : getFields(original.getClass())) {
+                field.set(copy, copy(field.get(original)));
+            }
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return copy;
+    }
+
+    private Object register(final Object original, final Object copy) {
+        copies.put(original, copy);
+        return copy;
+    }
+
+    private static boolean isImmutable(final Object o) {
+        return IMMUTABLE_TYPES.contains(o.getClass()) || o instanceof Enum;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<?> newCollection(final Collection<?> original) {
+        final Collection<?> copy = tryNewInstance(original.getClass());
+        if (copy != null) {
+            return copy;
+        }
+
+        if (original instanceof SortedSet) {
+            return new TreeSet<Object>((Comparator<Object>) ((SortedSet<?>) original).comparator());
+        }
+
+        if (original instanceof Set) {
+            return new LinkedHashSet<Object>(original.size());
+        }
+
+        return new ArrayList<Object>(original.size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<?, ?> newMap(final Map<?, ?> original) {
+        final Map<?, ?> copy = tryNewInstance(original.getClass());
+        if (copy != null) {
+            return copy;
+        }
+
+        if (original instanceof SortedMap) {
+            return new TreeMap<Object, Object>((Comparator<Object>) ((SortedMap<?, ?>) original).comparator());
+        }
+
+        return new LinkedHashMap<Object, Object>(original.size());
+    }
+
+    private static <T> T newInstance(final Class<T> type) {
+        final T instance = tryNewInstance(type);
+        if (instance == null) {
+            throw new IllegalStateException("Cannot copy an instance of " + type.getName()
+                    + ": no accessible no-argument constructor");
+        }
+
+        return instance;
+    }
+
+    private static <T> T tryNewInstance(final Class<T> type) {
+        try {
+            final Constructor<T> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            return constructor.newInstance();
+        } catch (final NoSuchMethodException e) {
+            return null;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Cannot instantiate " + type.getName(), e);
+        }
+    }
+
+    private static Field[] getFields(final Class<?> type) {
+        Field[] fields = FIELDS.get(type);
+
+        if (fields == null) {
+            final ImmutableList.Builder<Field> builder = ImmutableList.builder();
+
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (final Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        builder.add(field);
+                    }
+                }
+            }
+
+            fields = builder.build().toArray(new Field[0]);
+            AccessibleObject.setAccessible(fields, true);
+            FIELDS.putIfAbsent(type, fields);
+        }
+
+        return fields;
+    }
+
+}
@@ -51,6 +51,38 @@ public final class PathUtil {
         throw new UnsupportedOperationException("Non-instantiable");
     }
 
+    /**
+     * @param testClass a test class
+     * @return the paths of the datasets of the {@link UsingJpaDataSet} annotation of the test class, if any
+     */
+    public static String[] getClassSetupPaths(final Class<?> testClass) {
+        final UsingJpaDataSet a = testClass.getAnnotation(UsingJpaDataSet.class);
+
+        if (a == null) {
+            return new String[0];
+        }
+
+        if (a.value().length > 0) {
+            return a.value();
+        }
+
+        final String name = getAnnotatingClass(testClass).getSimpleName();
+        return new String[] {name + "/" + name};
+    }
+
+    // the annotation is inherited
+    private static Class<?> getAnnotatingClass(final Class<?> testClass) {
+        for (Class<?> c = testClass; c != null; c = c.getSuperclass()) {
+            for (final Annotation a : c.getDeclaredAnnotations()) {
+                if (a.annotationType() == UsingJpaDataSet.class) {
+                    return c;
+                }
+            }
+        }
+
+        return testClass;
+    }
+
     public static Optional<String> getGenerateSetupDataSetRelativePath(final Method m, final JpaUnitConfig config) {
         final Annotation a = m.getAnnotation(config.getGenerateSetupDataSetAnnotation());
         if (a == null) {
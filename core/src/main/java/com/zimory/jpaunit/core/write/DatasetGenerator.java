@@ -0,0 +1,582 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EmbeddableType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Primitives;
+import com.zimory.jpaunit.core.context.Beans;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+import com.zimory.jpaunit.core.persist.InsertPlanner;
+
+/**
+ * Generates synthetic datasets of the entity types of a persistence unit, e.g. to find out how JpaUnit (or a test)
+ * scales with the size of its datasets. The entities are written one at a time as they are generated, so generating a
+ * dataset takes the same memory regardless of its size.
+ * <p/>
+ * Only the entity types given a number of {@link #rows(Class, int) rows} are generated, in insert order (see
+ * {@link InsertPlanner#getEntityTypeOrder()}). Their IDs are consecutive numbers (or UUIDs, or strings of them), unique
+ * across all generated types. The basic attributes get values depending on the index of the entity among the entities
+ * of its type (e.g. {@code "name 42"}), unless a {@link #values(Class, String, ValueDistribution) distribution} is
+ * given; embedded attributes, element collections and versions are left alone.
+ * <p/>
+ * The owning sides of associations refer to entities of generated types that come earlier in insert order. The
+ * <i>fan-out</i> of an association is the number of entities referring to the same entity for a single-valued
+ * association, and the number of entities referred to by every entity for a collection; entities are referred to
+ * round-robin. Associations of an entity type with itself make trees: every entity but the first refers to an
+ * earlier one. Associations with types generated later (or not at all) are left empty, and rejected if mandatory.
+ * Composite IDs are not supported.
+ */
+public final class DatasetGenerator {
+
+    // 2013-01-01T00:00:00Z
+    private static final long EPOCH = 1356998400000L;
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final YamlConfig yamlConfig;
+    private final InsertPlanner insertPlanner;
+    private final Map<Class<?>, Integer> rows = Maps.newHashMap();
+    private final Table<Class<?>, String, Integer> fanOuts = HashBasedTable.create();
+    private final Table<Class<?>, String, ValueDistribution> distributions = HashBasedTable.create();
+
+    private int defaultFanOut = 1;
+    private long seed;
+
+    /**
+     * @param entityManagerFactory the entity manager factory of the persistence unit
+     * @param config the JpaUnit configuration, for the serializers of the values
+     */
+    public DatasetGenerator(final EntityManagerFactory entityManagerFactory, final JpaUnitConfig config) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.yamlConfig = Beans.createYamlConfig(entityManagerFactory, config);
+        this.yamlConfig.writeConfig.setAutoAnchor(false);
+        this.insertPlanner = new InsertPlanner(entityManagerFactory);
+    }
+
+    /**
+     * @param type a (concrete) entity type
+     * @param count the number of entities of the type to generate
+     * @return this generator
+     */
+    public DatasetGenerator rows(final Class<?> type, final int count) {
+        Preconditions.checkArgument(!Modifier.isAbstract(type.getModifiers()), "Abstract entity type: %s", type);
+        Preconditions.checkArgument(count >= 0, "Negative row count: %s", count);
+        entityManagerFactory.getMetamodel().entity(type);
+
+        rows.put(type, count);
+        return this;
+    }
+
+    /**
+     * @param type an entity type
+     * @param attribute the name of an owning association of the type
+     * @param fanOut the fan-out of the association
+     * @return this generator
+     */
+    public DatasetGenerator fanOut(final Class<?> type, final String attribute, final int fanOut) {
+        Preconditions.checkArgument(fanOut > 0, "Fan-out must be positive: %s", fanOut);
+
+        fanOuts.put(type, attribute, fanOut);
+        return this;
+    }
+
+    /**
+     * @param fanOut the fan-out of the associations not given one explicitly, 1 by default
+     * @return this generator
+     */
+    public DatasetGenerator defaultFanOut(final int fanOut) {
+        Preconditions.checkArgument(fanOut > 0, "Fan-out must be positive: %s", fanOut);
+
+        defaultFanOut = fanOut;
+        return this;
+    }
+
+    /**
+     * @param type an entity type
+     * @param attribute the name of a basic or embedded attribute of the type
+     * @param distribution the distribution of the values of the attribute
+     * @return this generator
+     */
+    public DatasetGenerator values(final Class<?> type, final String attribute, final ValueDistribution distribution) {
+        distributions.put(type, attribute, distribution);
+        return this;
+    }
+
+    /**
+     * @param seed the seed of the random number generator, 0 by default; the same seed generates the same dataset
+     * @return this generator
+     */
+    public DatasetGenerator seed(final long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Generates the dataset into the given file, creating its directory if necessary.
+     *
+     * @param file the file to write the dataset to
+     * @throws IOException if writing fails
+     */
+    public void generate(final File file) throws IOException {
+        Files.createParentDirs(file);
+        generate(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8)));
+    }
+
+    /**
+     * Generates the dataset.
+     *
+     * @param out where to write the dataset to; closed when done
+     * @throws IOException if writing fails
+     */
+    public void generate(final Writer out) throws IOException {
+        final List<TypePlan> plans = plan();
+        final Random random = new Random(seed);
+
+        // with no types given, references are always written as aliases, and no IDs are remembered
+        final EntityDocumentWriter writer = new EntityDocumentWriter(out, yamlConfig,
+                entityManagerFactory.getMetamodel(), JpaUnitMetadata.of(entityManagerFactory).getPersistenceUnitUtil(),
+                ImmutableList.<Class<?>>of());
+
+        try {
+            for (final TypePlan plan : plans) {
+                for (int row = 0; row < plan.rows; row++) {
+                    writer.writeNew(plan.create(row, random));
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private List<TypePlan> plan() {
+        final List<Class<?>> types = Lists.newArrayList();
+        for (final Class<?> type : insertPlanner.getEntityTypeOrder()) {
+            final Integer count = rows.get(type);
+
+            if (count != null && count > 0) {
+                types.add(type);
+            }
+        }
+
+        final Map<Class<?>, TypePlan> plans = Maps.newLinkedHashMap();
+        long firstId = 1;
+
+        for (final Class<?> type : types) {
+            final EntityType<?> entityType = entityManagerFactory.getMetamodel().entity(type);
+            final TypePlan plan = new TypePlan(
+                    type, plans.size(), idAttributeOf(entityType), rows.get(type), firstId);
+            plans.put(type, plan);
+            firstId += plan.rows;
+        }
+
+        for (final TypePlan plan : plans.values()) {
+            final EntityType<?> entityType = entityManagerFactory.getMetamodel().entity(plan.type);
+
+            for (final Attribute<?, ?> attribute : entityType.getAttributes()) {
+                final AttributeGenerator generator = generatorOf(plan, attribute, plans);
+
+                if (generator != null) {
+                    plan.attributes.add(generator);
+                }
+            }
+        }
+
+        return ImmutableList.copyOf(plans.values());
+    }
+
+    private AttributeGenerator generatorOf(
+            final TypePlan plan,
+            final Attribute<?, ?> attribute,
+            final Map<Class<?>, TypePlan> plans) {
+        final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+        final ValueDistribution distribution = distributions.get(plan.type, attribute.getName());
+
+        if (distribution != null) {
+            return new ValueGenerator(accessor, attribute.getJavaType(), distribution);
+        }
+
+        switch (attribute.getPersistentAttributeType()) {
+            case BASIC:
+                final SingularAttribute<?, ?> singular = (SingularAttribute<?, ?>) attribute;
+                if (singular.isId() || singular.isVersion()) {
+                    return null;
+                }
+
+                return new ValueGenerator(accessor, attribute.getJavaType(), new DefaultDistribution(attribute));
+            case MANY_TO_ONE:
+            case ONE_TO_ONE:
+            case ONE_TO_MANY:
+            case MANY_TO_MANY:
+                return accessor.isInverseSide() ? null : referenceGeneratorOf(plan, attribute, accessor, plans);
+            default:
+                return null;
+        }
+    }
+
+    private AttributeGenerator referenceGeneratorOf(
+            final TypePlan plan,
+            final Attribute<?, ?> attribute,
+            final AttributeAccessor accessor,
+            final Map<Class<?>, TypePlan> plans) {
+        final boolean collection = attribute instanceof PluralAttribute;
+        final Class<?> targetType = collection
+                ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType()
+                : attribute.getJavaType();
+
+        TypePlan target = null;
+        for (final TypePlan candidate : plans.values()) {
+            if (targetType.isAssignableFrom(candidate.type)) {
+                target = candidate;
+                break;
+            }
+        }
+
+        if (target == null || target.index > plan.index) {
+            Preconditions.checkArgument(collection || ((SingularAttribute<?, ?>) attribute).isOptional(),
+                    "%s.%s refers to %s, which is not generated before it", plan.type.getSimpleName(),
+                    attribute.getName(), targetType.getSimpleName());
+
+            return null;
+        }
+
+        final Integer fanOut = fanOuts.get(plan.type, attribute.getName());
+
+        return new ReferenceGenerator(accessor, attribute.getJavaType(), collection, target, target == plan,
+                fanOut != null ? fanOut : defaultFanOut);
+    }
+
+    private static SingularAttribute<?, ?> idAttributeOf(final EntityType<?> entityType) {
+        if (entityType.hasSingleIdAttribute()) {
+            for (final SingularAttribute<?, ?> attribute : entityType.getSingularAttributes()) {
+                if (attribute.isId() && !(attribute.getType() instanceof EmbeddableType)) {
+                    return attribute;
+                }
+            }
+        }
+
+        throw new IllegalArgumentException("Composite IDs are not supported: " + entityType.getName());
+    }
+
+    // the IDs of all generated entities are numbered through, so that they are unique within entity hierarchies
+    private static Object idOf(final Class<?> type, final long number) {
+        if (type == UUID.class) {
+            return new UUID(0, number);
+        }
+
+        if (type == String.class) {
+            return String.valueOf(number);
+        }
+
+        return convert(number, type);
+    }
+
+    private static Object convert(final Object value, final Class<?> type) {
+        final Class<?> wrapped = Primitives.wrap(type);
+
+        if (value == null || wrapped.isInstance(value)) {
+            return value;
+        }
+
+        if (value instanceof String) {
+            return convert((String) value, type, wrapped);
+        }
+
+        if (value instanceof Number) {
+            return convert((Number) value, type, wrapped);
+        }
+
+        throw new IllegalArgumentException("Cannot convert " + value + " to " + type.getName());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(final String value, final Class<?> type, final Class<?> wrapped) {
+        if (Number.class.isAssignableFrom(wrapped)) {
+            return convert(new BigDecimal(value), type, wrapped);
+        }
+
+        if (wrapped == Boolean.class) {
+            return Boolean.valueOf(value);
+        }
+
+        if (wrapped == Character.class && value.length() == 1) {
+            return value.charAt(0);
+        }
+
+        if (wrapped == UUID.class) {
+            return UUID.fromString(value);
+        }
+
+        if (wrapped.isEnum()) {
+            return Enum.valueOf((Class) wrapped, value);
+        }
+
+        throw new IllegalArgumentException("Cannot convert " + value + " to " + type.getName());
+    }
+
+    private static Object convert(final Number value, final Class<?> type, final Class<?> wrapped) {
+        if (wrapped == Long.class) {
+            return value.longValue();
+        } else if (wrapped == Integer.class) {
+            return value.intValue();
+        } else if (wrapped == Short.class) {
+            return value.shortValue();
+        } else if (wrapped == Byte.class) {
+            return value.byteValue();
+        } else if (wrapped == Double.class) {
+            return value.doubleValue();
+        } else if (wrapped == Float.class) {
+            return value.floatValue();
+        } else if (wrapped == BigDecimal.class) {
+            return new BigDecimal(value.toString());
+        } else if (wrapped == BigInteger.class) {
+            return BigInteger.valueOf(value.longValue());
+        } else if (wrapped == String.class) {
+            return value.toString();
+        } else if (Date.class.isAssignableFrom(wrapped) || wrapped == Calendar.class) {
+            return dateOf(value.longValue(), wrapped);
+        }
+
+        throw new IllegalArgumentException("Cannot convert " + value + " to " + type.getName());
+    }
+
+    private static Object dateOf(final long millis, final Class<?> type) {
+        if (type == Timestamp.class) {
+            return new Timestamp(millis);
+        } else if (type == java.sql.Date.class) {
+            return new java.sql.Date(millis);
+        } else if (type == Time.class) {
+            return new Time(millis);
+        } else if (type == Calendar.class) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(millis);
+            return calendar;
+        }
+
+        return new Date(millis);
+    }
+
+    private static Object newInstance(final Class<?> type) {
+        try {
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalArgumentException("Entity has no default constructor: " + type.getName(), e);
+        } catch (final InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static final class TypePlan {
+
+        private final Class<?> type;
+        private final int index;
+        private final AttributeAccessor idAccessor;
+        private final Class<?> idType;
+        private final int rows;
+        private final long firstId;
+        private final List<AttributeGenerator> attributes = Lists.newArrayList();
+
+        private TypePlan(
+                final Class<?> type,
+                final int index,
+                final SingularAttribute<?, ?> idAttribute,
+                final int rows,
+                final long firstId) {
+            this.type = type;
+            this.index = index;
+            this.idAccessor = AttributeAccessor.of(idAttribute);
+            this.idType = idAttribute.getJavaType();
+            this.rows = rows;
+            this.firstId = firstId;
+        }
+
+        private Object create(final int row, final Random random) {
+            final Object entity = reference(row);
+
+            for (final AttributeGenerator attribute : attributes) {
+                attribute.generate(entity, row, random);
+            }
+
+            return entity;
+        }
+
+        // an instance with nothing but its ID, which the writer writes as an alias
+        private Object reference(final int row) {
+            final Object entity = newInstance(type);
+            idAccessor.set(entity, idOf(idType, firstId + row));
+
+            return entity;
+        }
+
+    }
+
+    private abstract static class AttributeGenerator {
+
+        private final AttributeAccessor accessor;
+
+        AttributeGenerator(final AttributeAccessor accessor) {
+            this.accessor = accessor;
+        }
+
+        void generate(final Object entity, final int row, final Random random) {
+            accessor.set(entity, valueOf(row, random));
+        }
+
+        abstract Object valueOf(int row, Random random);
+
+    }
+
+    private static final class ValueGenerator extends AttributeGenerator {
+
+        private final Class<?> type;
+        private final ValueDistribution distribution;
+
+        private ValueGenerator(
+                final AttributeAccessor accessor,
+                final Class<?> type,
+                final ValueDistribution distribution) {
+            super(accessor);
+            this.type = type;
+            this.distribution = distribution;
+        }
+
+        @Override
+        Object valueOf(final int row, final Random random) {
+            return convert(distribution.valueOf(row, random), type);
+        }
+
+    }
+
+    private static final class ReferenceGenerator extends AttributeGenerator {
+
+        private final Class<?> collectionType;
+        private final TypePlan target;
+        private final boolean self;
+        private final int fanOut;
+
+        private ReferenceGenerator(
+                final AttributeAccessor accessor,
+                final Class<?> javaType,
+                final boolean collection,
+                final TypePlan target,
+                final boolean self,
+                final int fanOut) {
+            super(accessor);
+            this.collectionType = collection ? javaType : null;
+            this.target = target;
+            this.self = self;
+            this.fanOut = fanOut;
+        }
+
+        @Override
+        Object valueOf(final int row, final Random random) {
+            if (collectionType == null) {
+                if (self) {
+                    return row > 0 ? target.reference((row - 1) / fanOut) : null;
+                }
+
+                return target.reference(row / fanOut % target.rows);
+            }
+
+            final Collection<Object> references = Set.class.isAssignableFrom(collectionType)
+                    ? Sets.newLinkedHashSet()
+                    : Lists.newArrayList();
+
+            if (self) {
+                for (int i = 0; i < Math.min(fanOut, row); i++) {
+                    references.add(target.reference(row - 1 - i));
+                }
+            } else {
+                final int count = Math.min(fanOut, target.rows);
+
+                for (int i = 0; i < count; i++) {
+                    references.add(target.reference((int) (((long) row * count + i) % target.rows)));
+                }
+            }
+
+            return references;
+        }
+
+    }
+
+    private static final class DefaultDistribution implements ValueDistribution {
+
+        private final String name;
+        private final Class<?> type;
+
+        private DefaultDistribution(final Attribute<?, ?> attribute) {
+            this.name = attribute.getName();
+            this.type = Primitives.wrap(attribute.getJavaType());
+        }
+
+        @Override
+        public Object valueOf(final int row, final Random random) {
+            if (type == String.class) {
+                return name + " " + row;
+            } else if (Number.class.isAssignableFrom(type)) {
+                return row;
+            } else if (type == Boolean.class) {
+                return row % 2 == 0;
+            } else if (type == Character.class) {
+                return (char) ('a' + row % 26);
+            } else if (Date.class.isAssignableFrom(type) || type == Calendar.class) {
+                return EPOCH + row * 1000L;
+            } else if (type.isEnum()) {
+                final Object[] constants = type.getEnumConstants();
+                return constants[row % constants.length];
+            } else if (type == UUID.class) {
+                return new UUID(name.hashCode(), row);
+            } else if (type == byte[].class) {
+                return Ints.toByteArray(row);
+            }
+
+            // unknown types are left alone
+            return null;
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.metamodel.EntityType;
+
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+
+/**
+ * Generates a dataset with a {@link DatasetGenerator} from the command line. The persistence unit and its entity
+ * classes have to be on the class path:
+ * <pre>
+ * java com.zimory.jpaunit.core.write.DatasetGeneratorMain &lt;persistence unit&gt; &lt;file&gt;
+ *     [--rows &lt;entity&gt;=&lt;count&gt;]... [--fan-out &lt;entity&gt;.&lt;attribute&gt;=&lt;fan-out&gt;]...
+ *     [--default-fan-out &lt;fan-out&gt;] [--values &lt;entity&gt;.&lt;attribute&gt;=&lt;distribution&gt;]... [--seed &lt;seed&gt;]
+ * </pre>
+ * Entities are given by their entity names or class names, distributions as parsed by
+ * {@link ValueDistributions#parse(String)}, e.g. {@code --rows Unit=100000 --values Unit.age=uniform:18:99}.
+ */
+public final class DatasetGeneratorMain {
+
+    private DatasetGeneratorMain() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DatasetGeneratorMain <persistence unit> <file> [--rows <entity>=<count>]... "
+                    + "[--fan-out <entity>.<attribute>=<fan-out>]... [--default-fan-out <fan-out>] "
+                    + "[--values <entity>.<attribute>=<distribution>]... [--seed <seed>]");
+            System.exit(1);
+        }
+
+        final EntityManagerFactory emf = Persistence.createEntityManagerFactory(args[0]);
+
+        try {
+            final DatasetGenerator generator = new DatasetGenerator(emf, new JpaUnitConfig());
+            final Iterator<String> options = Arrays.asList(args).subList(2, args.length).iterator();
+
+            while (options.hasNext()) {
+                final String option = options.next();
+                if (!options.hasNext()) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+
+                final String value = options.next();
+
+                if ("--rows".equals(option)) {
+                    final String[] rows = split(value, '=');
+                    generator.rows(typeOf(emf, rows[0]), Integer.parseInt(rows[1]));
+                } else if ("--fan-out".equals(option)) {
+                    final String[] fanOut = split(value, '=');
+                    final String[] attribute = split(fanOut[0], '.');
+                    generator.fanOut(typeOf(emf, attribute[0]), attribute[1], Integer.parseInt(fanOut[1]));
+                } else if ("--default-fan-out".equals(option)) {
+                    generator.defaultFanOut(Integer.parseInt(value));
+                } else if ("--values".equals(option)) {
+                    final String[] values = split(value, '=');
+                    final String[] attribute = split(values[0], '.');
+                    generator.values(typeOf(emf, attribute[0]), attribute[1], ValueDistributions.parse(values[1]));
+                } else if ("--seed".equals(option)) {
+                    generator.seed(Long.parseLong(value));
+                } else {
+                    throw new IllegalArgumentException("Unknown option: " + option);
+                }
+            }
+
+            generator.generate(new File(args[1]));
+        } finally {
+            emf.close();
+        }
+    }
+
+    // attribute names follow the last dot, as class names contain dots; values follow the first equals sign
+    private static String[] split(final String value, final char separator) {
+        final int index = separator == '.' ? value.lastIndexOf(separator) : value.indexOf(separator);
+        if (index <= 0 || index == value.length() - 1) {
+            throw new IllegalArgumentException("Expected <name>" + separator + "<value>: " + value);
+        }
+
+        return new String[] {value.substring(0, index), value.substring(index + 1)};
+    }
+
+    private static Class<?> typeOf(final EntityManagerFactory emf, final String name) {
+        for (final EntityType<?> entityType : emf.getMetamodel().getEntities()) {
+            if (entityType.getName().equals(name) || entityType.getJavaType().getName().equals(name)) {
+                return entityType.getJavaType();
+            }
+        }
+
+        throw new IllegalArgumentException("Unknown entity: " + name);
+    }
+
+}
@@ -1,16 +1,20 @@
 package com.zimory.jpaunit.core.write;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.Comparator;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.metamodel.EntityType;
@@ -18,15 +22,23 @@ import javax.persistence.metamodel.EntityType;
 import com.esotericsoftware.yamlbeans.YamlConfig;
 import com.esotericsoftware.yamlbeans.YamlException;
 import com.esotericsoftware.yamlbeans.YamlWriter;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
-import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.compare.ComparisonEngine;
+import com.zimory.jpaunit.core.context.Beans;
 import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.persist.InsertPlanner;
+import com.zimory.jpaunit.core.read.EntityReader;
 import com.zimory.jpaunit.core.util.PathUtil;
 import com.zimory.jpaunit.core.context.TestContext;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
 @Component
 @Transactional
@@ -34,13 +46,33 @@ public class DefaultEntityWriter implements EntityWriter {
 
     private final JpaUnitConfig config;
     private final YamlConfig yamlConfig;
+    private final YamlConfig pagedYamlConfig;
+    private final EntityManagerFactory emf;
     private final EntityManager em;
+    private final InsertPlanner insertPlanner;
+    private final EntityReader entityReader;
+    private final ComparisonEngine comparisonEngine;
 
     @Inject
-    public DefaultEntityWriter(final JpaUnitConfig config, final YamlConfig yamlConfig, final EntityManager em) {
+    public DefaultEntityWriter(
+            final JpaUnitConfig config,
+            final YamlConfig yamlConfig,
+            final EntityManagerFactory emf,
+            final EntityManager em,
+            final InsertPlanner insertPlanner,
+            final EntityReader entityReader,
+            final ComparisonEngine comparisonEngine) {
         this.config = config;
         this.yamlConfig = yamlConfig;
+        this.emf = emf;
         this.em = em;
+        this.insertPlanner = insertPlanner;
+        this.entityReader = entityReader;
+        this.comparisonEngine = comparisonEngine;
+
+        // references are anchored by the paged writer itself
+        this.pagedYamlConfig = Beans.createYamlConfig(emf, config);
+        this.pagedYamlConfig.writeConfig.setAutoAnchor(false);
     }
 
     @Override
@@ -74,24 +106,61 @@ public class DefaultEntityWriter implements EntityWriter {
 
                 final String path = PathUtil.formatYamlPath(config.getWriterBaseDir(), relativePath.get());
 
-                writeEntities(path);
+                if (config.isWriterExpectedDelta()) {
+                    writeDelta(path, testContext);
+                } else {
+                    writeEntities(path);
+                }
             }
         }
     }
 
-    private void writeEntities(final String path) {
-        final YamlWriter writer;
+    private void writeDelta(final String path, final TestContext testContext) {
+        final File file = new File(path);
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Could not create directory: " + file.getParent());
+        }
 
         try {
-            final File file = new File(path);
-            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
-                throw new IllegalStateException("Could not create directory: " + file.getParent());
-            }
+            final Set<Object> setupEntities = entityReader.readSetupEntities(testContext);
+            final Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
 
-            writer = new YamlWriter(new FileWriter(file), yamlConfig);
+            new DeltaEntityDumper(pagedYamlConfig, comparisonEngine).dump(em, getEntityTypeOrder(), setupEntities, out);
         } catch (final IOException e) {
             throw new RuntimeException(e);
         }
+    }
+
+    private void writeEntities(final String path) {
+        final File file = new File(path);
+        if (!file.getParentFile().exists() && !file.getParentFile().mkdirs()) {
+            throw new IllegalStateException("Could not create directory: " + file.getParent());
+        }
+
+        if (config.getWriterThreads() > 1 || config.isWriterFilePerType()) {
+            writeEntitiesInParallel(file);
+            return;
+        }
+
+        final Writer out;
+
+        try {
+            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        if (config.getWriterPageSize() > 0) {
+            try {
+                new PagedEntityDumper(pagedYamlConfig, config.getWriterPageSize()).dump(em, getEntityTypeOrder(), out);
+            } catch (final IOException e) {
+                throw new RuntimeException(e);
+            }
+
+            return;
+        }
+
+        final YamlWriter writer = new YamlWriter(out, yamlConfig);
 
         try {
             try {
@@ -110,6 +179,27 @@ public class DefaultEntityWriter implements EntityWriter {
         }
     }
 
+    private void writeEntitiesInParallel(final File file) {
+        final List<List<Class<?>>> segments = ParallelEntityDumper.segment(
+                getEntityTypeOrder(), insertPlanner, emf.getMetamodel());
+        final PagedEntityDumper pagedDumper = new PagedEntityDumper(pagedYamlConfig, config.getWriterPageSize());
+
+        // the entity managers of other threads wouldn't see the changes of a transaction this one joined
+        final ParallelEntityDumper dumper = TransactionAspectSupport.currentTransactionStatus().isNewTransaction()
+                ? new ParallelEntityDumper(emf, pagedDumper, config.getWriterThreads())
+                : ParallelEntityDumper.sequential(em, pagedDumper);
+
+        try {
+            if (config.isWriterFilePerType()) {
+                dumper.dumpPerSegment(segments, new File(file.getParentFile(), Files.getNameWithoutExtension(file.getName())));
+            } else {
+                dumper.dumpMerged(segments, file);
+            }
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     private List<Object> findAll() {
         final Builder<Object> builder = ImmutableList.builder();
 
@@ -129,19 +219,28 @@ public class DefaultEntityWriter implements EntityWriter {
         return em.createQuery(cq).getResultList();
     }
 
-    private Set<EntityType<?>> getEntityTypes() {
-        final Set<EntityType<?>> unsortedEntityTypes = em.getEntityManagerFactory().getMetamodel().getEntities();
+    // referenced types are written first, so that most references can be written as aliases right away
+    private List<Class<?>> getEntityTypeOrder() {
+        if (config.getEntityTypeOrdering() == null) {
+            return insertPlanner.getEntityTypeOrder();
+        }
+
+        final List<Class<?>> types = Lists.newArrayList();
+        for (final EntityType<?> e : getEntityTypes()) {
+            types.add(e.getJavaType());
+        }
+
+        return types;
+    }
+
+    private Collection<EntityType<?>> getEntityTypes() {
+        final JpaUnitMetadata metadata = JpaUnitMetadata.of(emf);
 
         if (config.getEntityTypeOrdering() == null) {
-            return unsortedEntityTypes;
+            return metadata.getEntityTypes().values();
         }
 
-        return ImmutableSortedSet.copyOf(new Comparator<EntityType<?>>() {
-            @Override
-            public int compare(final EntityType<?> o1, final EntityType<?> o2) {
-                return config.getEntityTypeOrdering().compare(o1.getJavaType(), o2.getJavaType());
-            }
-        }, unsortedEntityTypes);
+        return metadata.getEntityTypes(config.getEntityTypeOrdering());
     }
 
 }
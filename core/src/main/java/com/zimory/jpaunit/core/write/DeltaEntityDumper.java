@@ -0,0 +1,153 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.zimory.jpaunit.core.compare.ComparisonEngine;
+import com.zimory.jpaunit.core.compare.ComparisonEngine.Comparison;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+import com.zimory.jpaunit.core.model.Delta;
+import com.zimory.jpaunit.core.model.EntityIdSet;
+import com.zimory.jpaunit.core.model.EntityKey;
+
+/**
+ * Writes the difference between the setup entities and the entities in the database as a dataset: a {@link Delta}
+ * document with tombstones of the setup entities that were removed, followed by the entities that were inserted or
+ * differ from their setup state (as compared by the expect phase). Unchanged entities are only written where changed
+ * ones refer to them.
+ */
+final class DeltaEntityDumper {
+
+    private final YamlConfig yamlConfig;
+    private final ComparisonEngine comparisonEngine;
+
+    /**
+     * @param yamlConfig the configuration to write attribute values with, must not use automatic anchors
+     * @param comparisonEngine the engine to tell changed entities with
+     */
+    DeltaEntityDumper(final YamlConfig yamlConfig, final ComparisonEngine comparisonEngine) {
+        this.yamlConfig = yamlConfig;
+        this.comparisonEngine = comparisonEngine;
+    }
+
+    /**
+     * @param em the entity manager to load the entities with
+     * @param types the entity types to write, in that order
+     * @param setupEntities the setup entities, in their setup state
+     * @param out where to write the delta to; closed when done
+     * @throws IOException if writing fails
+     */
+    void dump(final EntityManager em, final List<Class<?>> types, final Set<Object> setupEntities, final Writer out)
+            throws IOException {
+        final PersistenceUnitUtil util = JpaUnitMetadata.of(em.getEntityManagerFactory()).getPersistenceUnitUtil();
+        final Map<EntityKey, Object> setup = Maps.newLinkedHashMap();
+
+        for (final Object entity : setupEntities) {
+            setup.put(EntityKey.of(util, entity), entity);
+        }
+
+        final Comparison comparison = comparisonEngine.newComparison();
+        final EntityIdSet present = new EntityIdSet();
+        final List<Object> changed = Lists.newArrayList();
+
+        for (final Class<?> type : types) {
+            for (final Object entity : findAll(em, type)) {
+                // queries for a type return the instances of its subtypes as well
+                if (entity.getClass() != type) {
+                    continue;
+                }
+
+                final EntityKey key = EntityKey.of(util, entity);
+                final Object setupEntity = setup.get(key);
+                present.add(key);
+
+                if (setupEntity == null || !comparison.compare(key, setupEntity, entity)) {
+                    changed.add(entity);
+                }
+            }
+        }
+
+        final Delta delta = new Delta();
+
+        for (final Map.Entry<EntityKey, Object> e : setup.entrySet()) {
+            if (!present.contains(e.getKey())) {
+                delta.getRemoved().add(tombstoneOf(em.getMetamodel().entity(e.getValue().getClass()), e.getValue()));
+            }
+        }
+
+        // no type is ever marked written, so that unchanged entities referenced by changed ones are written in place
+        final EntityDocumentWriter writer = new EntityDocumentWriter(out, yamlConfig, em.getMetamodel(), util, types);
+
+        try {
+            writer.writeDocument(delta);
+
+            for (final Object entity : changed) {
+                writer.write(entity);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static <T> List<T> findAll(final EntityManager em, final Class<T> type) {
+        final CriteriaQuery<T> cq = em.getCriteriaBuilder().createQuery(type);
+        cq.from(type);
+
+        return em.createQuery(cq).getResultList();
+    }
+
+    // a new instance with just the ID, so that nothing but the ID differs from the defaults written
+    private static Object tombstoneOf(final EntityType<?> entityType, final Object entity) {
+        final Object tombstone = newInstance(entity.getClass());
+
+        for (final SingularAttribute<?, ?> attribute : getIdAttributes(entityType)) {
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+            accessor.set(tombstone, accessor.get(entity));
+        }
+
+        return tombstone;
+    }
+
+    private static Collection<? extends SingularAttribute<?, ?>> getIdAttributes(final EntityType<?> entityType) {
+        if (!entityType.hasSingleIdAttribute()) {
+            return entityType.getIdClassAttributes();
+        }
+
+        return ImmutableSet.of(entityType.getId(entityType.getIdType().getJavaType()));
+    }
+
+    private static Object newInstance(final Class<?> type) {
+        try {
+            final Constructor<?> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+
+            return constructor.newInstance();
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException("Entity class without a no-arg constructor: " + type.getName(), e);
+        } catch (final InstantiationException e) {
+            throw new IllegalStateException(e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+}
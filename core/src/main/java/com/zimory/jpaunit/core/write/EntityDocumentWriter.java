@@ -0,0 +1,492 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.IdentifiableType;
+import javax.persistence.metamodel.Metamodel;
+import javax.persistence.metamodel.PluralAttribute;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.esotericsoftware.yamlbeans.YamlException;
+import com.esotericsoftware.yamlbeans.YamlWriter;
+import com.esotericsoftware.yamlbeans.emitter.Emitter;
+import com.esotericsoftware.yamlbeans.parser.AliasEvent;
+import com.esotericsoftware.yamlbeans.parser.DocumentStartEvent;
+import com.esotericsoftware.yamlbeans.parser.Event;
+import com.esotericsoftware.yamlbeans.parser.MappingStartEvent;
+import com.esotericsoftware.yamlbeans.parser.ScalarEvent;
+import com.esotericsoftware.yamlbeans.parser.SequenceStartEvent;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.zimory.jpaunit.core.model.AttributeAccessor;
+
+/**
+ * Writes entities as YAML documents one at a time, so that they don't have to be kept in memory until the whole
+ * dataset is written.
+ * <p/>
+ * Every entity is anchored by its (root) entity name and ID, e.g. {@code &Unit_42}, and references to other entities are
+ * written as aliases of these anchors. A referenced entity that has not been written yet (because its type comes later
+ * in the dataset, or is part of a cycle) is written in place instead, and as an alias where it would have been
+ * written itself. To tell these apart, the IDs of the entities written so far are remembered, but only for the entity
+ * types that are not completely written yet (see {@link #typeWritten(Class)}).
+ * <p/>
+ * Inverse (mapped by) sides of relationships are not written, as they are not persisted anyway.
+ */
+final class EntityDocumentWriter implements Closeable {
+
+    private static final Pattern NON_ANCHOR = Pattern.compile("[^-0-9A-Za-z_]");
+    private static final boolean[] IMPLICIT = {true, true};
+    private static final Method WRITE_VALUE;
+
+    static {
+        try {
+            WRITE_VALUE = YamlWriter.class.getDeclaredMethod("writeValue", Object.class, Class.class, Class.class, Class.class);
+            WRITE_VALUE.setAccessible(true);
+        } catch (final NoSuchMethodException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final YamlWriter valueWriter;
+    private final Emitter emitter;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final Map<Class<?>, EntityType<?>> entityTypes = Maps.newHashMap();
+    private final Map<Class<?>, EntityPlan> plans = Maps.newHashMap();
+    private final Map<String, Integer> pendingTypeCounts = Maps.newHashMap();
+    private final SetMultimap<String, Object> writtenIds = HashMultimap.create();
+
+    /**
+     * @param out where to write the documents to
+     * @param yamlConfig the configuration to write attribute values with, must not use automatic anchors
+     * @param metamodel the metamodel of the persistence unit
+     * @param persistenceUnitUtil the utility to get the IDs of the entities with
+     * @param types the entity types that are going to be written
+     * @throws IOException if writing the start of the stream fails
+     */
+    EntityDocumentWriter(
+            final Writer out,
+            final YamlConfig yamlConfig,
+            final Metamodel metamodel,
+            final PersistenceUnitUtil persistenceUnitUtil,
+            final Collection<Class<?>> types) throws IOException {
+        this.valueWriter = new YamlWriter(out, yamlConfig);
+        this.emitter = valueWriter.getEmitter();
+        this.persistenceUnitUtil = persistenceUnitUtil;
+
+        for (final EntityType<?> entityType : metamodel.getEntities()) {
+            entityTypes.put(entityType.getJavaType(), entityType);
+        }
+
+        for (final Class<?> type : types) {
+            final String rootName = planOf(type).rootName;
+            final Integer count = pendingTypeCounts.get(rootName);
+            pendingTypeCounts.put(rootName, count == null ? 1 : count + 1);
+        }
+
+        emitter.emit(Event.STREAM_START);
+    }
+
+    /**
+     * Writes the given entity as a document of its own.
+     *
+     * @param entity the entity to write
+     * @throws IOException if writing fails
+     */
+    void write(final Object entity) throws IOException {
+        final EntityPlan plan = planOf(entity.getClass());
+        final Object id = persistenceUnitUtil.getIdentifier(entity);
+
+        emitter.emit(new DocumentStartEvent(true, null, null));
+
+        if (isWritten(plan, id)) {
+            emitter.emit(new AliasEvent(plan.anchorOf(id)));
+        } else {
+            writeEntity(entity, plan, id);
+        }
+
+        emitter.emit(Event.DOCUMENT_END_FALSE);
+    }
+
+    /**
+     * Writes the given entity as a document of its own, in full, even if an entity with the same ID was written
+     * before. References are written as aliases as usual, so for the entities they refer to to be written in full
+     * (rather than as aliases), they have to be of the types given on construction.
+     *
+     * @param entity the entity to write
+     * @throws IOException if writing fails
+     */
+    void writeNew(final Object entity) throws IOException {
+        final EntityPlan plan = planOf(entity.getClass());
+
+        emitter.emit(new DocumentStartEvent(true, null, null));
+        writeEntity(entity, plan, persistenceUnitUtil.getIdentifier(entity));
+        emitter.emit(Event.DOCUMENT_END_FALSE);
+    }
+
+    /**
+     * Writes a value other than an entity, e.g. a {@link com.zimory.jpaunit.core.model.Delta}, as a document of its
+     * own. The value is written by yamlbeans, tagged with its class tag, so entities it refers to are written in full.
+     *
+     * @param value the value to write
+     * @throws IOException if writing fails
+     */
+    void writeDocument(final Object value) throws IOException {
+        emitter.emit(new DocumentStartEvent(true, null, null));
+        writeValue(value, null, null);
+        emitter.emit(Event.DOCUMENT_END_FALSE);
+    }
+
+    /**
+     * Signals that all entities of the given type have been {@link #write(Object) written}. Once all types of an
+     * entity hierarchy are written, references to its entities can be written as aliases right away.
+     *
+     * @param type the entity type
+     */
+    void typeWritten(final Class<?> type) {
+        final String rootName = planOf(type).rootName;
+        final int count = pendingTypeCounts.get(rootName) - 1;
+
+        if (count > 0) {
+            pendingTypeCounts.put(rootName, count);
+        } else {
+            pendingTypeCounts.remove(rootName);
+            writtenIds.removeAll(rootName);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        valueWriter.close();
+    }
+
+    private boolean isWritten(final EntityPlan plan, final Object id) {
+        return !pendingTypeCounts.containsKey(plan.rootName) || writtenIds.containsEntry(plan.rootName, id);
+    }
+
+    private void writeEntity(final Object entity, final EntityPlan plan, final Object id) throws IOException {
+        if (pendingTypeCounts.containsKey(plan.rootName)) {
+            writtenIds.put(plan.rootName, id);
+        }
+
+        emitter.emit(new MappingStartEvent(plan.anchorOf(id), plan.tag, false, false));
+
+        for (final AttributePlan attribute : plan.attributes) {
+            final Object value = attribute.accessor.get(entity);
+            if (value == null) {
+                continue;
+            }
+
+            emitter.emit(scalar(attribute.accessor.getName()));
+
+            if (attribute.reference) {
+                writeReferences(value);
+            } else {
+                writeValue(value, attribute.type, attribute.elementType);
+            }
+        }
+
+        emitter.emit(Event.MAPPING_END);
+    }
+
+    private void writeReferences(final Object value) throws IOException {
+        if (value instanceof Collection) {
+            emitter.emit(new SequenceStartEvent(null, null, true, false));
+            for (final Object element : (Collection<?>) value) {
+                writeReference(element);
+            }
+            emitter.emit(Event.SEQUENCE_END);
+        } else if (value instanceof Map) {
+            emitter.emit(new MappingStartEvent(null, null, true, false));
+            for (final Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                writeValue(e.getKey(), e.getKey().getClass(), null);
+                writeReference(e.getValue());
+            }
+            emitter.emit(Event.MAPPING_END);
+        } else {
+            writeReference(value);
+        }
+    }
+
+    private void writeReference(final Object referenced) throws IOException {
+        final Object id = persistenceUnitUtil.getIdentifier(referenced);
+        final EntityPlan plan = planOf(referenced.getClass());
+
+        if (isWritten(plan, id)) {
+            emitter.emit(new AliasEvent(plan.anchorOf(id)));
+        } else {
+            final Object entity = unproxy(referenced);
+            writeEntity(entity, planOf(entity.getClass()), id);
+        }
+    }
+
+    // yamlbeans writes anything but entities the same way as the default writer does, including the scalar serializers
+    private void writeValue(final Object value, final Class<?> type, final Class<?> elementType) throws IOException {
+        try {
+            WRITE_VALUE.invoke(valueWriter, copyOf(value), type, elementType, null);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new YamlException("Error writing value: " + value, e.getCause());
+        }
+    }
+
+    // the provider's collection classes would show up as tags otherwise
+    private static Object copyOf(final Object value) {
+        if (value instanceof List) {
+            return Lists.newArrayList((List<?>) value);
+        }
+
+        if (value instanceof Set) {
+            return Sets.newHashSet((Set<?>) value);
+        }
+
+        if (value instanceof Map) {
+            return Maps.newHashMap((Map<?, ?>) value);
+        }
+
+        return value;
+    }
+
+    private static ScalarEvent scalar(final String value) {
+        return new ScalarEvent(null, null, IMPLICIT, value, (char) 0);
+    }
+
+    /**
+     * Resolves Hibernate proxies, which don't hold the state of the entity, without depending on Hibernate.
+     *
+     * @param entity an entity or a proxy of one
+     * @return the entity, loaded if it was an uninitialized proxy
+     */
+    static Object unproxy(final Object entity) {
+        final Method getInitializer;
+
+        try {
+            getInitializer = entity.getClass().getMethod("getHibernateLazyInitializer");
+        } catch (final NoSuchMethodException e) {
+            return entity;
+        }
+
+        try {
+            final Object initializer = getInitializer.invoke(entity);
+            return initializer.getClass().getMethod("getImplementation").invoke(initializer);
+        } catch (final NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        } catch (final IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (final InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @param entityType an entity type
+     * @return the topmost entity type of the hierarchy of the given type, which shares its IDs and anchors
+     */
+    static EntityType<?> rootOf(final EntityType<?> entityType) {
+        EntityType<?> root = entityType;
+
+        for (IdentifiableType<?> t = entityType; t != null; t = t.getSupertype()) {
+            if (t instanceof EntityType) {
+                root = (EntityType<?>) t;
+            }
+        }
+
+        return root;
+    }
+
+    private EntityPlan planOf(final Class<?> type) {
+        EntityPlan plan = plans.get(type);
+
+        if (plan == null) {
+            plan = EntityPlan.of(entityTypeOf(type));
+            plans.put(type, plan);
+        }
+
+        return plan;
+    }
+
+    // proxies are subclasses of the entity class
+    private EntityType<?> entityTypeOf(final Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            final EntityType<?> entityType = entityTypes.get(c);
+
+            if (entityType != null) {
+                return entityType;
+            }
+        }
+
+        throw new IllegalArgumentException("Not an entity: " + type.getName());
+    }
+
+    private static final class EntityPlan {
+
+        private final String tag;
+        private final String rootName;
+        private final ImmutableList<AttributePlan> attributes;
+
+        private EntityPlan(final String tag, final String rootName, final ImmutableList<AttributePlan> attributes) {
+            this.tag = tag;
+            this.rootName = rootName;
+            this.attributes = attributes;
+        }
+
+        private static EntityPlan of(final EntityType<?> entityType) {
+            final EntityType<?> root = rootOf(entityType);
+            final List<String> fieldNames = getFieldNames(entityType.getJavaType());
+            final List<Attribute<?, ?>> sorted = Lists.<Attribute<?, ?>>newArrayList(entityType.getAttributes());
+
+            // same order as the fields are declared in, which is what the default writer does
+            Collections.sort(sorted, new Comparator<Attribute<?, ?>>() {
+                @Override
+                public int compare(final Attribute<?, ?> o1, final Attribute<?, ?> o2) {
+                    final int result = indexOf(o1) - indexOf(o2);
+                    return result != 0 ? result : o1.getName().compareTo(o2.getName());
+                }
+
+                private int indexOf(final Attribute<?, ?> attribute) {
+                    final int index = fieldNames.indexOf(attribute.getName());
+                    return index >= 0 ? index : Integer.MAX_VALUE;
+                }
+            });
+
+            final ImmutableList.Builder<AttributePlan> attributes = ImmutableList.builder();
+            for (final Attribute<?, ?> attribute : sorted) {
+                final AttributePlan plan = AttributePlan.of(attribute);
+
+                if (plan != null) {
+                    attributes.add(plan);
+                }
+            }
+
+            return new EntityPlan(entityType.getName(), root.getName(), attributes.build());
+        }
+
+        private static List<String> getFieldNames(final Class<?> type) {
+            final List<String> names = Lists.newArrayList();
+
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                final List<String> declared = Lists.newArrayList();
+
+                for (final Field field : c.getDeclaredFields()) {
+                    declared.add(field.getName());
+                }
+
+                names.addAll(0, declared);
+            }
+
+            return names;
+        }
+
+        /**
+         * Derives the anchor from the ID; IDs that contain characters not allowed in anchors are suffixed with the hash
+         * of their original representation to keep them unique.
+         */
+        private String anchorOf(final Object id) {
+            final String value = toString(id);
+            final String sanitized = NON_ANCHOR.matcher(value).replaceAll("_");
+
+            if (sanitized.equals(value)) {
+                return rootName + "_" + value;
+            }
+
+            return rootName + "_" + sanitized + "_" + Hashing.murmur3_32().hashString(value, Charsets.UTF_8);
+        }
+
+        // composite IDs don't necessarily implement toString(), so they are represented by their field values
+        private static String toString(final Object id) {
+            if (!isComposite(id)) {
+                return String.valueOf(id);
+            }
+
+            final List<Object> values = Lists.newArrayList();
+            for (Class<?> c = id.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+                for (final Field field : c.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+
+                    field.setAccessible(true);
+
+                    try {
+                        values.add(field.get(id));
+                    } catch (final IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+
+            return Joiner.on('_').useForNull("null").join(values);
+        }
+
+        private static boolean isComposite(final Object id) {
+            return !(id instanceof CharSequence || id instanceof Number || id instanceof Enum
+                    || id.getClass().getName().startsWith("java."));
+        }
+
+    }
+
+    private static final class AttributePlan {
+
+        private final AttributeAccessor accessor;
+        private final boolean reference;
+        private final Class<?> type;
+        private final Class<?> elementType;
+
+        private AttributePlan(
+                final AttributeAccessor accessor,
+                final boolean reference,
+                final Class<?> type,
+                final Class<?> elementType) {
+            this.accessor = accessor;
+            this.reference = reference;
+            this.type = type;
+            this.elementType = elementType;
+        }
+
+        private static AttributePlan of(final Attribute<?, ?> attribute) {
+            final AttributeAccessor accessor = AttributeAccessor.of(attribute);
+            final Class<?> elementType = attribute instanceof PluralAttribute
+                    ? ((PluralAttribute<?, ?, ?>) attribute).getElementType().getJavaType()
+                    : null;
+
+            switch (attribute.getPersistentAttributeType()) {
+                case MANY_TO_ONE:
+                case ONE_TO_ONE:
+                case ONE_TO_MANY:
+                case MANY_TO_MANY:
+                    return accessor.isInverseSide() ? null : new AttributePlan(accessor, true, null, null);
+                default:
+                    return new AttributePlan(accessor, false, attribute.getJavaType(), elementType);
+            }
+        }
+
+    }
+
+}
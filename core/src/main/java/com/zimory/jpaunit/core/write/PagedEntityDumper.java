@@ -0,0 +1,129 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EmbeddableType;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.collect.Lists;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+
+/**
+ * Writes all entities of a sequence of entity types with an {@link EntityDocumentWriter}, loading them one page at a
+ * time and clearing the persistence context after every page.
+ */
+final class PagedEntityDumper {
+
+    // Hibernate doesn't keep snapshots of read-only entities for dirty checking; other providers ignore the hint
+    private static final String READ_ONLY_HINT = "org.hibernate.readOnly";
+
+    private final YamlConfig yamlConfig;
+    private final int pageSize;
+
+    /**
+     * @param yamlConfig the configuration to write attribute values with, must not use automatic anchors
+     * @param pageSize the number of entities per page, or 0 to load all entities of a type at once
+     */
+    PagedEntityDumper(final YamlConfig yamlConfig, final int pageSize) {
+        this.yamlConfig = yamlConfig;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Writes the entities of the given types, in that order. References to entities of other types are expected to
+     * be written before (see {@link EntityDocumentWriter}).
+     *
+     * @param em the entity manager to load the entities with, which is cleared after every page
+     * @param types the entity types to write
+     * @param out where to write the entities to; closed when done
+     * @throws IOException if writing fails
+     */
+    void dump(final EntityManager em, final List<Class<?>> types, final Writer out) throws IOException {
+        final EntityDocumentWriter writer = new EntityDocumentWriter(out, yamlConfig, em.getMetamodel(),
+                JpaUnitMetadata.of(em.getEntityManagerFactory()).getPersistenceUnitUtil(), types);
+
+        try {
+            for (final Class<?> type : types) {
+                for (int first = 0; ; first += pageSize) {
+                    final List<?> page = findPage(em, type, first);
+
+                    // queries for a type return the instances of its subtypes as well, and the proxies already in
+                    // the persistence context for lazy references of the entities before
+                    for (final Object result : page) {
+                        final Object entity = EntityDocumentWriter.unproxy(result);
+
+                        if (entity.getClass() == type) {
+                            writer.write(entity);
+                        }
+                    }
+
+                    em.clear();
+
+                    if (pageSize <= 0 || page.size() < pageSize) {
+                        break;
+                    }
+                }
+
+                writer.typeWritten(type);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private <T> List<T> findPage(final EntityManager em, final Class<T> javaType, final int first) {
+        final CriteriaBuilder cb = em.getCriteriaBuilder();
+        final CriteriaQuery<T> cq = cb.createQuery(javaType);
+        final Root<T> root = cq.from(javaType);
+
+        final List<Order> orders = Lists.newArrayList();
+        for (final Path<?> idPath : getIdPaths(root, em.getMetamodel().entity(javaType))) {
+            orders.add(cb.asc(idPath));
+        }
+        cq.orderBy(orders);
+
+        final TypedQuery<T> query = em.createQuery(cq).setHint(READ_ONLY_HINT, true);
+
+        if (pageSize > 0) {
+            query.setFirstResult(first).setMaxResults(pageSize);
+        }
+
+        return query.getResultList();
+    }
+
+    // pages need a stable order; composite IDs are ordered by their attributes
+    private static List<Path<?>> getIdPaths(final Root<?> root, final EntityType<?> entityType) {
+        final List<Path<?>> paths = Lists.newArrayList();
+
+        if (!entityType.hasSingleIdAttribute()) {
+            for (final SingularAttribute<?, ?> attribute : entityType.getIdClassAttributes()) {
+                paths.add(root.get(attribute.getName()));
+            }
+        } else {
+            final SingularAttribute<?, ?> id = entityType.getId(entityType.getIdType().getJavaType());
+
+            if (id.getType() instanceof EmbeddableType) {
+                for (final Attribute<?, ?> attribute : ((EmbeddableType<?>) id.getType()).getAttributes()) {
+                    paths.add(root.get(id.getName()).get(attribute.getName()));
+                }
+            } else {
+                paths.add(root.get(id.getName()));
+            }
+        }
+
+        return paths;
+    }
+
+}
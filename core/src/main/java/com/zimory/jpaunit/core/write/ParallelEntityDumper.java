@@ -0,0 +1,257 @@
+package com.zimory.jpaunit.core.write;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.Metamodel;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.zimory.jpaunit.core.persist.InsertPlanner;
+
+/**
+ * Writes the entity types concurrently, each segment of types on its own thread and with its own entity manager.
+ * <p/>
+ * The types are split into segments such that no type references a type of a later segment, and the types of an
+ * entity hierarchy end up in the same segment. This keeps the segments independent of each other: references to
+ * entities of other segments can always be written as aliases (see {@link EntityDocumentWriter}). Usually every type
+ * is a segment of its own; only types that reference each other (directly or not), or are ordered after the types
+ * referencing them, are grouped.
+ * <p/>
+ * The entity managers of other threads only see committed changes; within a transaction that has to be read, the
+ * segments are written one after the other with the entity manager of the transaction instead (see
+ * {@link #sequential}).
+ */
+final class ParallelEntityDumper {
+
+    private final EntityManagerFactory emf;
+    private final EntityManager em;
+    private final PagedEntityDumper dumper;
+    private final int threads;
+
+    ParallelEntityDumper(final EntityManagerFactory emf, final PagedEntityDumper dumper, final int threads) {
+        this(emf, null, dumper, threads);
+    }
+
+    private ParallelEntityDumper(
+            final EntityManagerFactory emf,
+            final EntityManager em,
+            final PagedEntityDumper dumper,
+            final int threads) {
+        this.emf = emf;
+        this.em = em;
+        this.dumper = dumper;
+        this.threads = threads;
+    }
+
+    /**
+     * @param em the entity manager of the transaction to read the entities in, which is cleared after every page
+     * @param dumper the dumper writing the segments
+     * @return a dumper writing the segments the same way, but one after the other on the current thread, with the
+     *         given entity manager
+     */
+    static ParallelEntityDumper sequential(final EntityManager em, final PagedEntityDumper dumper) {
+        return new ParallelEntityDumper(em.getEntityManagerFactory(), em, dumper, 1);
+    }
+
+    /**
+     * Writes the segments into temporary files next to the target file, which are then concatenated in order.
+     *
+     * @param segments the segments of entity types, in dataset order
+     * @param file the file to write the dataset to
+     * @throws IOException if writing fails
+     */
+    void dumpMerged(final List<List<Class<?>>> segments, final File file) throws IOException {
+        final List<File> parts = Lists.newArrayList();
+
+        try {
+            for (int i = 0; i < segments.size(); i++) {
+                parts.add(File.createTempFile(file.getName() + "-", ".part", file.getParentFile()));
+            }
+
+            dump(segments, parts);
+
+            final OutputStream out = new FileOutputStream(file);
+            try {
+                for (final File part : parts) {
+                    Files.copy(part, out);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            for (final File part : parts) {
+                if (!part.delete()) {
+                    part.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every segment into a file of its own, named after the position and the first entity type of the
+     * segment, e.g. {@code 01-Unit.yml}.
+     *
+     * @param segments the segments of entity types, in dataset order
+     * @param dir the directory to write the files to
+     * @throws IOException if writing fails
+     */
+    void dumpPerSegment(final List<List<Class<?>>> segments, final File dir) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IllegalStateException("Could not create directory: " + dir);
+        }
+
+        final Metamodel metamodel = emf.getMetamodel();
+        final String format = "%0" + String.valueOf(segments.size()).length() + "d-%s.yml";
+        final List<File> files = Lists.newArrayList();
+
+        for (int i = 0; i < segments.size(); i++) {
+            final String entityName = metamodel.entity(segments.get(i).get(0)).getName();
+            files.add(new File(dir, String.format(format, i + 1, entityName)));
+        }
+
+        dump(segments, files);
+    }
+
+    private void dump(final List<List<Class<?>>> segments, final List<File> files) throws IOException {
+        if (em != null) {
+            for (int i = 0; i < segments.size(); i++) {
+                new SegmentDump(segments.get(i), files.get(i)).call();
+            }
+
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, segments.size()),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("jpaunit-writer-%d")
+                        .setDaemon(true)
+                        .build());
+
+        try {
+            final List<Future<Void>> futures = Lists.newArrayList();
+            for (int i = 0; i < segments.size(); i++) {
+                futures.add(executor.submit(new SegmentDump(segments.get(i), files.get(i))));
+            }
+
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while writing the dataset", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits the given entity types into independent segments.
+     *
+     * @param types the entity types, in dataset order
+     * @param insertPlanner the planner knowing about the references between the types
+     * @param metamodel the metamodel of the persistence unit
+     * @return the segments, in dataset order
+     */
+    static List<List<Class<?>>> segment(
+            final List<Class<?>> types, final InsertPlanner insertPlanner, final Metamodel metamodel) {
+        final Map<Class<?>, Integer> positions = Maps.newHashMap();
+        final Map<Class<?>, Integer> lastPositionsByRoot = Maps.newHashMap();
+
+        for (int i = 0; i < types.size(); i++) {
+            positions.put(types.get(i), i);
+            lastPositionsByRoot.put(rootOf(types.get(i), metamodel), i);
+        }
+
+        final ImmutableList.Builder<List<Class<?>>> segments = ImmutableList.builder();
+        int start = 0;
+        int end = 0;
+
+        for (int i = 0; i < types.size(); i++) {
+            final Class<?> type = types.get(i);
+            end = Math.max(end, lastPositionsByRoot.get(rootOf(type, metamodel)));
+
+            for (final Class<?> referenced : insertPlanner.getReferencedTypes(type)) {
+                final Integer position = positions.get(referenced);
+
+                if (position != null) {
+                    end = Math.max(end, position);
+                }
+            }
+
+            if (end == i) {
+                segments.add(ImmutableList.copyOf(types.subList(start, i + 1)));
+                start = i + 1;
+            }
+        }
+
+        return segments.build();
+    }
+
+    private static Class<?> rootOf(final Class<?> type, final Metamodel metamodel) {
+        return EntityDocumentWriter.rootOf(metamodel.entity(type)).getJavaType();
+    }
+
+    private final class SegmentDump implements Callable<Void> {
+
+        private final List<Class<?>> types;
+        private final File file;
+
+        private SegmentDump(final List<Class<?>> types, final File file) {
+            this.types = types;
+            this.file = file;
+        }
+
+        @Override
+        public Void call() throws IOException {
+            if (em != null) {
+                dump(em);
+                return null;
+            }
+
+            final EntityManager segmentEm = emf.createEntityManager();
+
+            try {
+                dump(segmentEm);
+            } finally {
+                segmentEm.close();
+            }
+
+            return null;
+        }
+
+        private void dump(final EntityManager segmentEm) throws IOException {
+            dumper.dump(segmentEm, types,
+                    new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charsets.UTF_8)));
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.zimory.jpaunit.core.write;
+
+import java.util.Random;
+
+/**
+ * Yields the values of an attribute of generated entities (see {@link DatasetGenerator}).
+ */
+public interface ValueDistribution {
+
+    /**
+     * @param row the index of the generated entity among the entities of its type
+     * @param random the random number generator of the dataset
+     * @return the value of the attribute; numbers are converted to the type of the attribute
+     */
+    Object valueOf(int row, Random random);
+
+}
@@ -0,0 +1,142 @@
+package com.zimory.jpaunit.core.write;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Common {@link ValueDistribution}s.
+ */
+public final class ValueDistributions {
+
+    private ValueDistributions() {
+    }
+
+    /**
+     * @param value the value
+     * @return the same value for every entity
+     */
+    public static ValueDistribution constant(final Object value) {
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return value;
+            }
+        };
+    }
+
+    /**
+     * @param start the value of the first entity
+     * @return consecutive numbers, starting at the given one
+     */
+    public static ValueDistribution sequence(final long start) {
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return start + row;
+            }
+        };
+    }
+
+    /**
+     * @param min the lowest value
+     * @param max the highest value
+     * @return numbers uniformly distributed between the given ones (inclusive)
+     */
+    public static ValueDistribution uniform(final long min, final long max) {
+        Preconditions.checkArgument(min <= max, "min > max: %s > %s", min, max);
+
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return min + (long) (random.nextDouble() * (max - min + 1));
+            }
+        };
+    }
+
+    /**
+     * @param mean the mean
+     * @param standardDeviation the standard deviation
+     * @return normally distributed numbers
+     */
+    public static ValueDistribution gaussian(final double mean, final double standardDeviation) {
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return mean + random.nextGaussian() * standardDeviation;
+            }
+        };
+    }
+
+    /**
+     * @param values the values to choose from
+     * @return one of the given values for every entity, each equally likely
+     */
+    public static ValueDistribution oneOf(final Object... values) {
+        Preconditions.checkArgument(values.length > 0, "no values");
+        final List<Object> choices = ImmutableList.copyOf(values);
+
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return choices.get(random.nextInt(choices.size()));
+            }
+        };
+    }
+
+    /**
+     * @param nullFraction the fraction of entities that get {@code null}, between 0 and 1
+     * @param distribution the distribution of the other entities' values
+     * @return {@code null} for the given fraction of the entities, and a value of the given distribution otherwise
+     */
+    public static ValueDistribution withNulls(final double nullFraction, final ValueDistribution distribution) {
+        return new ValueDistribution() {
+            @Override
+            public Object valueOf(final int row, final Random random) {
+                return random.nextDouble() < nullFraction ? null : distribution.valueOf(row, random);
+            }
+        };
+    }
+
+    /**
+     * Parses a distribution, as given to the {@link DatasetGeneratorMain command line}: {@code constant:<value>},
+     * {@code sequence:<start>}, {@code uniform:<min>:<max>}, {@code gaussian:<mean>:<standard deviation>} or
+     * {@code oneOf:<value>,<value>...}, where the values of {@code constant} and {@code oneOf} are strings.
+     *
+     * @param spec the distribution
+     * @return the distribution
+     * @throws IllegalArgumentException if the distribution can't be parsed
+     */
+    public static ValueDistribution parse(final String spec) {
+        final String[] parts = spec.split(":", -1);
+
+        try {
+            if ("constant".equals(parts[0]) && parts.length > 1) {
+                return constant(spec.substring(parts[0].length() + 1));
+            }
+
+            if ("sequence".equals(parts[0]) && parts.length == 2) {
+                return sequence(Long.parseLong(parts[1]));
+            }
+
+            if ("uniform".equals(parts[0]) && parts.length == 3) {
+                return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            }
+
+            if ("gaussian".equals(parts[0]) && parts.length == 3) {
+                return gaussian(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            }
+
+            if ("oneOf".equals(parts[0]) && parts.length > 1) {
+                return oneOf((Object[]) spec.substring(parts[0].length() + 1).split(","));
+            }
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value distribution: " + spec, e);
+        }
+
+        throw new IllegalArgumentException("Invalid value distribution: " + spec);
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.zimory.jpaunit.core.compare.ComparisonEngine.Comparison;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ComparisonEngineTest {
+
+    private static final class Item {
+
+        private final String name;
+        private final Number count;
+        private final List<Item> children;
+
+        private Item(final String name) {
+            this(name, 0, ImmutableList.<Item>of());
+        }
+
+        private Item(final String name, final Number count, final List<Item> children) {
+            this.name = name;
+            this.count = count;
+            this.children = children;
+        }
+
+    }
+
+    private static final class Link {
+
+        private final String name;
+        private Link next;
+
+        private Link(final String name, final Link next) {
+            this.name = name;
+            this.next = next;
+        }
+
+    }
+
+    private final ComparisonEngine engine = new ComparisonEngine();
+
+    @Test
+    public void assertNoDifferences_whenAllEntitiesAreEqualPasses() throws Exception {
+        final Comparison comparison = engine.newComparison();
+
+        assertThat(comparison.compare(EntityKey.of(Item.class, 1), new Item("a"), new Item("a")), equalTo(true));
+        comparison.assertNoDifferences();
+    }
+
+    @Test
+    public void compare_withFastPathComparesNumbersLeniently() throws Exception {
+        final Comparison comparison = engine.newFastPathComparison();
+        final Item expected = new Item("a", 1, ImmutableList.of(new Item("b", 2L, ImmutableList.<Item>of())));
+        final Item actual = new Item("a", 1L, Lists.newArrayList(new Item("b", 2, Lists.<Item>newArrayList())));
+
+        assertThat(comparison.compare(EntityKey.of(Item.class, 1), expected, actual), equalTo(true));
+        comparison.assertNoDifferences();
+    }
+
+    @Test
+    public void compare_withFastPathComparesDatesLikeTheChain() throws Exception {
+        final Date expected = new Date(1000L);
+        final Timestamp actual = new Timestamp(1000L);
+
+        assertThat(engine.newFastPathComparison().compare(EntityKey.of(Date.class, 1), expected, actual),
+                equalTo(engine.newComparison().compare(EntityKey.of(Date.class, 1), expected, actual)));
+    }
+
+    @Test
+    public void compare_withFastPathReportsTheSameDifferences() throws Exception {
+        final Item expected = new Item("a", 1, ImmutableList.of(new Item("b")));
+        final Item actual = new Item("a", 1, ImmutableList.of(new Item("c")));
+
+        assertThat(getFailureMessage(engine.newFastPathComparison(), expected, actual),
+                equalTo(getFailureMessage(engine.newComparison(), expected, actual)));
+    }
+
+    @Test
+    public void compare_withFastPathFindsDifferencesBeyondItsDepth() throws Exception {
+        final Link expected = chain(20, "end");
+        final Link actual = chain(20, "other end");
+
+        assertThat(getFailureMessage(engine.newFastPathComparison(), expected, actual),
+                equalTo(getFailureMessage(engine.newComparison(), expected, actual)));
+    }
+
+    @Test
+    public void compare_withFastPathComparesCycles() throws Exception {
+        final Comparison comparison = engine.newFastPathComparison();
+        final Link expected = new Link("a", new Link("b", null));
+        final Link actual = new Link("a", new Link("b", null));
+        expected.next.next = expected;
+        actual.next.next = actual;
+
+        assertThat(comparison.compare(EntityKey.of(Link.class, 1), expected, actual), equalTo(true));
+        comparison.assertNoDifferences();
+    }
+
+    @Test
+    public void assertNoDifferences_reportsAllDifferencesAtOnce() throws Exception {
+        final Comparison comparison = engine.newComparison();
+
+        comparison.compare(EntityKey.of(Item.class, 1), new Item("a"), new Item("b"));
+        comparison.compare(EntityKey.of(Item.class, 2), new Item("c"), null);
+        comparison.unexpectedlyPresent(ImmutableSet.of(EntityKey.of(Item.class, 3)));
+
+        try {
+            comparison.assertNoDifferences();
+            fail();
+        } catch (final AssertionError e) {
+            assertThat(e.getMessage(), allOf(
+                    containsString("Item#1"), containsString("Item#2"), containsString("removed, but was present: [Item#3]")));
+        }
+    }
+
+    private static Link chain(final int length, final String end) {
+        Link link = new Link(end, null);
+        for (int i = 1; i < length; i++) {
+            link = new Link("link " + i, link);
+        }
+
+        return link;
+    }
+
+    private static String getFailureMessage(final Comparison comparison, final Object expected, final Object actual) {
+        assertThat(comparison.compare(EntityKey.of(Item.class, 1), expected, actual), equalTo(false));
+
+        try {
+            comparison.assertNoDifferences();
+        } catch (final AssertionError e) {
+            return e.getMessage();
+        }
+
+        throw new AssertionError("No differences reported");
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.collect.ImmutableList;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Membership;
+import com.zimory.jpaunit.core.it.model.MembershipId;
+import com.zimory.jpaunit.core.it.model.Tag;
+import com.zimory.jpaunit.core.it.model.TagId;
+import com.zimory.jpaunit.core.model.EntityKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class EntityLookupIT {
+
+    private EntityManagerFactory emf;
+    private EntityManager em;
+    private CompareStatistics statistics;
+    private EntityLookup lookup;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+        em = emf.createEntityManager();
+        statistics = new CompareStatistics();
+        lookup = new EntityLookup(em, 2, statistics);
+
+        final Association association = new Association();
+        association.setId(new UUID(0, 1));
+
+        final Membership membership = new Membership();
+        membership.setId(new MembershipId("group", "member"));
+
+        final Tag tag = new Tag();
+        tag.setNamespace("namespace");
+        tag.setName("name");
+
+        em.getTransaction().begin();
+        em.persist(association);
+        em.persist(membership);
+        em.persist(tag);
+        em.getTransaction().commit();
+        em.clear();
+    }
+
+    @After
+    public void tearDown() {
+        em.close();
+        emf.close();
+    }
+
+    @Test
+    public void findExisting_withSimpleIdsQueriesIdsInChunks() throws Exception {
+        final EntityKey existing = EntityKey.of(Association.class, new UUID(0, 1));
+
+        assertThat(lookup.findExisting(ImmutableList.of(
+                EntityKey.of(Association.class, new UUID(0, 2)),
+                existing,
+                EntityKey.of(Association.class, new UUID(0, 3)))), contains(existing));
+        assertThat(statistics.getQueryCount(), equalTo(2));
+    }
+
+    @Test
+    public void findExisting_withEmbeddedIdsCountsMatchingRows() throws Exception {
+        final EntityKey existing = EntityKey.of(Membership.class, new MembershipId("group", "member"));
+
+        assertThat(lookup.findExisting(ImmutableList.of(
+                EntityKey.of(Membership.class, new MembershipId("group", "other")),
+                existing)), contains(existing));
+        assertThat(lookup.findExisting(ImmutableList.of(
+                EntityKey.of(Membership.class, new MembershipId("other", "member")))).isEmpty(), equalTo(true));
+        assertThat(statistics.getQueryCount(), equalTo(4));
+    }
+
+    @Test
+    public void findExisting_withIdClassCountsMatchingRows() throws Exception {
+        final EntityKey existing = EntityKey.of(Tag.class, new TagId("namespace", "name"));
+
+        assertThat(lookup.findExisting(ImmutableList.of(
+                existing,
+                EntityKey.of(Tag.class, new TagId("namespace", "other")))), contains(existing));
+    }
+
+}
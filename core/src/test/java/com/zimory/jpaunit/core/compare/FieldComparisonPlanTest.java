@@ -0,0 +1,46 @@
+package com.zimory.jpaunit.core.compare;
+
+import java.util.List;
+import java.util.Set;
+
+import javax.persistence.OneToMany;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class FieldComparisonPlanTest {
+
+    private static class Base {
+        private static final String CONSTANT = "constant";
+        private String baseField;
+    }
+
+    private static final class Derived extends Base {
+        private transient String transientField;
+        private String ownField;
+        @OneToMany(mappedBy = "parent")
+        private Set<Derived> children;
+    }
+
+    @Test
+    public void of_includesSuperclassFieldsAndSkipsIgnoredFields() throws Exception {
+        final FieldComparisonPlan plan = FieldComparisonPlan.of(Derived.class);
+        final List<String> names = Lists.newArrayList();
+
+        for (int i = 0; i < plan.size(); i++) {
+            names.add(plan.getName(i));
+        }
+
+        assertThat(names, contains("ownField", "baseField"));
+    }
+
+    @Test
+    public void of_returnsSharedPlan() throws Exception {
+        assertThat(FieldComparisonPlan.of(Derived.class), sameInstance(FieldComparisonPlan.of(Derived.class)));
+    }
+
+}
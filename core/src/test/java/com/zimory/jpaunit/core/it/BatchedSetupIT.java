@@ -0,0 +1,163 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.collect.ImmutableList;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.it.model.Category;
+import com.zimory.jpaunit.core.it.model.Department;
+import com.zimory.jpaunit.core.it.model.Employee;
+import com.zimory.jpaunit.core.persist.EntityPersister;
+import com.zimory.jpaunit.core.persist.PersistStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BatchedSetupIT {
+
+    private EntityManagerFactory emf;
+    private ConfigurableApplicationContext context;
+    private EntityPersister persister;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("cycles");
+
+        final JpaUnitConfig config = new JpaUnitConfig();
+        config.setSetupBatchSize(2);
+
+        context = JpaUnit.createContext(config, emf);
+        persister = context.getBean("defaultEntityPersister", EntityPersister.class);
+    }
+
+    @After
+    public void tearDown() {
+        context.close();
+        emf.close();
+    }
+
+    @Test
+    public void persist_restoresDeferredSelfReferences() throws Exception {
+        final Category parent = category(null);
+        final Category child = category(parent);
+        final Category grandChild = category(child);
+
+        final PersistStatistics statistics = persister.persist(ImmutableList.<Object>of(grandChild, child, parent));
+
+        assertThat(statistics.getRestoredReferenceCount(), equalTo(2));
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            assertThat(em.find(Category.class, grandChild.getId()).getParent().getId(), equalTo(child.getId()));
+            assertThat(em.find(Category.class, child.getId()).getParent().getId(), equalTo(parent.getId()));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void persist_restoresDeferredReferencesBetweenTypesReferencingEachOther() throws Exception {
+        final Department department = department();
+
+        final Employee head = employee(department);
+        final Employee employee = employee(department);
+        department.setHead(head);
+
+        persister.persist(ImmutableList.<Object>of(head, employee, department));
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            assertThat(em.find(Department.class, department.getId()).getHead().getId(), equalTo(head.getId()));
+            assertThat(em.find(Employee.class, employee.getId()).getDepartment().getId(),
+                    equalTo(department.getId()));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void persist_replacesCascadedEntitiesDetachedByAnEarlierBatch() throws Exception {
+        final Department department = department();
+        final List<Object> entities = ImmutableList.<Object>of(department,
+                employee(department), employee(department), employee(department));
+
+        final PersistStatistics statistics = persister.persist(entities);
+
+        assertThat(statistics.getEntityCount(), equalTo(4));
+        assertDepartmentHasEmployees(department, entities.subList(1, 4));
+    }
+
+    @Test
+    public void persist_replacesCascadedEntitiesDetachedByAnEarlierBatchWhenStreaming() throws Exception {
+        final Department department = department();
+        final List<Object> entities = ImmutableList.<Object>of(department,
+                employee(department), employee(department), employee(department));
+
+        final PersistStatistics statistics = persister.persist(entities.iterator());
+
+        assertThat(statistics.getEntityCount(), equalTo(4));
+        assertDepartmentHasEmployees(department, entities.subList(1, 4));
+    }
+
+    @Test
+    public void persist_skipsEntitiesPersistedByACascadeInAnEarlierBatch() throws Exception {
+        final Department department = department();
+        final List<Employee> employees = ImmutableList.of(
+                employee(department), employee(department), employee(department));
+        department.setEmployees(employees);
+
+        final PersistStatistics statistics = persister.persist(ImmutableList.<Object>builder()
+                .add(department)
+                .addAll(employees)
+                .build());
+
+        assertThat(statistics.getEntityCount(), equalTo(4));
+        assertDepartmentHasEmployees(department, employees);
+    }
+
+    private void assertDepartmentHasEmployees(final Department department, final List<?> employees) {
+        final EntityManager em = emf.createEntityManager();
+        try {
+            for (final Object employee : employees) {
+                assertThat(em.find(Employee.class, ((Employee) employee).getId()).getDepartment().getId(),
+                        equalTo(department.getId()));
+            }
+        } finally {
+            em.close();
+        }
+    }
+
+    private static Department department() {
+        final Department department = new Department();
+        department.setId(UUID.randomUUID());
+
+        return department;
+    }
+
+    private static Category category(final Category parent) {
+        final Category category = new Category();
+        category.setId(UUID.randomUUID());
+        category.setParent(parent);
+
+        return category;
+    }
+
+    private static Employee employee(final Department department) {
+        final Employee employee = new Employee();
+        employee.setId(UUID.randomUUID());
+        employee.setDepartment(department);
+
+        return employee;
+    }
+
+}
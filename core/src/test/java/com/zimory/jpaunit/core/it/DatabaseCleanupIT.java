@@ -0,0 +1,142 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Tag;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.persist.CleanupScope;
+import com.zimory.jpaunit.core.persist.CleanupStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DatabaseCleanupIT {
+
+    public static final class CleanupTest {
+
+        @UsingJpaDataSet
+        public void associations() {
+        }
+
+        @UsingJpaDataSet("JdbcSetupTest/units")
+        public void units() {
+        }
+
+    }
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+        config = new JpaUnitConfig();
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void cleanup_clearsTheSetupTablesAndTheTablesReferencingThem() throws Exception {
+        config.setCleanupScope(CleanupScope.SETUP_TABLES);
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+
+        final Tag tag = new Tag();
+        tag.setNamespace("colour");
+        tag.setName("blue");
+        persist(tag);
+
+        final JpaUnitSession session = jpaUnit.setup(CleanupTest.class, "associations");
+
+        // as the test method would
+        final Unit unit = new Unit();
+        unit.setId(UUID.randomUUID());
+        unit.setName("referencing");
+        unit.setAssociations(ImmutableList.of(find(Association.class, new UUID(0, 0x51))));
+        persist(unit);
+
+        final Optional<CleanupStatistics> statistics = jpaUnit.cleanup(session);
+
+        assertThat(statistics.get().getRowCount(), equalTo(4));
+        assertThat(count("Unit_Association"), equalTo(0));
+        assertThat(count("Unit"), equalTo(0));
+        assertThat(count("Association"), equalTo(0));
+        assertThat(count("Tag"), equalTo(1));
+    }
+
+    @Test
+    public void cleanup_clearsAllTables() throws Exception {
+        config.setCleanupScope(CleanupScope.ALL_TABLES);
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+
+        final JpaUnitSession session = jpaUnit.setup(CleanupTest.class, "units");
+        jpaUnit.cleanup(session);
+
+        for (final String table : new String[] {"Unit_Association", "Unit", "Association", "Membership", "Tag"}) {
+            assertThat(table, count(table), equalTo(0));
+        }
+
+        // the rows are gone, so the same setup works again
+        jpaUnit.setup(CleanupTest.class, "units");
+        assertThat(count("Unit"), equalTo(1));
+    }
+
+    @Test
+    public void cleanup_doesNothingByDefault() throws Exception {
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+
+        final JpaUnitSession session = jpaUnit.setup(CleanupTest.class, "associations");
+
+        assertThat(jpaUnit.cleanup(session).isPresent(), equalTo(false));
+        assertThat(count("Association"), equalTo(2));
+    }
+
+    private void persist(final Object entity) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+            em.persist(entity);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private <T> T find(final Class<T> type, final Object id) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return em.find(type, id);
+        } finally {
+            em.close();
+        }
+    }
+
+    private int count(final String table) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM " + table).getSingleResult()).intValue();
+        } finally {
+            em.close();
+        }
+    }
+
+}
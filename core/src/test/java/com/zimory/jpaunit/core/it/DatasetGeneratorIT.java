@@ -0,0 +1,135 @@
+package com.zimory.jpaunit.core.it;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.esotericsoftware.yamlbeans.YamlReader;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.context.Beans;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Tag;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.persist.EntityPersister;
+import com.zimory.jpaunit.core.write.DatasetGenerator;
+import com.zimory.jpaunit.core.write.ValueDistributions;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.isOneOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class DatasetGeneratorIT {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+        config = new JpaUnitConfig();
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void generate_writesEntitiesInInsertOrderWithReferencesAsAliases() throws Exception {
+        final File file = folder.newFile("generated.yml");
+
+        new DatasetGenerator(emf, config)
+                .rows(Unit.class, 10)
+                .rows(Association.class, 20)
+                .fanOut(Unit.class, "associations", 2)
+                .values(Unit.class, "name", ValueDistributions.oneOf("foo", "bar"))
+                .generate(file);
+
+        assertThat(Files.toString(file, Charsets.UTF_8),
+                containsString("- *Association_00000000-0000-0000-0000-000000000001"));
+
+        final List<Object> entities = read(file);
+        assertThat(entities.size(), equalTo(30));
+        assertThat(entities.get(0), instanceOf(Association.class));
+
+        final Unit unit = (Unit) entities.get(21);
+        assertThat(unit.getName(), isOneOf("foo", "bar"));
+        assertThat(unit.getAssociations().size(), equalTo(2));
+        assertThat(unit.getAssociations().get(0), sameInstance(entities.get(2)));
+        assertThat(unit.getAssociations().get(1), sameInstance(entities.get(3)));
+    }
+
+    @Test
+    public void generate_writesDatasetsThatCanBePersisted() throws Exception {
+        final File file = folder.newFile("generated.yml");
+
+        new DatasetGenerator(emf, config)
+                .rows(Unit.class, 50)
+                .rows(Association.class, 150)
+                .fanOut(Unit.class, "associations", 3)
+                .generate(file);
+
+        final ConfigurableApplicationContext context = JpaUnit.createContext(config, emf);
+
+        try {
+            context.getBean("entityPersister", EntityPersister.class).persist(read(file));
+        } finally {
+            context.close();
+        }
+
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            assertThat(em.createQuery("SELECT COUNT(u) FROM Unit u", Long.class).getSingleResult(), equalTo(50L));
+            assertThat(em.createQuery("SELECT COUNT(a) FROM Unit u JOIN u.associations a", Long.class)
+                    .getSingleResult(), equalTo(150L));
+        } finally {
+            em.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void generate_rejectsCompositeIds() throws Exception {
+        new DatasetGenerator(emf, config)
+                .rows(Tag.class, 1)
+                .generate(folder.newFile("generated.yml"));
+    }
+
+    private List<Object> read(final File file) throws Exception {
+        final YamlReader reader = new YamlReader(
+                new InputStreamReader(new FileInputStream(file), Charsets.UTF_8), Beans.createYamlConfig(emf, config));
+
+        try {
+            final List<Object> entities = Lists.newArrayList();
+            for (Object entity = reader.read(); entity != null; entity = reader.read()) {
+                entities.add(entity);
+            }
+
+            return entities;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
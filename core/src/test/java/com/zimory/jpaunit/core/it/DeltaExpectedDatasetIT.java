@@ -0,0 +1,155 @@
+package com.zimory.jpaunit.core.it;
+
+import java.io.File;
+import java.io.Reader;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.esotericsoftware.yamlbeans.YamlReader;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.GenerateExpectedDataSet;
+import com.zimory.jpaunit.core.annotation.ShouldMatchJpaDataSet;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.Beans;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.model.Delta;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class DeltaExpectedDatasetIT {
+
+    public static final class DeltaTest {
+
+        @UsingJpaDataSet("InnerTest/expected-findAndPersist")
+        @ShouldMatchJpaDataSet
+        @GenerateExpectedDataSet
+        public void modify() {
+        }
+
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+
+        config = new JpaUnitConfig();
+        config.setWriterBaseDir(folder.getRoot().getAbsolutePath());
+        config.setWriterExpectedDelta(true);
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void expect_writesTheChangesAndTombstonesOfTheRemovedEntities() throws Exception {
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        final JpaUnitSession session = jpaUnit.setup(DeltaTest.class, "modify");
+
+        modify(true);
+        jpaUnit.expect(session);
+
+        final File file = new File(folder.getRoot(), "DeltaTest/expected-modify.yml");
+        final List<Object> documents = read(file);
+
+        assertThat(documents.size(), equalTo(3));
+
+        final Delta delta = (Delta) documents.get(0);
+        assertThat(delta.getRemoved().size(), equalTo(1));
+        assertThat(((Unit) delta.getRemoved().get(0)).getId(), equalTo(new UUID(0, 1)));
+
+        assertThat(((Association) documents.get(1)).getId(), equalTo(new UUID(0, 0x19)));
+        assertThat(((Unit) documents.get(2)).getName(), equalTo("old MacDonald had a barn"));
+
+        final String content = Files.toString(file, Charsets.UTF_8);
+        assertThat(content, startsWith("--- !jpaunit.Delta"));
+
+        // the unchanged association is only written as part of the changed unit
+        assertThat(content, containsString(
+                "- &Association_00000000-0000-0000-0000-000000000000 !Association"));
+    }
+
+    @Test
+    public void expect_failsIfATombstonedEntityIsPresent() throws Exception {
+        config.setWriterExpectedDelta(false);
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        final JpaUnitSession session = jpaUnit.setup(DeltaTest.class, "modify");
+
+        modify(false);
+
+        try {
+            jpaUnit.expect(session);
+        } catch (final AssertionError e) {
+            assertThat(e.getMessage(), containsString("Expected to be removed, but was present"));
+            return;
+        }
+
+        fail("The tombstoned unit is still present");
+    }
+
+    private void modify(final boolean removeUnit) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+
+            final Association association = new Association();
+            association.setId(new UUID(0, 0x19));
+            em.persist(association);
+
+            em.find(Unit.class, new UUID(0, 0)).setName("old MacDonald had a barn");
+
+            if (removeUnit) {
+                em.remove(em.find(Unit.class, new UUID(0, 1)));
+            }
+
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private List<Object> read(final File file) throws Exception {
+        final Reader in = Files.newReader(file, Charsets.UTF_8);
+        final YamlReader reader = new YamlReader(in, Beans.createYamlConfig(emf, config));
+
+        try {
+            final List<Object> documents = Lists.newArrayList();
+            for (Object document = reader.read(); document != null; document = reader.read()) {
+                documents.add(document);
+            }
+
+            return documents;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
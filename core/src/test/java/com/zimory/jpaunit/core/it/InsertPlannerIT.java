@@ -0,0 +1,126 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Category;
+import com.zimory.jpaunit.core.it.model.Department;
+import com.zimory.jpaunit.core.it.model.Employee;
+import com.zimory.jpaunit.core.it.model.Revision;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.persist.InsertPlanner;
+import com.zimory.jpaunit.core.persist.InsertPlanner.InsertPlan;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InsertPlannerIT {
+
+    private EntityManagerFactory emf;
+    private EntityManagerFactory cyclesEmf;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+        cyclesEmf = Persistence.createEntityManagerFactory("cycles");
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+        cyclesEmf.close();
+    }
+
+    @Test
+    public void plan_ordersReferencedEntitiesFirst() throws Exception {
+        final Association association = new Association();
+        association.setId(UUID.randomUUID());
+
+        final Unit unit = new Unit();
+        unit.setId(UUID.randomUUID());
+        unit.setName("unit");
+        unit.setAssociations(Lists.newArrayList(association));
+
+        final InsertPlan plan = new InsertPlanner(emf).plan(ImmutableList.<Object>of(unit, association));
+
+        assertThat(plan.getEntities(), contains((Object) association, unit));
+        assertThat(plan.getDeferredReferences(), empty());
+        assertThat(unit.getAssociations().get(0), sameInstance(association));
+    }
+
+    @Test
+    public void plan_defersSelfReferencesToLaterEntities() throws Exception {
+        final Category parent = new Category();
+        parent.setId(UUID.randomUUID());
+
+        final Category child = new Category();
+        child.setId(UUID.randomUUID());
+        child.setParent(parent);
+
+        final Category grandChild = new Category();
+        grandChild.setId(UUID.randomUUID());
+        grandChild.setParent(child);
+
+        final InsertPlan plan = new InsertPlanner(cyclesEmf).plan(ImmutableList.<Object>of(child, parent, grandChild));
+
+        assertThat(plan.getEntities(), contains((Object) child, parent, grandChild));
+        assertThat(plan.getDeferredReferences(), hasSize(1));
+        assertThat(plan.getDeferredReferences().get(0).getEntity(), sameInstance((Object) child));
+        assertThat(plan.getDeferredReferences().get(0).getValue(), sameInstance((Object) parent));
+        assertThat(child.getParent(), nullValue());
+        assertThat(grandChild.getParent(), sameInstance(child));
+    }
+
+    @Test
+    public void plan_breaksCyclesBetweenTypesAtOptionalReferences() throws Exception {
+        final Department department = new Department();
+        department.setId(UUID.randomUUID());
+
+        final Employee employee = new Employee();
+        employee.setId(UUID.randomUUID());
+        employee.setDepartment(department);
+        department.setHead(employee);
+
+        final InsertPlan plan = new InsertPlanner(cyclesEmf).plan(ImmutableList.<Object>of(employee, department));
+
+        assertThat(plan.getEntities(), contains((Object) department, employee));
+        assertThat(plan.getDeferredReferences(), hasSize(1));
+        assertThat(plan.getDeferredReferences().get(0).getEntity(), sameInstance((Object) department));
+        assertThat(department.getHead(), nullValue());
+        assertThat(employee.getDepartment(), sameInstance(department));
+    }
+
+    @Test
+    public void plan_failsToDeferNonOptionalReferences() throws Exception {
+        final Revision base = new Revision();
+        base.setId(UUID.randomUUID());
+        base.setBase(base);
+
+        final Revision revision = new Revision();
+        revision.setId(UUID.randomUUID());
+        revision.setBase(base);
+
+        try {
+            new InsertPlanner(cyclesEmf).plan(ImmutableList.<Object>of(revision, base));
+            fail("A non-optional reference was deferred");
+        } catch (final IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("non-optional attribute base"));
+            assertThat(revision.getBase(), sameInstance(base));
+        }
+    }
+
+}
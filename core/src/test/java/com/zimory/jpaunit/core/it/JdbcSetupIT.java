@@ -0,0 +1,88 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Membership;
+import com.zimory.jpaunit.core.it.model.MembershipId;
+import com.zimory.jpaunit.core.it.model.Tag;
+import com.zimory.jpaunit.core.it.model.TagId;
+import com.zimory.jpaunit.core.it.model.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class JdbcSetupIT {
+
+    public static final class JdbcSetupTest {
+
+        @UsingJpaDataSet
+        public void units() {
+        }
+
+    }
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+
+        config = new JpaUnitConfig();
+        config.setJdbcSetup(true);
+        config.setJdbcSetupRowsPerStatement(2);
+        config.setJdbcSetupStatementsPerBatch(2);
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void setup_insertsAllEntitiesWithJdbc() throws Exception {
+        final JpaUnitSession session = JpaUnit.newInstance(config, emf).setup(JdbcSetupTest.class, "units");
+
+        assertThat(session.getSetupEntityKeys().size(), equalTo(6));
+        assertPersisted();
+    }
+
+    @Test
+    public void setup_whenPipelinedInsertsAllEntitiesWithJdbc() throws Exception {
+        config.setPipelinedSetup(true);
+        config.setDatasetCacheSize(0);
+
+        JpaUnit.newInstance(config, emf).setup(JdbcSetupTest.class, "units");
+
+        assertPersisted();
+    }
+
+    private void assertPersisted() {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            final Unit unit = em.find(Unit.class, new UUID(0, 0x30));
+
+            assertThat(unit.getName(), equalTo("bulk loaded"));
+            assertThat(unit.getAssociations().size(), equalTo(3));
+            assertThat(unit.getAssociations().get(2).getId(), equalTo(new UUID(0, 0x33)));
+            assertThat(em.find(Membership.class, new MembershipId("farmers", "old MacDonald")), notNullValue());
+            assertThat(em.find(Tag.class, new TagId("colour", "red")), notNullValue());
+        } finally {
+            em.close();
+        }
+    }
+
+}
@@ -83,6 +83,15 @@ public class JpaUnitIT {
             em.getTransaction().commit();
         }
 
+        @Test
+        @UsingJpaDataSet
+        @ShouldMatchJpaDataSet
+        public void remove() {
+            em.getTransaction().begin();
+            em.remove(em.find(Unit.class, new UUID(0, 0x10)));
+            em.getTransaction().commit();
+        }
+
     }
 
     @Test
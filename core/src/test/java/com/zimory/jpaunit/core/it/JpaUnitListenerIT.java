@@ -0,0 +1,179 @@
+package com.zimory.jpaunit.core.it;
+
+import java.io.File;
+import java.util.List;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.ShouldMatchJpaDataSet;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.listener.FileReporter;
+import com.zimory.jpaunit.core.listener.JpaUnitListener;
+import com.zimory.jpaunit.core.listener.Phase;
+import com.zimory.jpaunit.core.listener.PhaseEvent;
+import com.zimory.jpaunit.core.persist.CleanupScope;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class JpaUnitListenerIT {
+
+    public static final class ListenedTest {
+
+        @UsingJpaDataSet("InnerTest/expected-findAndPersist")
+        @ShouldMatchJpaDataSet("InnerTest/expected-findAndPersist")
+        public void unchanged() {
+        }
+
+        public void noSetup() {
+        }
+
+    }
+
+    private static final class RecordingListener implements JpaUnitListener {
+
+        private final List<PhaseEvent> events = Lists.newArrayList();
+
+        @Override
+        public void phaseFinished(final PhaseEvent event) {
+            events.add(event);
+        }
+
+        private List<Phase> getPhases() {
+            final List<Phase> phases = Lists.newArrayList();
+            for (final PhaseEvent event : events) {
+                phases.add(event.getPhase());
+            }
+
+            return phases;
+        }
+
+        private PhaseEvent get(final Phase phase) {
+            for (final PhaseEvent event : events) {
+                if (event.getPhase() == phase) {
+                    return event;
+                }
+            }
+
+            throw new AssertionError("No event of " + phase);
+        }
+
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+    private RecordingListener listener;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+        listener = new RecordingListener();
+
+        config = new JpaUnitConfig();
+        config.setCleanupScope(CleanupScope.SETUP_TABLES);
+        config.setListeners(ImmutableList.<JpaUnitListener>of(listener));
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void phasesAreReportedWithTheirCosts() throws Exception {
+        run();
+
+        assertThat(listener.getPhases(), contains(Phase.SETUP_READ, Phase.SETUP_WRITE, Phase.SETUP_PERSIST,
+                Phase.EXPECT_READ, Phase.EXPECT_WRITE, Phase.EXPECT_COMPARE, Phase.CLEANUP));
+
+        final PhaseEvent read = listener.get(Phase.SETUP_READ);
+        assertThat(read.getTestMethodName().get(), equalTo("unchanged"));
+        assertThat(read.getBytesRead(), greaterThan(0L));
+        assertThat(read.getEntityCounts().get(Unit.class), equalTo(2));
+        assertThat(read.getEntityCounts().get(Association.class), equalTo(1));
+
+        assertThat(listener.get(Phase.SETUP_PERSIST).getEntityCount(), equalTo(3));
+        assertThat(listener.get(Phase.SETUP_PERSIST).getStatementCount(), greaterThan(0));
+        assertThat(listener.get(Phase.EXPECT_COMPARE).getStatementCount(), greaterThan(0));
+        assertThat(listener.get(Phase.CLEANUP).getStatementCount(), greaterThan(0));
+    }
+
+    @Test
+    public void pipelinedSetupReportsTheTimesOfThePipeline() throws Exception {
+        config.setPipelinedSetup(true);
+        config.setDatasetCacheSize(0);
+        run();
+
+        assertThat(listener.get(Phase.SETUP_READ).getBytesRead(), greaterThan(0L));
+        assertThat(listener.get(Phase.SETUP_PERSIST).getEntityCount(), equalTo(3));
+    }
+
+    @Test
+    public void noCleanupScopeReportsNoCleanup() throws Exception {
+        config.setCleanupScope(CleanupScope.NONE);
+        run();
+
+        assertThat(listener.getPhases(), contains(Phase.SETUP_READ, Phase.SETUP_WRITE, Phase.SETUP_PERSIST,
+                Phase.EXPECT_READ, Phase.EXPECT_WRITE, Phase.EXPECT_COMPARE));
+    }
+
+    @Test
+    public void setupWithoutDatasetsReportsNoSnapshotRestore() throws Exception {
+        config.setSetupSnapshots(true);
+
+        JpaUnit.newInstance(config, emf).setup(ListenedTest.class, "noSetup");
+
+        assertThat(listener.getPhases(), not(hasItem(Phase.SETUP_SNAPSHOT_RESTORE)));
+    }
+
+    @Test
+    public void fileReporterWritesAFilePerTest() throws Exception {
+        config.setListeners(ImmutableList.<JpaUnitListener>of(
+                new FileReporter(new File(folder.getRoot(), "csv"), FileReporter.Format.CSV),
+                new FileReporter(new File(folder.getRoot(), "json"), FileReporter.Format.JSON)));
+        run();
+        run();
+
+        final String test = ListenedTest.class.getName() + ".unchanged";
+        final List<String> csv = Files.readLines(new File(folder.getRoot(), "csv/" + test + ".csv"), Charsets.UTF_8);
+        final List<String> json = Files.readLines(new File(folder.getRoot(), "json/" + test + ".json"), Charsets.UTF_8);
+
+        assertThat(csv.size(), equalTo(1 + 2 * 7));
+        assertThat(csv.get(0), startsWith("test,phase,durationMicros,"));
+        assertThat(csv.get(1), startsWith(test + ",SETUP_READ,"));
+        assertThat(json.size(), equalTo(2 * 7));
+        assertThat(json.get(0), startsWith("{\"test\":\"" + test + "\",\"phase\":\"SETUP_READ\","));
+    }
+
+    private void run() throws Exception {
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        final JpaUnitSession session = jpaUnit.setup(ListenedTest.class, "unchanged");
+
+        jpaUnit.expect(session);
+        jpaUnit.cleanup(session);
+    }
+
+}
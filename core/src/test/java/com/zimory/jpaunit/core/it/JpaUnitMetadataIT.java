@@ -0,0 +1,115 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.persistence.PersistenceUnitUtil;
+import javax.persistence.metamodel.EntityType;
+
+import com.google.common.collect.Lists;
+import com.zimory.jpaunit.core.context.JpaUnitMetadata;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Membership;
+import com.zimory.jpaunit.core.it.model.MembershipId;
+import com.zimory.jpaunit.core.it.model.Tag;
+import com.zimory.jpaunit.core.it.model.TagId;
+import com.zimory.jpaunit.core.it.model.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class JpaUnitMetadataIT {
+
+    private EntityManagerFactory emf;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void of_buildsTheMetadataOncePerEntityManagerFactory() throws Exception {
+        final JpaUnitMetadata metadata = JpaUnitMetadata.of(emf);
+
+        assertThat(JpaUnitMetadata.of(emf), sameInstance(metadata));
+        assertThat(metadata.getClassTags(), hasEntry("Unit", (Object) Unit.class));
+        assertThat(metadata.getEntityTypeGraph().getInsertOrder(),
+                contains((Object) Association.class, Membership.class, Tag.class, Unit.class));
+    }
+
+    @Test
+    public void getEntityTypes_sortsOncePerOrdering() throws Exception {
+        final Comparator<Class<?>> bySimpleNameDescending = new Comparator<Class<?>>() {
+            @Override
+            public int compare(final Class<?> o1, final Class<?> o2) {
+                return o2.getSimpleName().compareTo(o1.getSimpleName());
+            }
+        };
+        final JpaUnitMetadata metadata = JpaUnitMetadata.of(emf);
+        final List<Class<?>> types = Lists.newArrayList();
+
+        for (final EntityType<?> e : metadata.getEntityTypes(bySimpleNameDescending)) {
+            types.add(e.getJavaType());
+        }
+
+        assertThat(types, contains((Object) Unit.class, Tag.class, Membership.class, Association.class));
+        assertThat(metadata.getEntityTypes(bySimpleNameDescending),
+                sameInstance(metadata.getEntityTypes(bySimpleNameDescending)));
+    }
+
+    @Test
+    public void getPersistenceUnitUtil_getsTheSameIdentifiersAsTheProvider() throws Exception {
+        final JpaUnitMetadata metadata = JpaUnitMetadata.of(emf);
+        final PersistenceUnitUtil util = metadata.getPersistenceUnitUtil();
+
+        final Unit unit = new Unit();
+        unit.setId(UUID.randomUUID());
+        unit.setName("unit");
+
+        final Membership membership = new Membership();
+        membership.setId(new MembershipId("group", "member"));
+
+        final Tag tag = new Tag();
+        tag.setNamespace("namespace");
+        tag.setName("name");
+
+        assertThat(metadata.getIdAccessor(Unit.class), not(nullValue()));
+        assertThat(metadata.getIdAccessor(Tag.class), nullValue());
+        assertThat(util.getIdentifier(unit), equalTo((Object) unit.getId()));
+        assertThat(util.getIdentifier(membership), equalTo((Object) membership.getId()));
+        assertThat(util.getIdentifier(tag), equalTo((Object) new TagId("namespace", "name")));
+
+        final EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(unit);
+            em.getTransaction().commit();
+            em.clear();
+
+            final Object proxy = em.getReference(Unit.class, unit.getId());
+
+            assertThat(proxy.getClass(), not(equalTo((Object) Unit.class)));
+            assertThat(util.getIdentifier(proxy), equalTo((Object) unit.getId()));
+        } finally {
+            em.close();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.zimory.jpaunit.core.it;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.JpaUnitRegistry;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class JpaUnitRegistryIT {
+
+    private EntityManagerFactory emf;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+    }
+
+    @After
+    public void tearDown() {
+        if (emf.isOpen()) {
+            emf.close();
+        }
+    }
+
+    @Test
+    public void getInstance_whenCalledWithSameConfigAndFactoryReturnsSameInstance() throws Exception {
+        final JpaUnitConfig config = new JpaUnitConfig();
+
+        assertThat(JpaUnit.getInstance(config, emf), sameInstance(JpaUnit.getInstance(config, emf)));
+    }
+
+    @Test
+    public void getInstance_whenCalledWithDifferentConfigReturnsDifferentInstance() throws Exception {
+        assertThat(JpaUnit.getInstance(new JpaUnitConfig(), emf), not(sameInstance(JpaUnit.getInstance(new JpaUnitConfig(), emf))));
+    }
+
+    @Test
+    public void getInstance_whenFactoryWasClosedAndReopenedStartsNewInstance() throws Exception {
+        final JpaUnitConfig config = new JpaUnitConfig();
+        final JpaUnit first = JpaUnit.getInstance(config, emf);
+
+        emf.close();
+        JpaUnitRegistry.getInstance().evictClosed();
+
+        emf = Persistence.createEntityManagerFactory("test");
+
+        assertThat(JpaUnit.getInstance(config, emf), not(sameInstance(first)));
+    }
+
+    @Test
+    public void getInstance_whenMoreConfigsThanMaxContextsAreUsedClosesTheLeastRecentlyUsedContext() throws Exception {
+        final long evictions = JpaUnitRegistry.getInstance().getStatistics().evictionCount();
+        final JpaUnitConfig first = new JpaUnitConfig();
+        final JpaUnit firstInstance = JpaUnit.getInstance(first, emf);
+
+        for (int i = 0; i < JpaUnitRegistry.MAX_CONTEXTS; i++) {
+            JpaUnit.getInstance(new JpaUnitConfig(), emf);
+        }
+
+        assertThat(JpaUnitRegistry.getInstance().getStatistics().evictionCount(), greaterThan(evictions));
+        assertThat(JpaUnit.getInstance(first, emf), not(sameInstance(firstInstance)));
+    }
+
+    @Test
+    public void createContext_usesACopyOfTheConfig() throws Exception {
+        final JpaUnitConfig config = new JpaUnitConfig();
+        config.setSetupBatchSize(10);
+
+        final ConfigurableApplicationContext context = JpaUnit.createContext(config, emf);
+        try {
+            config.setSetupBatchSize(20);
+
+            assertThat(context.getBean(JpaUnitConfig.class).getSetupBatchSize(), equalTo(10));
+        } finally {
+            context.close();
+        }
+    }
+
+}
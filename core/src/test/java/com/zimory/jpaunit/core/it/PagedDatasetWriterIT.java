@@ -0,0 +1,216 @@
+package com.zimory.jpaunit.core.it;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.esotericsoftware.yamlbeans.YamlReader;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.google.common.io.InputSupplier;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.GenerateExpectedDataSet;
+import com.zimory.jpaunit.core.annotation.GenerateSetupDataSet;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.Beans;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Association;
+import com.zimory.jpaunit.core.it.model.Category;
+import com.zimory.jpaunit.core.it.model.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.arrayContainingInAnyOrder;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class PagedDatasetWriterIT {
+
+    public static final class PagedTest {
+
+        @UsingJpaDataSet("InnerTest/expected-findAndPersist")
+        public void populate() {
+        }
+
+        @GenerateSetupDataSet
+        public void generate() {
+        }
+
+        @GenerateExpectedDataSet("PagedTest/expected")
+        public void generateExpected() {
+        }
+
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+
+        config = new JpaUnitConfig();
+        config.setWriterBaseDir(folder.getRoot().getAbsolutePath());
+        config.setWriterPageSize(1);
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void generate_writesReferencesAsAliasesAcrossPages() throws Exception {
+        generate();
+
+        final File file = new File(folder.getRoot(), "PagedTest/generate.yml");
+        assertThat(Files.toString(file, Charsets.UTF_8),
+                containsString("- *Association_00000000-0000-0000-0000-000000000000"));
+        assertEntities(read(file));
+    }
+
+    @Test
+    public void generate_withThreadsMergesTypesInOrder() throws Exception {
+        config.setWriterThreads(4);
+        generate();
+
+        assertEntities(read(new File(folder.getRoot(), "PagedTest/generate.yml")));
+    }
+
+    @Test
+    public void generate_withFilePerTypeWritesNumberedFiles() throws Exception {
+        config.setWriterFilePerType(true);
+        generate();
+
+        final File dir = new File(folder.getRoot(), "PagedTest/generate");
+        assertThat(dir.list(), arrayContainingInAnyOrder("1-Association.yml", "2-Membership.yml", "3-Tag.yml", "4-Unit.yml"));
+        assertEntities(read(new File(dir, "1-Association.yml"), new File(dir, "4-Unit.yml")));
+    }
+
+    @Test
+    public void generateExpected_withThreadsWritesUncommittedEntitiesOfTheTransaction() throws Exception {
+        config.setWriterThreads(4);
+
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        final IsolatedTransaction transaction = jpaUnit.beginIsolatedTransaction(PagedTest.class);
+        try {
+            final JpaUnitSession session = jpaUnit.setup(transaction, PagedTest.class, "generateExpected");
+
+            final Unit unit = new Unit();
+            unit.setId(new UUID(0, 1));
+            unit.setName("uncommitted");
+            transaction.getEntityManager().persist(unit);
+
+            jpaUnit.expect(transaction, session);
+        } finally {
+            transaction.rollback();
+        }
+
+        final List<Object> entities = read(new File(folder.getRoot(), "PagedTest/expected.yml"));
+        assertThat(entities.size(), equalTo(1));
+        assertThat(((Unit) entities.get(0)).getName(), equalTo("uncommitted"));
+    }
+
+    @Test
+    public void generateExpected_writesEntitiesLoadedAsProxiesOfLazyReferences() throws Exception {
+        final EntityManagerFactory cyclesEmf = Persistence.createEntityManagerFactory("cycles");
+        try {
+            final JpaUnit jpaUnit = JpaUnit.newInstance(config, cyclesEmf);
+            final IsolatedTransaction transaction = jpaUnit.beginIsolatedTransaction(PagedTest.class);
+            try {
+                final JpaUnitSession session = jpaUnit.setup(transaction, PagedTest.class, "generateExpected");
+                final EntityManager em = transaction.getEntityManager();
+
+                final Category parent = category(new UUID(0, 1), null);
+                final Category child = category(new UUID(0, 2), parent);
+                em.persist(parent);
+                em.persist(child);
+                transaction.flush();
+
+                // the parent comes first in the page, and is in the persistence context as a proxy already
+                em.find(Category.class, child.getId());
+                jpaUnit.expect(session);
+            } finally {
+                transaction.rollback();
+            }
+
+            final List<Object> entities = read(cyclesEmf, new File(folder.getRoot(), "PagedTest/expected.yml"));
+            assertThat(entities.size(), equalTo(2));
+            assertThat(((Category) entities.get(0)).getId(), equalTo(new UUID(0, 1)));
+            assertThat(((Category) entities.get(1)).getParent(), sameInstance(entities.get(0)));
+        } finally {
+            cyclesEmf.close();
+        }
+    }
+
+    private void generate() throws Exception {
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        jpaUnit.setup(PagedTest.class, "populate");
+        jpaUnit.setup(PagedTest.class, "generate");
+    }
+
+    private static void assertEntities(final List<Object> entities) {
+        assertThat(entities.size(), equalTo(3));
+        assertThat(entities.get(0), instanceOf(Association.class));
+
+        final Unit unit = (Unit) entities.get(1);
+        assertThat(unit.getName(), equalTo("old MacDonald had a farm"));
+        assertThat(unit.getAssociations().get(0), sameInstance(entities.get(0)));
+        assertThat(((Unit) entities.get(2)).getName(), equalTo("E-I-E-I-O"));
+    }
+
+    private static Category category(final UUID id, final Category parent) {
+        final Category category = new Category();
+        category.setId(id);
+        category.setParent(parent);
+
+        return category;
+    }
+
+    private List<Object> read(final File... files) throws Exception {
+        return read(emf, files);
+    }
+
+    // the files of a dataset are read as one stream, so that aliases can refer to anchors of earlier files
+    private List<Object> read(final EntityManagerFactory entityManagerFactory, final File... files) throws Exception {
+        final List<InputSupplier<? extends InputStream>> suppliers = Lists.newArrayList();
+        for (final File file : files) {
+            suppliers.add(Files.newInputStreamSupplier(file));
+        }
+
+        final YamlReader reader = new YamlReader(
+                new InputStreamReader(ByteStreams.join(suppliers).getInput(), Charsets.UTF_8),
+                Beans.createYamlConfig(entityManagerFactory, config));
+
+        try {
+            final List<Object> entities = Lists.newArrayList();
+            for (Object entity = reader.read(); entity != null; entity = reader.read()) {
+                entities.add(entity);
+            }
+
+            return entities;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
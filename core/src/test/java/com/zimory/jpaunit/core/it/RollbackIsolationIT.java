@@ -0,0 +1,139 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.zimory.jpaunit.core.annotation.ShouldMatchJpaDataSet;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.junit.JpaUnitClassRule;
+import com.zimory.jpaunit.core.junit.JpaUnitRule;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.JUnitCore;
+import org.junit.runner.Result;
+import org.junit.runner.notification.Failure;
+import org.junit.runners.MethodSorters;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class RollbackIsolationIT {
+
+    private static final Supplier<EntityManagerFactory> EMF = new Supplier<EntityManagerFactory>() {
+        @Override
+        public EntityManagerFactory get() {
+            return emf;
+        }
+    };
+
+    private static EntityManagerFactory emf;
+
+    @BeforeClass
+    public static void setUpClass() {
+        emf = Persistence.createEntityManagerFactory("test");
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        emf.close();
+    }
+
+    @UsingJpaDataSet
+    @FixMethodOrder(MethodSorters.NAME_ASCENDING)
+    public static final class IsolatedTest {
+
+        @ClassRule
+        public static final JpaUnitClassRule CLASS_RULE = new JpaUnitClassRule(
+                Suppliers.ofInstance(new JpaUnitConfig()), EMF);
+
+        @Rule
+        public JpaUnitRule jpaUnitRule = new JpaUnitRule(CLASS_RULE);
+
+        @Test
+        @UsingJpaDataSet
+        @ShouldMatchJpaDataSet
+        public void a_modify() {
+            final EntityManager em = jpaUnitRule.getEntityManager();
+
+            em.find(Unit.class, new UUID(0, 0x60)).setName("changed");
+            em.find(Unit.class, new UUID(0, 0x62)).setName("renamed");
+        }
+
+        @Test
+        public void b_seesTheClassSetupOnly() {
+            final EntityManager em = jpaUnitRule.getEntityManager();
+
+            assertThat(em.find(Unit.class, new UUID(0, 0x60)).getName(), equalTo("shared"));
+            assertThat(em.find(Unit.class, new UUID(0, 0x62)), nullValue());
+        }
+
+    }
+
+    public static final class PerTestIsolatedTest {
+
+        @Rule
+        public JpaUnitRule jpaUnitRule = new JpaUnitRule(Suppliers.ofInstance(isolating()), EMF);
+
+        @Test
+        @UsingJpaDataSet
+        @ShouldMatchJpaDataSet
+        public void persist() {
+            final Unit unit = new Unit();
+            unit.setId(new UUID(0, 0x64));
+            unit.setName("persisted");
+
+            jpaUnitRule.getEntityManager().persist(unit);
+        }
+
+        private static JpaUnitConfig isolating() {
+            final JpaUnitConfig config = new JpaUnitConfig();
+            config.setRollbackIsolation(true);
+
+            return config;
+        }
+
+    }
+
+    @Test
+    public void classRule_rollsBackEveryTestAndTheClassSetup() {
+        assertSuccessful(JUnitCore.runClasses(IsolatedTest.class));
+        assertThat(countUnits(), equalTo(0));
+    }
+
+    @Test
+    public void rule_rollsBackEveryTest() {
+        assertSuccessful(JUnitCore.runClasses(PerTestIsolatedTest.class));
+        assertThat(countUnits(), equalTo(0));
+    }
+
+    private static void assertSuccessful(final Result result) {
+        for (final Failure failure : result.getFailures()) {
+            failure.getException().printStackTrace();
+        }
+
+        assertThat(result.wasSuccessful(), equalTo(true));
+    }
+
+    private static int countUnits() {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM Unit").getSingleResult()).intValue();
+        } finally {
+            em.close();
+        }
+    }
+
+}
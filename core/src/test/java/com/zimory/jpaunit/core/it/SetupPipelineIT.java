@@ -0,0 +1,90 @@
+package com.zimory.jpaunit.core.it;
+
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Unit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class SetupPipelineIT {
+
+    public static final class PipelinedTest {
+
+        @UsingJpaDataSet
+        public void valid() {
+        }
+
+        @UsingJpaDataSet
+        public void broken() {
+        }
+
+    }
+
+    private EntityManagerFactory emf;
+    private JpaUnit jpaUnit;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+
+        final JpaUnitConfig config = new JpaUnitConfig();
+        config.setDatasetCacheSize(0);
+        config.setPipelinedSetup(true);
+        config.setSetupBatchSize(1);
+        config.setSetupQueueCapacity(1);
+
+        jpaUnit = JpaUnit.newInstance(config, emf);
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void setup_persistsAllEntitiesAndReportsTimings() throws Exception {
+        final JpaUnitSession session = jpaUnit.setup(PipelinedTest.class, "valid");
+
+        assertThat(session.getSetupEntityKeys().size(), equalTo(2));
+        assertThat(session.getSetupTimings().isPresent(), equalTo(true));
+        assertThat(find(new UUID(0, 0x20)), notNullValue());
+    }
+
+    @Test
+    public void setup_whenParsingFailsRollsBack() throws Exception {
+        try {
+            jpaUnit.setup(PipelinedTest.class, "broken");
+            fail();
+        } catch (final RuntimeException e) {
+            assertThat(e.getMessage(), containsString("Failed to parse"));
+            assertThat(find(new UUID(0, 0x21)), nullValue());
+        }
+    }
+
+    private Unit find(final UUID id) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return em.find(Unit.class, id);
+        } finally {
+            em.close();
+        }
+    }
+
+}
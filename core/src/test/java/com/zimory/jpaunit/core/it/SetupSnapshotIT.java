@@ -0,0 +1,191 @@
+package com.zimory.jpaunit.core.it;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.JpaUnit;
+import com.zimory.jpaunit.core.annotation.UsingJpaDataSet;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
+import com.zimory.jpaunit.core.it.model.Membership;
+import com.zimory.jpaunit.core.it.model.MembershipId;
+import com.zimory.jpaunit.core.it.model.Unit;
+import com.zimory.jpaunit.core.snapshot.InMemorySnapshotStrategy;
+import com.zimory.jpaunit.core.snapshot.RowSelection;
+import com.zimory.jpaunit.core.snapshot.ShadowTableSnapshotStrategy;
+import com.zimory.jpaunit.core.snapshot.Snapshot;
+import com.zimory.jpaunit.core.snapshot.SnapshotStrategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.assertThat;
+
+public class SetupSnapshotIT {
+
+    public static final class SnapshotTest {
+
+        @UsingJpaDataSet("JdbcSetupTest/units")
+        public void units() {
+        }
+
+        @UsingJpaDataSet
+        public void changing() {
+        }
+
+    }
+
+    private EntityManagerFactory emf;
+    private JpaUnitConfig config;
+
+    @Before
+    public void setUp() {
+        emf = Persistence.createEntityManagerFactory("test");
+
+        config = new JpaUnitConfig();
+        config.setSetupSnapshots(true);
+    }
+
+    @After
+    public void tearDown() {
+        emf.close();
+    }
+
+    @Test
+    public void setup_restoresTheRowsFromAnInMemorySnapshot() throws Exception {
+        assertRestored(new CountingStrategy(new InMemorySnapshotStrategy()));
+    }
+
+    @Test
+    public void setup_restoresTheRowsFromShadowTables() throws Exception {
+        assertRestored(new CountingStrategy(new ShadowTableSnapshotStrategy()));
+    }
+
+    @Test
+    public void setup_ignoresTheSnapshotOfAChangedDataset() throws Exception {
+        final CountingStrategy strategy = new CountingStrategy(new InMemorySnapshotStrategy());
+        config.setSetupSnapshotStrategy(strategy);
+
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+        final File dataset = new File(new File(getClass().getResource("/datasets").toURI()),
+                "SnapshotTest/changing.yml");
+        dataset.getParentFile().mkdirs();
+
+        try {
+            writeUnit(dataset, "before");
+            jpaUnit.setup(SnapshotTest.class, "changing");
+            deleteAll();
+
+            writeUnit(dataset, "after");
+            jpaUnit.setup(SnapshotTest.class, "changing");
+
+            assertThat(strategy.taken, equalTo(2));
+            assertThat(strategy.restored, equalTo(0));
+            assertThat(find(Unit.class, new UUID(0, 0x40)).getName(), equalTo("after"));
+        } finally {
+            dataset.delete();
+        }
+    }
+
+    private void assertRestored(final CountingStrategy strategy) throws Exception {
+        config.setSetupSnapshotStrategy(strategy);
+        final JpaUnit jpaUnit = JpaUnit.newInstance(config, emf);
+
+        jpaUnit.setup(SnapshotTest.class, "units");
+        deleteAll();
+
+        final JpaUnitSession session = jpaUnit.setup(SnapshotTest.class, "units");
+
+        assertThat(strategy.taken, equalTo(1));
+        assertThat(strategy.restored, equalTo(1));
+        assertThat(session.getSetupEntityKeys().size(), equalTo(6));
+
+        assertThat(find(Unit.class, new UUID(0, 0x30)).getName(), equalTo("bulk loaded"));
+        assertThat(count("Unit_Association"), equalTo(3));
+        assertThat(find(Membership.class, new MembershipId("farmers", "old MacDonald")), notNullValue());
+    }
+
+    private static void writeUnit(final File dataset, final String name) throws Exception {
+        Files.write("--- !Unit\nid: 00000000-0000-0000-0000-000000000040\nname: " + name + "\n", dataset,
+                Charsets.UTF_8);
+    }
+
+    private <T> T find(final Class<T> type, final Object id) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return em.find(type, id);
+        } finally {
+            em.close();
+        }
+    }
+
+    private int count(final String table) {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM " + table).getSingleResult()).intValue();
+        } finally {
+            em.close();
+        }
+    }
+
+    private void deleteAll() {
+        final EntityManager em = emf.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+
+            for (final String table : new String[] {"Unit_Association", "Unit", "Association", "Membership", "Tag"}) {
+                em.createNativeQuery("DELETE FROM " + table).executeUpdate();
+            }
+
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static final class CountingStrategy implements SnapshotStrategy {
+
+        private final SnapshotStrategy delegate;
+        private int taken;
+        private int restored;
+
+        private CountingStrategy(final SnapshotStrategy delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Snapshot take(final Connection connection, final List<RowSelection> selections) throws SQLException {
+            final Snapshot snapshot = delegate.take(connection, selections);
+            taken++;
+
+            return new Snapshot() {
+                @Override
+                public void restore(final Connection connection) throws SQLException {
+                    snapshot.restore(connection);
+                    restored++;
+                }
+
+                @Override
+                public void discard(final Connection connection) throws SQLException {
+                    snapshot.discard(connection);
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.util.UUID;
+
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import com.google.common.base.Objects;
+
+@Entity
+public class Category {
+
+    @Id
+    private UUID id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    private Category parent;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public Category getParent() {
+        return parent;
+    }
+
+    public void setParent(final Category parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .toString();
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.util.List;
+import java.util.UUID;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+
+import com.google.common.base.Objects;
+
+@Entity
+public class Department {
+
+    @Id
+    private UUID id;
+
+    @ManyToOne
+    private Employee head;
+
+    @OneToMany(mappedBy = "department", cascade = CascadeType.PERSIST)
+    private List<Employee> employees;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public Employee getHead() {
+        return head;
+    }
+
+    public void setHead(final Employee head) {
+        this.head = head;
+    }
+
+    public List<Employee> getEmployees() {
+        return employees;
+    }
+
+    public void setEmployees(final List<Employee> employees) {
+        this.employees = employees;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .toString();
+    }
+
+}
@@ -0,0 +1,44 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.util.UUID;
+
+import javax.persistence.CascadeType;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.ManyToOne;
+
+import com.google.common.base.Objects;
+
+@Entity
+public class Employee {
+
+    @Id
+    private UUID id;
+
+    @ManyToOne(optional = false, cascade = CascadeType.PERSIST)
+    private Department department;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public Department getDepartment() {
+        return department;
+    }
+
+    public void setDepartment(final Department department) {
+        this.department = department;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .toString();
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.zimory.jpaunit.core.it.model;
+
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+
+import com.google.common.base.Objects;
+
+@Entity
+public class Membership {
+
+    @EmbeddedId
+    private MembershipId id;
+
+    public MembershipId getId() {
+        return id;
+    }
+
+    public void setId(final MembershipId id) {
+        this.id = id;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .toString();
+    }
+
+}
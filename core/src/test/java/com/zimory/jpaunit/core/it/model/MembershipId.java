@@ -0,0 +1,49 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.io.Serializable;
+
+import javax.persistence.Embeddable;
+
+import com.google.common.base.Objects;
+
+@Embeddable
+public class MembershipId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String groupName;
+    private String memberName;
+
+    public MembershipId() {
+    }
+
+    public MembershipId(final String groupName, final String memberName) {
+        this.groupName = groupName;
+        this.memberName = memberName;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public String getMemberName() {
+        return memberName;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(groupName, memberName);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof MembershipId)) {
+            return false;
+        }
+
+        final MembershipId other = (MembershipId) obj;
+
+        return Objects.equal(groupName, other.groupName) && Objects.equal(memberName, other.memberName);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.util.UUID;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+
+import com.google.common.base.Objects;
+
+@Entity
+public class Revision {
+
+    @Id
+    private UUID id;
+
+    @ManyToOne
+    @JoinColumn(nullable = false)
+    private Revision base;
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(final UUID id) {
+        this.id = id;
+    }
+
+    public Revision getBase() {
+        return base;
+    }
+
+    public void setBase(final Revision base) {
+        this.base = base;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("id", id)
+                .toString();
+    }
+
+}
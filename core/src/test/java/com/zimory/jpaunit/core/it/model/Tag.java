@@ -0,0 +1,43 @@
+package com.zimory.jpaunit.core.it.model;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+
+import com.google.common.base.Objects;
+
+@Entity
+@IdClass(TagId.class)
+public class Tag {
+
+    @Id
+    private String namespace;
+
+    @Id
+    private String name;
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(final String namespace) {
+        this.namespace = namespace;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(final String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("namespace", namespace)
+                .add("name", name)
+                .toString();
+    }
+
+}
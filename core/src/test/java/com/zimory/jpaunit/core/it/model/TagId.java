@@ -0,0 +1,38 @@
+package com.zimory.jpaunit.core.it.model;
+
+import java.io.Serializable;
+
+import com.google.common.base.Objects;
+
+public class TagId implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String namespace;
+    private String name;
+
+    public TagId() {
+    }
+
+    public TagId(final String namespace, final String name) {
+        this.namespace = namespace;
+        this.name = name;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(namespace, name);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof TagId)) {
+            return false;
+        }
+
+        final TagId other = (TagId) obj;
+
+        return Objects.equal(namespace, other.namespace) && Objects.equal(name, other.name);
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.zimory.jpaunit.core.model;
+
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+
+public class EntityIdSetTest {
+
+    @Test
+    public void add_keepsIdsOfTheSameTypeAndClassOnlyOnce() {
+        final EntityIdSet set = new EntityIdSet();
+
+        assertThat(set.add(String.class, 1L), is(true));
+        assertThat(set.add(String.class, 1L), is(false));
+        assertThat(set.add(String.class, 1), is(true));
+        assertThat(set.add(Integer.class, 1L), is(true));
+        assertThat(set.add(String.class, 0L), is(true));
+        assertThat(set.add(String.class, new UUID(0, 0)), is(true));
+        assertThat(set.add(String.class, new UUID(1, 2)), is(true));
+        assertThat(set.add(String.class, new UUID(1, 2)), is(false));
+        assertThat(set.add(String.class, "1"), is(true));
+        assertThat(set.add(String.class, null), is(true));
+        assertThat(set.add(String.class, null), is(false));
+
+        assertThat(set.size(), equalTo(8));
+        assertThat(set.contains(String.class, 1), is(true));
+        assertThat(set.contains(String.class, 2), is(false));
+        assertThat(set.contains(Integer.class, 1), is(false));
+        assertThat(set.contains(EntityKey.of(String.class, new UUID(1, 2))), is(true));
+        assertThat(set.contains(EntityKey.of(String.class, new UUID(2, 1))), is(false));
+        assertThat(set.contains(Long.class, 1L), is(false));
+    }
+
+    @Test
+    public void contains_findsAllIdsAfterGrowing() {
+        final EntityIdSet set = new EntityIdSet();
+        final Set<UUID> uuids = Sets.newHashSet();
+
+        for (long i = 0; i < 10000; i++) {
+            final UUID uuid = UUID.randomUUID();
+            uuids.add(uuid);
+
+            set.add(Long.class, i * 31);
+            set.add(UUID.class, uuid);
+        }
+
+        assertThat(set.size(), equalTo(20000));
+
+        for (long i = 0; i < 10000; i++) {
+            assertThat(set.contains(Long.class, i * 31), is(true));
+            assertThat(set.contains(Long.class, i * 31 + 1), is(false));
+        }
+
+        for (final UUID uuid : uuids) {
+            assertThat(set.contains(UUID.class, uuid), is(true));
+        }
+
+        assertThat(set.contains(UUID.class, UUID.randomUUID()), is(false));
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class CompiledDatasetTest {
+
+    private static final String FIRST = "/datasets/YamlEntityIteratorTest/first.yml";
+    private static final String SECOND = "/datasets/YamlEntityIteratorTest/second.yml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<File> compiledFiles = Lists.newArrayList();
+    private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    @After
+    public void tearDown() {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+
+        for (final File file : compiledFiles) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void getCompiledPath_replacesTheExtension() {
+        assertThat(CompiledDataset.getCompiledPath("/datasets/a.b/c.yml"), equalTo("/datasets/a.b/c.ymlc"));
+        assertThat(CompiledDataset.getCompiledPath("/datasets/a.b/c"), equalTo("/datasets/a.b/c.ymlc"));
+    }
+
+    @Test
+    public void open_replaysTheCompiledDatasetsAsOneStream() throws Exception {
+        compile(FIRST, DatasetSourceReader.openResource(FIRST));
+        compile(SECOND, DatasetSourceReader.openResource(SECOND));
+
+        final CompiledDatasetParser parser = CompiledDatasetParser.open(ImmutableList.of(FIRST, SECOND)).get();
+        final List<Object> entities = Lists.newArrayList(new YamlEntityIterator(parser, new YamlConfig()));
+
+        assertThat(entities.size(), equalTo(3));
+        assertThat(((Map<?, ?>) entities.get(1)).get("other"), sameInstance(entities.get(0)));
+        assertThat(((Map<?, ?>) entities.get(2)).get("name"), equalTo((Object) "ümlaut"));
+    }
+
+    @Test
+    public void open_ignoresCompiledDatasetsThatAreOutOfDate() throws Exception {
+        compile(FIRST, DatasetSourceReader.openResource(FIRST));
+        compile(SECOND, new ByteArrayInputStream("---\nname: stale\n".getBytes(Charsets.UTF_8)));
+
+        assertThat(CompiledDatasetParser.open(ImmutableList.of(FIRST, SECOND)).isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void compiledEntityReader_readsTheYamlSourcesOfOutOfDateCompiledDatasets() throws Exception {
+        compile(FIRST, DatasetSourceReader.openResource(FIRST));
+        compile(SECOND, new ByteArrayInputStream("---\nname: stale\n".getBytes(Charsets.UTF_8)));
+        final JpaUnitConfig config = new JpaUnitConfig();
+
+        final EntityIterator entities = new CompiledEntityReader(new YamlConfig(), config, new DatasetCache(config))
+                .newEntityIterator(ImmutableList.of(FIRST, SECOND));
+
+        assertThat(((Map<?, ?>) Lists.newArrayList(entities).get(2)).get("name"), equalTo((Object) "ümlaut"));
+    }
+
+    @Test
+    public void open_checksTheSourceAgainOnlyOnceEitherFileChanges() throws Exception {
+        final File yamlFile = folder.newFile("dataset.yml");
+        Files.write("---\nname: first\n", yamlFile, Charsets.UTF_8);
+        compile(yamlFile);
+        Thread.currentThread().setContextClassLoader(
+                new URLClassLoader(new URL[] {folder.getRoot().toURI().toURL()}, contextClassLoader));
+
+        assertThat(isUpToDate("/dataset.yml"), equalTo(true));
+
+        // same size and modification time
+        final long lastModified = yamlFile.lastModified();
+        Files.write("---\nname: other\n", yamlFile, Charsets.UTF_8);
+        assertThat(yamlFile.setLastModified(lastModified), equalTo(true));
+
+        assertThat(isUpToDate("/dataset.yml"), equalTo(true));
+
+        assertThat(yamlFile.setLastModified(lastModified + 1000), equalTo(true));
+
+        assertThat(isUpToDate("/dataset.yml"), equalTo(false));
+    }
+
+    private static boolean isUpToDate(final String yamlPath) throws Exception {
+        final Optional<CompiledDataset> dataset = CompiledDataset.open(yamlPath);
+
+        if (dataset.isPresent()) {
+            dataset.get().close();
+        }
+
+        return dataset.isPresent();
+    }
+
+    private static void compile(final File yamlFile) throws Exception {
+        final InputStream source = new FileInputStream(yamlFile);
+        final OutputStream out = new FileOutputStream(new File(yamlFile.getParentFile(), "dataset.ymlc"));
+        try {
+            CompiledDataset.compile(source, out);
+        } finally {
+            out.close();
+            source.close();
+        }
+    }
+
+    // writes the compiled dataset next to its source, where the reader looks for it
+    private void compile(final String yamlPath, final InputStream source) throws Exception {
+        final File yamlFile = new File(getClass().getResource(yamlPath).toURI());
+        final File compiledFile = new File(yamlFile.getParentFile(), yamlFile.getName() + "c");
+        compiledFiles.add(compiledFile);
+
+        final OutputStream out = new FileOutputStream(compiledFile);
+        try {
+            CompiledDataset.compile(source, out);
+        } finally {
+            out.close();
+            source.close();
+        }
+    }
+
+}
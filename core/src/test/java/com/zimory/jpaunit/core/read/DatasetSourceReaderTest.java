@@ -0,0 +1,80 @@
+package com.zimory.jpaunit.core.read;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class DatasetSourceReaderTest {
+
+    private static final String OWN = "/datasets/YamlEntityIteratorTest/first.yml";
+    private static final String CONTEXT_ONLY = "/datasets/DatasetSourceReaderTest/context.yml";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    @Before
+    public void setUp() throws Exception {
+        write(CONTEXT_ONLY, "name: context\n");
+        write(OWN, "name: shadowed\n");
+
+        Thread.currentThread().setContextClassLoader(
+                new URLClassLoader(new URL[] {folder.getRoot().toURI().toURL()}, null));
+    }
+
+    @After
+    public void tearDown() {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+    }
+
+    @Test
+    public void read_findsDatasetsOnlyTheContextClassLoaderSees() throws Exception {
+        assertThat(read(CONTEXT_ONLY), equalTo("name: context\n"));
+    }
+
+    @Test
+    public void read_prefersTheDatasetsOfItsOwnClassLoader() throws Exception {
+        assertThat(read(OWN), equalTo(Files.toString(
+                new File(DatasetSourceReaderTest.class.getResource(OWN).toURI()), Charsets.UTF_8)));
+    }
+
+    @Test
+    public void findResource_withoutAContextClassLoaderFindsOnlyItsOwnDatasets() throws Exception {
+        Thread.currentThread().setContextClassLoader(null);
+
+        assertThat(DatasetSourceReader.findResource(CONTEXT_ONLY), nullValue());
+        assertThat(DatasetSourceReader.findResource(OWN), equalTo(DatasetSourceReaderTest.class.getResource(OWN)));
+    }
+
+    private void write(final String path, final String content) throws Exception {
+        final File file = new File(folder.getRoot(), path);
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+    }
+
+    private static String read(final String path) throws Exception {
+        final DatasetSourceReader reader = new DatasetSourceReader(ImmutableList.of(path));
+
+        try {
+            return CharStreams.toString(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.zimory.jpaunit.core.read;
+
+import java.util.List;
+import java.util.Map;
+
+import com.esotericsoftware.yamlbeans.YamlConfig;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class YamlEntityIteratorTest {
+
+    private static final String FIRST = "/datasets/YamlEntityIteratorTest/first.yml";
+    private static final String SECOND = "/datasets/YamlEntityIteratorTest/second.yml";
+    private static final String BROKEN = "/datasets/YamlEntityIteratorTest/broken.yml";
+
+    @Test
+    public void iterate_readsAllDatasetsAsUtf8AndKeepsAnchors() throws Exception {
+        final List<Object> entities = Lists.newArrayList(iterate(FIRST, SECOND));
+
+        assertThat(entities.size(), equalTo(3));
+        assertThat(((Map<?, ?>) entities.get(1)).get("other"), sameInstance(entities.get(0)));
+        assertThat(((Map<?, ?>) entities.get(2)).get("name"), equalTo((Object) "ümlaut"));
+    }
+
+    @Test
+    public void iterate_reportsErrorPositionWithinTheDatasetFile() throws Exception {
+        final YamlEntityIterator entities = iterate(FIRST, BROKEN);
+
+        try {
+            Lists.newArrayList(entities);
+            fail();
+        } catch (final RuntimeException e) {
+            assertThat(e.getMessage(), containsString(BROKEN + ", line 4"));
+        }
+    }
+
+    private static YamlEntityIterator iterate(final String... paths) {
+        return new YamlEntityIterator(new DatasetSourceReader(ImmutableList.copyOf(paths)), new YamlConfig());
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.zimory.jpaunit.core.util;
+
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+public class ObjectGraphCopierTest {
+
+    private static final class Node {
+
+        private String name;
+        private Date date;
+        private Node parent;
+        private List<Node> children = Lists.newArrayList();
+
+        private Node() {
+        }
+
+        private Node(final String name, final Node parent) {
+            this.name = name;
+            this.date = new Date(0);
+            this.parent = parent;
+
+            if (parent != null) {
+                parent.children.add(this);
+            }
+        }
+
+    }
+
+    @Test
+    public void copyAll_copiesMutableObjectsAndSharesImmutableOnes() throws Exception {
+        final Node original = new Node("root", null);
+
+        final Node copy = ObjectGraphCopier.copyAll(ImmutableList.of(original)).get(0);
+
+        assertThat(copy, not(sameInstance(original)));
+        assertThat(copy.date, not(sameInstance(original.date)));
+        assertThat(copy.date, equalTo(original.date));
+        assertThat(copy.children, not(sameInstance(original.children)));
+        assertThat(copy.name, sameInstance(original.name));
+    }
+
+    @Test
+    public void copyAll_preservesCyclesWithinTheCopiedGraph() throws Exception {
+        final Node root = new Node("root", null);
+        final Node child = new Node("child", root);
+
+        final Node copy = ObjectGraphCopier.copyAll(ImmutableList.of(root)).get(0);
+
+        assertThat(copy.children.size(), equalTo(1));
+        assertThat(copy.children.get(0).name, equalTo(child.name));
+        assertThat(copy.children.get(0).parent, sameInstance(copy));
+    }
+
+    @Test
+    public void copyAll_preservesReferencesSharedBetweenTheGivenObjects() throws Exception {
+        final Node root = new Node("root", null);
+        final Node child = new Node("child", root);
+
+        final List<Node> copies = ObjectGraphCopier.copyAll(ImmutableList.of(root, child));
+
+        assertThat(copies.get(1).parent, sameInstance(copies.get(0)));
+        assertThat(copies.get(0).children.get(0), sameInstance(copies.get(1)));
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.zimory.jpaunit.maven;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.zimory.jpaunit.core.read.CompiledDataset;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Compiles the YAML datasets into {@link CompiledDataset compiled datasets}, which JpaUnit reads instead of the YAML
+ * sources as long as these don't change.
+ */
+@Mojo(name = "compile-datasets", defaultPhase = LifecyclePhase.PROCESS_TEST_RESOURCES, threadSafe = true)
+public class CompileDatasetsMojo extends AbstractMojo {
+
+    private static final String YAML_EXTENSION = ".yml";
+
+    /**
+     * The directory containing the YAML datasets.
+     */
+    @Parameter(defaultValue = "${project.basedir}/src/test/resources/datasets")
+    private File sourceDirectory;
+
+    /**
+     * The directory to write the compiled datasets to, which has to be the directory the YAML datasets are copied to.
+     */
+    @Parameter(defaultValue = "${project.build.testOutputDirectory}/datasets")
+    private File outputDirectory;
+
+    @Parameter(property = "jpaunit.compile.skip", defaultValue = "false")
+    private boolean skip;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        if (skip || !sourceDirectory.isDirectory()) {
+            getLog().info("No datasets to compile");
+            return;
+        }
+
+        final int count = compileAll(sourceDirectory, outputDirectory);
+        getLog().info("Compiled " + count + " dataset(s) to " + outputDirectory);
+    }
+
+    private int compileAll(final File sourceDir, final File outputDir) throws MojoExecutionException {
+        final File[] files = sourceDir.listFiles();
+        if (files == null) {
+            return 0;
+        }
+
+        int count = 0;
+
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                count += compileAll(file, new File(outputDir, file.getName()));
+            } else if (file.getName().endsWith(YAML_EXTENSION)) {
+                final File target = new File(outputDir, CompiledDataset.getCompiledPath(file.getName()));
+
+                if (target.lastModified() < file.lastModified() && compile(file, target)) {
+                    count++;
+                }
+            }
+        }
+
+        return count;
+    }
+
+    // invalid datasets are left to the YAML reader, which reports the position of the error
+    private boolean compile(final File source, final File target) throws MojoExecutionException {
+        if (!target.getParentFile().exists() && !target.getParentFile().mkdirs()) {
+            throw new MojoExecutionException("Could not create directory: " + target.getParent());
+        }
+
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(source));
+
+            try {
+                final OutputStream out = new BufferedOutputStream(new FileOutputStream(target));
+
+                try {
+                    CompiledDataset.compile(in, out);
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (final IOException e) {
+            getLog().warn("Not compiling dataset " + source + ": " + e.getMessage());
+            target.delete();
+
+            return false;
+        }
+
+        return true;
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.zimory.jpaunit.maven;
+
+import java.io.File;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.List;
+
+import com.esotericsoftware.yamlbeans.parser.Event;
+import com.esotericsoftware.yamlbeans.parser.Parser;
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.zimory.jpaunit.core.read.CompiledDataset;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CompileDatasetsMojoTest {
+
+    private static final String DATASET = "---\n"
+            + "- &Unit_1 !Unit\n"
+            + "  id: 1\n"
+            + "  name: ümlaut\n"
+            + "- !Association\n"
+            + "  unit: *Unit_1\n"
+            + "  tags: [a, 'b c']\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+
+    private File sourceDirectory;
+    private File outputDirectory;
+    private CompileDatasetsMojo mojo;
+
+    @Before
+    public void setUp() throws Exception {
+        sourceDirectory = folder.newFolder("src");
+        outputDirectory = folder.newFolder("out");
+
+        mojo = new CompileDatasetsMojo();
+        set("sourceDirectory", sourceDirectory);
+        set("outputDirectory", outputDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        Thread.currentThread().setContextClassLoader(contextClassLoader);
+    }
+
+    @Test
+    public void execute_compilesDatasetsThatReadBackAsTheirSources() throws Exception {
+        write("nested/dataset.yml", DATASET);
+
+        mojo.execute();
+
+        // the YAML datasets are copied next to the compiled ones as test resources
+        Files.copy(new File(sourceDirectory, "nested/dataset.yml"), new File(outputDirectory, "nested/dataset.yml"));
+        Thread.currentThread().setContextClassLoader(
+                new URLClassLoader(new URL[] {outputDirectory.toURI().toURL()}, contextClassLoader));
+
+        final CompiledDataset compiled = CompiledDataset.open("/nested/dataset.yml").get();
+        final List<String> events = Lists.newArrayList();
+        try {
+            for (Event event = compiled.readEvent(); event != null; event = compiled.readEvent()) {
+                events.add(event.toString());
+            }
+        } finally {
+            compiled.close();
+        }
+
+        assertThat(events, equalTo(parse(DATASET)));
+    }
+
+    @Test
+    public void execute_skipsDatasetsThatAreNotValidYaml() throws Exception {
+        write("valid.yml", DATASET);
+        write("invalid.yml", "---\n- [unclosed\n");
+
+        mojo.execute();
+
+        assertThat(new File(outputDirectory, "valid.ymlc").isFile(), equalTo(true));
+        assertThat(new File(outputDirectory, "invalid.ymlc").exists(), equalTo(false));
+    }
+
+    private void write(final String path, final String content) throws Exception {
+        final File file = new File(sourceDirectory, path);
+        Files.createParentDirs(file);
+        Files.write(content, file, Charsets.UTF_8);
+    }
+
+    private void set(final String name, final Object value) throws Exception {
+        final Field field = CompileDatasetsMojo.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
+
+    private static List<String> parse(final String yaml) throws Exception {
+        final Parser parser = new Parser(new StringReader(yaml));
+        final List<String> events = Lists.newArrayList();
+
+        for (Event event = parser.getNextEvent(); event != null; event = parser.getNextEvent()) {
+            events.add(event.toString());
+        }
+
+        return events;
+    }
+
+}
@@ -5,30 +5,45 @@ import javax.persistence.EntityManagerFactory;
 import com.google.common.base.Preconditions;
 import com.zimory.jpaunit.core.JpaUnit;
 import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
 import org.springframework.test.context.TestContext;
 import org.springframework.test.context.support.AbstractTestExecutionListener;
 
 public class JpaUnitTestExecutionListener extends AbstractTestExecutionListener {
 
+    private static final String SESSION_ATTRIBUTE = JpaUnitTestExecutionListener.class.getName() + ".session";
+
+    // shared, so that contexts without a JpaUnitConfig still map onto a single JpaUnit instance
+    private static final JpaUnitConfig DEFAULT_CONFIG = new JpaUnitConfig();
+
     @Override
     public void beforeTestMethod(final TestContext testContext) throws Exception {
-        newJpaUnit(testContext).setup(testContext.getTestClass(), testContext.getTestMethod().getName());
+        final JpaUnitSession session =
+                getJpaUnit(testContext).setup(testContext.getTestClass(), testContext.getTestMethod().getName());
+
+        testContext.setAttribute(SESSION_ATTRIBUTE, session);
     }
 
     @Override
     public void afterTestMethod(final TestContext testContext) throws Exception {
-        newJpaUnit(testContext).expect(testContext.getTestClass(), testContext.getTestMethod().getName());
+        final JpaUnitSession session = (JpaUnitSession) testContext.removeAttribute(SESSION_ATTRIBUTE);
+
+        if (session != null) {
+            getJpaUnit(testContext).expect(session);
+        } else {
+            getJpaUnit(testContext).expect(testContext.getTestClass(), testContext.getTestMethod().getName());
+        }
     }
 
-    private static JpaUnit newJpaUnit(final TestContext testContext) {
-        return JpaUnit.newInstance(getConfig(testContext), getEntityManagerFactory(testContext));
+    static JpaUnit getJpaUnit(final TestContext testContext) {
+        return JpaUnit.getInstance(getConfig(testContext), getEntityManagerFactory(testContext));
     }
 
-    private static JpaUnitConfig getConfig(final TestContext testContext) {
+    static JpaUnitConfig getConfig(final TestContext testContext) {
         final String[] beanNames = testContext.getApplicationContext().getBeanNamesForType(JpaUnitConfig.class);
         Preconditions.checkState(beanNames.length <= 1, "can only be one instance of JpaUnitConfig");
 
-        return beanNames.length == 0 ? new JpaUnitConfig() :
+        return beanNames.length == 0 ? DEFAULT_CONFIG :
                 testContext.getApplicationContext().getBean(beanNames[0], JpaUnitConfig.class);
     }
 
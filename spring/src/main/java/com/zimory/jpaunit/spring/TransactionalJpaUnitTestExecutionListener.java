@@ -3,17 +3,39 @@ package com.zimory.jpaunit.spring;
 import java.util.List;
 
 import com.google.common.collect.ImmutableList;
+import com.zimory.jpaunit.core.context.IsolatedTransaction;
+import com.zimory.jpaunit.core.context.JpaUnitConfig;
+import com.zimory.jpaunit.core.context.JpaUnitSession;
 import org.springframework.test.context.TestContext;
 import org.springframework.test.context.TestExecutionListener;
 import org.springframework.test.context.transaction.TransactionalTestExecutionListener;
 
+/**
+ * Runs the JpaUnit phases around the test transactions of Spring. In the rollback isolation mode (see
+ * {@link JpaUnitConfig#setRollbackIsolation(boolean)}) the test transactions are replaced by an
+ * {@link IsolatedTransaction} spanning the test class, which Spring managed code joins: each test runs within a
+ * savepoint that is rolled back once the test has been verified.
+ */
 public class TransactionalJpaUnitTestExecutionListener implements TestExecutionListener {
 
+    private static final String TRANSACTION_ATTRIBUTE =
+            TransactionalJpaUnitTestExecutionListener.class.getName() + ".transaction";
+    private static final String SESSION_ATTRIBUTE =
+            TransactionalJpaUnitTestExecutionListener.class.getName() + ".session";
+
     private static final ImmutableList<? extends TestExecutionListener> CHAIN =
             ImmutableList.of(new JpaUnitTestExecutionListener(), new TransactionalTestExecutionListener());
 
     @Override
     public void beforeTestClass(final TestContext testContext) throws Exception {
+        if (isRollbackIsolation(testContext)) {
+            final IsolatedTransaction transaction = JpaUnitTestExecutionListener.getJpaUnit(testContext)
+                    .beginIsolatedTransaction(testContext.getTestClass());
+
+            testContext.setAttribute(TRANSACTION_ATTRIBUTE, transaction);
+            return;
+        }
+
         run(CHAIN, new Call() {
             @Override
             public void call(final TestExecutionListener listener) throws Exception {
@@ -34,6 +56,16 @@ public class TransactionalJpaUnitTestExecutionListener implements TestExecutionL
 
     @Override
     public void beforeTestMethod(final TestContext testContext) throws Exception {
+        final IsolatedTransaction transaction = (IsolatedTransaction) testContext.getAttribute(TRANSACTION_ATTRIBUTE);
+
+        if (transaction != null) {
+            final JpaUnitSession session = JpaUnitTestExecutionListener.getJpaUnit(testContext)
+                    .setup(transaction, testContext.getTestClass(), testContext.getTestMethod().getName());
+
+            testContext.setAttribute(SESSION_ATTRIBUTE, session);
+            return;
+        }
+
         run(CHAIN, new Call() {
             @Override
             public void call(final TestExecutionListener listener) throws Exception {
@@ -44,6 +76,23 @@ public class TransactionalJpaUnitTestExecutionListener implements TestExecutionL
 
     @Override
     public void afterTestMethod(final TestContext testContext) throws Exception {
+        final IsolatedTransaction transaction = (IsolatedTransaction) testContext.getAttribute(TRANSACTION_ATTRIBUTE);
+
+        if (transaction != null) {
+            final JpaUnitSession session = (JpaUnitSession) testContext.removeAttribute(SESSION_ATTRIBUTE);
+
+            try {
+                // a failed test is not verified, like with the JpaUnitRule
+                if (session != null && testContext.getTestException() == null) {
+                    JpaUnitTestExecutionListener.getJpaUnit(testContext).expect(transaction, session);
+                }
+            } finally {
+                transaction.rollbackTest();
+            }
+
+            return;
+        }
+
         run(CHAIN.reverse(), new Call() {
             @Override
             public void call(final TestExecutionListener listener) throws Exception {
@@ -54,6 +103,14 @@ public class TransactionalJpaUnitTestExecutionListener implements TestExecutionL
 
     @Override
     public void afterTestClass(final TestContext testContext) throws Exception {
+        final IsolatedTransaction transaction =
+                (IsolatedTransaction) testContext.removeAttribute(TRANSACTION_ATTRIBUTE);
+
+        if (transaction != null) {
+            transaction.rollback();
+            return;
+        }
+
         run(CHAIN.reverse(), new Call() {
             @Override
             public void call(final TestExecutionListener listener) throws Exception {
@@ -62,6 +119,10 @@ public class TransactionalJpaUnitTestExecutionListener implements TestExecutionL
         });
     }
 
+    private static boolean isRollbackIsolation(final TestContext testContext) {
+        return JpaUnitTestExecutionListener.getConfig(testContext).isRollbackIsolation();
+    }
+
     private void run(final List<? extends TestExecutionListener> chain, final Call call) throws Exception {
         for (final TestExecutionListener listener : chain) {
             call.call(listener);